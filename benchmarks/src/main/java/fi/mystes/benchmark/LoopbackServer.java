@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+
+/**
+ * Loopback HTTP server standing in for real end points and HttpApiMock service in benchmarks.
+ * Server binds to an ephemeral port on loopback interface, consumes request body and answers
+ * SOAP requests with a small SOAP envelope and all other requests with plain text.
+ *
+ */
+public class LoopbackServer {
+
+	/** SOAP 1.1 response returned to requests with XML content type */
+	private static final byte[] SOAP_RESPONSE = ("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<soapenv:Body><response>OK</response></soapenv:Body></soapenv:Envelope>").getBytes(StandardCharsets.UTF_8);
+
+	/** Plain text response returned to all other requests */
+	private static final byte[] TEXT_RESPONSE = "OK".getBytes(StandardCharsets.UTF_8);
+
+	/** Jetty server */
+	private Server server;
+
+	/** Connector bound to loopback interface */
+	private SelectChannelConnector connector;
+
+	/**
+	 * Starts server on an ephemeral loopback port.
+	 *
+	 * @return Instance of LoopbackServer
+	 *
+	 * @throws Exception If server cannot be started
+	 */
+	public LoopbackServer start() throws Exception {
+		server = new Server();
+		connector = new SelectChannelConnector();
+		connector.setHost("127.0.0.1");
+		connector.setPort(0);
+		server.addConnector(connector);
+		server.setHandler(new AbstractHandler() {
+			public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+					throws IOException, ServletException {
+				consume(request.getInputStream());
+				String contentType = request.getContentType();
+				boolean soap = contentType != null && (contentType.contains("xml") || contentType.contains("soap"));
+				byte[] body = soap ? SOAP_RESPONSE : TEXT_RESPONSE;
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType(soap ? "text/xml; charset=utf-8" : "text/plain; charset=utf-8");
+				response.setContentLength(body.length);
+				response.getOutputStream().write(body);
+				((Request) request).setHandled(true);
+			}
+		});
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Stops server.
+	 *
+	 * @throws Exception If server cannot be stopped
+	 */
+	public void stop() throws Exception {
+		server.stop();
+	}
+
+	/**
+	 * Returns base URL of the server, e.g. http://127.0.0.1:54321
+	 *
+	 * @return Base URL without trailing slash
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + connector.getLocalPort();
+	}
+
+	/**
+	 * Helper method to read and discard request body so that connection can be kept alive.
+	 *
+	 * @param inputStream Request body
+	 *
+	 * @throws IOException If reading fails
+	 */
+	private static void consume(InputStream inputStream) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (inputStream.read(buffer) != -1) {
+			// Discard
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import fi.mystes.HttpTestConductor;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+
+/**
+ * Benchmarks DOM parsing and XPath evaluation of recorded request and recorded header documents
+ * of various sizes using HttpTestConductor's helper methods, and streaming recorded requests with StAX.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathBenchmark extends HttpTestConductor {
+
+	/** Number of recorded requests in document */
+	@Param({"1", "100", "1000"})
+	public int recordedRequests;
+
+	private String recordedRequestsXml;
+
+	private byte[] recordedRequestsBytes;
+
+	private byte[] recordedHeadersXml;
+
+	private Document recordedHeadersDocument;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		StringBuilder requests = new StringBuilder("<recorded-requests>");
+		StringBuilder headers = new StringBuilder("<recorded-request-headers>");
+		for (int i = 0; i < recordedRequests; i++) {
+			requests.append("<ns1:getCustomer xmlns:ns1=\"http://example.com/customers\"><ns1:id>").append(i)
+				.append("</ns1:id><ns1:details>full</ns1:details></ns1:getCustomer>");
+			headers.append("<request-headers>")
+				.append("<header><name>Content-Type</name><value>text/xml; charset=UTF-8</value></header>")
+				.append("<header><name>SOAPAction</name><value>getCustomer</value></header>")
+				.append("<header><name>Custom-Request-Header</name><value>request ").append(i).append("</value></header>")
+				.append("</request-headers>");
+		}
+		recordedRequestsXml = requests.append("</recorded-requests>").toString();
+		recordedRequestsBytes = recordedRequestsXml.getBytes(StandardCharsets.UTF_8);
+		recordedHeadersXml = headers.append("</recorded-request-headers>").toString().getBytes(StandardCharsets.UTF_8);
+		recordedHeadersDocument = parseXml(recordedHeadersXml);
+	}
+
+	@Benchmark
+	public Document parseRecordedRequests() throws Exception {
+		return parseXml(recordedRequestsXml);
+	}
+
+	@Benchmark
+	public Document parseRecordedHeaders() throws Exception {
+		return parseXml(recordedHeadersXml);
+	}
+
+	@Benchmark
+	public String fetchLastRecordedHeader() throws Exception {
+		return fetchStringWithXpath(recordedHeadersDocument,
+				"(//name[text() = 'Custom-Request-Header'])[last()]/../value/text()");
+	}
+
+	@Benchmark
+	public Number countRecordedHeaders() throws Exception {
+		return fetchNumberWithXpath(recordedHeadersDocument, "count(//header)");
+	}
+
+	@Benchmark
+	public String parseAndFetchRecordedRequest() throws Exception {
+		Document document = parseXml(recordedRequestsXml);
+		return fetchStringWithXpath(document,
+				"//*[local-name() = 'getCustomer'][last()]/*[local-name() = 'id']/text()");
+	}
+
+	@Benchmark
+	public long streamRecordedRequests() throws Exception {
+		long count = 0;
+		for (RecordedRequest request : new RecordedRequestIterator(new ByteArrayInputStream(recordedRequestsBytes))) {
+			count += request.getContent().length();
+		}
+		return count;
+	}
+
+	@Benchmark
+	public NodeList parseAndFetchRecordedHeaders() throws Exception {
+		Document document = parseXml(recordedHeadersXml);
+		return fetchNodeListWithXpath(document, "//name[text() = 'SOAPAction']/../value");
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.mystes.benchmark.LoopbackServer;
+import fi.mystes.http.SharedHttpClient;
+import fi.mystes.response.Response;
+
+/**
+ * Benchmarks HttpApiMock's header handling and adding custom responses one by one and in batches
+ * to a loopback server standing in for HttpApiMock service.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpApiMockBenchmark {
+
+	/** Number of customized responses added per batch */
+	private static final int BATCH_SIZE = 20;
+
+	/** Number of custom response headers */
+	@Param({"1", "10", "50"})
+	public int headerCount;
+
+	/** Whether headers are sent as parameter */
+	@Param({"true", "false"})
+	public boolean headersAsParameters;
+
+	private LoopbackServer server;
+
+	private HttpApiMock apiMock;
+
+	private String uri;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		// Info logging of every call would dominate the measurements
+		Logger.getRootLogger().setLevel(org.apache.log4j.Level.WARN);
+		SharedHttpClient.configure(new Properties());
+		server = new LoopbackServer().start();
+		apiMock = new HttpApiMock();
+		uri = server.getBaseUrl() + "/mock/services/REST/benchmark/operations";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		server.stop();
+		SharedHttpClient.shutdown();
+	}
+
+	@Benchmark
+	public Response handleHeaders() {
+		Response response = createResponse();
+		apiMock.handleHeaders(response);
+		return response;
+	}
+
+	@Benchmark
+	public HttpApiMock addCustomResponse() throws Exception {
+		return apiMock.addCustomResponse(uri + "/0", createResponse());
+	}
+
+	@Benchmark
+	public HttpApiMock addCustomResponses() throws Exception {
+		CustomResponseBatch batch = new CustomResponseBatch();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.addCustomResponse(uri + "/" + (i % 4), createResponse());
+		}
+		return apiMock.addCustomResponses(batch);
+	}
+
+	@Benchmark
+	public HttpApiMock addCustomResponsesOneByOne() throws Exception {
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			apiMock.addCustomResponse(uri + "/" + (i % 4), createResponse());
+		}
+		return apiMock;
+	}
+
+	/**
+	 * Helper method to create new response, since handling headers adds parameter to response.
+	 *
+	 * @return Instance of Response
+	 */
+	private Response createResponse() {
+		Response response = new Response().setBody("{\"status\":\"OK\"}").setHeadersAsParameters(headersAsParameters);
+		for (int i = 0; i < headerCount; i++) {
+			response.addHeader("X-Header-" + i, "value " + i);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.request.HttpRequest;
+
+import fi.mystes.benchmark.LoopbackServer;
+import fi.mystes.http.SharedHttpClient;
+import fi.mystes.response.RestResponse;
+
+/**
+ * Benchmarks REST request building with varying number of HTTP parameters and headers,
+ * and sending REST requests to a loopback server.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestRequestBenchmark {
+
+	/** Number of HTTP parameters and HTTP headers */
+	@Param({"0", "5", "20"})
+	public int size;
+
+	private LoopbackServer server;
+
+	private RestRequest getRequest;
+
+	private RestRequest postRequest;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SharedHttpClient.configure(new Properties());
+		server = new LoopbackServer().start();
+
+		getRequest = new RestRequest();
+		getRequest.setEndpointUrl(server.getBaseUrl() + "/api/customers").setMethod("get");
+		postRequest = new RestRequest();
+		postRequest.setBody("{\"id\":42,\"name\":\"Benchmark customer\",\"details\":\"full\"}")
+			.setEndpointUrl(server.getBaseUrl() + "/api/customers").setMethod("post")
+			.addHeader("Content-Type", "application/json");
+
+		for (int i = 0; i < size; i++) {
+			getRequest.addParameter("param" + i, "value " + i).addHeader("X-Header-" + i, "value " + i);
+			postRequest.addParameter("param" + i, "value " + i).addHeader("X-Header-" + i, "value " + i);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		server.stop();
+		SharedHttpClient.shutdown();
+	}
+
+	@Benchmark
+	public HttpRequest buildGetRequest() throws Exception {
+		return getRequest.prepareRequest();
+	}
+
+	@Benchmark
+	public HttpRequest buildPostRequest() throws Exception {
+		return postRequest.prepareRequest();
+	}
+
+	@Benchmark
+	public HttpResponse<String> sendGetRequest() throws Exception {
+		return getRequest.sendRequest();
+	}
+
+	@Benchmark
+	public RestResponse<byte[]> sendGetRequestAsBytes() throws Exception {
+		return getRequest.sendRequestAsBytes();
+	}
+
+	@Benchmark
+	public RestResponse<Void> sendGetRequestDiscardingBody() throws Exception {
+		return getRequest.sendRequestDiscardingBody();
+	}
+
+	@Benchmark
+	public HttpResponse<String> sendPostRequest() throws Exception {
+		return postRequest.sendRequest();
+	}
+
+	@Benchmark
+	public HttpResponse<String> sendPostRequestAsync() throws Exception {
+		return postRequest.sendRequestAsync().get();
+	}
+}
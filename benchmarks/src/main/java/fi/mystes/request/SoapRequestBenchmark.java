@@ -0,0 +1,114 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.SOAPMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fi.mystes.benchmark.LoopbackServer;
+import fi.mystes.http.SharedHttpClient;
+
+/**
+ * Benchmarks SOAP envelope construction with optional name spaces, SOAP headers and attachments,
+ * and sending SOAP requests to a loopback server both synchronously (SAAJ) and asynchronously (Unirest).
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoapRequestBenchmark {
+
+	/** SOAP request features: plain, namespaces, soapHeaders, attachments or all */
+	@Param({"plain", "namespaces", "soapHeaders", "attachments", "all"})
+	public String variant;
+
+	private LoopbackServer server;
+
+	private SoapRequest request;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SharedHttpClient.configure(new Properties());
+		server = new LoopbackServer().start();
+
+		boolean all = "all".equals(variant);
+		request = new SoapRequest();
+		request.setBody("<ns1:getCustomer xmlns:ns1=\"http://example.com/customers\"><ns1:id>42</ns1:id>"
+				+ "<ns1:details>full</ns1:details></ns1:getCustomer>")
+			.setEndpointUrl(server.getBaseUrl() + "/services/customers")
+			.addHeader("SOAPAction", "getCustomer");
+
+		if (all || "namespaces".equals(variant)) {
+			request.addNamespace("cus", "http://example.com/customers")
+				.addNamespace("com", "http://example.com/common")
+				.addNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+		}
+		if (all || "soapHeaders".equals(variant)) {
+			Map<String, String> soapHeaders = new HashMap<String, String>();
+			soapHeaders.put("{http://example.com/common}transactionId", "0f8fad5b-d9cb-469f-a165-70867728950e");
+			soapHeaders.put("{http://example.com/common}userId", "benchmark");
+			request.setSoapHeaders(soapHeaders);
+		}
+		if (all || "attachments".equals(variant)) {
+			Map<String, String> attachments = new HashMap<String, String>();
+			attachments.put("text/plain", "Attachment content");
+			attachments.put("text/xml", "<attachment>content</attachment>");
+			request.setAttachments(attachments);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		server.stop();
+		SharedHttpClient.shutdown();
+	}
+
+	@Benchmark
+	public SOAPMessage createEnvelope() throws Exception {
+		return request.createSOAPRequest();
+	}
+
+	@Benchmark
+	public SOAPMessage sendRequest() throws Exception {
+		return request.sendRequest();
+	}
+
+	@Benchmark
+	public SOAPMessage sendRequestAsync() throws Exception {
+		return request.sendRequestAsync().get();
+	}
+}
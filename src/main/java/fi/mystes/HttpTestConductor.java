@@ -15,18 +15,17 @@
  */
 package fi.mystes;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -34,14 +33,31 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import fi.mystes.http.SharedHttpClient;
 import fi.mystes.mock.ApiMockFactory;
+import fi.mystes.mock.BodyKey;
+import fi.mystes.mock.CustomResponseBatch;
 import fi.mystes.mock.IApiMock;
+import fi.mystes.mock.IFaultInjectingApiMock;
+import fi.mystes.mock.IQueryableApiMock;
+import fi.mystes.record.CaptureLog;
+import fi.mystes.record.CaptureStubLoader;
+import fi.mystes.record.RecordingProxy;
 import fi.mystes.request.RecordedHeaders;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequestQuery;
+import fi.mystes.request.RecordedRequestVisitor;
 import fi.mystes.request.RecordedRequests;
+import fi.mystes.response.Fault;
 import fi.mystes.response.Response;
+import fi.mystes.server.IMockHandler;
 import fi.mystes.server.IMockServer;
 import fi.mystes.server.ServerFactory;
+import fi.mystes.server.StartupMetrics;
 import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
 
 /**
  * Abstract test class which provides testing utilities. This class should be extended by
@@ -61,14 +77,48 @@ import fi.mystes.xml.XPathNamespaceContext;
  * # Web App context path<br/>
  * http.test.conductor.webAppContextPath = /mock<br/><br/>
  * 
- * # Supported server type<br/>
+ * # Supported server type: JETTY, or JDK (lightweight, serves in-process API mock only)<br/>
  * http.test.conductor.serverType = JETTY<br/><br/>
  * 
- * # Server port<br/>
+ * # Server port, 0 allocates a free port for each JVM (see mockBaseUrl)<br/>
  * http.test.conductor.serverPort = 8888<br/><br/>
  * 
+ * # Maximum time to wait for API mock to answer after server start in milliseconds<br/>
+ * http.test.conductor.serverReadyTimeout = 60000<br/><br/>
+ * 
+ * # Server lifecycle: PER_CLASS stops server after each test class, PER_JVM keeps it running until JVM exits<br/>
+ * http.test.conductor.serverLifecycle = PER_CLASS<br/><br/>
+ * 
  * # Supported API Mock which implements fi.mystes.mock.IApiMock interface<br/>
+ * # fi.mystes.mock.InProcessApiMock is served in-process without deploying web application<br/>
  * http.test.conductor.apiMock = fi.mystes.mock.HttpApiMock<br/><br/>
+ * 
+ * # Mock server connector and worker threads, see fi.mystes.server.jetty.JettyServer and fi.mystes.server.jdk.JdkServer<br/>
+ * http.test.conductor.server.acceptors = 0<br/>
+ * http.test.conductor.server.acceptQueueSize = 1024<br/>
+ * http.test.conductor.server.minThreads = 16<br/>
+ * http.test.conductor.server.maxThreads = 500<br/>
+ * http.test.conductor.server.threadIdleTimeout = 60000<br/>
+ * http.test.conductor.server.idleTimeout = 30000<br/>
+ * http.test.conductor.server.executor = FIXED<br/>
+ * http.test.conductor.server.headerBufferSize = 8192<br/>
+ * http.test.conductor.server.requestBufferSize = 16384<br/>
+ * http.test.conductor.server.responseBufferSize = 32768<br/><br/>
+ * 
+ * # Shared pooled HTTP client, see fi.mystes.http.SharedHttpClient<br/>
+ * http.test.conductor.client.maxTotal = 200<br/>
+ * http.test.conductor.client.maxPerRoute = 100<br/>
+ * http.test.conductor.client.idleEvictionSeconds = 30<br/>
+ * http.test.conductor.client.validateAfterInactivity = 2000<br/>
+ * http.test.conductor.client.connectionRequestTimeout = 60000<br/><br/>
+ * 
+ * # Maximum number of compiled XPath expressions cached by fetch*WithXpath helpers<br/>
+ * http.test.conductor.xpathCacheSize = 256<br/><br/>
+ * 
+ * # Recording proxy, see fi.mystes.record.RecordingProxy and recordingProxyUrl. Empty capture log disables proxy<br/>
+ * http.test.conductor.record.log = <br/>
+ * http.test.conductor.record.contextPath = /record<br/>
+ * http.test.conductor.record.targetUrl = <br/><br/>
  *
  */
 public abstract class HttpTestConductor {
@@ -84,34 +134,55 @@ public abstract class HttpTestConductor {
 	/** Supported server type */
 	protected static String serverType;
 	
-	/** Server port */
-	protected static Integer serverPort;
+	/** Server port, bound port of running server if configured port is 0. Assigned only when server is acquired */
+	protected static volatile Integer serverPort;
+	
+	/** Configured server port, 0 if server allocates a free port */
+	private static int configuredServerPort;
+	
+	/** Maximum time to wait for API mock to answer after server start in milliseconds */
+	protected static long serverReadyTimeout;
+	
+	/** Mock server lifecycle */
+	protected static ServerFactory.Lifecycle serverLifecycle;
 	
 	/** Mock server reference */
 	private static IMockServer server;
 	
+	/** Number of test classes currently using mock server */
+	private static int serverUsers;
+	
+	/** Shutdown hook stopping JVM-wide mock server */
+	private static Thread serverShutdownHook;
+	
 	/** API Mock reference */
 	private static IApiMock<?> apiMock;
 	
-	/** Helper factory to build document builder */
-	private static DocumentBuilderFactory factory;
+	/** Recording proxy served next to API mock, null if recording is disabled */
+	private static RecordingProxy recordingProxy;
+	
+	/** Recording proxy context path */
+	protected static String recordContextPath;
 	
-	/** Helper document builder to query documents using XPath */
-    protected static DocumentBuilder builder;
-    
-    /** Helper XPath object to execute XPath expressions into XML documents */
-    protected static XPath xpath = XPathFactory.newInstance().newXPath();
-    
     /** XPath namespaces */
     protected static Map<String, String> xpathNamespaces = new HashMap<String, String>();
     
     /** Namespace context needed for XPath expressions with namespaces */
-    protected static NamespaceContext namespaceContext = new XPathNamespaceContext(xpathNamespaces);;
+    protected static XPathNamespaceContext namespaceContext = new XPathNamespaceContext(xpathNamespaces);
+    
+    /** Thread-safe XML toolkit with per-thread document builders, XPath objects and XPath expression caches */
+    protected static XmlToolkit xmlToolkit = new XmlToolkit(namespaceContext, 256);
+	
+	/** Helper document builder to query documents using XPath, safe to use from parallel tests */
+    protected static DocumentBuilder builder = xmlToolkit.getDocumentBuilder();
+    
+    /** Helper XPath object to execute XPath expressions into XML documents, safe to use from parallel tests */
+    protected static XPath xpath = xmlToolkit.getXPath();
 	
 	/**
 	 * Initialization method which will be called before any instance of implementing class is created.<br/>
 	 * This method will load configuration properties and initialize mock server. Also it will initialize
-	 * XPath utility and API mock objects.
+	 * XPath utility and API mock objects. Mock server already started by another test class is reused.
 	 * 
 	 * @throws Exception
 	 */
@@ -127,29 +198,173 @@ public abstract class HttpTestConductor {
 		
 		serverType = properties.getProperty("http.test.conductor.serverType");
 		
-		serverPort = Integer.parseInt(properties.getProperty("http.test.conductor.serverPort").trim());
+		configuredServerPort = Integer.parseInt(properties.getProperty("http.test.conductor.serverPort").trim());
+		
+		serverReadyTimeout = Long.parseLong(properties.getProperty("http.test.conductor.serverReadyTimeout", "60000").trim());
 		
-		apiMock = ApiMockFactory.createMockApi(properties.getProperty("http.test.conductor.apiMock").trim());
+		serverLifecycle = ServerFactory.Lifecycle.valueOf(properties.getProperty("http.test.conductor.serverLifecycle", "PER_CLASS").trim());
 		
-		server = ServerFactory.createServer(ServerFactory.Type.valueOf(serverType), serverPort);
-		server.addWebApp(webAppFileUrl, webAppContextPath, extraClassath);
-	    server.tearUp(apiMock, serverPort);
-	    
-	    factory = DocumentBuilderFactory.newInstance();
-	    factory.setNamespaceAware(true);
-	    builder = factory.newDocumentBuilder();
-	    
-	    xpath.setNamespaceContext(namespaceContext);
+		SharedHttpClient.configure(properties);
+		
+		xmlToolkit.setXPathCacheSize(Integer.parseInt(properties.getProperty("http.test.conductor.xpathCacheSize", "256").trim()));
+		
+		acquireServer(properties);
 	}
 	
 	/**
-	 * Helper method to stop server after all test cases of extending class are done.
+	 * Helper method to release mock server after all test cases of extending class are done. Server is stopped
+	 * when no other test class is using it, unless it is shared by the whole JVM.
 	 * 
 	 * @throws Exception If stopping server fails
 	 */
 	@AfterClass
 	public static void tearDown() throws Exception {
-		server.tearDown();
+		synchronized (HttpTestConductor.class) {
+			if (serverUsers > 0) {
+				serverUsers--;
+			}
+			if (serverUsers == 0 && serverLifecycle != ServerFactory.Lifecycle.PER_JVM) {
+				stopServer();
+			}
+		}
+	}
+	
+	/**
+	 * Stops JVM-wide mock server if no test class is using it. Server is also stopped by JVM shutdown hook,
+	 * so calling this method is needed only to free the server port earlier.
+	 * 
+	 * @return True if server was stopped, false if it is not running or still in use
+	 * 
+	 * @throws Exception If stopping server fails
+	 */
+	public static boolean shutdownServer() throws Exception {
+		synchronized (HttpTestConductor.class) {
+			if (server == null || serverUsers > 0) {
+				return false;
+			}
+			stopServer();
+			return true;
+		}
+	}
+	
+	/**
+	 * Returns base URL of API mock, e.g. http://localhost:8888/mock. URLs of mocked APIs should be built from it,
+	 * so that tests work with the free port allocated when server port is configured as 0.
+	 * 
+	 * @return Base URL without trailing slash
+	 */
+	public static String mockBaseUrl() {
+		return "http://localhost:" + serverPort + webAppContextPath;
+	}
+	
+	/**
+	 * Returns URL of recording proxy, e.g. http://localhost:8888/record. Requests sent to it are forwarded to
+	 * configured target URL and captured to capture log.
+	 * 
+	 * @return URL without trailing slash or null if recording proxy is not enabled
+	 */
+	public static String recordingProxyUrl() {
+		synchronized (HttpTestConductor.class) {
+			if (recordingProxy == null) {
+				return null;
+			}
+			return "http://localhost:" + serverPort + ("/".equals(recordContextPath) ? "" : recordContextPath);
+		}
+	}
+	
+	/**
+	 * Returns durations of mock server startup phases: server start, web application deployment and
+	 * first healthy response from API mock.
+	 * 
+	 * @return Instance of fi.mystes.server.StartupMetrics or null if mock server is not running
+	 */
+	public static StartupMetrics getServerStartupMetrics() {
+		synchronized (HttpTestConductor.class) {
+			return server != null ? server.getStartupMetrics() : null;
+		}
+	}
+	
+	/**
+	 * Helper method to start mock server or to join the one already running. Running server is reused
+	 * by resetting API mock instead of restarting the server when no other test class is using it.
+	 * 
+	 * @param properties Configuration properties
+	 * 
+	 * @throws Exception If starting server or resetting API mock fails
+	 */
+	private static void acquireServer(Properties properties) throws Exception {
+		synchronized (HttpTestConductor.class) {
+			if (server != null) {
+				if (serverUsers == 0) {
+					apiMock.reset();
+				}
+				serverUsers++;
+				serverPort = server.getPort();
+				return;
+			}
+			
+			apiMock = ApiMockFactory.createMockApi(properties.getProperty("http.test.conductor.apiMock").trim());
+			
+			server = ServerFactory.createServer(ServerFactory.Type.valueOf(serverType), configuredServerPort, properties);
+			if (apiMock instanceof IMockHandler) {
+				// In-process API mock is served directly, mock web application is not deployed
+				IMockHandler mockHandler = (IMockHandler) apiMock;
+				mockHandler.configure(webAppContextPath, extraClassath);
+				server.addMockHandler(webAppContextPath, mockHandler);
+			} else {
+				server.addWebApp(webAppFileUrl, webAppContextPath, extraClassath);
+			}
+			String recordLog = properties.getProperty("http.test.conductor.record.log", "").trim();
+			if (!recordLog.isEmpty()) {
+				recordContextPath = properties.getProperty("http.test.conductor.record.contextPath", "/record").trim();
+				recordingProxy = new RecordingProxy(new CaptureLog(new File(recordLog)))
+						.setTargetUrl(properties.getProperty("http.test.conductor.record.targetUrl"));
+				recordingProxy.configure(recordContextPath, extraClassath);
+				server.addMockHandler(recordContextPath, recordingProxy);
+			}
+			server.tearUp(apiMock, configuredServerPort, serverReadyTimeout);
+			serverUsers = 1;
+			serverPort = server.getPort();
+			
+			if (serverLifecycle == ServerFactory.Lifecycle.PER_JVM && serverShutdownHook == null) {
+				serverShutdownHook = new Thread(new Runnable() {
+					public void run() {
+						synchronized (HttpTestConductor.class) {
+							try {
+								stopServer();
+							} catch (Exception e) {
+								// JVM is exiting anyway
+							}
+						}
+					}
+				}, "http-test-conductor-server-shutdown");
+				Runtime.getRuntime().addShutdownHook(serverShutdownHook);
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to stop mock server, must be called holding HttpTestConductor class lock.
+	 * 
+	 * @throws Exception If stopping server fails
+	 */
+	private static void stopServer() throws Exception {
+		if (server == null) {
+			return;
+		}
+		IMockServer stopped = server;
+		server = null;
+		serverUsers = 0;
+		try {
+			stopped.tearDown();
+		} finally {
+			if (recordingProxy != null) {
+				RecordingProxy proxy = recordingProxy;
+				recordingProxy = null;
+				proxy.close();
+				proxy.getCaptureLog().close();
+			}
+		}
 	}
 	
 	/**
@@ -163,7 +378,7 @@ public abstract class HttpTestConductor {
 	 * @throws Exception If XPath expression evaluating fails
 	 */
 	protected String fetchStringWithXpath(Document document, String expression) throws Exception {
-		return (String)xpath.compile(expression).evaluate(document, XPathConstants.STRING);
+		return (String)xmlToolkit.compile(expression).evaluate(document, XPathConstants.STRING);
 	}
 	
 	/**
@@ -177,7 +392,7 @@ public abstract class HttpTestConductor {
 	 * @throws Exception If XPath expression evaluating fails
 	 */
 	protected Boolean fetchBooleanWithXpath(Document document, String expression) throws Exception {
-		return (Boolean)xpath.compile(expression).evaluate(document, XPathConstants.BOOLEAN);
+		return (Boolean)xmlToolkit.compile(expression).evaluate(document, XPathConstants.BOOLEAN);
 	}
 	
 	/**
@@ -191,7 +406,7 @@ public abstract class HttpTestConductor {
 	 * @throws Exception If XPath expression evaluating fails
 	 */
 	protected Node fetchNodeWithXpath(Document document, String expression) throws Exception {
-		return (Node)xpath.compile(expression).evaluate(document, XPathConstants.NODE);
+		return (Node)xmlToolkit.compile(expression).evaluate(document, XPathConstants.NODE);
 	}
 	
 	/**
@@ -205,7 +420,7 @@ public abstract class HttpTestConductor {
 	 * @throws Exception If XPath expression evaluating fails
 	 */
 	protected NodeList fetchNodeListWithXpath(Document document, String expression) throws Exception {
-		return (NodeList)xpath.compile(expression).evaluate(document, XPathConstants.NODESET);
+		return (NodeList)xmlToolkit.compile(expression).evaluate(document, XPathConstants.NODESET);
 	}
 	
 	/**
@@ -219,7 +434,46 @@ public abstract class HttpTestConductor {
 	 * @throws Exception If XPath expression evaluating fails
 	 */
 	protected Number fetchNumberWithXpath(Document document, String expression) throws Exception {
-		return (Number)xpath.compile(expression).evaluate(document, XPathConstants.NUMBER);
+		return (Number)xmlToolkit.compile(expression).evaluate(document, XPathConstants.NUMBER);
+	}
+	
+	/**
+	 * Parses XML document from given input stream, for example from response's raw body.
+	 * 
+	 * @param inputStream Stream containing XML data
+	 * 
+	 * @return Parsed instance of org.w3c.dom.Document
+	 * 
+	 * @throws Exception If parsing fails
+	 */
+	protected Document parseXml(InputStream inputStream) throws Exception {
+		return xmlToolkit.parse(inputStream);
+	}
+	
+	/**
+	 * Parses XML document from given bytes.
+	 * 
+	 * @param bytes XML data
+	 * 
+	 * @return Parsed instance of org.w3c.dom.Document
+	 * 
+	 * @throws Exception If parsing fails
+	 */
+	protected Document parseXml(byte[] bytes) throws Exception {
+		return xmlToolkit.parse(bytes);
+	}
+	
+	/**
+	 * Parses XML document from given string, for example from recorded requests' content.
+	 * 
+	 * @param xml XML data
+	 * 
+	 * @return Parsed instance of org.w3c.dom.Document
+	 * 
+	 * @throws Exception If parsing fails
+	 */
+	protected Document parseXml(String xml) throws Exception {
+		return xmlToolkit.parse(xml);
 	}
 	
 	/**
@@ -249,6 +503,111 @@ public abstract class HttpTestConductor {
 		return (IApiMock<?>) apiMock.addCustomResponse(uri, response);
 	}
 	
+	/**
+	 * Helper method which adds several customized responses to API mock URI at once.
+	 * 
+	 * @param uri API mock URI to add customized responses to
+	 * @param responses Customized responses to be added in order
+	 * 
+	 * @return Instance of IApiMock class to allow chain invocations
+	 * 
+	 * @throws Exception If adding customized responses to API mock fails
+	 */
+	protected IApiMock<?> addCustomResponsesToApiMock(String uri, List<Response> responses) throws Exception {
+		return (IApiMock<?>) apiMock.addCustomResponses(uri, responses);
+	}
+	
+	/**
+	 * Helper method which adds customized responses of several API mock URIs at once.
+	 * 
+	 * @param batch Customized responses grouped by API mock URI
+	 * 
+	 * @return Instance of IApiMock class to allow chain invocations
+	 * 
+	 * @throws Exception If adding customized responses to API mock fails
+	 */
+	protected IApiMock<?> addCustomResponsesToApiMock(CustomResponseBatch batch) throws Exception {
+		return (IApiMock<?>) apiMock.addCustomResponses(batch);
+	}
+	
+	/**
+	 * Helper method which sets fault mix injected into responses of API mock URI.
+	 * 
+	 * @param uri API mock URI to set faults to
+	 * @param faults Faults with their probabilities, empty list removes faults
+	 * 
+	 * @return Instance of IApiMock class to allow chain invocations
+	 * 
+	 * @throws UnsupportedOperationException If configured API mock does not inject faults
+	 * @throws Exception If setting faults to API mock fails
+	 */
+	protected IApiMock<?> setFaultsToApiMock(String uri, List<Fault> faults) throws Exception {
+		if (!(apiMock instanceof IFaultInjectingApiMock)) {
+			throw new UnsupportedOperationException(apiMock.getClass().getName() 
+					+ " does not inject faults, configure http.test.conductor.apiMock = fi.mystes.mock.InProcessApiMock");
+		}
+		return (IApiMock<?>) ((IFaultInjectingApiMock<?>) apiMock).setFaults(uri, faults);
+	}
+	
+	/**
+	 * Helper method which adds key extracted from bodies of requests recorded by API mock URI.
+	 * 
+	 * @param uri API mock URI to add body key to
+	 * @param bodyKey Body key
+	 * 
+	 * @return Instance of IApiMock class to allow chain invocations
+	 * 
+	 * @throws UnsupportedOperationException If configured API mock does not index recorded requests
+	 * @throws Exception If adding body key to API mock fails
+	 */
+	protected IApiMock<?> addBodyKeyToApiMock(String uri, BodyKey bodyKey) throws Exception {
+		return (IApiMock<?>) getQueryableApiMock().addBodyKey(uri, bodyKey);
+	}
+	
+	/**
+	 * Helper method which looks up recorded requests of API mock URI matching given query.
+	 * 
+	 * @param uri API mock URI to query recorded requests from
+	 * @param query Query criteria
+	 * 
+	 * @return Matching recorded requests in recorded order
+	 * 
+	 * @throws UnsupportedOperationException If configured API mock does not index recorded requests
+	 * @throws Exception If querying recorded requests from API mock fails
+	 */
+	protected List<RecordedRequest> queryRecordedRequestsFromApiMock(String uri, RecordedRequestQuery query) throws Exception {
+		return getQueryableApiMock().queryRecordedRequests(uri, query);
+	}
+	
+	/**
+	 * Helper method to get configured API mock as one indexing recorded requests.
+	 * 
+	 * @return Instance of fi.mystes.mock.IQueryableApiMock
+	 * 
+	 * @throws UnsupportedOperationException If configured API mock does not implement IQueryableApiMock
+	 */
+	private static IQueryableApiMock<?> getQueryableApiMock() {
+		if (!(apiMock instanceof IQueryableApiMock)) {
+			throw new UnsupportedOperationException(apiMock.getClass().getName() 
+					+ " does not index recorded requests, configure http.test.conductor.apiMock = fi.mystes.mock.InProcessApiMock");
+		}
+		return (IQueryableApiMock<?>) apiMock;
+	}
+	
+	/**
+	 * Helper method which adds responses captured by recording proxy to API mock as customized responses.
+	 * 
+	 * @param loader Loader mapping downstream URLs to mocked services
+	 * @param captureLog Capture log file
+	 * 
+	 * @return Number of customized responses added
+	 * 
+	 * @throws Exception If reading capture log or adding customized responses fails
+	 */
+	protected int loadCapturesToApiMock(CaptureStubLoader loader, File captureLog) throws Exception {
+		return loader.load(apiMock, captureLog);
+	}
+	
 	/**
 	 * Helper method which fetches recorded requests from API mock URI.
 	 * 
@@ -262,6 +621,66 @@ public abstract class HttpTestConductor {
 		return apiMock.getRecordedRequests(uri);
 	}
 	
+	/**
+	 * Helper method which fetches requests recorded since given cursor from API mock URI.
+	 * 
+	 * @param uri To fetch recorded requests from
+	 * @param cursor Next cursor of previously fetched recorded requests, 0 for all recorded requests
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequests
+	 * 
+	 * @throws Exception If fetching recorded requests from API mock fails
+	 */
+	protected RecordedRequests getRecordedRequestsSinceFromApiMock(String uri, long cursor) throws Exception {
+		return apiMock.getRecordedRequestsSince(uri, cursor);
+	}
+	
+	/**
+	 * Helper method which streams recorded requests from API mock URI one at a time.
+	 * Returned iterator must be closed if it is not read to the end.
+	 * 
+	 * @param uri To stream recorded requests from
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequestIterator
+	 * 
+	 * @throws Exception If fetching recorded requests from API mock fails
+	 */
+	protected RecordedRequestIterator streamRecordedRequestsFromApiMock(String uri) throws Exception {
+		return apiMock.streamRecordedRequests(uri);
+	}
+	
+	/**
+	 * Helper method which visits recorded requests from API mock URI one at a time.
+	 * 
+	 * @param uri To visit recorded requests from
+	 * @param visitor Visitor called for each recorded request until it returns false
+	 * 
+	 * @return Number of visited recorded requests
+	 * 
+	 * @throws Exception If fetching or visiting recorded requests from API mock fails
+	 */
+	protected long visitRecordedRequestsFromApiMock(String uri, RecordedRequestVisitor visitor) throws Exception {
+		return apiMock.visitRecordedRequests(uri, visitor);
+	}
+	
+	/**
+	 * Helper method which waits until API mock URI has recorded given number of requests matching given
+	 * predicate, e.g. when system under test calls the mocked API asynchronously.
+	 * 
+	 * @param uri To await recorded requests from
+	 * @param predicate Predicate recorded requests must match, null matches every request
+	 * @param count Number of matching requests to await
+	 * @param timeout Maximum time to wait in milliseconds
+	 * 
+	 * @return The first matching recorded requests in recorded order
+	 * 
+	 * @throws java.util.concurrent.TimeoutException If there are not enough matching requests when timeout elapses
+	 * @throws Exception If awaiting recorded requests from API mock fails
+	 */
+	protected List<RecordedRequest> awaitRecordedRequestsFromApiMock(String uri, RecordedRequestPredicate predicate, int count, long timeout) throws Exception {
+		return apiMock.awaitRecordedRequests(uri, predicate, count, timeout);
+	}
+	
 	/**
 	 * Helper method which fetches recorded headers from API mock URI.
 	 * 
@@ -275,6 +694,20 @@ public abstract class HttpTestConductor {
 		return apiMock.getRecordedHeaders(uri);
 	}
 	
+	/**
+	 * Helper method which fetches headers of requests recorded since given cursor from API mock URI.
+	 * 
+	 * @param uri To fetch recorded headers from
+	 * @param cursor Next cursor of previously fetched recorded headers, 0 for headers of all recorded requests
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedHeaders
+	 * 
+	 * @throws Exception If fetching recorded headers from API mock fails
+	 */
+	protected RecordedHeaders getRecordedHeadersSinceFromApiMock(String uri, long cursor) throws Exception {
+		return apiMock.getRecordedHeadersSince(uri, cursor);
+	}
+	
 	/**
 	 * Helper method which reads configuration file.
 	 * 
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Helper methods for HTTP content codings gzip and deflate, used to compress request bodies and
+ * mock response bodies and to decompress request bodies received by mock server. Deflate is the
+ * zlib format as specified for HTTP.
+ *
+ */
+public abstract class Compression {
+	
+	/** Content coding gzip */
+	public static final String GZIP = "gzip";
+	
+	/** Content coding deflate */
+	public static final String DEFLATE = "deflate";
+	
+	/**
+	 * Returns boolean flag indicating whether given content coding is supported.
+	 * 
+	 * @param encoding Content coding, e.g. value of Content-Encoding header
+	 * 
+	 * @return True if content coding is gzip or deflate, otherwise false
+	 */
+	public static boolean isSupported(String encoding) {
+		return encoding != null && (GZIP.equalsIgnoreCase(encoding.trim()) || DEFLATE.equalsIgnoreCase(encoding.trim()));
+	}
+	
+	/**
+	 * Compresses given content with given content coding.
+	 * 
+	 * @param content Content to be compressed
+	 * @param encoding Content coding, gzip or deflate
+	 * 
+	 * @return Compressed content
+	 * 
+	 * @throws IllegalArgumentException If content coding is not supported
+	 */
+	public static byte[] compress(byte[] content, String encoding) {
+		if (!isSupported(encoding)) {
+			throw new IllegalArgumentException("Unsupported content coding: " + encoding);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+		try {
+			OutputStream out = GZIP.equalsIgnoreCase(encoding.trim()) ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes);
+			out.write(content);
+			out.close();
+		} catch (IOException e) {
+			// Writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Returns stream decompressing given stream with given content coding. Stream is returned as it is
+	 * if content coding is missing or not supported.
+	 * 
+	 * @param inputStream Stream of compressed content
+	 * @param encoding Content coding, e.g. value of Content-Encoding header. May be null.
+	 * 
+	 * @return Stream of decompressed content
+	 * 
+	 * @throws IOException If gzip header cannot be read
+	 */
+	public static InputStream decompress(InputStream inputStream, String encoding) throws IOException {
+		if (!isSupported(encoding)) {
+			return inputStream;
+		}
+		return GZIP.equalsIgnoreCase(encoding.trim()) ? new GZIPInputStream(inputStream) : new InflaterInputStream(inputStream);
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether given content coding is accepted according to Accept-Encoding header.
+	 * 
+	 * @param acceptEncoding Value of Accept-Encoding header. May be null.
+	 * @param encoding Content coding
+	 * 
+	 * @return True if content coding or * is listed without zero quality value, otherwise false
+	 */
+	public static boolean isAccepted(String acceptEncoding, String encoding) {
+		if (acceptEncoding == null || encoding == null) {
+			return false;
+		}
+		for (String accepted : acceptEncoding.split(",")) {
+			String[] parts = accepted.split(";");
+			String coding = parts[0].trim();
+			if (coding.equalsIgnoreCase(encoding.trim()) || "*".equals(coding)) {
+				for (int i = 1; i < parts.length; i++) {
+					String parameter = parts[i].trim();
+					if (parameter.startsWith("q=") && Double.parseDouble(parameter.substring(2).trim()) == 0) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -15,6 +15,7 @@
  */
 package fi.mystes.http;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,6 +42,15 @@ public abstract class ConfigurableHttpEntity<T>{
 	/** Boolean flag indicating whether HTTP headers should be treated as HTTP parameters */
 	protected boolean headersAsParameters = false;
 	
+	/** Content coding body is compressed with, null if body is sent as it is */
+	protected String compression;
+	
+	/** Content the compressed body was compressed from */
+	private String compressedSource;
+	
+	/** Compressed body, reused while content and compression do not change */
+	private byte[] compressedContent;
+	
 	/** Class to be used to cast extending class instance to allow chain invocation */
 	private Class<T> castClass;
 	
@@ -211,6 +221,52 @@ public abstract class ConfigurableHttpEntity<T>{
 		return headersAsParameters;
 	}
 	
+	/**
+	 * Sets content coding body is compressed with.
+	 * 
+	 * @param compression Content coding gzip or deflate (see Compression), null to send body as it is
+	 * 
+	 * @return Extending class instance to allow chain invocation
+	 * 
+	 * @throws IllegalArgumentException If content coding is not supported
+	 */
+	public T setCompression(String compression) {
+		if (compression != null && !Compression.isSupported(compression)) {
+			throw new IllegalArgumentException("Unsupported content coding: " + compression);
+		}
+		synchronized (this) {
+			this.compression = compression;
+			this.compressedSource = null;
+			this.compressedContent = null;
+		}
+		return castClass.cast(this);
+	}
+	
+	/**
+	 * Returns content coding body is compressed with.
+	 * 
+	 * @return Content coding, null if body is sent as it is
+	 */
+	public String getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * Returns compressed body. Content is compressed on the first call and again only if it has changed.
+	 * 
+	 * @return Compressed body, null if compression is not set or there is no body
+	 */
+	public synchronized byte[] getCompressedContent() {
+		if (compression == null || content == null) {
+			return null;
+		}
+		if (compressedContent == null || compressedSource != content) {
+			compressedContent = Compression.compress(content.getBytes(StandardCharsets.UTF_8), compression);
+			compressedSource = content;
+		}
+		return compressedContent;
+	}
+	
 	/**
 	 * 
 	 */
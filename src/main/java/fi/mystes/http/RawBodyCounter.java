@@ -0,0 +1,116 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Response interceptor counting response body bytes as they are received, before content decoding
+ * (gzip, deflate) of HTTP client. Shared HTTP client runs it before decoding, so the number of bytes
+ * on the wire can be compared with the number of decoded bytes. Like RequestTiming, the count of the
+ * latest response is kept per sending thread.
+ *
+ */
+public class RawBodyCounter implements HttpResponseInterceptor {
+	
+	/** Body byte counter of the latest response received by each thread */
+	private static final ThreadLocal<Counter> current = new ThreadLocal<Counter>();
+
+	public void process(HttpResponse response, HttpContext context) {
+		Counter counter = new Counter();
+		HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			response.setEntity(new CountingEntity(entity, counter));
+		}
+		current.set(counter);
+	}
+	
+	/**
+	 * Forgets the latest response of calling thread. Called before sending a request, so that a response
+	 * received by HTTP client without this interceptor is not mistaken for a counted one.
+	 */
+	public static void reset() {
+		current.remove();
+	}
+	
+	/**
+	 * Returns number of body bytes of the latest response received by calling thread read so far, counted
+	 * before content decoding.
+	 * 
+	 * @return Number of raw body bytes read, -1 if the response was not counted
+	 */
+	public static long getRawBodyLength() {
+		Counter counter = current.get();
+		return counter != null ? counter.count : -1;
+	}
+	
+	/**
+	 * Number of bytes read, kept apart from the entity so that the entity is not held by the thread.
+	 */
+	private static class Counter {
+		private volatile long count;
+	}
+	
+	/**
+	 * Entity counting bytes read from its content streams.
+	 */
+	private static class CountingEntity extends HttpEntityWrapper {
+		private final Counter counter;
+		
+		CountingEntity(HttpEntity entity, Counter counter) {
+			super(entity);
+			this.counter = counter;
+		}
+		
+		@Override
+		public InputStream getContent() throws IOException {
+			return new FilterInputStream(super.getContent()) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1) {
+						counter.count++;
+					}
+					return b;
+				}
+				
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					int read = super.read(buffer, offset, length);
+					if (read > 0) {
+						counter.count += read;
+					}
+					return read;
+				}
+				
+				@Override
+				public long skip(long n) throws IOException {
+					long skipped = super.skip(n);
+					counter.count += skipped;
+					return skipped;
+				}
+			};
+		}
+	}
+}
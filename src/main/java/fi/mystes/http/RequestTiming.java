@@ -0,0 +1,206 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing breakdown of a single request sent with the shared synchronous HTTP client: connection lease
+ * from pool, connection setup, request write, wait for the first response byte, body read and total.<br/><br/>
+ * 
+ * Timing is bound to the sending thread between begin() and end(). Phases are recorded by the shared
+ * client configured by SharedHttpClient. Requests sent with other clients get only total time and,
+ * if the sender marks it, body read time. Phases of redirected or retried requests are summed.
+ *
+ */
+public class RequestTiming {
+	
+	/** Timing of request being sent by current thread */
+	private static final ThreadLocal<RequestTiming> current = new ThreadLocal<RequestTiming>();
+	
+	/** Start time from System.nanoTime() */
+	private long startNanos;
+	
+	/** End time from System.nanoTime(), 0 if request has not ended */
+	private long endNanos;
+	
+	/** Time spent waiting for a pooled connection */
+	private long leaseNanos;
+	
+	/** Time spent opening new connections, including TLS handshake */
+	private long connectNanos;
+	
+	/** Time spent writing request head and body */
+	private long writeNanos;
+	
+	/** Time from request written to response head received */
+	private long firstByteNanos;
+	
+	/** Time request was last written, 0 if not written */
+	private long writtenNanos;
+	
+	/** Time response head was last received, 0 if not received */
+	private long receivedNanos;
+	
+	/** Boolean flag indicating whether a new connection was opened */
+	private boolean connected;
+	
+	/**
+	 * Starts timing of request sent by current thread.
+	 * 
+	 * @return New instance of RequestTiming
+	 */
+	public static RequestTiming begin() {
+		RequestTiming timing = new RequestTiming();
+		timing.startNanos = System.nanoTime();
+		current.set(timing);
+		return timing;
+	}
+	
+	/**
+	 * Ends timing after response body has been read.
+	 * 
+	 * @return Instance of RequestTiming
+	 */
+	public RequestTiming end() {
+		endNanos = System.nanoTime();
+		if (current.get() == this) {
+			current.remove();
+		}
+		return this;
+	}
+	
+	/**
+	 * Marks response head received, for senders not using the shared client.
+	 * 
+	 * @return Instance of RequestTiming
+	 */
+	public RequestTiming markResponseReceived() {
+		if (receivedNanos == 0) {
+			receivedNanos = System.nanoTime();
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns timing of request being sent by current thread.
+	 * 
+	 * @return Instance of RequestTiming or null if current thread is not timing a request
+	 */
+	static RequestTiming current() {
+		return current.get();
+	}
+	
+	void addLease(long nanos) {
+		leaseNanos += nanos;
+	}
+	
+	void addConnect(long nanos) {
+		connectNanos += nanos;
+		connected = true;
+	}
+	
+	void requestWritten(long writeStartNanos) {
+		writtenNanos = System.nanoTime();
+		writeNanos += writtenNanos - writeStartNanos;
+	}
+	
+	void responseReceived() {
+		receivedNanos = System.nanoTime();
+		if (writtenNanos > 0) {
+			firstByteNanos += receivedNanos - writtenNanos;
+		}
+	}
+	
+	/**
+	 * Returns time spent waiting for a pooled connection.
+	 * 
+	 * @return Nanoseconds
+	 */
+	public long getLeaseNanos() {
+		return leaseNanos;
+	}
+	
+	/**
+	 * Returns time spent opening new connections, including TLS handshake.
+	 * 
+	 * @return Nanoseconds, 0 if a pooled connection was reused
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+	
+	/**
+	 * Returns time spent writing request head and body.
+	 * 
+	 * @return Nanoseconds
+	 */
+	public long getWriteNanos() {
+		return writeNanos;
+	}
+	
+	/**
+	 * Returns time from request written to response head received, i.e. server processing and network round trip.
+	 * 
+	 * @return Nanoseconds
+	 */
+	public long getFirstByteNanos() {
+		return firstByteNanos;
+	}
+	
+	/**
+	 * Returns time from response head received to body read.
+	 * 
+	 * @return Nanoseconds, 0 if response head was not received
+	 */
+	public long getBodyNanos() {
+		return receivedNanos > 0 && endNanos > 0 ? endNanos - receivedNanos : 0;
+	}
+	
+	/**
+	 * Returns total time from begin to end.
+	 * 
+	 * @return Nanoseconds
+	 */
+	public long getTotalNanos() {
+		return (endNanos > 0 ? endNanos : System.nanoTime()) - startNanos;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether a new connection was opened instead of reusing a pooled one.
+	 * 
+	 * @return True if a connection was opened, otherwise false
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+	
+	@Override
+	public String toString() {
+		return new StringBuilder("total=").append(millis(getTotalNanos()))
+				.append(" ms (lease=").append(millis(leaseNanos))
+				.append(" connect=").append(millis(connectNanos))
+				.append(" write=").append(millis(writeNanos))
+				.append(" firstByte=").append(millis(firstByteNanos))
+				.append(" body=").append(millis(getBodyNanos()))
+				.append(")")
+				.toString();
+	}
+	
+	private static String millis(long nanos) {
+		return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.pool.PoolStats;
+import org.apache.log4j.Logger;
+
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.options.Options;
+
+/**
+ * Shared HTTP client holder. Creates pooled keep-alive synchronous and asynchronous HTTP clients
+ * based on configuration properties and registers them to Unirest, so that RestRequest, SoapRequest
+ * and HttpApiMock all share the same connection pools. Synchronous client records timing breakdown of
+ * requests sent within RequestTiming.begin() and end(), and counts response body bytes before gzip and
+ * deflate responses are decoded (see RawBodyCounter).<br/><br/>
+ *
+ * Configuration properties:<br/><br/>
+ * # Maximum number of pooled connections in total<br/>
+ * http.test.conductor.client.maxTotal = 200<br/><br/>
+ *
+ * # Maximum number of pooled connections per route (host)<br/>
+ * http.test.conductor.client.maxPerRoute = 100<br/><br/>
+ *
+ * # Seconds after which idle pooled connections are evicted, 0 disables eviction<br/>
+ * http.test.conductor.client.idleEvictionSeconds = 30<br/><br/>
+ *
+ * # Milliseconds of inactivity after which pooled connections are validated before they are leased, 0 disables validation<br/>
+ * http.test.conductor.client.validateAfterInactivity = 2000<br/><br/>
+ *
+ * # Connect and socket timeouts in milliseconds<br/>
+ * http.test.conductor.client.connectTimeout = 10000<br/>
+ * http.test.conductor.client.socketTimeout = 60000<br/><br/>
+ *
+ * # Maximum time to wait for a pooled connection in milliseconds<br/>
+ * http.test.conductor.client.connectionRequestTimeout = 60000<br/><br/>
+ *
+ * # Number of I/O threads of asynchronous client, 0 means number of available processors<br/>
+ * http.test.conductor.client.ioThreads = 0<br/><br/>
+ *
+ */
+public abstract class SharedHttpClient {
+	private static final Logger logger = Logger.getLogger(SharedHttpClient.class);
+
+	/** Connection manager of synchronous client */
+	private static PoolingHttpClientConnectionManager connectionManager;
+
+	/** Connection manager of asynchronous client */
+	private static PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+	/** Shared synchronous client */
+	private static CloseableHttpClient httpClient;
+
+	/** Shared asynchronous client */
+	private static CloseableHttpAsyncClient asyncHttpClient;
+
+	/** Thread evicting expired and idle connections from both pools */
+	private static Thread evictor;
+
+	/**
+	 * Creates shared HTTP clients from given configuration properties and registers them to Unirest.
+	 * Does nothing if shared clients have already been configured.
+	 *
+	 * @param properties Configuration properties
+	 *
+	 * @throws Exception If HTTP client creation fails
+	 */
+	public static synchronized void configure(Properties properties) throws Exception {
+		if (isConfigured()) {
+			return;
+		}
+		int maxTotal = getIntProperty(properties, "http.test.conductor.client.maxTotal", 200);
+		int maxPerRoute = getIntProperty(properties, "http.test.conductor.client.maxPerRoute", 100);
+		final int idleEvictionSeconds = getIntProperty(properties, "http.test.conductor.client.idleEvictionSeconds", 30);
+		int validateAfterInactivity = getIntProperty(properties, "http.test.conductor.client.validateAfterInactivity", 2000);
+		int connectTimeout = getIntProperty(properties, "http.test.conductor.client.connectTimeout", 10000);
+		int socketTimeout = getIntProperty(properties, "http.test.conductor.client.socketTimeout", 60000);
+		int connectionRequestTimeout = getIntProperty(properties, "http.test.conductor.client.connectionRequestTimeout", 60000);
+		int ioThreads = getIntProperty(properties, "http.test.conductor.client.ioThreads", 0);
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(socketTimeout)
+				.setConnectionRequestTimeout(connectionRequestTimeout)
+				.build();
+
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotal);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+		httpClient = HttpClients.custom()
+				.setConnectionManager(new TimingConnectionManager(connectionManager))
+				.setRequestExecutor(new TimingRequestExecutor())
+				// Added before content decoding interceptor, so bytes are counted as received
+				.addInterceptorFirst(new RawBodyCounter())
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+
+		IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+				.setIoThreadCount(ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors())
+				.setConnectTimeout(connectTimeout)
+				.setSoTimeout(socketTimeout)
+				.build();
+		asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+		asyncConnectionManager.setMaxTotal(maxTotal);
+		asyncConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
+		asyncHttpClient = HttpAsyncClients.custom()
+				.setConnectionManager(asyncConnectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+		// Started here, otherwise Unirest would start its own idle monitor for its default pool
+		asyncHttpClient.start();
+
+		Unirest.setHttpClient(httpClient);
+		Unirest.setAsyncHttpClient(asyncHttpClient);
+
+		if (idleEvictionSeconds > 0) {
+			evictor = new Thread(new Runnable() {
+				public void run() {
+					evictConnections(idleEvictionSeconds);
+				}
+			}, "http-test-conductor-connection-evictor");
+			evictor.setDaemon(true);
+			evictor.start();
+		}
+
+		logger.info("Shared HTTP client configured: maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+				+ ", idleEvictionSeconds=" + idleEvictionSeconds + ", validateAfterInactivity=" + validateAfterInactivity);
+	}
+
+	/**
+	 * Returns boolean flag indicating whether shared HTTP clients have been configured.
+	 *
+	 * @return True if shared HTTP clients are in use, otherwise false
+	 */
+	public static synchronized boolean isConfigured() {
+		return httpClient != null;
+	}
+
+	/**
+	 * Returns shared synchronous HTTP client.
+	 *
+	 * @return Instance of org.apache.http.impl.client.CloseableHttpClient or null if not configured
+	 */
+	public static synchronized CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Returns shared asynchronous HTTP client.
+	 *
+	 * @return Instance of org.apache.http.impl.nio.client.CloseableHttpAsyncClient or null if not configured
+	 */
+	public static synchronized CloseableHttpAsyncClient getAsyncHttpClient() {
+		return asyncHttpClient;
+	}
+
+	/**
+	 * Returns connection pool statistics (leased, pending, available, max) of synchronous client.
+	 *
+	 * @return Instance of org.apache.http.pool.PoolStats or null if not configured
+	 */
+	public static synchronized PoolStats getStats() {
+		return connectionManager != null ? connectionManager.getTotalStats() : null;
+	}
+
+	/**
+	 * Returns connection pool statistics (leased, pending, available, max) of asynchronous client.
+	 *
+	 * @return Instance of org.apache.http.pool.PoolStats or null if not configured
+	 */
+	public static synchronized PoolStats getAsyncStats() {
+		return asyncConnectionManager != null ? asyncConnectionManager.getTotalStats() : null;
+	}
+
+	/**
+	 * Returns connection manager of synchronous client.
+	 *
+	 * @return Instance of org.apache.http.impl.conn.PoolingHttpClientConnectionManager or null if not configured
+	 */
+	static synchronized PoolingHttpClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	/**
+	 * Closes shared HTTP clients and their connection pools. Unirest's default clients are registered
+	 * again, so that requests sent before clients are configured again do not use closed pools.
+	 *
+	 * @throws Exception If closing HTTP clients fails
+	 */
+	public static synchronized void shutdown() throws Exception {
+		if (!isConfigured()) {
+			return;
+		}
+		if (evictor != null) {
+			evictor.interrupt();
+			evictor = null;
+		}
+		httpClient.close();
+		asyncHttpClient.close();
+		httpClient = null;
+		asyncHttpClient = null;
+		connectionManager = null;
+		asyncConnectionManager = null;
+		Options.refresh();
+	}
+
+	/**
+	 * Helper method run by evictor thread to periodically close expired and idle connections.
+	 *
+	 * @param idleSeconds Seconds after which idle connections are closed
+	 */
+	private static void evictConnections(int idleSeconds) {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Thread.sleep(TimeUnit.SECONDS.toMillis(idleSeconds));
+				synchronized (SharedHttpClient.class) {
+					if (!isConfigured()) {
+						return;
+					}
+					connectionManager.closeExpiredConnections();
+					connectionManager.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+					asyncConnectionManager.closeExpiredConnections();
+					asyncConnectionManager.closeIdleConnections(idleSeconds, TimeUnit.SECONDS);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Shutting down
+		}
+	}
+
+	/**
+	 * Helper method to read integer property with default value.
+	 *
+	 * @param properties Configuration properties
+	 * @param name Property name
+	 * @param defaultValue Value to be used if property is not defined
+	 *
+	 * @return Property value
+	 */
+	private static int getIntProperty(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Connection manager decorator recording connection lease and connect times into RequestTiming
+ * of the sending thread. Without timing in progress calls are only delegated.
+ *
+ */
+class TimingConnectionManager implements HttpClientConnectionManager {
+	
+	/** Decorated connection manager */
+	private final HttpClientConnectionManager connectionManager;
+	
+	/**
+	 * Constructor with connection manager to be decorated.
+	 * 
+	 * @param connectionManager Decorated connection manager
+	 */
+	TimingConnectionManager(HttpClientConnectionManager connectionManager) {
+		this.connectionManager = connectionManager;
+	}
+
+	public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+		final ConnectionRequest request = connectionManager.requestConnection(route, state);
+		return new ConnectionRequest() {
+			public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				RequestTiming timing = RequestTiming.current();
+				if (timing == null) {
+					return request.get(timeout, tunit);
+				}
+				long started = System.nanoTime();
+				try {
+					return request.get(timeout, tunit);
+				} finally {
+					timing.addLease(System.nanoTime() - started);
+				}
+			}
+
+			public boolean cancel() {
+				return request.cancel();
+			}
+		};
+	}
+
+	public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+		connectionManager.releaseConnection(conn, newState, validDuration, timeUnit);
+	}
+
+	public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+		RequestTiming timing = RequestTiming.current();
+		if (timing == null) {
+			connectionManager.connect(conn, route, connectTimeout, context);
+			return;
+		}
+		long started = System.nanoTime();
+		try {
+			connectionManager.connect(conn, route, connectTimeout, context);
+		} finally {
+			timing.addConnect(System.nanoTime() - started);
+		}
+	}
+
+	public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+		RequestTiming timing = RequestTiming.current();
+		if (timing == null) {
+			connectionManager.upgrade(conn, route, context);
+			return;
+		}
+		long started = System.nanoTime();
+		try {
+			connectionManager.upgrade(conn, route, context);
+		} finally {
+			timing.addConnect(System.nanoTime() - started);
+		}
+	}
+
+	public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+		connectionManager.routeComplete(conn, route, context);
+	}
+
+	public void closeIdleConnections(long idletime, TimeUnit tunit) {
+		connectionManager.closeIdleConnections(idletime, tunit);
+	}
+
+	public void closeExpiredConnections() {
+		connectionManager.closeExpiredConnections();
+	}
+
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import java.io.IOException;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Request executor recording request write and time to first response byte into RequestTiming
+ * of the sending thread.
+ *
+ */
+class TimingRequestExecutor extends HttpRequestExecutor {
+
+	@Override
+	protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+		RequestTiming timing = RequestTiming.current();
+		if (timing == null) {
+			return super.doSendRequest(request, conn, context);
+		}
+		long started = System.nanoTime();
+		HttpResponse response = super.doSendRequest(request, conn, context);
+		timing.requestWritten(started);
+		if (response != null) {
+			// Final response received while waiting for 100-continue
+			timing.responseReceived();
+		}
+		return response;
+	}
+
+	@Override
+	protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+		HttpResponse response = super.doReceiveResponse(request, conn, context);
+		RequestTiming timing = RequestTiming.current();
+		if (timing != null) {
+			timing.responseReceived();
+		}
+		return response;
+	}
+}
@@ -0,0 +1,460 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.log4j.Logger;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.metrics.LatencyRecorder;
+import fi.mystes.record.CaptureLogIterator;
+import fi.mystes.record.CapturedExchange;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Response;
+
+/**
+ * Replayer sending captured requests again, e.g. against the system under test, and comparing
+ * responses with the captured ones.<br/><br/>
+ * 
+ * Requests are sent in arrival order with RestRequest.sendRequestAsync, so SOAP requests are sent as
+ * they were captured rather than rebuilt with SoapRequest. Original inter-arrival times are kept,
+ * divided by speed: 2 replays twice as fast, MAX_SPEED as fast as possible. As in LoadConductor's open
+ * model, latency is measured from the intended send time. The capture log is read with CaptureLogIterator,
+ * so only the reorder window and requests in flight are held in memory.<br/><br/>
+ * 
+ * Exchanges are appended to the capture log when they complete but timestamped when they arrive, so
+ * concurrent exchanges are logged out of arrival order. The replayer reads exchanges ahead into a reorder
+ * window and sends the earliest arrived one first. An exchange which completed more than the window's
+ * number of exchanges after later arrivals is sent as soon as it is read.<br/><br/>
+ * 
+ * Example:<br/>
+ * ReplayResult result = new CaptureReplayer(new File("target/captures.log"))<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.setTargetUrl("http://localhost:8080")<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.setSpeed(10)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.run();<br/>
+ *
+ */
+public class CaptureReplayer {
+	private static final Logger logger = Logger.getLogger(CaptureReplayer.class);
+	
+	/** Speed replaying captured requests as fast as possible */
+	public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+	
+	/** Error type of responses whose status code differs from the captured one */
+	public static final String STATUS_MISMATCH = "status mismatch";
+	
+	/** Error type of responses whose body differs from the captured one */
+	public static final String BODY_MISMATCH = "body mismatch";
+	
+	/** Lower case names of captured request headers not sent, they are set by HTTP client */
+	private static final Set<String> EXCLUDED_HEADERS = new HashSet<String>(Arrays.asList(
+			"host", "content-length", "transfer-encoding", "connection", "keep-alive", "accept-encoding"));
+	
+	/** Capture log requests are read from */
+	private File captureLog;
+	
+	/** Base URL replacing scheme, host and port of captured URLs, null if captured URLs are used */
+	private String targetUrl;
+	
+	/** Divisor of captured inter-arrival times */
+	private double speed = 1;
+	
+	/** Maximum number of requests in flight */
+	private int maxOutstanding = 1000;
+	
+	/** Number of exchanges read ahead to restore arrival order */
+	private int reorderWindow = 1000;
+	
+	/** Boolean flag indicating whether response bodies are compared */
+	private boolean compareBodies = true;
+	
+	/** Statistics of current replay by endpoint */
+	private ConcurrentMap<String, EndpointStatistics> statistics;
+	
+	/**
+	 * Constructor with capture log to be replayed.
+	 * 
+	 * @param captureLog Capture log file written by fi.mystes.record.CaptureLog
+	 */
+	public CaptureReplayer(File captureLog) {
+		this.captureLog = captureLog;
+	}
+	
+	/**
+	 * Sets base URL of the system under test. Scheme, host and port of captured URLs are replaced with it.
+	 * 
+	 * @param targetUrl Base URL, e.g. http://localhost:8080, null to send requests to captured URLs
+	 * 
+	 * @return Instance of CaptureReplayer
+	 */
+	public CaptureReplayer setTargetUrl(String targetUrl) {
+		this.targetUrl = targetUrl != null && targetUrl.endsWith("/") ? targetUrl.substring(0, targetUrl.length() - 1) : targetUrl;
+		return this;
+	}
+	
+	/**
+	 * Sets speed of replay relative to captured traffic.
+	 * 
+	 * @param speed Divisor of captured inter-arrival times, e.g. 2 or 10, MAX_SPEED to send as fast as possible
+	 * 
+	 * @return Instance of CaptureReplayer
+	 */
+	public CaptureReplayer setSpeed(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("Speed must be positive");
+		}
+		this.speed = speed;
+		return this;
+	}
+	
+	/**
+	 * Sets maximum number of requests in flight. Sending is held back when it is reached, which shows
+	 * as increased latency because latency is measured from the intended send time.
+	 * 
+	 * @param maxOutstanding Maximum number of requests in flight
+	 * 
+	 * @return Instance of CaptureReplayer
+	 */
+	public CaptureReplayer setMaxOutstanding(int maxOutstanding) {
+		if (maxOutstanding <= 0) {
+			throw new IllegalArgumentException("Maximum number of outstanding requests must be positive");
+		}
+		this.maxOutstanding = maxOutstanding;
+		return this;
+	}
+	
+	/**
+	 * Sets number of exchanges read ahead from capture log to send them in arrival order.
+	 * 
+	 * @param reorderWindow Number of exchanges, 1 to send exchanges in the order they were logged
+	 * 
+	 * @return Instance of CaptureReplayer
+	 */
+	public CaptureReplayer setReorderWindow(int reorderWindow) {
+		if (reorderWindow <= 0) {
+			throw new IllegalArgumentException("Reorder window must be positive");
+		}
+		this.reorderWindow = reorderWindow;
+		return this;
+	}
+	
+	/**
+	 * Sets whether response bodies are compared with captured ones. Status codes are always compared.
+	 * 
+	 * @param compareBodies True to count differing bodies as mismatches, false to ignore bodies
+	 * 
+	 * @return Instance of CaptureReplayer
+	 */
+	public CaptureReplayer setCompareBodies(boolean compareBodies) {
+		this.compareBodies = compareBodies;
+		return this;
+	}
+	
+	/**
+	 * Replays all captured requests and waits for their responses.
+	 * 
+	 * @return Instance of ReplayResult
+	 * 
+	 * @throws Exception If reading capture log fails or replay is interrupted
+	 */
+	public ReplayResult run() throws Exception {
+		statistics = new ConcurrentHashMap<String, EndpointStatistics>();
+		Semaphore outstanding = new Semaphore(maxOutstanding);
+		
+		logger.info("Replaying " + captureLog + " at speed " + speed);
+		long start = System.nanoTime();
+		long firstTimestamp = -1;
+		long read = 0;
+		PriorityQueue<ArrivedExchange> window = new PriorityQueue<ArrivedExchange>(reorderWindow);
+		CaptureLogIterator exchanges = new CaptureLogIterator(captureLog);
+		try {
+			for (CapturedExchange exchange : exchanges) {
+				window.add(new ArrivedExchange(exchange, read++));
+				if (window.size() >= reorderWindow) {
+					firstTimestamp = replay(window.poll().exchange, start, firstTimestamp, outstanding);
+				}
+			}
+		} finally {
+			exchanges.close();
+		}
+		while (!window.isEmpty()) {
+			firstTimestamp = replay(window.poll().exchange, start, firstTimestamp, outstanding);
+		}
+		outstanding.acquire(maxOutstanding);
+		long elapsed = System.nanoTime() - start;
+		
+		LatencyRecorder totalLatencies = new LatencyRecorder();
+		long totalRequests = 0;
+		long totalErrors = 0;
+		Map<String, Long> totalErrorCounts = new HashMap<String, Long>();
+		Map<String, LoadResult> endpoints = new TreeMap<String, LoadResult>();
+		for (Map.Entry<String, EndpointStatistics> endpoint : statistics.entrySet()) {
+			LoadResult result = endpoint.getValue().toResult(elapsed);
+			endpoints.put(endpoint.getKey(), result);
+			totalLatencies.add(endpoint.getValue().latencies);
+			totalRequests += result.getRequests();
+			totalErrors += result.getErrors();
+			for (Map.Entry<String, Long> errorCount : result.getErrorCounts().entrySet()) {
+				Long count = totalErrorCounts.get(errorCount.getKey());
+				totalErrorCounts.put(errorCount.getKey(), (count != null ? count : 0) + errorCount.getValue());
+			}
+		}
+		ReplayResult result = new ReplayResult(new LoadResult(totalRequests, totalErrors, totalErrorCounts, elapsed, 
+				totalLatencies.getResponseTimes(), totalLatencies.getServiceTimes()), endpoints);
+		logger.info("Replay finished\n" + result);
+		
+		return result;
+	}
+	
+	/**
+	 * Helper method to wait until intended send time of captured request and send it.
+	 * 
+	 * @param exchange Captured exchange
+	 * @param start Start time of replay in nanoseconds
+	 * @param firstTimestamp Timestamp of the first replayed exchange, -1 if none has been replayed
+	 * @param outstanding Permits of requests in flight
+	 * 
+	 * @return Timestamp of the first replayed exchange
+	 * 
+	 * @throws InterruptedException If waiting is interrupted
+	 */
+	private long replay(CapturedExchange exchange, long start, long firstTimestamp, Semaphore outstanding) throws InterruptedException {
+		if (firstTimestamp < 0) {
+			firstTimestamp = exchange.getTimestamp();
+		}
+		// Exchanges arrived before the first one but logged beyond the reorder window are sent at once
+		long offsetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, exchange.getTimestamp() - firstTimestamp));
+		long intendedStart = start + (long) (offsetNanos / speed);
+		waitUntil(intendedStart);
+		outstanding.acquire();
+		send(exchange, intendedStart, outstanding);
+		return firstTimestamp;
+	}
+	
+	/**
+	 * Helper method to send captured request without waiting for its response.
+	 * 
+	 * @param exchange Captured exchange
+	 * @param intendedStart Scheduled send time in nanoseconds
+	 * @param outstanding Permits of requests in flight, released when request completes
+	 */
+	private void send(CapturedExchange exchange, final long intendedStart, final Semaphore outstanding) {
+		RecordedRequest captured = exchange.getRequest();
+		final Response expected = exchange.getResponse();
+		String url = resolveUrl(captured.getEndpoint());
+		final EndpointStatistics endpoint = getStatistics(captured.getMethod().toUpperCase() + " " + URI.create(url).getRawPath());
+		
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		if (captured.getHeaders() != null) {
+			for (Map.Entry<String, String> header : captured.getHeaders().entrySet()) {
+				if (!EXCLUDED_HEADERS.contains(header.getKey().toLowerCase())) {
+					headers.put(header.getKey(), header.getValue());
+				}
+			}
+		}
+		
+		final long sendTime = System.nanoTime();
+		try {
+			new RestRequest(captured.getContent(), url, captured.getMethod(), null, headers)
+					.sendRequestAsync(new FutureCallback<HttpResponse<String>>() {
+				public void completed(HttpResponse<String> response) {
+					endpoint.record(intendedStart, sendTime, compare(expected, response));
+					outstanding.release();
+				}
+
+				public void failed(Exception e) {
+					endpoint.record(intendedStart, sendTime, e.getClass().getName());
+					outstanding.release();
+				}
+
+				public void cancelled() {
+					outstanding.release();
+				}
+			});
+		} catch (Exception e) {
+			endpoint.record(intendedStart, sendTime, e.getClass().getName());
+			outstanding.release();
+		}
+	}
+	
+	/**
+	 * Helper method to compare response with captured one.
+	 * 
+	 * @param expected Captured response
+	 * @param response Received response
+	 * 
+	 * @return Error type of mismatch or null if response matches
+	 */
+	private String compare(Response expected, HttpResponse<String> response) {
+		int expectedStatus = expected.getStatus() != null ? expected.getStatus() : 200;
+		if (response.getStatus() != expectedStatus) {
+			return STATUS_MISMATCH;
+		}
+		if (compareBodies) {
+			String expectedBody = expected.getContent() != null ? expected.getContent() : "";
+			String body = response.getBody() != null ? response.getBody() : "";
+			if (!expectedBody.equals(body)) {
+				return BODY_MISMATCH;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Helper method to replace scheme, host and port of captured URL with target URL.
+	 * 
+	 * @param capturedUrl Captured URL
+	 * 
+	 * @return URL request is sent to
+	 */
+	private String resolveUrl(String capturedUrl) {
+		if (targetUrl == null) {
+			return capturedUrl;
+		}
+		URI uri = URI.create(capturedUrl);
+		return targetUrl + (uri.getRawPath() != null ? uri.getRawPath() : "") + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+	}
+	
+	/**
+	 * Helper method to return statistics of endpoint, which are created on first use.
+	 * 
+	 * @param endpoint HTTP method and URL path
+	 * 
+	 * @return Instance of EndpointStatistics
+	 */
+	private EndpointStatistics getStatistics(String endpoint) {
+		EndpointStatistics endpointStatistics = statistics.get(endpoint);
+		if (endpointStatistics == null) {
+			EndpointStatistics created = new EndpointStatistics();
+			endpointStatistics = statistics.putIfAbsent(endpoint, created);
+			if (endpointStatistics == null) {
+				endpointStatistics = created;
+			}
+		}
+		return endpointStatistics;
+	}
+	
+	/**
+	 * Helper method to wait until given time.
+	 * 
+	 * @param time Time in nanoseconds
+	 */
+	private static void waitUntil(long time) {
+		long remaining;
+		while ((remaining = time - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+	
+	/**
+	 * Captured exchange in reorder window, ordered by arrival and then by position in capture log.
+	 */
+	private static class ArrivedExchange implements Comparable<ArrivedExchange> {
+		
+		/** Captured exchange */
+		private final CapturedExchange exchange;
+		
+		/** Position of the exchange in capture log */
+		private final long position;
+		
+		ArrivedExchange(CapturedExchange exchange, long position) {
+			this.exchange = exchange;
+			this.position = position;
+		}
+		
+		public int compareTo(ArrivedExchange other) {
+			int byTimestamp = Long.compare(exchange.getTimestamp(), other.exchange.getTimestamp());
+			return byTimestamp != 0 ? byTimestamp : Long.compare(position, other.position);
+		}
+	}
+	
+	/**
+	 * Latencies and outcomes of requests sent to one endpoint.
+	 */
+	private static class EndpointStatistics {
+		
+		/** Latencies of completed requests */
+		private final LatencyRecorder latencies = new LatencyRecorder();
+		
+		/** Number of completed requests */
+		private final AtomicLong completed = new AtomicLong();
+		
+		/** Number of errors and mismatches */
+		private final AtomicLong errors = new AtomicLong();
+		
+		/** Number of errors and mismatches by type */
+		private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<String, AtomicLong>();
+		
+		/**
+		 * Records latency and outcome of completed request.
+		 * 
+		 * @param intendedStart Time request should have been sent in nanoseconds
+		 * @param sendTime Time request was sent in nanoseconds
+		 * @param errorType Exception class name or mismatch type, null if response matched
+		 */
+		void record(long intendedStart, long sendTime, String errorType) {
+			latencies.record(intendedStart, sendTime, System.nanoTime());
+			completed.incrementAndGet();
+			if (errorType != null) {
+				errors.incrementAndGet();
+				AtomicLong count = errorCounts.get(errorType);
+				if (count == null) {
+					AtomicLong newCount = new AtomicLong();
+					count = errorCounts.putIfAbsent(errorType, newCount);
+					if (count == null) {
+						count = newCount;
+					}
+				}
+				count.incrementAndGet();
+			}
+		}
+		
+		/**
+		 * Creates results of endpoint.
+		 * 
+		 * @param elapsedNanos Elapsed time of replay in nanoseconds
+		 * 
+		 * @return Instance of LoadResult
+		 */
+		LoadResult toResult(long elapsedNanos) {
+			Map<String, Long> errorsByType = new HashMap<String, Long>();
+			for (Map.Entry<String, AtomicLong> errorCount : errorCounts.entrySet()) {
+				errorsByType.put(errorCount.getKey(), errorCount.getValue().get());
+			}
+			return new LoadResult(completed.get(), errors.get(), errorsByType, elapsedNanos, 
+					latencies.getResponseTimes(), latencies.getServiceTimes());
+		}
+	}
+}
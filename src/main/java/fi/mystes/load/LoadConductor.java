@@ -0,0 +1,401 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.log4j.Logger;
+
+import fi.mystes.metrics.LatencyRecorder;
+import fi.mystes.request.IRequest;
+
+/**
+ * Load generation engine which sends requests either in open model (fixed arrival rate) or in
+ * closed model (fixed number of concurrent users) for given duration or number of iterations.<br/><br/>
+ * 
+ * In open model requests are sent with IRequest.sendRequestAsync at their scheduled times regardless
+ * of how many earlier requests are still in flight. Latency is recorded against the scheduled time, so
+ * requests delayed by a stalled sender are not omitted from the results. In closed model each user
+ * thread sends requests with IRequest.sendRequest one after another.<br/><br/>
+ * 
+ * Example:<br/>
+ * LoadResult result = new LoadConductor&lt;HttpResponse&lt;String&gt;&gt;(new RestRequest("", url, "get"))<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.setArrivalRate(500)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.setDuration(30, TimeUnit.SECONDS)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.run();<br/>
+ *
+ * @param <T> Response type of sent requests
+ */
+public class LoadConductor<T> {
+	private static final Logger logger = Logger.getLogger(LoadConductor.class);
+	
+	/** Error type of responses rejected by ResponseValidator */
+	private static final String INVALID_RESPONSE = "invalid response";
+	
+	/** Supported load models */
+	public static enum Model {OPEN, CLOSED};
+	
+	/** Factory creating requests to be sent */
+	private RequestFactory<T> requestFactory;
+	
+	/** Optional validator of received responses */
+	private ResponseValidator<T> responseValidator;
+	
+	/** Load model */
+	private Model model = Model.CLOSED;
+	
+	/** Requests per second in open model */
+	private double arrivalRate;
+	
+	/** Number of concurrent users in closed model */
+	private int users = 1;
+	
+	/** Duration of load run in nanoseconds, 0 if not limited */
+	private long durationNanos;
+	
+	/** Number of requests to be sent, 0 if not limited */
+	private long iterations;
+	
+	/** Latency recorder given by user, null if each run uses its own recorder */
+	private LatencyRecorder latencyRecorder;
+	
+	/** Latency recorder of current run */
+	private LatencyRecorder latencies;
+	
+	/** Number of completed requests */
+	private AtomicLong completed;
+	
+	/** Number of errors */
+	private AtomicLong errors;
+	
+	/** Number of errors by type */
+	private ConcurrentMap<String, AtomicLong> errorCounts;
+	
+	/** Number of requests sent but not yet completed in open model */
+	private AtomicLong outstanding;
+	
+	/**
+	 * Constructor with request to be sent repeatedly. Given request must be safe to be sent
+	 * concurrently, otherwise use constructor with RequestFactory.
+	 * 
+	 * @param request Request to be sent
+	 */
+	public LoadConductor(final IRequest<T> request) {
+		this(new RequestFactory<T>() {
+			public IRequest<T> createRequest(long iteration) {
+				return request;
+			}
+		});
+	}
+	
+	/**
+	 * Constructor with request factory creating requests to be sent.
+	 * 
+	 * @param requestFactory Factory creating requests
+	 */
+	public LoadConductor(RequestFactory<T> requestFactory) {
+		this.requestFactory = requestFactory;
+	}
+	
+	/**
+	 * Sets open model with given arrival rate.
+	 * 
+	 * @param requestsPerSecond Number of requests to be started per second
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setArrivalRate(double requestsPerSecond) {
+		if (requestsPerSecond <= 0) {
+			throw new IllegalArgumentException("Arrival rate must be positive");
+		}
+		this.arrivalRate = requestsPerSecond;
+		this.model = Model.OPEN;
+		return this;
+	}
+	
+	/**
+	 * Sets closed model with given number of concurrent users.
+	 * 
+	 * @param users Number of concurrent users
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setUsers(int users) {
+		if (users <= 0) {
+			throw new IllegalArgumentException("Number of users must be positive");
+		}
+		this.users = users;
+		this.model = Model.CLOSED;
+		return this;
+	}
+	
+	/**
+	 * Sets duration of load run.
+	 * 
+	 * @param duration Duration
+	 * @param unit Time unit of duration
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setDuration(long duration, TimeUnit unit) {
+		this.durationNanos = unit.toNanos(duration);
+		return this;
+	}
+	
+	/**
+	 * Sets number of requests to be sent.
+	 * 
+	 * @param iterations Number of requests
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setIterations(long iterations) {
+		this.iterations = iterations;
+		return this;
+	}
+	
+	/**
+	 * Sets validator for received responses. Responses failing validation are counted as errors.
+	 * 
+	 * @param responseValidator Response validator
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setResponseValidator(ResponseValidator<T> responseValidator) {
+		this.responseValidator = responseValidator;
+		return this;
+	}
+	
+	/**
+	 * Sets recorder to record latencies into, for example to merge results of several load
+	 * runs or to write interval logs while load is running. By default each run uses its own recorder.
+	 * 
+	 * @param latencyRecorder Latency recorder
+	 * 
+	 * @return Instance of LoadConductor
+	 */
+	public LoadConductor<T> setLatencyRecorder(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+		return this;
+	}
+	
+	/**
+	 * Runs load until duration has elapsed or number of iterations has been sent, whichever comes first,
+	 * and waits for all sent requests to complete.
+	 * 
+	 * @return Instance of LoadResult
+	 * 
+	 * @throws Exception If load run is interrupted
+	 */
+	public LoadResult run() throws Exception {
+		if (durationNanos <= 0 && iterations <= 0) {
+			throw new IllegalStateException("Either duration or iterations must be set");
+		}
+		latencies = new LatencyRecorder();
+		completed = new AtomicLong();
+		errors = new AtomicLong();
+		errorCounts = new ConcurrentHashMap<String, AtomicLong>();
+		outstanding = new AtomicLong();
+		
+		logger.info("Starting " + model + " model load run");
+		long start = System.nanoTime();
+		if (model == Model.OPEN) {
+			runOpen(start);
+		} else {
+			runClosed(start);
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		Map<String, Long> errorsByType = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> errorCount : errorCounts.entrySet()) {
+			errorsByType.put(errorCount.getKey(), errorCount.getValue().get());
+		}
+		LoadResult result = new LoadResult(completed.get(), errors.get(), errorsByType, elapsed, 
+				latencies.getResponseTimes(), latencies.getServiceTimes());
+		if (latencyRecorder != null) {
+			latencyRecorder.add(latencies);
+		}
+		logger.info("Load run finished\n" + result);
+		
+		return result;
+	}
+	
+	/**
+	 * Helper method to send requests at fixed arrival rate without waiting for earlier requests to complete.
+	 * 
+	 * @param start Start time of load run in nanoseconds
+	 * 
+	 * @throws InterruptedException If waiting for outstanding requests is interrupted
+	 */
+	private void runOpen(long start) throws InterruptedException {
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / arrivalRate);
+		for (long iteration = 0; iterations <= 0 || iteration < iterations; iteration++) {
+			long intendedStart = start + iteration * interval;
+			if (durationNanos > 0 && intendedStart - start >= durationNanos) {
+				break;
+			}
+			waitUntil(intendedStart);
+			sendAsync(iteration, intendedStart);
+		}
+		synchronized (outstanding) {
+			while (outstanding.get() > 0) {
+				outstanding.wait();
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to send requests from fixed number of user threads, each waiting for
+	 * its previous request to complete before sending the next one.
+	 * 
+	 * @param start Start time of load run in nanoseconds
+	 * 
+	 * @throws InterruptedException If waiting for user threads is interrupted
+	 */
+	private void runClosed(final long start) throws InterruptedException {
+		final AtomicLong issued = new AtomicLong();
+		Thread[] userThreads = new Thread[users];
+		for (int i = 0; i < users; i++) {
+			userThreads[i] = new Thread(new Runnable() {
+				public void run() {
+					while (true) {
+						long iteration = issued.getAndIncrement();
+						if (iterations > 0 && iteration >= iterations) {
+							return;
+						}
+						if (durationNanos > 0 && System.nanoTime() - start >= durationNanos) {
+							return;
+						}
+						send(iteration);
+					}
+				}
+			}, "load-conductor-user-" + i);
+			userThreads[i].setDaemon(true);
+			userThreads[i].start();
+		}
+		for (Thread userThread : userThreads) {
+			userThread.join();
+		}
+	}
+	
+	/**
+	 * Helper method to send request and wait for its response.
+	 * 
+	 * @param iteration Sequence number of request
+	 */
+	private void send(long iteration) {
+		long sendTime = System.nanoTime();
+		try {
+			T response = requestFactory.createRequest(iteration).sendRequest();
+			record(sendTime, sendTime, response, null);
+		} catch (Exception e) {
+			record(sendTime, sendTime, null, e);
+		}
+	}
+	
+	/**
+	 * Helper method to send request without waiting for its response.
+	 * 
+	 * @param iteration Sequence number of request
+	 * @param intendedStart Scheduled send time in nanoseconds
+	 */
+	private void sendAsync(long iteration, final long intendedStart) {
+		final long sendTime = System.nanoTime();
+		outstanding.incrementAndGet();
+		try {
+			requestFactory.createRequest(iteration).sendRequestAsync(new FutureCallback<T>() {
+				public void completed(T response) {
+					record(intendedStart, sendTime, response, null);
+					release();
+				}
+
+				public void failed(Exception e) {
+					record(intendedStart, sendTime, null, e);
+					release();
+				}
+
+				public void cancelled() {
+					release();
+				}
+			});
+		} catch (Exception e) {
+			record(intendedStart, sendTime, null, e);
+			release();
+		}
+	}
+	
+	/**
+	 * Helper method to mark an outstanding request completed.
+	 */
+	private void release() {
+		if (outstanding.decrementAndGet() == 0) {
+			synchronized (outstanding) {
+				outstanding.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to record latency and outcome of completed request.
+	 * 
+	 * @param intendedStart Time request should have been sent in nanoseconds
+	 * @param sendTime Time request was sent in nanoseconds
+	 * @param response Received response, null if request failed
+	 * @param error Exception thrown by request, null if request succeeded
+	 */
+	private void record(long intendedStart, long sendTime, T response, Exception error) {
+		latencies.record(intendedStart, sendTime, System.nanoTime());
+		completed.incrementAndGet();
+		
+		String errorType = null;
+		if (error != null) {
+			errorType = error.getClass().getName();
+		} else if (responseValidator != null && !responseValidator.isValid(response)) {
+			errorType = INVALID_RESPONSE;
+		}
+		if (errorType != null) {
+			errors.incrementAndGet();
+			AtomicLong count = errorCounts.get(errorType);
+			if (count == null) {
+				AtomicLong newCount = new AtomicLong();
+				count = errorCounts.putIfAbsent(errorType, newCount);
+				if (count == null) {
+					count = newCount;
+				}
+			}
+			count.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Helper method to wait until given time.
+	 * 
+	 * @param time Time in nanoseconds
+	 */
+	private void waitUntil(long time) {
+		long remaining;
+		while ((remaining = time - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(remaining);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Class containing results of a load run: request and error counts, throughput and latency distributions.
+ * Latencies are recorded in microseconds. Latency is response time measured from the intended send time,
+ * service time is measured from the actual send time.
+ *
+ */
+public class LoadResult {
+
+	/** Number of completed requests, including failed ones */
+	private long requests;
+
+	/** Number of failed or invalid requests */
+	private long errors;
+
+	/** Number of errors by exception class name or "invalid response" */
+	private Map<String, Long> errorCounts;
+
+	/** Elapsed time of load run in nanoseconds */
+	private long elapsedNanos;
+
+	/** Response time distribution in microseconds */
+	private Histogram latency;
+	
+	/** Service time distribution in microseconds */
+	private Histogram serviceTime;
+
+	/**
+	 * Constructor with all result values.
+	 * 
+	 * @param requests Number of completed requests
+	 * @param errors Number of failed or invalid requests
+	 * @param errorCounts Number of errors by type
+	 * @param elapsedNanos Elapsed time of load run in nanoseconds
+	 * @param latency Response time distribution in microseconds
+	 * @param serviceTime Service time distribution in microseconds
+	 */
+	public LoadResult(long requests, long errors, Map<String, Long> errorCounts, long elapsedNanos, Histogram latency, Histogram serviceTime) {
+		this.requests = requests;
+		this.errors = errors;
+		this.errorCounts = Collections.unmodifiableMap(errorCounts);
+		this.elapsedNanos = elapsedNanos;
+		this.latency = latency;
+		this.serviceTime = serviceTime;
+	}
+
+	/**
+	 * Returns number of completed requests, including failed ones.
+	 * 
+	 * @return Number of requests
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Returns number of failed or invalid requests.
+	 * 
+	 * @return Number of errors
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns number of errors by type. Type is exception class name or "invalid response"
+	 * for responses rejected by ResponseValidator.
+	 * 
+	 * @return Instance of java.util.Map containing error counts
+	 */
+	public Map<String, Long> getErrorCounts() {
+		return errorCounts;
+	}
+
+	/**
+	 * Returns elapsed time of load run in milliseconds.
+	 * 
+	 * @return Elapsed milliseconds
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	/**
+	 * Returns throughput of completed requests.
+	 * 
+	 * @return Requests per second
+	 */
+	public double getThroughput() {
+		return elapsedNanos > 0 ? requests * 1e9 / elapsedNanos : 0;
+	}
+
+	/**
+	 * Returns latency distribution. Latency is measured from intended send time and is
+	 * corrected for coordinated omission.
+	 * 
+	 * @return Instance of org.HdrHistogram.Histogram containing latencies in microseconds
+	 */
+	public Histogram getLatency() {
+		return latency;
+	}
+	
+	/**
+	 * Returns service time distribution. Service time is measured from actual send time.
+	 * 
+	 * @return Instance of org.HdrHistogram.Histogram containing service times in microseconds
+	 */
+	public Histogram getServiceTime() {
+		return serviceTime;
+	}
+
+	/**
+	 * Returns latency at given percentile.
+	 * 
+	 * @param percentile Percentile between 0 and 100
+	 * 
+	 * @return Latency in microseconds
+	 */
+	public long getLatencyAtPercentile(double percentile) {
+		return latency.getValueAtPercentile(percentile);
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("Requests: ")
+					.append(requests)
+					.append("\nErrors: ")
+					.append(errors)
+					.append(errorCounts.isEmpty() ? "" : " " + errorCounts)
+					.append("\nElapsed: ")
+					.append(getElapsedMillis()).append(" ms")
+					.append("\nThroughput: ")
+					.append(String.format("%.1f", getThroughput())).append(" requests/s")
+					.append("\nLatency (us): mean=")
+					.append(String.format("%.1f", latency.getMean()))
+					.append(" p50=").append(getLatencyAtPercentile(50))
+					.append(" p90=").append(getLatencyAtPercentile(90))
+					.append(" p99=").append(getLatencyAtPercentile(99))
+					.append(" p99.9=").append(getLatencyAtPercentile(99.9))
+					.append(" max=").append(latency.getMaxValue())
+					.append("\nService time (us): mean=")
+					.append(String.format("%.1f", serviceTime.getMean()))
+					.append(" p99=").append(serviceTime.getValueAtPercentile(99))
+					.append(" max=").append(serviceTime.getMaxValue())
+					.toString();
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Class containing results of replaying captured traffic: results of the whole replay and of each
+ * endpoint. Endpoint is identified by HTTP method and URL path, e.g. "POST /api/customers".
+ * Responses differing from the captured ones are counted as errors of type CaptureReplayer.STATUS_MISMATCH
+ * or CaptureReplayer.BODY_MISMATCH.
+ *
+ */
+public class ReplayResult {
+	
+	/** Results of the whole replay */
+	private LoadResult total;
+	
+	/** Results by endpoint */
+	private Map<String, LoadResult> endpoints;
+	
+	/**
+	 * Constructor with all result values.
+	 * 
+	 * @param total Results of the whole replay
+	 * @param endpoints Results by endpoint
+	 */
+	public ReplayResult(LoadResult total, Map<String, LoadResult> endpoints) {
+		this.total = total;
+		this.endpoints = Collections.unmodifiableMap(endpoints);
+	}
+	
+	/**
+	 * Returns results of the whole replay.
+	 * 
+	 * @return Instance of LoadResult
+	 */
+	public LoadResult getTotal() {
+		return total;
+	}
+	
+	/**
+	 * Returns results by endpoint.
+	 * 
+	 * @return Instance of java.util.Map containing results by endpoint
+	 */
+	public Map<String, LoadResult> getEndpoints() {
+		return endpoints;
+	}
+	
+	/**
+	 * Returns number of responses differing from captured ones.
+	 * 
+	 * @return Number of status and body mismatches
+	 */
+	public long getMismatches() {
+		return count(total, CaptureReplayer.STATUS_MISMATCH) + count(total, CaptureReplayer.BODY_MISMATCH);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(total.toString());
+		for (Map.Entry<String, LoadResult> endpoint : endpoints.entrySet()) {
+			LoadResult result = endpoint.getValue();
+			builder.append("\n").append(endpoint.getKey())
+					.append(": requests=").append(result.getRequests())
+					.append(" errors=").append(result.getErrors())
+					.append(result.getErrorCounts().isEmpty() ? "" : " " + result.getErrorCounts())
+					.append(" p50=").append(result.getLatencyAtPercentile(50))
+					.append(" p99=").append(result.getLatencyAtPercentile(99))
+					.append(" max=").append(result.getLatency().getMaxValue());
+		}
+		return builder.toString();
+	}
+	
+	private static long count(LoadResult result, String errorType) {
+		Long count = result.getErrorCounts().get(errorType);
+		return count != null ? count : 0;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import fi.mystes.request.IRequest;
+
+/**
+ * Interface for creating requests to be sent by LoadConductor. Factory should be used when
+ * request instances are not safe to be sent concurrently, for example SoapRequest.
+ *
+ * @param <T> Response type of created requests
+ */
+public interface RequestFactory<T> {
+
+	/**
+	 * Creates request for given iteration.
+	 * 
+	 * @param iteration Sequence number of request starting from zero
+	 * 
+	 * @return Instance of IRequest to be sent
+	 * 
+	 * @throws Exception If request creation fails
+	 */
+	public IRequest<T> createRequest(long iteration) throws Exception;
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+/**
+ * Interface for validating responses received by LoadConductor. Responses failing validation
+ * are counted as errors.
+ *
+ * @param <T> Response type
+ */
+public interface ResponseValidator<T> {
+
+	/**
+	 * Validates given response.
+	 * 
+	 * @param response Received response
+	 * 
+	 * @return True if response is valid, otherwise false
+	 */
+	public boolean isValid(T response);
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+/**
+ * High dynamic range latency recorder with fixed memory footprint and lock-free recording.<br/><br/>
+ * 
+ * Each request is recorded twice: response time is measured from the intended send time and
+ * service time from the actual send time. When the sender is held back by a stalled server, requests
+ * which should have been sent during the stall are sent late, and only response time includes the
+ * time they spent waiting. This corrects coordinated omission, which would otherwise hide the stall
+ * from high percentiles.<br/><br/>
+ * 
+ * Latencies are recorded in microseconds. Recorders can be merged and written to HdrHistogram's
+ * compressed interval log format with HistogramLogWriter, readable with HistogramLogReader.
+ *
+ */
+public class LatencyRecorder {
+	
+	/** Highest recordable latency in microseconds, higher values are recorded as this value */
+	public static final long HIGHEST_LATENCY = TimeUnit.HOURS.toMicros(1);
+	
+	/** Tag of response time histograms in interval log */
+	public static final String RESPONSE_TIME_TAG = "response-time";
+	
+	/** Tag of service time histograms in interval log */
+	public static final String SERVICE_TIME_TAG = "service-time";
+	
+	/** Number of significant value digits */
+	private static final int SIGNIFICANT_DIGITS = 3;
+	
+	/** Lock-free recorder of response times */
+	private Recorder responseTimeRecorder = new Recorder(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+	
+	/** Lock-free recorder of service times */
+	private Recorder serviceTimeRecorder = new Recorder(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+	
+	/** Recycled interval histograms */
+	private Histogram responseTimeInterval;
+	private Histogram serviceTimeInterval;
+	
+	/** All response and service times recorded so far */
+	private Histogram responseTimes = newHistogram();
+	private Histogram serviceTimes = newHistogram();
+	
+	/** Response and service times recorded since previous logged interval */
+	private Histogram unloggedResponseTimes = newHistogram();
+	private Histogram unloggedServiceTimes = newHistogram();
+	
+	/** Start of current log interval in milliseconds since epoch */
+	private long intervalStart = System.currentTimeMillis();
+	
+	/**
+	 * Records latency of request sent at its intended time.
+	 * 
+	 * @param startNanos Send time from System.nanoTime()
+	 * @param endNanos Completion time from System.nanoTime()
+	 */
+	public void record(long startNanos, long endNanos) {
+		record(startNanos, startNanos, endNanos);
+	}
+	
+	/**
+	 * Records latency of request against both its intended and actual send time.
+	 * 
+	 * @param intendedStartNanos Time request should have been sent from System.nanoTime()
+	 * @param actualStartNanos Time request was actually sent from System.nanoTime()
+	 * @param endNanos Completion time from System.nanoTime()
+	 */
+	public void record(long intendedStartNanos, long actualStartNanos, long endNanos) {
+		responseTimeRecorder.recordValue(toMicros(endNanos - Math.min(intendedStartNanos, actualStartNanos)));
+		serviceTimeRecorder.recordValue(toMicros(endNanos - actualStartNanos));
+	}
+	
+	/**
+	 * Returns distribution of response times measured from intended send times.
+	 * 
+	 * @return Copy of all recorded response times in microseconds
+	 */
+	public synchronized Histogram getResponseTimes() {
+		collect();
+		return responseTimes.copy();
+	}
+	
+	/**
+	 * Returns distribution of service times measured from actual send times.
+	 * 
+	 * @return Copy of all recorded service times in microseconds
+	 */
+	public synchronized Histogram getServiceTimes() {
+		collect();
+		return serviceTimes.copy();
+	}
+	
+	/**
+	 * Adds latencies recorded by given recorder, for example by another thread, to this recorder.
+	 * 
+	 * @param other Recorder to be merged
+	 * 
+	 * @return Instance of LatencyRecorder
+	 */
+	public LatencyRecorder add(LatencyRecorder other) {
+		Histogram otherResponseTimes = other.getResponseTimes();
+		Histogram otherServiceTimes = other.getServiceTimes();
+		synchronized (this) {
+			collect();
+			responseTimes.add(otherResponseTimes);
+			serviceTimes.add(otherServiceTimes);
+			unloggedResponseTimes.add(otherResponseTimes);
+			unloggedServiceTimes.add(otherServiceTimes);
+		}
+		return this;
+	}
+	
+	/**
+	 * Writes response and service times recorded since previous call into given log writer as
+	 * tagged interval histograms.
+	 * 
+	 * @param logWriter Writer of HdrHistogram interval log
+	 */
+	public synchronized void logInterval(HistogramLogWriter logWriter) {
+		collect();
+		long intervalEnd = System.currentTimeMillis();
+		writeInterval(logWriter, unloggedResponseTimes, RESPONSE_TIME_TAG, intervalEnd);
+		writeInterval(logWriter, unloggedServiceTimes, SERVICE_TIME_TAG, intervalEnd);
+		intervalStart = intervalEnd;
+	}
+	
+	/**
+	 * Clears all recorded latencies.
+	 */
+	public synchronized void reset() {
+		collect();
+		responseTimes.reset();
+		serviceTimes.reset();
+		unloggedResponseTimes.reset();
+		unloggedServiceTimes.reset();
+	}
+	
+	/**
+	 * Helper method to move latencies from lock-free recorders into accumulated histograms.
+	 */
+	private void collect() {
+		responseTimeInterval = responseTimeRecorder.getIntervalHistogram(responseTimeInterval);
+		serviceTimeInterval = serviceTimeRecorder.getIntervalHistogram(serviceTimeInterval);
+		responseTimes.add(responseTimeInterval);
+		serviceTimes.add(serviceTimeInterval);
+		unloggedResponseTimes.add(responseTimeInterval);
+		unloggedServiceTimes.add(serviceTimeInterval);
+	}
+	
+	/**
+	 * Helper method to write and reset interval histogram.
+	 * 
+	 * @param logWriter Writer of HdrHistogram interval log
+	 * @param interval Histogram to be written
+	 * @param tag Tag of histogram
+	 * @param intervalEnd End of interval in milliseconds since epoch
+	 */
+	private void writeInterval(HistogramLogWriter logWriter, Histogram interval, String tag, long intervalEnd) {
+		interval.setTag(tag);
+		interval.setStartTimeStamp(intervalStart);
+		interval.setEndTimeStamp(intervalEnd);
+		logWriter.outputIntervalHistogram(interval);
+		interval.reset();
+	}
+	
+	/**
+	 * Helper method to convert nanoseconds to microseconds within recordable range.
+	 * 
+	 * @param nanos Nanoseconds
+	 * 
+	 * @return Microseconds
+	 */
+	private static long toMicros(long nanos) {
+		return Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_LATENCY));
+	}
+	
+	/**
+	 * Helper method to create histogram with recorder's range and precision.
+	 * 
+	 * @return Instance of org.HdrHistogram.Histogram
+	 */
+	private static Histogram newHistogram() {
+		return new Histogram(HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.metrics;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.concurrent.FutureCallback;
+
+import fi.mystes.request.IRequest;
+
+/**
+ * IRequest decorator recording latency of each sent request into LatencyRecorder.<br/><br/>
+ * 
+ * When created with an expected interval, requests are assumed to be sent on a fixed schedule
+ * starting from the first send, and latency is recorded against the scheduled send time. Then a
+ * loop calling sendRequest() repeatedly reports the time later requests had to wait behind a slow
+ * one instead of silently omitting it.
+ *
+ * @param <T> Response type of decorated request
+ */
+public class TimedRequest<T> implements IRequest<T> {
+	
+	/** Decorated request */
+	private IRequest<T> request;
+	
+	/** Recorder of latencies */
+	private LatencyRecorder recorder;
+	
+	/** Expected interval between sends in nanoseconds, 0 if requests are not sent on schedule */
+	private long expectedIntervalNanos;
+	
+	/** Start of send schedule in nanoseconds, set on first send */
+	private AtomicLong scheduleStart = new AtomicLong();
+	
+	/** Number of sends so far */
+	private AtomicLong sends = new AtomicLong();
+	
+	/**
+	 * Constructor with request and latency recorder. Latency is measured from actual send time.
+	 * 
+	 * @param request Request to be decorated
+	 * @param recorder Recorder of latencies
+	 */
+	public TimedRequest(IRequest<T> request, LatencyRecorder recorder) {
+		this(request, recorder, 0, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * Constructor with request, latency recorder and expected interval between sends.
+	 * Latency is measured from scheduled send time.
+	 * 
+	 * @param request Request to be decorated
+	 * @param recorder Recorder of latencies
+	 * @param expectedInterval Expected interval between sends
+	 * @param unit Time unit of expected interval
+	 */
+	public TimedRequest(IRequest<T> request, LatencyRecorder recorder, long expectedInterval, TimeUnit unit) {
+		this.request = request;
+		this.recorder = recorder;
+		this.expectedIntervalNanos = unit.toNanos(expectedInterval);
+	}
+	
+	public T sendRequest() throws Exception {
+		return sendRequest(nextIntendedStart());
+	}
+	
+	/**
+	 * Sends request and records its latency against given intended send time.
+	 * 
+	 * @param intendedStartNanos Time request should have been sent from System.nanoTime()
+	 * 
+	 * @return Response of decorated request
+	 * 
+	 * @throws Exception If request sending fails
+	 */
+	public T sendRequest(long intendedStartNanos) throws Exception {
+		long actualStart = System.nanoTime();
+		try {
+			return request.sendRequest();
+		} finally {
+			recorder.record(intendedStartNanos, actualStart, System.nanoTime());
+		}
+	}
+	
+	public Future<T> sendRequestAsync() throws Exception {
+		return sendRequestAsync(null);
+	}
+	
+	public Future<T> sendRequestAsync(FutureCallback<T> callback) throws Exception {
+		return sendRequestAsync(nextIntendedStart(), callback);
+	}
+	
+	/**
+	 * Sends request without blocking and records its latency against given intended send time.
+	 * 
+	 * @param intendedStartNanos Time request should have been sent from System.nanoTime()
+	 * @param callback Callback to be notified when response is received. May be null.
+	 * 
+	 * @return Instance of java.util.concurrent.Future completing with response of decorated request
+	 * 
+	 * @throws Exception If request preparation fails
+	 */
+	public Future<T> sendRequestAsync(final long intendedStartNanos, final FutureCallback<T> callback) throws Exception {
+		final long actualStart = System.nanoTime();
+		return request.sendRequestAsync(new FutureCallback<T>() {
+			public void completed(T response) {
+				recorder.record(intendedStartNanos, actualStart, System.nanoTime());
+				if (callback != null) {
+					callback.completed(response);
+				}
+			}
+
+			public void failed(Exception e) {
+				recorder.record(intendedStartNanos, actualStart, System.nanoTime());
+				if (callback != null) {
+					callback.failed(e);
+				}
+			}
+
+			public void cancelled() {
+				if (callback != null) {
+					callback.cancelled();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns recorder of latencies.
+	 * 
+	 * @return Instance of LatencyRecorder
+	 */
+	public LatencyRecorder getRecorder() {
+		return recorder;
+	}
+	
+	/**
+	 * Helper method to calculate intended send time of next request.
+	 * 
+	 * @return Intended send time from System.nanoTime()
+	 */
+	private long nextIntendedStart() {
+		long now = System.nanoTime();
+		if (expectedIntervalNanos <= 0) {
+			return now;
+		}
+		scheduleStart.compareAndSet(0, now);
+		long intendedStart = scheduleStart.get() + sends.getAndIncrement() * expectedIntervalNanos;
+		return Math.min(intendedStart, now);
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.metrics;
+
+import java.net.URL;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import fi.mystes.http.RequestTiming;
+
+/**
+ * Registry aggregating timing breakdowns of requests by name, e.g. "POST /api/customers". Each phase
+ * of RequestTiming is recorded into its own lock-free high dynamic range histogram in microseconds,
+ * so the registry can be shared by all threads of a test run.<br/><br/>
+ * 
+ * Example:<br/>
+ * TimingRegistry registry = new TimingRegistry();<br/>
+ * new RestRequest("", url, "get").setTimingRegistry(registry).sendRequest();<br/>
+ * long p99 = registry.getHistogram("GET /api/customers", TimingRegistry.Phase.FIRST_BYTE).getValueAtPercentile(99);
+ *
+ */
+public class TimingRegistry {
+	
+	/** Timing phases */
+	public static enum Phase {LEASE, CONNECT, WRITE, FIRST_BYTE, BODY, TOTAL};
+	
+	/** Number of significant value digits */
+	private static final int SIGNIFICANT_DIGITS = 3;
+	
+	/** Timings by name */
+	private final ConcurrentMap<String, Timings> timings = new ConcurrentHashMap<String, Timings>();
+	
+	/**
+	 * Records timing breakdown of a request.
+	 * 
+	 * @param name Name timing is aggregated under
+	 * @param timing Timing breakdown of ended request
+	 * 
+	 * @return Instance of TimingRegistry
+	 */
+	public TimingRegistry record(String name, RequestTiming timing) {
+		Timings named = getTimings(name);
+		named.record(Phase.LEASE, timing.getLeaseNanos());
+		named.record(Phase.CONNECT, timing.getConnectNanos());
+		named.record(Phase.WRITE, timing.getWriteNanos());
+		named.record(Phase.FIRST_BYTE, timing.getFirstByteNanos());
+		named.record(Phase.BODY, timing.getBodyNanos());
+		named.record(Phase.TOTAL, timing.getTotalNanos());
+		return this;
+	}
+	
+	/**
+	 * Records only total time of a request whose phases could not be timed, e.g. one sent with a SAAJ
+	 * connection. Histograms of the other phases are not affected.
+	 * 
+	 * @param name Name timing is aggregated under
+	 * @param totalNanos Total time of the request in nanoseconds
+	 * 
+	 * @return Instance of TimingRegistry
+	 */
+	public TimingRegistry recordTotal(String name, long totalNanos) {
+		getTimings(name).record(Phase.TOTAL, totalNanos);
+		return this;
+	}
+	
+	/**
+	 * Returns default name of request timings: HTTP method and URL path, e.g. "POST /api/customers".
+	 * 
+	 * @param method HTTP method
+	 * @param url Request URL
+	 * 
+	 * @return Name of request timings
+	 */
+	public static String name(String method, String url) {
+		String path;
+		try {
+			path = new URL(url).getPath();
+		} catch (Exception e) {
+			path = url;
+		}
+		return (method != null ? method.toUpperCase() : "") + " " + path;
+	}
+	
+	/**
+	 * Returns names timings have been recorded under.
+	 * 
+	 * @return Names in alphabetical order
+	 */
+	public Set<String> getNames() {
+		return new TreeSet<String>(timings.keySet());
+	}
+	
+	/**
+	 * Returns distribution of given phase of requests recorded under given name.
+	 * 
+	 * @param name Name timings were recorded under
+	 * @param phase Timing phase
+	 * 
+	 * @return Copy of recorded times in microseconds, empty if nothing has been recorded under the name
+	 */
+	public Histogram getHistogram(String name, Phase phase) {
+		Timings named = timings.get(name);
+		return named != null ? named.getHistogram(phase) : newHistogram();
+	}
+	
+	/**
+	 * Returns distribution of given phase of all recorded requests.
+	 * 
+	 * @param phase Timing phase
+	 * 
+	 * @return Recorded times in microseconds
+	 */
+	public Histogram getHistogram(Phase phase) {
+		Histogram histogram = newHistogram();
+		for (Timings named : timings.values()) {
+			histogram.add(named.getHistogram(phase));
+		}
+		return histogram;
+	}
+	
+	/**
+	 * Clears all recorded timings.
+	 */
+	public void reset() {
+		timings.clear();
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Timings (us, p50/p99):");
+		for (String name : getNames()) {
+			builder.append("\n").append(name).append(": requests=").append(getHistogram(name, Phase.TOTAL).getTotalCount());
+			for (Phase phase : Phase.values()) {
+				Histogram histogram = getHistogram(name, phase);
+				builder.append(" ").append(phase.name().toLowerCase()).append("=")
+						.append(histogram.getValueAtPercentile(50)).append("/").append(histogram.getValueAtPercentile(99));
+			}
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Helper method to return timings of given name, which are created on first use.
+	 * 
+	 * @param name Name timings are aggregated under
+	 * 
+	 * @return Instance of Timings
+	 */
+	private Timings getTimings(String name) {
+		Timings named = timings.get(name);
+		if (named == null) {
+			Timings created = new Timings();
+			named = timings.putIfAbsent(name, created);
+			if (named == null) {
+				named = created;
+			}
+		}
+		return named;
+	}
+	
+	/**
+	 * Helper method to create histogram with registry's range and precision.
+	 * 
+	 * @return Instance of org.HdrHistogram.Histogram
+	 */
+	private static Histogram newHistogram() {
+		return new Histogram(LatencyRecorder.HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+	}
+	
+	/**
+	 * Histograms of all phases recorded under one name.
+	 */
+	private static class Timings {
+		
+		/** Lock-free recorders by phase */
+		private final Recorder[] recorders = new Recorder[Phase.values().length];
+		
+		/** Recycled interval histograms by phase */
+		private final Histogram[] intervals = new Histogram[Phase.values().length];
+		
+		/** All times recorded so far by phase */
+		private final Histogram[] histograms = new Histogram[Phase.values().length];
+		
+		Timings() {
+			for (int i = 0; i < recorders.length; i++) {
+				recorders[i] = new Recorder(LatencyRecorder.HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+				histograms[i] = newHistogram();
+			}
+		}
+		
+		void record(Phase phase, long nanos) {
+			recorders[phase.ordinal()].recordValue(Math.max(0, Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), LatencyRecorder.HIGHEST_LATENCY)));
+		}
+		
+		synchronized Histogram getHistogram(Phase phase) {
+			int i = phase.ordinal();
+			intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+			histograms[i].add(intervals[i]);
+			return histograms[i].copy();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.apache.log4j.Logger;
+
+import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
+
+/**
+ * Key extracted from bodies of recorded requests, so that recorded requests can be looked up by it
+ * with RecordedRequestQuery.addBodyKey. Value is extracted once when request is recorded, either with
+ * XPath from XML bodies or with a regular expression from any body, e.g. JSON.<br/><br/>
+ * 
+ * Example:<br/>
+ * BodyKey.xpath("customerId", "//*[local-name() = 'customerId']")<br/>
+ * BodyKey.pattern("customerId", "\"customerId\"\\s*:\\s*\"?([^\",}]+)")
+ *
+ */
+public abstract class BodyKey {
+	private static final Logger logger = Logger.getLogger(BodyKey.class);
+	
+	/** Name of the key */
+	private final String name;
+	
+	/**
+	 * Constructor with name of the key.
+	 * 
+	 * @param name Key name
+	 */
+	protected BodyKey(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Returns name of the key.
+	 * 
+	 * @return Key name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Extracts key value from request body.
+	 * 
+	 * @param body Request body
+	 * 
+	 * @return Key value or null if body does not contain the key
+	 */
+	public abstract String extract(String body);
+	
+	/**
+	 * Creates key extracted with XPath expression without namespace prefixes, e.g. using local-name().
+	 * 
+	 * @param name Key name
+	 * @param expression XPath expression evaluated as string
+	 * 
+	 * @return Instance of BodyKey
+	 */
+	public static BodyKey xpath(String name, String expression) {
+		return xpath(name, expression, new HashMap<String, String>());
+	}
+	
+	/**
+	 * Creates key extracted with XPath expression using given namespace prefixes.
+	 * 
+	 * @param name Key name
+	 * @param expression XPath expression evaluated as string
+	 * @param namespaces Namespace URIs by prefix
+	 * 
+	 * @return Instance of BodyKey
+	 */
+	public static BodyKey xpath(String name, final String expression, Map<String, String> namespaces) {
+		final XmlToolkit xmlToolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>(namespaces)), 1);
+		return new BodyKey(name) {
+			public String extract(String body) {
+				if (body == null || body.trim().isEmpty()) {
+					return null;
+				}
+				try {
+					String value = (String) xmlToolkit.compile(expression).evaluate(xmlToolkit.parse(body), XPathConstants.STRING);
+					return value.isEmpty() ? null : value;
+				} catch (Exception e) {
+					logger.debug("Body key " + getName() + " not extracted: " + e.getMessage());
+					return null;
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Creates key extracted with regular expression. Value is the first capturing group of the first
+	 * match, or the whole match if expression has no groups.
+	 * 
+	 * @param name Key name
+	 * @param regex Regular expression
+	 * 
+	 * @return Instance of BodyKey
+	 */
+	public static BodyKey pattern(String name, String regex) {
+		final Pattern pattern = Pattern.compile(regex);
+		return new BodyKey(name) {
+			public String extract(String body) {
+				if (body == null) {
+					return null;
+				}
+				Matcher matcher = pattern.matcher(body);
+				if (!matcher.find()) {
+					return null;
+				}
+				return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+			}
+		};
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fi.mystes.response.Response;
+
+/**
+ * Builder for programming customized responses of several API URIs with one call to
+ * IApiMock.addCustomResponses. Responses of each API URI are kept in the order they were added.<br/><br/>
+ * 
+ * Example:<br/>
+ * apiMock.addCustomResponses(new CustomResponseBatch()<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.addCustomResponse(customersUri, customerResponse)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.addCustomResponse(ordersUri, firstOrderResponse)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.addCustomResponse(ordersUri, secondOrderResponse));
+ *
+ */
+public class CustomResponseBatch {
+	
+	/** Customized responses by API URI in insertion order */
+	private Map<String, List<Response>> responses = new LinkedHashMap<String, List<Response>>();
+	
+	/** Total number of customized responses */
+	private int size;
+	
+	/**
+	 * Adds customized response to given API URI.
+	 * 
+	 * @param uri API URI to add customized response to
+	 * @param response Customized response to be added
+	 * 
+	 * @return Instance of CustomResponseBatch
+	 */
+	public CustomResponseBatch addCustomResponse(String uri, Response response) {
+		List<Response> uriResponses = responses.get(uri);
+		if (uriResponses == null) {
+			uriResponses = new ArrayList<Response>();
+			responses.put(uri, uriResponses);
+		}
+		uriResponses.add(response);
+		size++;
+		
+		return this;
+	}
+	
+	/**
+	 * Adds customized responses to given API URI.
+	 * 
+	 * @param uri API URI to add customized responses to
+	 * @param responses Customized responses to be added
+	 * 
+	 * @return Instance of CustomResponseBatch
+	 */
+	public CustomResponseBatch addCustomResponses(String uri, List<Response> responses) {
+		for (Response response : responses) {
+			addCustomResponse(uri, response);
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns customized responses grouped by API URI.
+	 * 
+	 * @return Unmodifiable instance of java.util.Map with API URIs as keys
+	 */
+	public Map<String, List<Response>> getCustomResponses() {
+		return Collections.unmodifiableMap(responses);
+	}
+	
+	/**
+	 * Returns total number of customized responses.
+	 * 
+	 * @return Number of customized responses
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether batch contains any customized responses.
+	 * 
+	 * @return True if batch is empty, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -15,16 +15,51 @@
  */
 package fi.mystes.mock;
 
+import java.io.Closeable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 
 import com.mashape.unirest.http.Headers;
 import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.utils.ClientFactory;
 
 import fi.mystes.request.RecordedHeaders;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequestVisitor;
 import fi.mystes.request.RecordedRequests;
 import fi.mystes.request.RestRequest;
 import fi.mystes.response.Response;
@@ -38,7 +73,28 @@ public class HttpApiMock implements IApiMock<HttpApiMock>{
 	private static final String PROTOCOL = "http";
 	private static final String HOST = "localhost";
 	private static final String HEALT_CHECK_POSTFIX = "/mock/services";
+	
+	/** First interval in milliseconds between polls of recorded requests when awaiting them */
+	private static final long MIN_POLL_INTERVAL = 50;
+	
+	/** Maximum interval in milliseconds between polls of recorded requests when awaiting them */
+	private static final long MAX_POLL_INTERVAL = 1000;
+	
+	/** Document builder factory for skipping recorded requests before cursor, access must be synchronized */
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+	
+	/** Transformer factory for skipping recorded requests before cursor, access must be synchronized */
+	private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	
+	private static final String FAULTS_NOT_SUPPORTED = "Mock web application does not support faults, use fi.mystes.mock.InProcessApiMock";
+	
+	/** Operation URIs (API URIs without the last path segment) this mock has been used with */
+	private final Set<String> operationUris = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
+	/**
+	 * HttpApiMock is alive when its health check URL answers with a successful status code, so a server
+	 * still deploying the web application (and answering 404 or 503) is not considered alive.
+	 */
 	@Override
 	public boolean isAlive(Integer port) {
 		logger.info("Checking if HttpApiMock is alive");
@@ -47,6 +103,10 @@ public class HttpApiMock implements IApiMock<HttpApiMock>{
 				getBaseUrl(port) + HEALT_CHECK_POSTFIX,
 				"get",
 				null, null).sendRequest();
+			if (result.getStatus() < 200 || result.getStatus() >= 300) {
+				logger.info("HttpApiMock not ready, status: " + result.getStatus());
+				return false;
+			}
 		} catch (Exception e) {
 			logger.info("HttpApiMock not available");
 			return false;
@@ -58,28 +118,82 @@ public class HttpApiMock implements IApiMock<HttpApiMock>{
 	@Override
 	public HttpApiMock init(String uri) throws Exception {
 		logger.info("Initializing: " + uri);
+		addOperationUri(uri);
 		logger.info(new RestRequest(null, uri, "post").sendRequest().getBody());
 		return this;
 	}
 
+	/**
+	 * Initializes every operation this mock has been used with by posting to its init URI.
+	 */
+	@Override
+	public HttpApiMock reset() throws Exception {
+		for (String operationUri : operationUris) {
+			new RestRequest(null, operationUri + "/init", "post").sendRequest();
+		}
+		logger.info("Reset " + operationUris.size() + " operations");
+		operationUris.clear();
+		return this;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If response has faults, the mock web application cannot inject them
+	 */
 	@Override
 	public HttpApiMock addCustomResponse(String uri, Response response) throws Exception {
+		checkFaults(response);
 		logger.info("Adding cutom response " + response.getContent() + " to:" + uri);
 
-		handleHeaders(response);
-		HttpResponse<String> result = new RestRequest(response.getContent(), 
-				uri, 
-				"post", 
-				response.getParameters(), response.getHeaders()).sendRequest();
+		HttpResponse<String> result = createCustomResponseRequest(uri, response).sendRequest();
 		logger.info("Result for addCustomResponse: " + result.getBody() + 
 				"\nStatus: " + result.getStatusText() + 
 				"\nCode: "+result.getStatus());
 		return this;
 	}
 
+	@Override
+	public HttpApiMock addCustomResponses(String uri, List<Response> responses) throws Exception {
+		return addCustomResponses(new CustomResponseBatch().addCustomResponses(uri, responses));
+	}
+
+	/**
+	 * Adds customized responses of all API URIs concurrently over the shared keep-alive connection pool
+	 * and waits once for all acknowledgements. Responses of the same API URI are sent one after another,
+	 * since HttpApiMock service returns them in the order they were added. Nothing is sent if any of
+	 * the responses has faults.
+	 * 
+	 * @throws UnsupportedOperationException If a response has faults, the mock web application cannot inject them
+	 */
+	@Override
+	public HttpApiMock addCustomResponses(CustomResponseBatch batch) throws Exception {
+		if (batch.isEmpty()) {
+			return this;
+		}
+		for (List<Response> responses : batch.getCustomResponses().values()) {
+			for (Response response : responses) {
+				checkFaults(response);
+			}
+		}
+		logger.info("Adding " + batch.size() + " custom responses to " + batch.getCustomResponses().size() + " URIs");
+
+		CountDownLatch done = new CountDownLatch(batch.getCustomResponses().size());
+		List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+		for (Map.Entry<String, List<Response>> uriResponses : batch.getCustomResponses().entrySet()) {
+			new CustomResponseSequence(uriResponses.getKey(), uriResponses.getValue(), done, failures).sendNext();
+		}
+		done.await();
+
+		if (!failures.isEmpty()) {
+			throw new Exception("Adding custom responses failed for " + failures.size() + " URIs", failures.get(0));
+		}
+		logger.info("Added " + batch.size() + " custom responses");
+		return this;
+	}
+
 	@Override
 	public RecordedRequests getRecordedRequests(String uri) throws Exception {
 		logger.info("Fetching recorded requests from: " + uri);
+		addOperationUri(uri);
 
 		HttpResponse<String> response = new RestRequest(null, uri, "get").sendRequest();
 		Headers responseHeaders = response.getHeaders();
@@ -95,8 +209,120 @@ public class HttpApiMock implements IApiMock<HttpApiMock>{
 		return recordedRequest;
 	}
 
+	/**
+	 * The mock web application does not support cursors, so all recorded requests are fetched and
+	 * the ones before the cursor are skipped client-side. Cursor is the number of recorded requests
+	 * fetched so far, which is also returned as the next cursor. Each call fetches all recorded requests
+	 * of the operation and initializing the operation resets the count, so polling must restart at 0
+	 * after initializing the API URI.
+	 */
+	@Override
+	public RecordedRequests getRecordedRequestsSince(String uri, long cursor) throws Exception {
+		addOperationUri(uri);
+		HttpResponse<String> response = new RestRequest(null, uri, "get").sendRequest();
+		Document document = parseRecorded(response.getBody());
+		List<Node> entries = getRecordedEntries(document.getDocumentElement());
+		RecordedRequests recordedRequests = new RecordedRequests().setBody(removeEntriesBefore(document, entries, cursor))
+				.setEndpointUrl(uri).setHeaders(getHeaders(response)).setNextCursor(entries.size());
+		logger.info("Fetched recorded requests since " + cursor + ": " + recordedRequests.toString());
+		return recordedRequests;
+	}
+
+	/**
+	 * Streams recorded requests directly from HTTP response, which is parsed incrementally with StAX
+	 * while the iterator is read.
+	 */
+	@Override
+	public RecordedRequestIterator streamRecordedRequests(String uri) throws Exception {
+		logger.info("Streaming recorded requests from: " + uri);
+		addOperationUri(uri);
+
+		org.apache.http.HttpResponse response = ClientFactory.getHttpClient().execute(new HttpGet(uri));
+		Closeable closeableResponse = response instanceof Closeable ? (Closeable) response : null;
+		HttpEntity entity = response.getEntity();
+		try {
+			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK || entity == null) {
+				throw new Exception("Fetching recorded requests from " + uri + " failed: " + response.getStatusLine());
+			}
+			return new RecordedRequestIterator(entity.getContent(), closeableResponse).setEndpointUrl(uri);
+		} catch (Exception e) {
+			EntityUtils.consumeQuietly(entity);
+			if (closeableResponse != null) {
+				closeableResponse.close();
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public long visitRecordedRequests(String uri, RecordedRequestVisitor visitor) throws Exception {
+		RecordedRequestIterator requests = streamRecordedRequests(uri);
+		long visited = 0;
+		try {
+			while (requests.hasNext()) {
+				visited++;
+				if (!visitor.visit(requests.next())) {
+					break;
+				}
+			}
+		} finally {
+			requests.close();
+		}
+		logger.info("Visited " + visited + " recorded requests from: " + uri);
+		return visited;
+	}
+
+	/**
+	 * Polls recorded requests, because the mock web application cannot notify waiting clients. Polling
+	 * starts at 50 ms intervals and backs off to 1 second, and each poll fetches all recorded requests
+	 * but evaluates only the ones not seen by previous polls. Only content of recorded requests is
+	 * available to the predicate, not their headers.
+	 */
+	@Override
+	public List<RecordedRequest> awaitRecordedRequests(String uri, RecordedRequestPredicate predicate, int count, long timeout) throws Exception {
+		addOperationUri(uri);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		List<RecordedRequest> matches = new ArrayList<RecordedRequest>();
+		long seen = 0;
+		long interval = MIN_POLL_INTERVAL;
+		while (true) {
+			RecordedRequestIterator requests = streamRecordedRequests(uri);
+			long index = 0;
+			try {
+				while (requests.hasNext() && matches.size() < count) {
+					RecordedRequest request = requests.next();
+					if (index++ >= seen && (predicate == null || predicate.matches(request))) {
+						matches.add(request);
+					}
+				}
+			} finally {
+				requests.close();
+			}
+			if (matches.size() >= count) {
+				logger.info("Awaited " + count + " recorded requests from: " + uri);
+				return matches;
+			}
+			if (index < seen) {
+				// Operation has been initialized, evaluate all recorded requests again
+				matches.clear();
+				seen = 0;
+				continue;
+			}
+			seen = index;
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				break;
+			}
+			Thread.sleep(Math.min(interval, remaining));
+			interval = Math.min(interval * 2, MAX_POLL_INTERVAL);
+		}
+		throw new TimeoutException("Awaited " + count + " recorded requests from " + uri + " for " + timeout 
+				+ " ms, " + matches.size() + " matching requests recorded");
+	}
+
 	@Override
 	public RecordedHeaders getRecordedHeaders(String uri) throws Exception {
+		addOperationUri(uri);
 		HttpResponse<String> response = new RestRequest(null, uri, "get").sendRequest();
 		Headers responseHeaders = response.getHeaders();
 		Map<String, String> headers = new HashMap<String, String>();
@@ -111,30 +337,229 @@ public class HttpApiMock implements IApiMock<HttpApiMock>{
 		return recordedHeaders;
 	}
 
+	/**
+	 * Skips recorded request headers before the cursor client-side like getRecordedRequestsSince.
+	 */
+	@Override
+	public RecordedHeaders getRecordedHeadersSince(String uri, long cursor) throws Exception {
+		addOperationUri(uri);
+		HttpResponse<String> response = new RestRequest(null, uri, "get").sendRequest();
+		Document document = parseRecorded(response.getBody());
+		List<Node> entries = getRecordedEntries(document.getDocumentElement());
+		RecordedHeaders recordedHeaders = new RecordedHeaders().setBody(removeEntriesBefore(document, entries, cursor))
+				.setEndpointUrl(uri).setHeaders(getHeaders(response)).setNextCursor(entries.size());
+		logger.info("Fetched recorded headers since " + cursor + ": " + recordedHeaders.toString());
+		return recordedHeaders;
+	}
+	
+	private static Map<String, String> getHeaders(HttpResponse<String> response) {
+		Headers responseHeaders = response.getHeaders();
+		Map<String, String> headers = new HashMap<String, String>();
+		for(String header : responseHeaders.keySet()) {
+			headers.put(header, responseHeaders.get(header).toString());
+		}
+		return headers;
+	}
+	
+	/**
+	 * Helper method to parse recorded requests or headers XML.
+	 * 
+	 * @param xml Recorded requests or headers XML
+	 * 
+	 * @return Parsed instance of org.w3c.dom.Document
+	 * 
+	 * @throws Exception If parsing fails
+	 */
+	private static Document parseRecorded(String xml) throws Exception {
+		DocumentBuilder builder;
+		synchronized (documentBuilderFactory) {
+			builder = documentBuilderFactory.newDocumentBuilder();
+		}
+		return builder.parse(new InputSource(new StringReader(xml)));
+	}
+	
+	/**
+	 * Helper method to find the first node of each recorded entry among child nodes of root element.
+	 * Entries are split like RecordedRequestIterator does: each element is an entry, so is each run of
+	 * adjacent CDATA sections and each non-blank text between them.
+	 * 
+	 * @param root Root element of recorded requests or headers
+	 * 
+	 * @return First nodes of recorded entries in document order
+	 */
+	private static List<Node> getRecordedEntries(Element root) {
+		List<Node> entries = new ArrayList<Node>();
+		boolean inText = false;
+		Node previous = null;
+		for (Node child = root.getFirstChild(); child != null; previous = child, child = child.getNextSibling()) {
+			if (child.getNodeType() == Node.ELEMENT_NODE) {
+				entries.add(child);
+				inText = false;
+			} else if (child.getNodeType() == Node.CDATA_SECTION_NODE) {
+				if (previous == null || previous.getNodeType() != Node.CDATA_SECTION_NODE) {
+					entries.add(child);
+				}
+				inText = false;
+			} else if (child.getNodeType() == Node.TEXT_NODE && !inText && child.getNodeValue().trim().length() > 0) {
+				entries.add(child);
+				inText = true;
+			}
+		}
+		return entries;
+	}
+	
+	/**
+	 * Helper method to remove recorded entries before given cursor and serialize the rest. If the cursor
+	 * is beyond the recorded entries, the operation has been initialized and all entries are kept.
+	 * 
+	 * @param document Recorded requests or headers document
+	 * @param entries First nodes of recorded entries
+	 * @param cursor Number of recorded entries to remove
+	 * 
+	 * @return Serialized recorded requests or headers
+	 * 
+	 * @throws Exception If serializing fails
+	 */
+	private static String removeEntriesBefore(Document document, List<Node> entries, long cursor) throws Exception {
+		Element root = document.getDocumentElement();
+		if (cursor > 0 && cursor <= entries.size()) {
+			Node first = cursor < entries.size() ? entries.get((int) cursor) : null;
+			while (root.getFirstChild() != null && root.getFirstChild() != first) {
+				root.removeChild(root.getFirstChild());
+			}
+		}
+		Transformer transformer;
+		synchronized (transformerFactory) {
+			transformer = transformerFactory.newTransformer();
+		}
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(document), new StreamResult(writer));
+		return writer.toString();
+	}
+
+	/**
+	 * Helper method to remember operation of given API URI to be reset.
+	 * 
+	 * @param uri API URI, e.g. http://localhost:8888/mock/services/REST/service/operations/POST/responses
+	 */
+	private void addOperationUri(String uri) {
+		int lastSlash = uri.lastIndexOf('/');
+		if (lastSlash > 0) {
+			operationUris.add(uri.substring(0, lastSlash));
+		}
+	}
+
 	private String getBaseUrl(Integer port) {
 		return PROTOCOL + "://" + HOST + ":" + port;
 	}
 
-	private void handleHeaders(Response response) {
+	/**
+	 * Adds response's HTTP headers as "headers" parameter if headers are to be sent as parameters.
+	 * 
+	 * @param response Response to add headers parameter to
+	 */
+	void handleHeaders(Response response) {
 		if (!response.headersAsParameters()) {
 			logger.info("Headers not as parameters");
 			return;
 		}
-		Map<String, String> responseHeaders = response.getHeaders();
-		StringBuilder headers = new StringBuilder();
-		boolean first = true;
-		for(String header : responseHeaders.keySet()) {
-			if (!first) {
-				headers.append(",");
+		String headers = response.getHeadersAsParameter();
+
+		logger.info("headers as parameter: " + headers);
+
+		if (headers != null) {
+			response.addParameter("headers", headers);
+		}
+	}
+
+	/**
+	 * Helper method to reject customized response with faults. Unlike delays, which only change timing,
+	 * ignored faults would let tests expecting failures pass.
+	 * 
+	 * @param response Customized response to be checked
+	 * 
+	 * @throws UnsupportedOperationException If response has faults
+	 */
+	private static void checkFaults(Response response) {
+		if (response.getFaults() != null && !response.getFaults().isEmpty()) {
+			throw new UnsupportedOperationException(FAULTS_NOT_SUPPORTED);
+		}
+	}
+
+	/**
+	 * Helper method to create request adding given customized response to given API URI.
+	 * 
+	 * @param uri API URI to add customized response to
+	 * @param response Customized response to be added
+	 * 
+	 * @return Instance of fi.mystes.request.RestRequest
+	 */
+	private RestRequest createCustomResponseRequest(String uri, Response response) {
+		addOperationUri(uri);
+		handleHeaders(response);
+		if (response.isPaced()) {
+			logger.warn("Mock web application does not support response delays or pacing, they are ignored for " + uri);
+		}
+		if (response.getCompression() != null) {
+			logger.warn("Mock web application does not compress responses, " + response.getCompression() + " is ignored for " + uri);
+		}
+		if (response.getStatus() != null && (response.getParameters() == null || !response.getParameters().containsKey("code"))) {
+			response.addParameter("code", response.getStatus().toString());
+		}
+		return new RestRequest(response.getContent(), 
+				uri, 
+				"post", 
+				response.getParameters(), response.getHeaders());
+	}
+
+	/**
+	 * Customized responses of one API URI sent one after another without blocking the calling thread.
+	 * Next response is sent when previous one has been acknowledged. Sequence stops at first failure.
+	 */
+	private class CustomResponseSequence implements FutureCallback<HttpResponse<String>> {
+		private final String uri;
+		private final Iterator<Response> responses;
+		private final CountDownLatch done;
+		private final List<Exception> failures;
+
+		CustomResponseSequence(String uri, List<Response> responses, CountDownLatch done, List<Exception> failures) {
+			this.uri = uri;
+			this.responses = responses.iterator();
+			this.done = done;
+			this.failures = failures;
+		}
+
+		/**
+		 * Sends next customized response or signals completion if there are no more responses.
+		 */
+		void sendNext() {
+			if (!responses.hasNext()) {
+				done.countDown();
+				return;
+			}
+			try {
+				createCustomResponseRequest(uri, responses.next()).sendRequestAsync(this);
+			} catch (Exception e) {
+				failed(e);
 			}
-			headers.append(header).append(":").append(responseHeaders.get(header));
-			first = false;
 		}
 
-		logger.info("headers as parameter: " + headers);
+		public void completed(HttpResponse<String> result) {
+			logger.info("Result for addCustomResponses: " + uri + 
+					"\nStatus: " + result.getStatusText() + 
+					"\nCode: " + result.getStatus());
+			sendNext();
+		}
+
+		public void failed(Exception e) {
+			logger.error("Adding custom response to " + uri + " failed", e);
+			failures.add(e);
+			done.countDown();
+		}
 
-		if (headers.length() > 0) {
-			response.addParameter("headers", headers.toString());
+		public void cancelled() {
+			failed(new CancellationException("Adding custom response to " + uri + " was cancelled"));
 		}
 	}
 
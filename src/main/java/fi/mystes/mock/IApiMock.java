@@ -15,7 +15,13 @@
  */
 package fi.mystes.mock;
 
+import java.util.List;
+
 import fi.mystes.request.RecordedHeaders;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequestVisitor;
 import fi.mystes.request.RecordedRequests;
 import fi.mystes.response.Response;
 
@@ -38,6 +44,16 @@ public interface IApiMock<T> {
 	 */
 	public T init(String uri) throws Exception;
 	
+	/**
+	 * Method to reset customized responses and recorded requests of all API URIs this mock has been used with,
+	 * so that mock server can be reused by next test class without restarting it.
+	 * 
+	 * @return Instance of implemented class
+	 * 
+	 * @throws Exception If resetting any API URI fails
+	 */
+	public T reset() throws Exception;
+	
 	/**
 	 * Method to add customized response to mocking API.
 	 * 
@@ -50,6 +66,31 @@ public interface IApiMock<T> {
 	 */
 	public T addCustomResponse(String uri, Response response) throws Exception;
 	
+	/**
+	 * Method to add several customized responses to mocking API at once. Responses are added
+	 * in given order and method returns when all of them have been acknowledged.
+	 * 
+	 * @param uri API URI to add customized responses to
+	 * @param responses Customized responses to be added
+	 * 
+	 * @return Instance of implemented class
+	 * 
+	 * @throws Exception If adding any of the customized responses fails
+	 */
+	public T addCustomResponses(String uri, List<Response> responses) throws Exception;
+	
+	/**
+	 * Method to add customized responses of several API URIs to mocking API at once. Responses of
+	 * each API URI are added in given order and method returns when all of them have been acknowledged.
+	 * 
+	 * @param batch Customized responses grouped by API URI
+	 * 
+	 * @return Instance of implemented class
+	 * 
+	 * @throws Exception If adding any of the customized responses fails
+	 */
+	public T addCustomResponses(CustomResponseBatch batch) throws Exception;
+	
 	/**
 	 * Method to retrieve recored requests from given API URI.
 	 * 
@@ -61,6 +102,63 @@ public interface IApiMock<T> {
 	 */
 	public RecordedRequests getRecordedRequests(String uri) throws Exception;
 	
+	/**
+	 * Method to retrieve only requests recorded since given cursor from given API URI. Next cursor of
+	 * returned recorded requests is used to fetch requests recorded after them. Cursors are implementation
+	 * specific: whether polling transfers only new requests and whether cursors survive initializing
+	 * the API URI is documented by each implementation.
+	 * 
+	 * @param uri API URI to retrieve recorded requests from
+	 * @param cursor Cursor returned by previous call, 0 for all recorded requests
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequests containing requests recorded since cursor
+	 * 
+	 * @throws Exception If recorded requests retrieval from given API URI fails
+	 */
+	public RecordedRequests getRecordedRequestsSince(String uri, long cursor) throws Exception;
+	
+	/**
+	 * Method to stream recorded requests from given API URI one at a time without reading
+	 * all of them into memory. Returned iterator must be closed if it is not read to the end.
+	 * 
+	 * @param uri API URI to retrieve recorded requests from
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequestIterator
+	 * 
+	 * @throws Exception If recorded requests retrieval from given API URI fails
+	 */
+	public RecordedRequestIterator streamRecordedRequests(String uri) throws Exception;
+	
+	/**
+	 * Method to visit recorded requests from given API URI one at a time without reading
+	 * all of them into memory.
+	 * 
+	 * @param uri API URI to retrieve recorded requests from
+	 * @param visitor Visitor called for each recorded request until it returns false
+	 * 
+	 * @return Number of visited recorded requests
+	 * 
+	 * @throws Exception If recorded requests retrieval from given API URI or visiting fails
+	 */
+	public long visitRecordedRequests(String uri, RecordedRequestVisitor visitor) throws Exception;
+	
+	/**
+	 * Method to wait until given API URI has recorded given number of requests matching given predicate.
+	 * Requests recorded before the call count too. How soon the call returns after the requests are
+	 * recorded depends on the implementation, which either is notified by the mock or polls the API URI.
+	 * 
+	 * @param uri API URI to await recorded requests from
+	 * @param predicate Predicate recorded requests must match, null matches every request
+	 * @param count Number of matching requests to await
+	 * @param timeout Maximum time to wait in milliseconds
+	 * 
+	 * @return The first matching recorded requests in recorded order, count of them
+	 * 
+	 * @throws java.util.concurrent.TimeoutException If there are not enough matching requests when timeout elapses
+	 * @throws Exception If recorded requests retrieval from given API URI or matching fails
+	 */
+	public List<RecordedRequest> awaitRecordedRequests(String uri, RecordedRequestPredicate predicate, int count, long timeout) throws Exception;
+	
 	/**
 	 * Method to retrieve recorded headers from given API URI.
 	 * 
@@ -71,4 +169,17 @@ public interface IApiMock<T> {
 	 * @throws Exception If recorded headers retrieval from given API URI fails
 	 */
 	public RecordedHeaders getRecordedHeaders(String uri) throws Exception;
+	
+	/**
+	 * Method to retrieve only headers of requests recorded since given cursor from given API URI.
+	 * Cursors are shared with getRecordedRequestsSince.
+	 * 
+	 * @param uri API URI to retrieve recorded headers from
+	 * @param cursor Cursor returned by previous call, 0 for headers of all recorded requests
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedHeaders containing headers of requests recorded since cursor
+	 * 
+	 * @throws Exception If recorded headers retrieval from given API URI fails
+	 */
+	public RecordedHeaders getRecordedHeadersSince(String uri, long cursor) throws Exception;
 }
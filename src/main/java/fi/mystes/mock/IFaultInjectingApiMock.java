@@ -0,0 +1,44 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.List;
+
+import fi.mystes.response.Fault;
+
+/**
+ * Interface class for API mocks injecting faults into responses, so that they can fail like a broken
+ * dependency. Implemented by fi.mystes.mock.InProcessApiMock, the mock web application cannot inject
+ * faults.
+ * 
+ * @param <T> Implemented class to allow chain invocation.
+ */
+public interface IFaultInjectingApiMock<T> extends IApiMock<T> {
+
+	/**
+	 * Method to set fault mix of API URI. Faults are injected into every response of the operation,
+	 * customized or default, unless a customized response has faults of its own. Initializing the
+	 * API URI removes the faults.
+	 * 
+	 * @param uri API URI to set faults to
+	 * @param faults Faults with their probabilities, empty list removes faults
+	 * 
+	 * @return Instance of implemented class
+	 * 
+	 * @throws Exception If setting faults to given API URI fails
+	 */
+	public T setFaults(String uri, List<Fault> faults) throws Exception;
+}
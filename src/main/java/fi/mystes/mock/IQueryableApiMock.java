@@ -0,0 +1,57 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.List;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestQuery;
+
+/**
+ * Interface class for API mocks indexing recorded requests, so that they can be looked up by header
+ * values, body key values and recording time without scanning them all. Implemented by
+ * fi.mystes.mock.InProcessApiMock, the mock web application does not index recorded requests.
+ * 
+ * @param <T> Implemented class to allow chain invocation.
+ */
+public interface IQueryableApiMock<T> extends IApiMock<T> {
+
+	/**
+	 * Method to look up recorded requests of given API URI matching given header values, body key
+	 * values and recording time. Body keys must be added to the API URI before querying them.
+	 * 
+	 * @param uri API URI to query recorded requests from
+	 * @param query Query criteria
+	 * 
+	 * @return Matching recorded requests in recorded order
+	 * 
+	 * @throws Exception If querying recorded requests from given API URI fails
+	 */
+	public List<RecordedRequest> queryRecordedRequests(String uri, RecordedRequestQuery query) throws Exception;
+	
+	/**
+	 * Method to add key extracted from bodies of requests recorded by given API URI. Requests already
+	 * recorded are indexed too and the key is kept when the API URI is initialized.
+	 * 
+	 * @param uri API URI to add body key to
+	 * @param bodyKey Body key
+	 * 
+	 * @return Instance of implemented class
+	 * 
+	 * @throws Exception If adding body key to given API URI fails
+	 */
+	public T addBodyKey(String uri, BodyKey bodyKey) throws Exception;
+}
@@ -0,0 +1,883 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSSerializer;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.request.RecordedHeaders;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequestQuery;
+import fi.mystes.request.RecordedRequestVisitor;
+import fi.mystes.request.RecordedRequests;
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Fault;
+import fi.mystes.response.Response;
+import fi.mystes.server.IMockHandler;
+import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
+
+/**
+ * In-process API mock which keeps customized responses and recorded requests in memory and is
+ * served by IMockServer as a plain handler, so no mock web application needs to be deployed.
+ * Mocked APIs are served with the same URLs as HttpApiMock service:<br/><br/>
+ * 
+ * {context path}/services/{REST|SOAP}/{service}/endpoint<br/>
+ * {context path}/services/{REST|SOAP}/{service}/operations/{operation}/init<br/>
+ * {context path}/services/{REST|SOAP}/{service}/operations/{operation}/responses<br/>
+ * {context path}/services/{REST|SOAP}/{service}/operations/{operation}/recorded-requests<br/>
+ * {context path}/services/{REST|SOAP}/{service}/operations/{operation}/recorded-request-headers<br/><br/>
+ * 
+ * Recorded requests and headers URLs accept "since" parameter with a cursor and return only requests
+ * recorded since it. The cursor of the next request is returned in X-Next-Cursor header. With "wait"
+ * parameter in milliseconds the response is long-polled: it is returned as soon as a request is
+ * recorded since the cursor, or when the wait time elapses. Wait time is capped at maximum wait
+ * (DEFAULT_MAX_WAIT by default), so a client must poll again to wait longer. Malformed or negative
+ * "since" and "wait" parameters are answered with status code 400.<br/><br/>
+ * 
+ * IApiMock methods access the in-memory state directly without HTTP round trips; only host and port
+ * of given API URIs are ignored. Operation of REST service is the HTTP method and operation of SOAP
+ * service is the local name of the first element in SOAP body. Customized responses honour "code"
+ * and "headers" parameters and Content-Type header like HttpApiMock service does.<br/><br/>
+ * 
+ * Operations and their default responses are read from ws-mock.properties found in extra class path
+ * or class path. Operations not defined there are created on first use with status code 200 and
+ * content type application/json (REST) or text/xml (SOAP).<br/><br/>
+ * 
+ * Configuration:<br/>
+ * http.test.conductor.apiMock = fi.mystes.mock.InProcessApiMock
+ *
+ */
+public class InProcessApiMock implements IQueryableApiMock<InProcessApiMock>, IFaultInjectingApiMock<InProcessApiMock>, IMockHandler {
+	private static final Logger logger = Logger.getLogger(InProcessApiMock.class);
+	
+	/** Response header of services listing identifying the mock instance serving it */
+	private static final String INSTANCE_HEADER = "X-Mock-Instance";
+	
+	/** Response header of recorded requests and headers containing cursor of the next request */
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	
+	/** Parameter of recorded requests and headers URLs containing cursor of the first request */
+	public static final String SINCE_PARAMETER = "since";
+	
+	/** Parameter of recorded requests and headers URLs containing maximum time to wait for new requests */
+	public static final String WAIT_PARAMETER = "wait";
+	
+	/** Default maximum time in milliseconds a recorded requests or headers request is long-polled */
+	public static final long DEFAULT_MAX_WAIT = 10000;
+	
+	/** Mocked API definitions file name */
+	private static final String DEFINITIONS_FILE = "ws-mock.properties";
+	
+	/** Service listing, endpoint and operation management paths */
+	private static final Pattern SERVICE_PATH = Pattern.compile(
+			"/services(?:/([^/]+)/([^/]+)/(?:operations/([^/]+)/([^/]+)|endpoint(?:/.*)?))?/?$");
+	
+	/** StAX input factory used to resolve SOAP operations, access must be synchronized */
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	
+	static {
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	/** Mocked operations by type, service and operation name */
+	private final ConcurrentMap<String, MockOperation> operations = new ConcurrentHashMap<String, MockOperation>();
+	
+	/** Identifier of this mock instance, used to recognise it from health check response */
+	private final String instanceId = UUID.randomUUID().toString();
+	
+	/** Context path the mock is served at */
+	private volatile String contextPath = "";
+	
+	/** Boolean flag indicating whether the server serving the mock can close and reset connections */
+	private volatile boolean connectionFaultsSupported = true;
+	
+	/** Maximum time in milliseconds a recorded requests or headers request holds a server thread */
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+	
+	/** XML toolkit used to extract recorded SOAP payloads */
+	private final XmlToolkit xmlToolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+	
+	/**
+	 * Reads mocked API definitions from ws-mock.properties of the first extra class path directory containing
+	 * it, or from class path if none of them does.
+	 */
+	@Override
+	public void configure(String contextPath, String extraClasspath) throws Exception {
+		this.contextPath = contextPath != null && !contextPath.equals("/") ? contextPath : "";
+		if (extraClasspath != null) {
+			for (String entry : extraClasspath.split("[,;]")) {
+				File definitions = new File(entry.trim(), DEFINITIONS_FILE);
+				if (!entry.trim().isEmpty() && definitions.isFile()) {
+					InputStream inputStream = new FileInputStream(definitions);
+					try {
+						loadDefinitions(inputStream);
+					} finally {
+						inputStream.close();
+					}
+					logger.info("Mocked API definitions read from: " + definitions);
+					return;
+				}
+			}
+		}
+		InputStream inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(DEFINITIONS_FILE);
+		if (inputStream == null) {
+			logger.info("No " + DEFINITIONS_FILE + " found, operations are created on first use");
+			return;
+		}
+		try {
+			loadDefinitions(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		logger.info("Mocked API definitions read from class path");
+	}
+	
+	/**
+	 * Defines mocked operation and its default response. Customized responses and recorded requests
+	 * of an already defined operation are discarded.
+	 * 
+	 * @param type Service type, REST or SOAP
+	 * @param service Service name
+	 * @param operation HTTP method of REST operation or request element name of SOAP operation
+	 * @param defaultStatus Status code of default response
+	 * @param defaultContentType Content type of default response
+	 * 
+	 * @return Instance of InProcessApiMock
+	 */
+	public InProcessApiMock addOperation(String type, String service, String operation, int defaultStatus, String defaultContentType) {
+		operations.put(operationKey(type, service, operation), 
+				new MockOperation(type.toUpperCase(), service, operation, defaultStatus, defaultContentType));
+		return this;
+	}
+
+	/**
+	 * In-process mock is alive when services listing at given port is served by this very instance,
+	 * so a server left running by another mock instance is not mistaken for it.
+	 */
+	@Override
+	public boolean isAlive(Integer port) {
+		try {
+			HttpResponse<String> response = new RestRequest(null, 
+					"http://localhost:" + port + contextPath + "/services", "get").sendRequest();
+			if (response.getStatus() != 200) {
+				return false;
+			}
+			// Header name case is not preserved by all server backends
+			for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+				if (INSTANCE_HEADER.equalsIgnoreCase(header.getKey()) && header.getValue().contains(instanceId)) {
+					return true;
+				}
+			}
+			return false;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	@Override
+	public InProcessApiMock init(String uri) throws Exception {
+		logger.info("Initializing: " + uri);
+		getOperation(uri).init();
+		return this;
+	}
+
+	@Override
+	public InProcessApiMock reset() throws Exception {
+		for (MockOperation operation : operations.values()) {
+			operation.init();
+		}
+		return this;
+	}
+
+	/**
+	 * Sets whether the server serving the mock can close and reset connections. Servers which cannot,
+	 * e.g. fi.mystes.server.jdk.JdkServer without access to JDK internals, set this when the mock is
+	 * added to them. Faults cutting connections are then rejected when they are added.
+	 * 
+	 * @param connectionFaultsSupported True if connections can be cut, otherwise false
+	 * 
+	 * @return Instance of InProcessApiMock
+	 */
+	public InProcessApiMock setConnectionFaultsSupported(boolean connectionFaultsSupported) {
+		this.connectionFaultsSupported = connectionFaultsSupported;
+		return this;
+	}
+
+	/**
+	 * Sets maximum time recorded requests and headers requests are long-polled. Longer "wait"
+	 * parameters are cut to it, so that clients cannot hold server threads for arbitrary times.
+	 * 
+	 * @param maxWait Maximum wait time in milliseconds
+	 * 
+	 * @return Instance of InProcessApiMock
+	 */
+	public InProcessApiMock setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+		return this;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If response has faults cutting connections the server cannot inject
+	 */
+	@Override
+	public InProcessApiMock addCustomResponse(String uri, Response response) throws Exception {
+		checkFaults(response.getFaults());
+		MockOperation operation = getOperation(uri);
+		operation.addResponse(resolveResponse(operation, response));
+		return this;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If a response has faults cutting connections the server cannot inject
+	 */
+	@Override
+	public InProcessApiMock addCustomResponses(String uri, List<Response> responses) throws Exception {
+		for (Response response : responses) {
+			checkFaults(response.getFaults());
+		}
+		MockOperation operation = getOperation(uri);
+		for (Response response : responses) {
+			operation.addResponse(resolveResponse(operation, response));
+		}
+		return this;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If a response has faults cutting connections the server cannot inject
+	 */
+	@Override
+	public InProcessApiMock addCustomResponses(CustomResponseBatch batch) throws Exception {
+		for (List<Response> responses : batch.getCustomResponses().values()) {
+			for (Response response : responses) {
+				checkFaults(response.getFaults());
+			}
+		}
+		for (Map.Entry<String, List<Response>> uriResponses : batch.getCustomResponses().entrySet()) {
+			addCustomResponses(uriResponses.getKey(), uriResponses.getValue());
+		}
+		return this;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If faults cutting connections cannot be injected by the server
+	 */
+	@Override
+	public InProcessApiMock setFaults(String uri, List<Fault> faults) throws Exception {
+		checkFaults(faults);
+		getOperation(uri).setFaults(faults);
+		return this;
+	}
+
+	@Override
+	public RecordedRequests getRecordedRequests(String uri) throws Exception {
+		return getRecordedRequestsSince(uri, 0);
+	}
+
+	@Override
+	public RecordedRequests getRecordedRequestsSince(String uri, long cursor) throws Exception {
+		MockOperation operation = getOperation(uri);
+		List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+		long nextCursor = operation.getRecordedRequestsSince(cursor, requests);
+		return new RecordedRequests()
+				.setBody(createRecordedRequestsXml(operation, requests))
+				.setEndpointUrl(uri)
+				.addHeader("Content-Type", "text/xml")
+				.setNextCursor(nextCursor);
+	}
+
+	/**
+	 * Iterates over snapshot of recorded requests in memory. Content of each recorded request is the same
+	 * as in recorded requests XML and end point URL, method and headers are those of the original request.
+	 */
+	@Override
+	public RecordedRequestIterator streamRecordedRequests(String uri) throws Exception {
+		MockOperation operation = getOperation(uri);
+		return new RecordedRequestIterator(copyRecordedRequests(operation, operation.getRecordedRequests()));
+	}
+
+	@Override
+	public long visitRecordedRequests(String uri, RecordedRequestVisitor visitor) throws Exception {
+		RecordedRequestIterator requests = streamRecordedRequests(uri);
+		long visited = 0;
+		try {
+			while (requests.hasNext()) {
+				visited++;
+				if (!visitor.visit(requests.next())) {
+					break;
+				}
+			}
+		} finally {
+			requests.close();
+		}
+		return visited;
+	}
+
+	/**
+	 * Looks up recorded requests from in-memory indexes. Content of each recorded request is the same
+	 * as in recorded requests XML and index and recording time are those of the original request.
+	 */
+	@Override
+	public List<RecordedRequest> queryRecordedRequests(String uri, RecordedRequestQuery query) throws Exception {
+		MockOperation operation = getOperation(uri);
+		List<RecordedRequest> requests = copyRecordedRequests(operation, operation.query(query));
+		logger.debug("Query " + query + " matched " + requests.size() + " recorded requests of " + uri);
+		return requests;
+	}
+
+	@Override
+	public InProcessApiMock addBodyKey(String uri, BodyKey bodyKey) throws Exception {
+		getOperation(uri).addBodyKey(bodyKey);
+		return this;
+	}
+
+	/**
+	 * Waits on the mocked operation, which is notified whenever a request is recorded. Only requests
+	 * recorded since the previous notification are copied and matched.
+	 */
+	@Override
+	public List<RecordedRequest> awaitRecordedRequests(String uri, RecordedRequestPredicate predicate, int count, long timeout) throws Exception {
+		MockOperation operation = getOperation(uri);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		List<RecordedRequest> matches = new ArrayList<RecordedRequest>();
+		long cursor = 0;
+		long remaining = timeout;
+		do {
+			List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+			cursor = operation.awaitRecordedRequestsSince(cursor, requests, remaining);
+			for (RecordedRequest request : copyRecordedRequests(operation, requests)) {
+				if (matches.size() < count && (predicate == null || predicate.matches(request))) {
+					matches.add(request);
+				}
+			}
+			if (matches.size() >= count) {
+				return matches;
+			}
+			remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+		} while (remaining > 0);
+		throw new TimeoutException("Awaited " + count + " recorded requests from " + uri + " for " + timeout 
+				+ " ms, " + matches.size() + " matching requests recorded");
+	}
+
+	@Override
+	public RecordedHeaders getRecordedHeaders(String uri) throws Exception {
+		return getRecordedHeadersSince(uri, 0);
+	}
+
+	@Override
+	public RecordedHeaders getRecordedHeadersSince(String uri, long cursor) throws Exception {
+		List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+		long nextCursor = getOperation(uri).getRecordedRequestsSince(cursor, requests);
+		return new RecordedHeaders()
+				.setBody(createRecordedHeadersXml(requests))
+				.setEndpointUrl(uri)
+				.addHeader("Content-Type", "text/xml")
+				.setNextCursor(nextCursor);
+	}
+
+	/**
+	 * Helper method to parse non-negative number parameter.
+	 * 
+	 * @param parameters Request parameters
+	 * @param name Parameter name
+	 * 
+	 * @return Parsed parameter value or 0 if parameter is not given
+	 * 
+	 * @throws IllegalArgumentException If parameter is not a non-negative number
+	 */
+	private static long getNonNegativeParameter(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			long parsed = Long.parseLong(value.trim());
+			if (parsed >= 0) {
+				return parsed;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("Invalid \"" + name + "\" parameter: " + value);
+	}
+
+	/**
+	 * Serves mocked API endpoints and operation management URLs over HTTP.
+	 */
+	@Override
+	public Response handle(RecordedRequest request) throws Exception {
+		Matcher path = matchPath(request.getEndpoint());
+		if (path == null) {
+			return createTextResponse(404, "text/plain", "Not a mocked API: " + request.getEndpoint());
+		}
+		if (path.group(1) == null) {
+			return createTextResponse(200, "text/xml", createServicesXml()).addHeader(INSTANCE_HEADER, instanceId);
+		}
+		if (path.group(3) == null) {
+			MockOperation operation = getOperation(path.group(1), path.group(2), resolveOperationName(path.group(1), request));
+			if (logger.isDebugEnabled()) {
+				logger.debug("Request to " + operation.getType() + "/" + operation.getService() + "/" + operation.getName());
+			}
+			return operation.respond(request);
+		}
+		
+		MockOperation operation = getOperation(path.group(1), path.group(2), path.group(3));
+		String action = path.group(4);
+		if ("init".equals(action)) {
+			operation.init();
+			return createTextResponse(200, "text/plain", "Initialized");
+		} else if ("responses".equals(action) && "POST".equalsIgnoreCase(request.getMethod())) {
+			Response response = new Response().setBody(request.getContent()).setParameters(request.getParameters());
+			String contentType = getHeader(request.getHeaders(), "Content-Type");
+			if (contentType != null) {
+				response.addHeader("Content-Type", contentType);
+			}
+			operation.addResponse(resolveResponse(operation, response));
+			return createTextResponse(200, "text/plain", "Response added");
+		} else if ("recorded-requests".equals(action) || "recorded-request-headers".equals(action)) {
+			Map<String, String> parameters = request.getParameters() != null 
+					? request.getParameters() : Collections.<String, String>emptyMap();
+			long since;
+			long wait;
+			try {
+				since = getNonNegativeParameter(parameters, SINCE_PARAMETER);
+				wait = Math.min(getNonNegativeParameter(parameters, WAIT_PARAMETER), maxWait);
+			} catch (IllegalArgumentException e) {
+				return createTextResponse(400, "text/plain", e.getMessage());
+			}
+			List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+			long nextCursor = wait > 0 
+					? operation.awaitRecordedRequestsSince(since, requests, wait)
+					: operation.getRecordedRequestsSince(since, requests);
+			String xml = "recorded-requests".equals(action) 
+					? createRecordedRequestsXml(operation, requests) : createRecordedHeadersXml(requests);
+			return createTextResponse(200, "text/xml", xml).addHeader(NEXT_CURSOR_HEADER, String.valueOf(nextCursor));
+		}
+		return createTextResponse(404, "text/plain", "Unknown operation action: " + action);
+	}
+	
+	/**
+	 * Helper method to read operations from mocked API definitions.
+	 * 
+	 * @param inputStream Stream containing ws-mock.properties
+	 * 
+	 * @throws Exception If reading definitions fails
+	 */
+	private void loadDefinitions(InputStream inputStream) throws Exception {
+		Properties properties = new Properties();
+		properties.load(inputStream);
+		for (int i = 0; properties.getProperty("SERVICE[" + i + "].NAME") != null; i++) {
+			String service = "SERVICE[" + i + "]";
+			String name = properties.getProperty(service + ".NAME").trim();
+			String type = properties.getProperty(service + ".TYPE", "SOAP").trim().toUpperCase();
+			for (int j = 0; ; j++) {
+				String operation = service + ".OPERATION[" + j + "]";
+				String operationName = properties.getProperty(operation + ("REST".equals(type) ? ".HTTP_METHOD" : ".INPUT_MESSAGE"));
+				if (operationName == null) {
+					break;
+				}
+				addOperation(type, name, operationName.trim(),
+						Integer.parseInt(properties.getProperty(operation + ".DEFAULT_RESPONSE_CODE", "200").trim()),
+						properties.getProperty(operation + ".DEFAULT_RESPONSE_CONTENT_TYPE", defaultContentType(type)).trim());
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to return mocked operation of given operation management URI.
+	 * 
+	 * @param uri Operation management URI, e.g. http://localhost:8888/mock/services/REST/service/operations/POST/init
+	 * 
+	 * @return Instance of MockOperation
+	 * 
+	 * @throws Exception If given URI is not an operation management URI
+	 */
+	private MockOperation getOperation(String uri) throws Exception {
+		Matcher path = matchPath(uri);
+		if (path == null || path.group(3) == null) {
+			throw new Exception("Not a mocked API operation URI: " + uri);
+		}
+		return getOperation(path.group(1), path.group(2), path.group(3));
+	}
+	
+	/**
+	 * Helper method to return mocked operation, which is created with default response if it is not defined.
+	 * 
+	 * @param type Service type
+	 * @param service Service name
+	 * @param name Operation name
+	 * 
+	 * @return Instance of MockOperation
+	 */
+	private MockOperation getOperation(String type, String service, String name) {
+		String key = operationKey(type, service, name);
+		MockOperation operation = operations.get(key);
+		if (operation == null) {
+			String upperCaseType = type.toUpperCase();
+			MockOperation created = new MockOperation(upperCaseType, service, name, 200, defaultContentType(upperCaseType));
+			operation = operations.putIfAbsent(key, created);
+			if (operation == null) {
+				logger.info("Created undefined operation " + key);
+				operation = created;
+			}
+		}
+		return operation;
+	}
+	
+	/**
+	 * Helper method to resolve operation name of request sent to mocked API endpoint.
+	 * 
+	 * @param type Service type
+	 * @param request Received request
+	 * 
+	 * @return HTTP method of REST request or local name of the first SOAP body element
+	 * 
+	 * @throws Exception If SOAP request cannot be parsed
+	 */
+	private String resolveOperationName(String type, RecordedRequest request) throws Exception {
+		if ("REST".equalsIgnoreCase(type)) {
+			return request.getMethod().toUpperCase();
+		}
+		XMLStreamReader reader;
+		synchronized (inputFactory) {
+			reader = inputFactory.createXMLStreamReader(new StringReader(request.getContent()));
+		}
+		try {
+			boolean body = false;
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					if (body) {
+						return reader.getLocalName();
+					}
+					body = "Body".equals(reader.getLocalName());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		throw new XMLStreamException("SOAP body element not found in request to " + request.getEndpoint());
+	}
+	
+	/**
+	 * Helper method to create customized response with status code and headers resolved like HttpApiMock service does.
+	 * Delays, pacing and faults are kept as they are.
+	 * 
+	 * @param operation Operation response is added to
+	 * @param response Customized response
+	 * 
+	 * @return New instance of fi.mystes.response.Response
+	 */
+	private Response resolveResponse(MockOperation operation, Response response) {
+		Map<String, String> parameters = response.getParameters() != null 
+				? response.getParameters() : Collections.<String, String>emptyMap();
+		String code = parameters.get("code");
+		String contentType = getHeader(response.getHeaders(), "Content-Type");
+		
+		Response resolved = new Response()
+				.setBody(response.getContent() != null ? response.getContent() : "")
+				.setStatus(code != null ? Integer.parseInt(code.trim()) 
+						: response.getStatus() != null ? response.getStatus() : operation.getDefaultStatus())
+				.addHeader("Content-Type", contentType != null ? contentType : operation.getDefaultContentType())
+				.setFirstByteDelay(response.getFirstByteDelay())
+				.setBodyDuration(response.getBodyDuration())
+				.setBandwidth(response.getBandwidth())
+				.setFaults(response.getFaults())
+				.setCompression(response.getCompression());
+		addHeaders(resolved, parameters.get("headers"));
+		if (response.headersAsParameters()) {
+			addHeaders(resolved, response.getHeadersAsParameter());
+		}
+		byte[] compressed = resolved.getCompressedContent();
+		if (compressed != null) {
+			// Compressed when added, not when served
+			logger.debug("Custom response compressed with " + resolved.getCompression() + ": " 
+					+ resolved.getContent().length() + " characters to " + compressed.length + " bytes");
+		}
+		return resolved;
+	}
+	
+	/**
+	 * Helper method to copy recorded requests with their content as in recorded requests XML.
+	 * 
+	 * @param operation Mocked operation
+	 * @param recordedRequests Recorded requests of the operation
+	 * 
+	 * @return Copies of recorded requests
+	 */
+	private List<RecordedRequest> copyRecordedRequests(MockOperation operation, List<RecordedRequest> recordedRequests) {
+		List<RecordedRequest> requests = new ArrayList<RecordedRequest>(recordedRequests.size());
+		for (RecordedRequest request : recordedRequests) {
+			requests.add(new RecordedRequest()
+					.setBody(getRecordedContent(operation, request))
+					.setEndpointUrl(request.getEndpoint())
+					.setMethod(request.getMethod())
+					.setHeaders(request.getHeaders())
+					.setParameters(request.getParameters())
+					.setIndex(request.getIndex())
+					.setSequence(request.getSequence())
+					.setTimestamp(request.getTimestamp()));
+		}
+		return requests;
+	}
+	
+	/**
+	 * Helper method to create recorded requests XML of given requests.
+	 * 
+	 * @param operation Mocked operation
+	 * @param requests Recorded requests of the operation
+	 * 
+	 * @return Recorded requests XML
+	 */
+	private String createRecordedRequestsXml(MockOperation operation, List<RecordedRequest> requests) {
+		StringBuilder xml = new StringBuilder("<recorded-requests>");
+		for (RecordedRequest request : requests) {
+			String content = getRecordedContent(operation, request);
+			String element = toXmlElement(content);
+			xml.append(element != null ? element : toCData(content)).append('\n');
+		}
+		return xml.append("</recorded-requests>").toString();
+	}
+	
+	/**
+	 * Helper method to create recorded request headers XML of given requests.
+	 * 
+	 * @param requests Recorded requests
+	 * 
+	 * @return Recorded request headers XML
+	 */
+	private String createRecordedHeadersXml(List<RecordedRequest> requests) {
+		StringBuilder xml = new StringBuilder("<recorded-request-headers>");
+		for (RecordedRequest request : requests) {
+			xml.append("<request-headers>");
+			if (request.getHeaders() != null) {
+				for (Map.Entry<String, String> header : new TreeMap<String, String>(request.getHeaders()).entrySet()) {
+					xml.append("<header><name>").append(escape(header.getKey()))
+						.append("</name><value>").append(escape(header.getValue()))
+						.append("</value></header>");
+				}
+			}
+			xml.append("</request-headers>");
+		}
+		return xml.append("</recorded-request-headers>").toString();
+	}
+	
+	/**
+	 * Helper method to create XML listing mocked operations.
+	 * 
+	 * @return Services XML
+	 */
+	private String createServicesXml() {
+		StringBuilder xml = new StringBuilder("<services>");
+		for (MockOperation operation : new TreeMap<String, MockOperation>(operations).values()) {
+			xml.append("<operation type=\"").append(escape(operation.getType()))
+				.append("\" service=\"").append(escape(operation.getService()))
+				.append("\" name=\"").append(escape(operation.getName())).append("\"/>");
+		}
+		return xml.append("</services>").toString();
+	}
+	
+	/**
+	 * Helper method to return recorded content of request: payload element of SOAP request and
+	 * trimmed body of REST request.
+	 * 
+	 * @param operation Mocked operation request was sent to
+	 * @param request Recorded request
+	 * 
+	 * @return Recorded content
+	 */
+	private String getRecordedContent(MockOperation operation, RecordedRequest request) {
+		String content = request.getContent() != null ? request.getContent().trim() : "";
+		if (!"SOAP".equals(operation.getType())) {
+			return content;
+		}
+		try {
+			Document document = xmlToolkit.parse(content);
+			for (Node node = document.getDocumentElement().getFirstChild(); node != null; node = node.getNextSibling()) {
+				if (node instanceof Element && "Body".equals(node.getLocalName())) {
+					for (Node payload = node.getFirstChild(); payload != null; payload = payload.getNextSibling()) {
+						if (payload instanceof Element) {
+							return serialize(payload);
+						}
+					}
+				}
+			}
+		} catch (Exception e) {
+			logger.warn("Recorded SOAP request could not be parsed: " + e.getMessage());
+		}
+		return content;
+	}
+	
+	/**
+	 * Helper method to serialize given XML content as an element without XML declaration.
+	 * 
+	 * @param content Content to be serialized
+	 * 
+	 * @return Serialized element or null if content is not XML
+	 */
+	private String toXmlElement(String content) {
+		if (!content.startsWith("<")) {
+			return null;
+		}
+		try {
+			return serialize(xmlToolkit.parse(content).getDocumentElement());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Helper method to reject faults cutting connections if the server serving the mock cannot inject them,
+	 * because ignored faults would let tests expecting failures pass.
+	 * 
+	 * @param faults Faults to be checked, may be null
+	 * 
+	 * @throws UnsupportedOperationException If a fault cuts connection and connections cannot be cut
+	 */
+	private void checkFaults(List<Fault> faults) {
+		if (connectionFaultsSupported || faults == null) {
+			return;
+		}
+		for (Fault fault : faults) {
+			if (fault.cutsConnection()) {
+				throw new UnsupportedOperationException("Server cannot inject fault " + fault.getType() 
+						+ ", see fi.mystes.server.jdk.JdkServer.supportsConnectionFaults");
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to wrap content which is not XML into CDATA section, so that it can be told apart
+	 * from content of other recorded requests. CDATA end markers in content split it into adjacent sections.
+	 * 
+	 * @param content Content to be wrapped
+	 * 
+	 * @return CDATA section
+	 */
+	private static String toCData(String content) {
+		return "<![CDATA[" + content.replace("]]>", "]]]]><![CDATA[>") + "]]>";
+	}
+	
+	private static String serialize(Node node) {
+		LSSerializer serializer = ((DOMImplementationLS) node.getOwnerDocument().getImplementation()).createLSSerializer();
+		serializer.getDomConfig().setParameter("xml-declaration", false);
+		return serializer.writeToString(node);
+	}
+	
+	private static Response createTextResponse(int status, String contentType, String content) {
+		return new Response().setStatus(status).addHeader("Content-Type", contentType).setBody(content);
+	}
+	
+	/**
+	 * Helper method to add headers formatted as "headers" parameter value (name:value pairs separated by commas).
+	 * 
+	 * @param response Response to add headers to
+	 * @param headers Headers parameter value, may be null
+	 */
+	private static void addHeaders(Response response, String headers) {
+		if (headers == null) {
+			return;
+		}
+		for (String header : headers.split(",")) {
+			int separator = header.indexOf(':');
+			if (separator > 0) {
+				response.addHeader(header.substring(0, separator).trim(), header.substring(separator + 1).trim());
+			}
+		}
+	}
+	
+	private static String getHeader(Map<String, String> headers, String name) {
+		if (headers != null) {
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				if (header.getKey().equalsIgnoreCase(name)) {
+					return header.getValue();
+				}
+			}
+		}
+		return null;
+	}
+	
+	private static Matcher matchPath(String uri) {
+		String path = URI.create(uri).getPath();
+		Matcher matcher = SERVICE_PATH.matcher(path != null ? path : "");
+		return matcher.find() ? matcher : null;
+	}
+	
+	private static String operationKey(String type, String service, String operation) {
+		return type.toUpperCase() + "/" + service + "/" + operation;
+	}
+	
+	private static String defaultContentType(String type) {
+		return "REST".equals(type) ? "application/json" : "text/xml";
+	}
+	
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '<':
+					escaped.append("&lt;");
+					break;
+				case '>':
+					escaped.append("&gt;");
+					break;
+				case '&':
+					escaped.append("&amp;");
+					break;
+				case '"':
+					escaped.append("&quot;");
+					break;
+				default:
+					escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
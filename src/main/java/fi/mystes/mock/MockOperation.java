@@ -0,0 +1,384 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestQuery;
+import fi.mystes.response.Fault;
+import fi.mystes.response.Response;
+
+/**
+ * Mocked API operation of InProcessApiMock holding customized responses and recorded requests
+ * in memory. Customized responses are returned in the order they were added and default
+ * response is returned when there are none left.<br/><br/>
+ * 
+ * Recorded requests are indexed by header values and by values of body keys, and they are kept in
+ * recording time order, so that queries do not need to scan all of them. Threads awaiting recorded
+ * requests are notified when a request is recorded.
+ *
+ */
+class MockOperation {
+	
+	/** Service type, REST or SOAP */
+	private final String type;
+	
+	/** Service name */
+	private final String service;
+	
+	/** Operation name, HTTP method of REST operations or request element name of SOAP operations */
+	private final String name;
+	
+	/** Status code of default response */
+	private final int defaultStatus;
+	
+	/** Content type of default response */
+	private final String defaultContentType;
+	
+	/** Customized responses not returned yet */
+	private final LinkedList<Response> responses = new LinkedList<Response>();
+	
+	/** Fault mix injected into responses without faults of their own */
+	private List<Fault> faults = new ArrayList<Fault>();
+	
+	/** Recorded requests in recorded order */
+	private final List<RecordedRequest> recordedRequests = new ArrayList<RecordedRequest>();
+	
+	/** Positions of recorded requests by lower case header name and header value */
+	private final Map<String, Map<String, List<Integer>>> headerIndex = new HashMap<String, Map<String, List<Integer>>>();
+	
+	/** Keys extracted from bodies of recorded requests by key name */
+	private final Map<String, BodyKey> bodyKeys = new LinkedHashMap<String, BodyKey>();
+	
+	/** Positions of recorded requests by body key name and extracted value */
+	private final Map<String, Map<String, List<Integer>>> bodyKeyIndex = new HashMap<String, Map<String, List<Integer>>>();
+	
+	/** Recording time of the latest recorded request, recording times never decrease */
+	private long lastTimestamp;
+	
+	/** Sequence number of the first recorded request, sequence numbers are not reused after init */
+	private long firstSequence;
+	
+	/**
+	 * Constructor with operation identification and default response.
+	 * 
+	 * @param type Service type
+	 * @param service Service name
+	 * @param name Operation name
+	 * @param defaultStatus Status code of default response
+	 * @param defaultContentType Content type of default response
+	 */
+	MockOperation(String type, String service, String name, int defaultStatus, String defaultContentType) {
+		this.type = type;
+		this.service = service;
+		this.name = name;
+		this.defaultStatus = defaultStatus;
+		this.defaultContentType = defaultContentType;
+	}
+	
+	String getType() {
+		return type;
+	}
+	
+	String getService() {
+		return service;
+	}
+	
+	String getName() {
+		return name;
+	}
+	
+	int getDefaultStatus() {
+		return defaultStatus;
+	}
+	
+	String getDefaultContentType() {
+		return defaultContentType;
+	}
+	
+	/**
+	 * Removes customized responses, faults and recorded requests. Body keys are kept.
+	 */
+	synchronized void init() {
+		responses.clear();
+		faults = new ArrayList<Fault>();
+		firstSequence += recordedRequests.size();
+		recordedRequests.clear();
+		headerIndex.clear();
+		for (Map<String, List<Integer>> values : bodyKeyIndex.values()) {
+			values.clear();
+		}
+	}
+	
+	/**
+	 * Adds key extracted from bodies of recorded requests. Requests already recorded are indexed too.
+	 * 
+	 * @param bodyKey Body key
+	 */
+	synchronized void addBodyKey(BodyKey bodyKey) {
+		bodyKeys.put(bodyKey.getName(), bodyKey);
+		Map<String, List<Integer>> values = new HashMap<String, List<Integer>>();
+		bodyKeyIndex.put(bodyKey.getName(), values);
+		for (int position = 0; position < recordedRequests.size(); position++) {
+			indexBody(bodyKey, values, recordedRequests.get(position), position);
+		}
+	}
+	
+	/**
+	 * Sets fault mix injected into responses without faults of their own.
+	 * 
+	 * @param faults Faults with their probabilities
+	 */
+	synchronized void setFaults(List<Fault> faults) {
+		this.faults = new ArrayList<Fault>(faults);
+	}
+	
+	/**
+	 * Adds customized response to be returned after previously added ones.
+	 * 
+	 * @param response Customized response with status code and headers resolved
+	 */
+	synchronized void addResponse(Response response) {
+		responses.add(response);
+	}
+	
+	/**
+	 * Records given request and returns next customized response or default response. Operation's
+	 * faults are attached to the response unless it has faults of its own.
+	 * 
+	 * @param request Request to be recorded
+	 * 
+	 * @return Instance of fi.mystes.response.Response
+	 */
+	synchronized Response respond(RecordedRequest request) {
+		record(request);
+		Response response = responses.poll();
+		if (response == null) {
+			response = new Response().setStatus(defaultStatus).addHeader("Content-Type", defaultContentType).setBody("");
+		}
+		if (!faults.isEmpty() && (response.getFaults() == null || response.getFaults().isEmpty())) {
+			response.setFaults(faults);
+		}
+		return response;
+	}
+	
+	/**
+	 * Returns snapshot of recorded requests.
+	 * 
+	 * @return Recorded requests in recorded order
+	 */
+	synchronized List<RecordedRequest> getRecordedRequests() {
+		return new ArrayList<RecordedRequest>(recordedRequests);
+	}
+	
+	/**
+	 * Adds snapshot of requests recorded since given cursor to given list. A cursor is the sequence number
+	 * of the first request to return, so requests recorded before the operation was last initialized are
+	 * never returned.
+	 * 
+	 * @param cursor Sequence number of the first request, 0 for all recorded requests
+	 * @param requests List recorded requests are added to in recorded order
+	 * 
+	 * @return Cursor of the next request to be recorded
+	 */
+	synchronized long getRecordedRequestsSince(long cursor, List<RecordedRequest> requests) {
+		int first = (int) Math.max(0, Math.min(cursor - firstSequence, recordedRequests.size()));
+		requests.addAll(recordedRequests.subList(first, recordedRequests.size()));
+		return firstSequence + recordedRequests.size();
+	}
+	
+	/**
+	 * Waits until a request is recorded since given cursor or timeout elapses, then adds snapshot of
+	 * requests recorded since the cursor to given list. A cursor before the operation was last initialized
+	 * waits for the first request recorded after the init.
+	 * 
+	 * @param cursor Sequence number of the first request, 0 for all recorded requests
+	 * @param requests List recorded requests are added to in recorded order
+	 * @param timeout Maximum time to wait in milliseconds
+	 * 
+	 * @return Cursor of the next request to be recorded
+	 * 
+	 * @throws InterruptedException If waiting thread is interrupted
+	 */
+	synchronized long awaitRecordedRequestsSince(long cursor, List<RecordedRequest> requests, long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long remaining = deadline - System.nanoTime();
+		// Cursor held over init refers to requests already removed, so wait for the first new request
+		while (firstSequence + recordedRequests.size() <= Math.max(cursor, firstSequence) && remaining > 0) {
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return getRecordedRequestsSince(cursor, requests);
+	}
+	
+	/**
+	 * Returns recorded requests matching given query. Equality criteria are answered from indexes,
+	 * starting from the most selective one, and recording time with binary search.
+	 * 
+	 * @param query Query criteria
+	 * 
+	 * @return Matching recorded requests in recorded order
+	 * 
+	 * @throws IllegalArgumentException If query refers to body key not added to the operation
+	 */
+	synchronized List<RecordedRequest> query(RecordedRequestQuery query) {
+		List<List<Integer>> candidates = new ArrayList<List<Integer>>();
+		for (Map.Entry<String, String> header : query.getHeaders().entrySet()) {
+			candidates.add(lookup(headerIndex.get(header.getKey().toLowerCase()), header.getValue()));
+		}
+		for (Map.Entry<String, String> bodyKey : query.getBodyKeys().entrySet()) {
+			Map<String, List<Integer>> values = bodyKeyIndex.get(bodyKey.getKey());
+			if (values == null) {
+				throw new IllegalArgumentException("Body key " + bodyKey.getKey() + " is not indexed by operation " 
+						+ type + "/" + service + "/" + name);
+			}
+			candidates.add(lookup(values, bodyKey.getValue()));
+		}
+		int first = firstRecordedSince(query.getSince());
+		int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+		
+		List<RecordedRequest> matches = new ArrayList<RecordedRequest>();
+		if (candidates.isEmpty()) {
+			for (int position = first; position < recordedRequests.size() && matches.size() < limit; position++) {
+				matches.add(recordedRequests.get(position));
+			}
+			return matches;
+		}
+		Collections.sort(candidates, new Comparator<List<Integer>>() {
+			public int compare(List<Integer> a, List<Integer> b) {
+				return Integer.compare(a.size(), b.size());
+			}
+		});
+		List<Integer> mostSelective = candidates.get(0);
+		int start = Collections.binarySearch(mostSelective, first);
+		for (int i = start >= 0 ? start : -start - 1; i < mostSelective.size() && matches.size() < limit; i++) {
+			Integer position = mostSelective.get(i);
+			boolean matching = true;
+			for (int j = 1; j < candidates.size() && matching; j++) {
+				matching = Collections.binarySearch(candidates.get(j), position) >= 0;
+			}
+			if (matching) {
+				matches.add(recordedRequests.get(position));
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	 * Helper method to record and index given request.
+	 * 
+	 * @param request Request to be recorded
+	 */
+	private void record(RecordedRequest request) {
+		int position = recordedRequests.size();
+		lastTimestamp = Math.max(lastTimestamp, System.currentTimeMillis());
+		request.setIndex(position).setSequence(firstSequence + position).setTimestamp(lastTimestamp);
+		recordedRequests.add(request);
+		
+		if (request.getHeaders() != null) {
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				String headerName = header.getKey().toLowerCase();
+				Map<String, List<Integer>> values = headerIndex.get(headerName);
+				if (values == null) {
+					values = new HashMap<String, List<Integer>>();
+					headerIndex.put(headerName, values);
+				}
+				index(values, header.getValue(), position);
+				if (header.getValue() != null && header.getValue().indexOf(',') >= 0) {
+					// Multiple values of a header are joined with commas
+					for (String value : header.getValue().split(",")) {
+						index(values, value.trim(), position);
+					}
+				}
+			}
+		}
+		for (BodyKey bodyKey : bodyKeys.values()) {
+			indexBody(bodyKey, bodyKeyIndex.get(bodyKey.getName()), request, position);
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Helper method to index value extracted from body of recorded request.
+	 * 
+	 * @param bodyKey Body key
+	 * @param values Positions by extracted value
+	 * @param request Recorded request
+	 * @param position Position of recorded request
+	 */
+	private static void indexBody(BodyKey bodyKey, Map<String, List<Integer>> values, RecordedRequest request, int position) {
+		String value = bodyKey.extract(request.getContent());
+		if (value != null) {
+			index(values, value, position);
+		}
+	}
+	
+	/**
+	 * Helper method to add position to positions of given value, keeping positions ascending and unique.
+	 * 
+	 * @param values Positions by value
+	 * @param value Indexed value
+	 * @param position Position of recorded request
+	 */
+	private static void index(Map<String, List<Integer>> values, String value, int position) {
+		if (value == null) {
+			return;
+		}
+		List<Integer> positions = values.get(value);
+		if (positions == null) {
+			positions = new ArrayList<Integer>();
+			values.put(value, positions);
+		}
+		if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+			positions.add(position);
+		}
+	}
+	
+	private static List<Integer> lookup(Map<String, List<Integer>> values, String value) {
+		List<Integer> positions = values != null ? values.get(value) : null;
+		return positions != null ? positions : Collections.<Integer>emptyList();
+	}
+	
+	/**
+	 * Helper method to find position of the first request recorded at or after given time.
+	 * 
+	 * @param since Milliseconds since epoch
+	 * 
+	 * @return Position of the first matching request, number of recorded requests if there is none
+	 */
+	private int firstRecordedSince(long since) {
+		int low = 0;
+		int high = recordedRequests.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (recordedRequests.get(middle).getTimestamp() < since) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+
+/**
+ * Append-only log of captured exchanges. The log file is written through memory-mapped regions,
+ * so appending an exchange costs one encoding and one memory copy. Existing log is appended to.<br/><br/>
+ * 
+ * File format: 8 byte magic "HTCCAP01" followed by records, each a 4 byte big-endian length and
+ * the encoded exchange. Numbers in an encoded exchange are variable-length and strings are UTF-8
+ * prefixed with their length. A zero length marks the end of the log, so a log of a crashed JVM
+ * can be read up to its last complete record.
+ *
+ */
+public class CaptureLog implements Closeable {
+	private static final Logger logger = Logger.getLogger(CaptureLog.class);
+	
+	/** Magic bytes at the start of a capture log file */
+	private static final byte[] MAGIC = "HTCCAP01".getBytes(StandardCharsets.US_ASCII);
+	
+	/** Number of magic bytes */
+	static final int MAGIC_LENGTH = MAGIC.length;
+	
+	/** Default size of memory-mapped regions in bytes */
+	private static final int DEFAULT_REGION_SIZE = 8 * 1024 * 1024;
+	
+	/** Log file */
+	private final File file;
+	
+	/** Size of memory-mapped regions in bytes */
+	private final int regionSize;
+	
+	/** Log file opened for writing */
+	private final RandomAccessFile randomAccessFile;
+	
+	/** Channel of log file */
+	private final FileChannel channel;
+	
+	/** Currently mapped region */
+	private MappedByteBuffer region;
+	
+	/** File position of currently mapped region */
+	private long regionPosition;
+	
+	/** Number of exchanges appended since log was opened */
+	private long count;
+	
+	/**
+	 * Constructor with log file. Log file and its parent directories are created if they do not exist.
+	 * 
+	 * @param file Log file
+	 * 
+	 * @throws IOException If opening log file fails or it is not a capture log
+	 */
+	public CaptureLog(File file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+	
+	/**
+	 * Constructor with log file and size of memory-mapped regions.
+	 * 
+	 * @param file Log file
+	 * @param regionSize Size of memory-mapped regions in bytes
+	 * 
+	 * @throws IOException If opening log file fails or it is not a capture log
+	 */
+	public CaptureLog(File file, int regionSize) throws IOException {
+		this.file = file;
+		this.regionSize = regionSize;
+		if (file.getAbsoluteFile().getParentFile() != null) {
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+		
+		long end = MAGIC.length;
+		if (channel.size() == 0) {
+			map(0, MAGIC.length);
+			region.put(MAGIC);
+		} else {
+			end = findEnd();
+			map(end, 0);
+		}
+		logger.info("Capture log " + file + " opened at position " + end);
+	}
+	
+	/**
+	 * Appends exchange to log.
+	 * 
+	 * @param exchange Captured exchange
+	 * 
+	 * @throws IOException If writing to log fails
+	 */
+	public void append(CapturedExchange exchange) throws IOException {
+		byte[] record = encode(exchange);
+		synchronized (this) {
+			if (!channel.isOpen()) {
+				throw new IOException("Capture log " + file + " is closed");
+			}
+			if (region.remaining() < 4 + record.length) {
+				map(regionPosition + region.position(), 4 + record.length);
+			}
+			region.putInt(record.length);
+			region.put(record);
+			count++;
+		}
+	}
+	
+	/**
+	 * Returns log file.
+	 * 
+	 * @return Instance of java.io.File
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Returns number of exchanges appended since log was opened.
+	 * 
+	 * @return Number of appended exchanges
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns size of log content in bytes.
+	 * 
+	 * @return Position the next record is written to
+	 */
+	public synchronized long getSize() {
+		return regionPosition + region.position();
+	}
+	
+	/**
+	 * Flushes written records to disk and truncates unused mapped space from the end of log file.
+	 * 
+	 * @throws IOException If closing log file fails
+	 */
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		long size = getSize();
+		region.force();
+		try {
+			channel.truncate(size);
+		} catch (IOException e) {
+			// Mapped file cannot be truncated on every platform, zero length marks the end anyway
+			logger.debug("Truncating capture log " + file + " failed", e);
+		}
+		randomAccessFile.close();
+		logger.info("Capture log " + file + " closed: " + count + " exchanges appended, " + size + " bytes");
+	}
+	
+	/**
+	 * Reads all exchanges from given log file into memory. Use CaptureLogIterator to read large logs.
+	 * 
+	 * @param file Log file
+	 * 
+	 * @return Captured exchanges in the order they were appended
+	 * 
+	 * @throws IOException If reading log file fails or it is not a capture log
+	 */
+	public static List<CapturedExchange> read(File file) throws IOException {
+		List<CapturedExchange> exchanges = new ArrayList<CapturedExchange>();
+		CaptureLogIterator iterator = new CaptureLogIterator(file);
+		try {
+			for (CapturedExchange exchange : iterator) {
+				exchanges.add(exchange);
+			}
+		} finally {
+			iterator.close();
+		}
+		return exchanges;
+	}
+	
+	/**
+	 * Helper method to map next region of log file for writing.
+	 * 
+	 * @param position File position of the region
+	 * @param minSize Minimum size of the region
+	 * 
+	 * @throws IOException If mapping fails
+	 */
+	private void map(long position, int minSize) throws IOException {
+		if (region != null) {
+			region.force();
+		}
+		region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(regionSize, minSize));
+		regionPosition = position;
+	}
+	
+	/**
+	 * Helper method to find end of existing log.
+	 * 
+	 * @return File position after the last complete record
+	 * 
+	 * @throws IOException If reading log file fails or it is not a capture log
+	 */
+	private long findEnd() throws IOException {
+		CaptureLogIterator iterator = new CaptureLogIterator(file);
+		try {
+			return iterator.skipToEnd();
+		} finally {
+			iterator.close();
+		}
+	}
+	
+	static void checkMagic(ByteBuffer buffer, File file) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		if (buffer.remaining() < magic.length) {
+			throw new IOException("Not a capture log: " + file);
+		}
+		buffer.get(magic);
+		for (int i = 0; i < magic.length; i++) {
+			if (magic[i] != MAGIC[i]) {
+				throw new IOException("Not a capture log: " + file);
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to encode exchange to bytes.
+	 * 
+	 * @param exchange Captured exchange
+	 * 
+	 * @return Encoded exchange
+	 */
+	private static byte[] encode(CapturedExchange exchange) {
+		RecordedRequest request = exchange.getRequest();
+		Response response = exchange.getResponse();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256 
+				+ length(request.getContent()) + length(response.getContent()));
+		writeNumber(out, exchange.getTimestamp());
+		writeNumber(out, exchange.getDurationNanos());
+		writeString(out, request.getMethod());
+		writeString(out, request.getEndpoint());
+		writeHeaders(out, request.getHeaders());
+		writeString(out, request.getContent());
+		writeNumber(out, response.getStatus() != null ? response.getStatus() : 200);
+		writeHeaders(out, response.getHeaders());
+		writeString(out, response.getContent());
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Helper method to decode exchange from bytes.
+	 * 
+	 * @param buffer Encoded exchange
+	 * 
+	 * @return Instance of CapturedExchange
+	 */
+	static CapturedExchange decode(ByteBuffer buffer) {
+		CapturedExchange exchange = new CapturedExchange()
+				.setTimestamp(readNumber(buffer))
+				.setDurationNanos(readNumber(buffer));
+		exchange.setRequest(new RecordedRequest()
+				.setMethod(readString(buffer))
+				.setEndpointUrl(readString(buffer))
+				.setHeaders(readHeaders(buffer))
+				.setBody(readString(buffer)));
+		exchange.setResponse(new Response()
+				.setStatus((int) readNumber(buffer))
+				.setHeaders(readHeaders(buffer))
+				.setBody(readString(buffer)));
+		return exchange;
+	}
+	
+	private static int length(String value) {
+		return value != null ? value.length() : 0;
+	}
+	
+	private static void writeNumber(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+	
+	private static long readNumber(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+	
+	/**
+	 * Helper method to write string, null is written as length 0 and read back as null.
+	 */
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		if (value == null) {
+			writeNumber(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeNumber(out, bytes.length + 1);
+		out.write(bytes, 0, bytes.length);
+	}
+	
+	private static String readString(ByteBuffer buffer) {
+		int length = (int) readNumber(buffer);
+		if (length == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length - 1];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	private static void writeHeaders(ByteArrayOutputStream out, Map<String, String> headers) {
+		writeNumber(out, headers != null ? headers.size() : 0);
+		if (headers != null) {
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				writeString(out, header.getKey());
+				writeString(out, header.getValue());
+			}
+		}
+	}
+	
+	private static Map<String, String> readHeaders(ByteBuffer buffer) {
+		int count = (int) readNumber(buffer);
+		Map<String, String> headers = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			headers.put(readString(buffer), readString(buffer));
+		}
+		return headers;
+	}
+}
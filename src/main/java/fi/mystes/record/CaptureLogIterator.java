@@ -0,0 +1,231 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator reading captured exchanges one at a time from capture log. The log file is read through
+ * memory-mapped windows of fixed size, so neither memory usage nor the 2 GB limit of a single mapping
+ * depends on the size of the log. Iterator must be closed if it is not read to the end.<br/><br/>
+ *
+ * Example:<br/>
+ * CaptureLogIterator exchanges = new CaptureLogIterator(file);<br/>
+ * try {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;for (CapturedExchange exchange : exchanges) {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;...<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;}<br/>
+ * } finally {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;exchanges.close();<br/>
+ * }
+ *
+ */
+public class CaptureLogIterator implements Iterator<CapturedExchange>, Iterable<CapturedExchange>, Closeable {
+	
+	/** Default size of memory-mapped windows in bytes */
+	private static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+	
+	/** Log file */
+	private final File file;
+	
+	/** Log file opened for reading */
+	private final RandomAccessFile randomAccessFile;
+	
+	/** Channel of log file */
+	private final FileChannel channel;
+	
+	/** Size of log file when iterator was created, later appends are not read */
+	private final long size;
+	
+	/** Minimum size of memory-mapped windows in bytes */
+	private final int windowSize;
+	
+	/** Currently mapped window */
+	private MappedByteBuffer window;
+	
+	/** File position of currently mapped window */
+	private long windowPosition;
+	
+	/** File position of next record */
+	private long position;
+	
+	/** Next exchange, null if not read yet */
+	private CapturedExchange next;
+	
+	/** Boolean flag indicating whether iterator has been closed */
+	private boolean closed;
+	
+	/**
+	 * Constructor with log file.
+	 * 
+	 * @param file Log file
+	 * 
+	 * @throws IOException If opening log file fails or it is not a capture log
+	 */
+	public CaptureLogIterator(File file) throws IOException {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * Constructor with log file and size of memory-mapped windows.
+	 * 
+	 * @param file Log file
+	 * @param windowSize Minimum size of memory-mapped windows in bytes, a larger window is mapped for larger records
+	 * 
+	 * @throws IOException If opening log file fails or it is not a capture log
+	 */
+	public CaptureLogIterator(File file, int windowSize) throws IOException {
+		this.file = file;
+		this.windowSize = windowSize;
+		this.randomAccessFile = new RandomAccessFile(file, "r");
+		this.channel = randomAccessFile.getChannel();
+		this.size = channel.size();
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(CaptureLog.MAGIC_LENGTH);
+			while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+				// Read until magic is complete or end of file
+			}
+			magic.flip();
+			CaptureLog.checkMagic(magic, file);
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+		this.position = CaptureLog.MAGIC_LENGTH;
+	}
+	
+	/**
+	 * Returns file position of next record, which after the last record is the end of log content.
+	 * 
+	 * @return File position
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
+	public Iterator<CapturedExchange> iterator() {
+		return this;
+	}
+
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			ByteBuffer record;
+			try {
+				record = nextRecord();
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException("Reading capture log " + file + " failed", e);
+			}
+			if (record == null) {
+				close();
+			} else {
+				next = CaptureLog.decode(record);
+			}
+		}
+		return next != null;
+	}
+
+	public CapturedExchange next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		CapturedExchange exchange = next;
+		next = null;
+		return exchange;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Captured exchanges cannot be removed");
+	}
+	
+	/**
+	 * Closes log file.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		next = null;
+		window = null;
+		try {
+			randomAccessFile.close();
+		} catch (IOException e) {
+			// Nothing is written, so nothing is lost
+		}
+	}
+	
+	/**
+	 * Skips remaining records without decoding them.
+	 * 
+	 * @return File position after the last complete record
+	 * 
+	 * @throws IOException If reading log file fails
+	 */
+	long skipToEnd() throws IOException {
+		while (nextRecord() != null) {
+			// Position is advanced by each record
+		}
+		return position;
+	}
+	
+	/**
+	 * Helper method to read next record. A zero or incomplete length marks the end of log.
+	 * 
+	 * @return Buffer containing encoded exchange or null if there are no more records
+	 * 
+	 * @throws IOException If mapping log file fails
+	 */
+	private ByteBuffer nextRecord() throws IOException {
+		if (size - position < 4) {
+			return null;
+		}
+		mapWindow(4);
+		int length = window.getInt((int) (position - windowPosition));
+		if (length <= 0 || length > size - position - 4) {
+			return null;
+		}
+		mapWindow(4 + length);
+		ByteBuffer record = window.duplicate();
+		int offset = (int) (position - windowPosition) + 4;
+		record.limit(offset + length);
+		record.position(offset);
+		position += 4 + length;
+		return record.slice();
+	}
+	
+	/**
+	 * Helper method to map window containing given number of bytes from current position.
+	 * 
+	 * @param length Number of bytes needed
+	 * 
+	 * @throws IOException If mapping fails
+	 */
+	private void mapWindow(int length) throws IOException {
+		if (window == null || position < windowPosition || position + length > windowPosition + window.limit()) {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Math.max(windowSize, length)));
+			windowPosition = position;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+import fi.mystes.mock.CustomResponseBatch;
+import fi.mystes.mock.IApiMock;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+
+/**
+ * Loader turning captured exchanges into customized responses of mocked APIs, so that traffic
+ * recorded from a real downstream can be replayed by the API mock.<br/><br/>
+ * 
+ * Downstream URL prefixes are mapped to mocked services. Each captured response is added to the
+ * operation of the mapped service in capture order: HTTP method of REST request or local name of
+ * the first SOAP body element. Exchanges not matching any service are skipped.<br/><br/>
+ * 
+ * Response headers are passed as a headers parameter, which cannot express values containing commas.
+ * Such headers are left out, as are Content-Length, Transfer-Encoding and Connection.
+ *
+ */
+public class CaptureStubLoader {
+	private static final Logger logger = Logger.getLogger(CaptureStubLoader.class);
+	
+	/** Lower case names of response headers not added to customized responses */
+	private static final Set<String> EXCLUDED_HEADERS = new HashSet<String>(Arrays.asList(
+			"content-length", "transfer-encoding", "connection"));
+	
+	/** Factory for reading operation names of SOAP requests */
+	private final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	
+	/** Base URL of API mock, e.g. http://localhost:8888/mock */
+	private final String mockBaseUrl;
+	
+	/** Mocked services as type and name pairs by downstream URL prefix */
+	private final Map<String, String[]> services = new LinkedHashMap<String, String[]>();
+	
+	/**
+	 * Constructor with base URL of API mock captured responses are added to.
+	 * 
+	 * @param mockBaseUrl Base URL of API mock, e.g. HttpTestConductor.mockBaseUrl()
+	 */
+	public CaptureStubLoader(String mockBaseUrl) {
+		this.mockBaseUrl = mockBaseUrl.endsWith("/") ? mockBaseUrl.substring(0, mockBaseUrl.length() - 1) : mockBaseUrl;
+	}
+	
+	/**
+	 * Maps downstream URL prefix to a mocked service. The longest matching prefix is used.
+	 * 
+	 * @param urlPrefix Downstream URL prefix, e.g. http://downstream:8080/api/customers
+	 * @param type Service type: REST or SOAP
+	 * @param service Service name as in ws-mock.properties
+	 * 
+	 * @return Instance of CaptureStubLoader
+	 */
+	public CaptureStubLoader addService(String urlPrefix, String type, String service) {
+		services.put(urlPrefix, new String[] {type.toUpperCase(), service});
+		return this;
+	}
+	
+	/**
+	 * Creates customized responses of captured exchanges.
+	 * 
+	 * @param exchanges Captured exchanges in capture order
+	 * 
+	 * @return Instance of CustomResponseBatch
+	 * 
+	 * @throws Exception If operation name of a SOAP request cannot be resolved
+	 */
+	public CustomResponseBatch createBatch(List<CapturedExchange> exchanges) throws Exception {
+		CustomResponseBatch batch = new CustomResponseBatch();
+		for (CapturedExchange exchange : exchanges) {
+			RecordedRequest request = exchange.getRequest();
+			String[] service = findService(request.getEndpoint());
+			if (service == null) {
+				logger.debug("No mocked service for captured request to " + request.getEndpoint());
+				continue;
+			}
+			String operation = "REST".equals(service[0]) 
+					? request.getMethod().toUpperCase() : resolveSoapOperation(request);
+			batch.addCustomResponse(mockBaseUrl + "/services/" + service[0] + "/" + service[1] 
+					+ "/operations/" + operation + "/responses", createResponse(exchange.getResponse()));
+		}
+		return batch;
+	}
+	
+	/**
+	 * Reads capture log and adds customized responses of captured exchanges to API mock.
+	 * 
+	 * @param apiMock API mock to add customized responses to
+	 * @param file Capture log file
+	 * 
+	 * @return Number of customized responses added
+	 * 
+	 * @throws Exception If reading capture log or adding customized responses fails
+	 */
+	public int load(IApiMock<?> apiMock, File file) throws Exception {
+		CustomResponseBatch batch = createBatch(CaptureLog.read(file));
+		if (!batch.isEmpty()) {
+			apiMock.addCustomResponses(batch);
+		}
+		logger.info("Loaded " + batch.size() + " captured responses from " + file);
+		return batch.size();
+	}
+	
+	/**
+	 * Helper method to find mocked service of downstream URL by the longest matching prefix.
+	 * 
+	 * @param url Downstream URL
+	 * 
+	 * @return Service type and name or null if none matches
+	 */
+	private String[] findService(String url) {
+		String[] found = null;
+		int foundLength = -1;
+		for (Map.Entry<String, String[]> service : services.entrySet()) {
+			if (url.startsWith(service.getKey()) && service.getKey().length() > foundLength) {
+				found = service.getValue();
+				foundLength = service.getKey().length();
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Helper method to create customized response of captured response.
+	 * 
+	 * @param captured Captured response
+	 * 
+	 * @return New instance of fi.mystes.response.Response
+	 */
+	private static Response createResponse(Response captured) {
+		Response response = new Response()
+				.setStatus(captured.getStatus() != null ? captured.getStatus() : 200)
+				.setBody(captured.getContent() != null ? captured.getContent() : "")
+				.setHeadersAsParameters(true);
+		if (captured.getHeaders() != null) {
+			for (Map.Entry<String, String> header : captured.getHeaders().entrySet()) {
+				if (EXCLUDED_HEADERS.contains(header.getKey().toLowerCase())) {
+					continue;
+				}
+				if (header.getValue().indexOf(',') >= 0) {
+					logger.debug("Skipping captured header " + header.getKey() + " containing commas");
+					continue;
+				}
+				response.addHeader(header.getKey(), header.getValue());
+			}
+		}
+		return response;
+	}
+	
+	/**
+	 * Helper method to resolve operation name of captured SOAP request.
+	 * 
+	 * @param request Captured request
+	 * 
+	 * @return Local name of the first SOAP body element
+	 * 
+	 * @throws Exception If request cannot be parsed
+	 */
+	private String resolveSoapOperation(RecordedRequest request) throws Exception {
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(request.getContent()));
+		try {
+			boolean body = false;
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					if (body) {
+						return reader.getLocalName();
+					}
+					body = "Body".equals(reader.getLocalName());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		throw new XMLStreamException("SOAP body element not found in captured request to " + request.getEndpoint());
+	}
+}
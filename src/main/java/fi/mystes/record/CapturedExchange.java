@@ -0,0 +1,123 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+
+/**
+ * Request and response pair captured by RecordingProxy. Request endpoint URL is the downstream URL
+ * the request was forwarded to.
+ *
+ */
+public class CapturedExchange {
+	
+	/** Time request was received in milliseconds since epoch */
+	private long timestamp;
+	
+	/** Time downstream took to respond in nanoseconds */
+	private long durationNanos;
+	
+	/** Captured request */
+	private RecordedRequest request;
+	
+	/** Captured response */
+	private Response response;
+	
+	/**
+	 * Sets time request was received.
+	 * 
+	 * @param timestamp Milliseconds since epoch
+	 * 
+	 * @return Instance of CapturedExchange
+	 */
+	public CapturedExchange setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+		return this;
+	}
+	
+	/**
+	 * Returns time request was received.
+	 * 
+	 * @return Milliseconds since epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Sets time downstream took to respond.
+	 * 
+	 * @param durationNanos Duration in nanoseconds
+	 * 
+	 * @return Instance of CapturedExchange
+	 */
+	public CapturedExchange setDurationNanos(long durationNanos) {
+		this.durationNanos = durationNanos;
+		return this;
+	}
+	
+	/**
+	 * Returns time downstream took to respond.
+	 * 
+	 * @return Duration in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+	
+	/**
+	 * Sets captured request.
+	 * 
+	 * @param request Request with downstream endpoint URL, method, headers and body
+	 * 
+	 * @return Instance of CapturedExchange
+	 */
+	public CapturedExchange setRequest(RecordedRequest request) {
+		this.request = request;
+		return this;
+	}
+	
+	/**
+	 * Returns captured request.
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequest
+	 */
+	public RecordedRequest getRequest() {
+		return request;
+	}
+	
+	/**
+	 * Sets captured response.
+	 * 
+	 * @param response Response with status code, headers and body
+	 * 
+	 * @return Instance of CapturedExchange
+	 */
+	public CapturedExchange setResponse(Response response) {
+		this.response = response;
+		return this;
+	}
+	
+	/**
+	 * Returns captured response.
+	 * 
+	 * @return Instance of fi.mystes.response.Response
+	 */
+	public Response getResponse() {
+		return response;
+	}
+}
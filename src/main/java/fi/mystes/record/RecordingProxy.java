@@ -0,0 +1,235 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.IMockHandler;
+
+/**
+ * Proxy forwarding requests to a real downstream and appending every request and response pair
+ * to a capture log. Served by the mock server like an in-process API mock.<br/><br/>
+ * 
+ * As a reverse proxy (target URL set) the part of request path after proxy's context path is
+ * appended to target URL, e.g. with context path /record and target URL http://downstream:8080/api,
+ * request to /record/customers is forwarded to http://downstream:8080/api/customers. As a forward
+ * proxy (no target URL) the absolute request URL sent by an HTTP client configured to use the proxy
+ * is requested as it is, which requires context path /. HTTPS tunneling (CONNECT) is not supported.<br/><br/>
+ * 
+ * Redirects are passed to the client instead of being followed. Downstream is asked for uncompressed
+ * responses. Hop-by-hop headers are not forwarded in either direction.
+ *
+ */
+public class RecordingProxy implements IMockHandler, Closeable {
+	private static final Logger logger = Logger.getLogger(RecordingProxy.class);
+	
+	/** 
+	 * Lower case names of headers not forwarded: hop-by-hop headers, headers set by HTTP client and
+	 * content coding of bodies, which mock server and HTTP client have decoded
+	 */
+	private static final Set<String> EXCLUDED_HEADERS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection", "te", 
+			"trailer", "transfer-encoding", "upgrade", "host", "content-length", "accept-encoding", "content-encoding"));
+	
+	/** Log captured exchanges are appended to */
+	private final CaptureLog captureLog;
+	
+	/** HTTP client used for forwarding requests */
+	private final CloseableHttpClient httpClient;
+	
+	/** Base URL of downstream without trailing slash, null when acting as forward proxy */
+	private String targetUrl;
+	
+	/** Context path proxy is served at, empty for root context */
+	private String contextPath = "";
+	
+	/**
+	 * Constructor with log captured exchanges are appended to.
+	 * 
+	 * @param captureLog Capture log
+	 */
+	public RecordingProxy(CaptureLog captureLog) {
+		this.captureLog = captureLog;
+		this.httpClient = HttpClients.custom()
+				.disableRedirectHandling()
+				.disableContentCompression()
+				.disableCookieManagement()
+				.disableAutomaticRetries()
+				.setMaxConnTotal(200)
+				.setMaxConnPerRoute(100)
+				.build();
+	}
+	
+	/**
+	 * Sets base URL of downstream requests are forwarded to, making the proxy a reverse proxy.
+	 * 
+	 * @param targetUrl Base URL of downstream, null or empty to act as forward proxy
+	 * 
+	 * @return Instance of RecordingProxy
+	 */
+	public RecordingProxy setTargetUrl(String targetUrl) {
+		if (targetUrl == null || targetUrl.trim().isEmpty()) {
+			this.targetUrl = null;
+		} else {
+			String trimmed = targetUrl.trim();
+			this.targetUrl = trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns base URL of downstream requests are forwarded to.
+	 * 
+	 * @return Base URL or null if acting as forward proxy
+	 */
+	public String getTargetUrl() {
+		return targetUrl;
+	}
+	
+	/**
+	 * Returns log captured exchanges are appended to.
+	 * 
+	 * @return Instance of CaptureLog
+	 */
+	public CaptureLog getCaptureLog() {
+		return captureLog;
+	}
+
+	public void configure(String contextPath, String extraClasspath) throws Exception {
+		this.contextPath = contextPath == null || "/".equals(contextPath) ? "" : contextPath;
+	}
+
+	/**
+	 * Forwards request to downstream and captures the exchange. Responds with status code 502
+	 * if downstream cannot be reached, such exchanges are not captured.
+	 */
+	public Response handle(RecordedRequest request) throws Exception {
+		long timestamp = System.currentTimeMillis();
+		String url = resolveTargetUrl(request.getEndpoint());
+		
+		RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(url);
+		String contentType = null;
+		if (request.getHeaders() != null) {
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				if (!EXCLUDED_HEADERS.contains(header.getKey().toLowerCase())) {
+					builder.addHeader(header.getKey(), header.getValue());
+				}
+				if ("Content-Type".equalsIgnoreCase(header.getKey())) {
+					contentType = header.getValue();
+				}
+			}
+		}
+		if (request.getContent() != null && !request.getContent().isEmpty()) {
+			builder.setEntity(new ByteArrayEntity(request.getContent().getBytes(charset(contentType))));
+		}
+		
+		long started = System.nanoTime();
+		Response response = new Response();
+		CloseableHttpResponse downstreamResponse;
+		try {
+			downstreamResponse = httpClient.execute(builder.build());
+		} catch (IOException e) {
+			logger.warn("Forwarding " + request.getMethod() + " " + url + " failed: " + e);
+			return response.setStatus(502).addHeader("Content-Type", "text/plain").setBody("Forwarding to " + url + " failed: " + e);
+		}
+		try {
+			response.setStatus(downstreamResponse.getStatusLine().getStatusCode());
+			for (Header header : downstreamResponse.getAllHeaders()) {
+				if (!EXCLUDED_HEADERS.contains(header.getName().toLowerCase())) {
+					String previous = response.getHeaders() != null ? response.getHeaders().get(header.getName()) : null;
+					response.addHeader(header.getName(), previous != null ? previous + "," + header.getValue() : header.getValue());
+				}
+			}
+			HttpEntity entity = downstreamResponse.getEntity();
+			response.setBody(entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "");
+		} finally {
+			downstreamResponse.close();
+		}
+		long durationNanos = System.nanoTime() - started;
+		
+		captureLog.append(new CapturedExchange()
+				.setTimestamp(timestamp)
+				.setDurationNanos(durationNanos)
+				.setRequest(new RecordedRequest()
+						.setMethod(request.getMethod())
+						.setEndpointUrl(url)
+						.setHeaders(request.getHeaders())
+						.setBody(request.getContent()))
+				.setResponse(response));
+		return response;
+	}
+	
+	/**
+	 * Closes HTTP client used for forwarding. Capture log is not closed.
+	 * 
+	 * @throws IOException If closing HTTP client fails
+	 */
+	public void close() throws IOException {
+		httpClient.close();
+	}
+	
+	/**
+	 * Helper method to resolve downstream URL of received request.
+	 * 
+	 * @param endpoint Full URL of received request
+	 * 
+	 * @return Downstream URL
+	 */
+	private String resolveTargetUrl(String endpoint) {
+		if (targetUrl == null) {
+			return endpoint;
+		}
+		URI uri = URI.create(endpoint);
+		String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+		if (path.startsWith(contextPath)) {
+			path = path.substring(contextPath.length());
+		}
+		return targetUrl + path + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+	}
+	
+	private static Charset charset(String contentType) {
+		Charset charset = null;
+		if (contentType != null) {
+			try {
+				charset = ContentType.parse(contentType).getCharset();
+			} catch (Exception e) {
+				logger.debug("Unparseable content type " + contentType);
+			}
+		}
+		return charset != null ? charset : StandardCharsets.UTF_8;
+	}
+}
@@ -15,6 +15,10 @@
  */
 package fi.mystes.request;
 
+import java.util.concurrent.Future;
+
+import org.apache.http.concurrent.FutureCallback;
+
 /**
  * Interface class for performing requests. 
  *
@@ -30,4 +34,26 @@ public interface IRequest<T> {
 	 * @throws Exception If request sending fails
 	 */
 	public T sendRequest() throws Exception;
+	
+	/**
+	 * Sends request without blocking the calling thread. Request is executed by the
+	 * asynchronous HTTP client's I/O threads.
+	 * 
+	 * @return Instance of java.util.concurrent.Future which completes with the response
+	 * 
+	 * @throws Exception If request preparation fails
+	 */
+	public Future<T> sendRequestAsync() throws Exception;
+	
+	/**
+	 * Sends request without blocking the calling thread and notifies given callback
+	 * when the response has been received.
+	 * 
+	 * @param callback Callback to be notified on completion, failure or cancellation. May be null.
+	 * 
+	 * @return Instance of java.util.concurrent.Future which completes with the response
+	 * 
+	 * @throws Exception If request preparation fails
+	 */
+	public Future<T> sendRequestAsync(FutureCallback<T> callback) throws Exception;
 }
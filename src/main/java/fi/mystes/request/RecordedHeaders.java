@@ -18,12 +18,37 @@ package fi.mystes.request;
 import fi.mystes.http.ConfigurableHttpEntity;
 
 /**
- * Class for containing recorded headers.
+ * Class for containing recorded headers. Incrementally fetched recorded headers contain only
+ * request headers recorded after the cursor they were fetched with.
  *
  */
 public class RecordedHeaders extends ConfigurableHttpEntity<RecordedHeaders>{
+	
+	/** Cursor of the next request to be recorded, -1 if API mock does not support cursors */
+	private long nextCursor = -1;
 
 	public RecordedHeaders() {
 		super(RecordedHeaders.class);
 	}
+	
+	/**
+	 * Sets cursor of the next request to be recorded.
+	 * 
+	 * @param nextCursor Cursor to fetch request headers recorded after these with
+	 * 
+	 * @return Instance of RecordedHeaders
+	 */
+	public RecordedHeaders setNextCursor(long nextCursor) {
+		this.nextCursor = nextCursor;
+		return this;
+	}
+	
+	/**
+	 * Returns cursor to fetch request headers recorded after these with, see IApiMock.getRecordedHeadersSince.
+	 * 
+	 * @return Cursor of the next request to be recorded, -1 if API mock does not support cursors
+	 */
+	public long getNextCursor() {
+		return nextCursor;
+	}
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import fi.mystes.http.ConfigurableHttpEntity;
+
+/**
+ * Class for containing a single recorded request read from recorded requests.
+ *
+ */
+public class RecordedRequest extends ConfigurableHttpEntity<RecordedRequest>{
+	
+	/** Zero based position of the request in recorded requests */
+	private long index;
+	
+	/** Time the request was recorded in milliseconds since epoch, 0 if not known */
+	private long timestamp;
+	
+	/** Sequence number of the request among all requests recorded by the operation, -1 if not known */
+	private long sequence = -1;
+
+	public RecordedRequest() {
+		super(RecordedRequest.class);
+	}
+	
+	/**
+	 * Sets position of the request in recorded requests.
+	 * 
+	 * @param index Zero based position
+	 * 
+	 * @return Instance of RecordedRequest
+	 */
+	public RecordedRequest setIndex(long index) {
+		this.index = index;
+		return this;
+	}
+	
+	/**
+	 * Returns position of the request in recorded requests.
+	 * 
+	 * @return Zero based position
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Sets time the request was recorded.
+	 * 
+	 * @param timestamp Milliseconds since epoch
+	 * 
+	 * @return Instance of RecordedRequest
+	 */
+	public RecordedRequest setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+		return this;
+	}
+	
+	/**
+	 * Returns time the request was recorded. Known only for requests recorded by in-process API mock.
+	 * 
+	 * @return Milliseconds since epoch, 0 if not known
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Sets sequence number of the request. Unlike index, sequence numbers are not reused when
+	 * the operation is initialized.
+	 * 
+	 * @param sequence Zero based sequence number
+	 * 
+	 * @return Instance of RecordedRequest
+	 */
+	public RecordedRequest setSequence(long sequence) {
+		this.sequence = sequence;
+		return this;
+	}
+	
+	/**
+	 * Returns sequence number of the request. Known only for requests recorded by in-process API mock.
+	 * Cursor for fetching requests recorded after this one is sequence number + 1.
+	 * 
+	 * @return Zero based sequence number, -1 if not known
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+}
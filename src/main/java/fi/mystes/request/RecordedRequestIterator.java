@@ -0,0 +1,429 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Iterator reading recorded requests one at a time from recorded requests XML stream using StAX,
+ * so memory usage does not depend on the number of recorded requests. Each child element of the
+ * root element is one recorded request, as is each CDATA section (e.g. JSON requests recorded by
+ * fi.mystes.mock.InProcessApiMock) and each non-blank text content between them. Adjacent CDATA
+ * sections are one request, because CDATA end markers in content split it into several sections.
+ * Iterator must be closed if it is not read to the end. Iterator can
+ * also be created over recorded requests already in memory, e.g. by an in-process API mock.<br/><br/>
+ *
+ * Example:<br/>
+ * RecordedRequestIterator requests = apiMock.streamRecordedRequests(uri);<br/>
+ * try {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;for (RecordedRequest request : requests) {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;...<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;}<br/>
+ * } finally {<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;requests.close();<br/>
+ * }
+ *
+ */
+public class RecordedRequestIterator implements Iterator<RecordedRequest>, Iterable<RecordedRequest>, Closeable {
+	
+	/** StAX input factory, access must be synchronized */
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+	
+	/** StAX output factory used to serialize recorded request elements, access must be synchronized */
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	
+	/** Non-standard property of JDK and Woodstox StAX readers to report CDATA sections as CDATA events */
+	private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+	
+	static {
+		if (inputFactory.isPropertySupported(REPORT_CDATA)) {
+			inputFactory.setProperty(REPORT_CDATA, true);
+		}
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		// Namespaces declared by ancestors are redeclared on serialized elements
+		outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+	}
+	
+	/** Stream recorded requests are read from */
+	private InputStream inputStream;
+	
+	/** Resource to be closed with the stream, e.g. HTTP response. May be null. */
+	private Closeable resource;
+	
+	/** Recorded requests already in memory, null if recorded requests are read from stream */
+	private Iterator<RecordedRequest> requests;
+	
+	/** StAX reader */
+	private XMLStreamReader reader;
+	
+	/** Writer serializing recorded request elements, reused for all elements */
+	private XMLStreamWriter writer;
+	
+	/** Buffer of serialized recorded request element */
+	private StringWriter element = new StringWriter();
+	
+	/** End point URL set to read recorded requests */
+	private String endpointUrl;
+	
+	/** Next recorded request, null if not read yet */
+	private RecordedRequest next;
+	
+	/** Position of next recorded request */
+	private long index;
+	
+	/** Text content read since previous recorded request */
+	private StringBuilder text = new StringBuilder();
+	
+	/** Boolean flag indicating that reader is positioned at an event not processed yet */
+	private boolean eventPending;
+	
+	/** Boolean flag indicating whether text read so far is content of CDATA sections */
+	private boolean cdata;
+	
+	/** Boolean flag indicating whether all recorded requests have been read */
+	private boolean finished;
+	
+	/** Boolean flag indicating whether iterator has been closed */
+	private boolean closed;
+	
+	/**
+	 * Constructor with stream containing recorded requests XML.
+	 * 
+	 * @param inputStream Stream containing recorded requests XML
+	 * 
+	 * @throws XMLStreamException If stream cannot be read
+	 */
+	public RecordedRequestIterator(InputStream inputStream) throws XMLStreamException {
+		this(inputStream, null);
+	}
+	
+	/**
+	 * Constructor with stream containing recorded requests XML and resource to be closed with the stream.
+	 * 
+	 * @param inputStream Stream containing recorded requests XML
+	 * @param resource Resource to be closed when iterator is closed, e.g. HTTP response. May be null.
+	 * 
+	 * @throws XMLStreamException If stream cannot be read
+	 */
+	public RecordedRequestIterator(InputStream inputStream, Closeable resource) throws XMLStreamException {
+		this.inputStream = inputStream;
+		this.resource = resource;
+		synchronized (inputFactory) {
+			reader = inputFactory.createXMLStreamReader(inputStream);
+		}
+		try {
+			// Move to root element
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+				// Skip prolog
+			}
+		} catch (XMLStreamException e) {
+			close();
+			throw e;
+		}
+		if (!reader.isStartElement()) {
+			finished = true;
+			close();
+		}
+	}
+	
+	/**
+	 * Constructor with recorded requests already in memory. Indexes of the requests are set by iterator.
+	 * 
+	 * @param requests Recorded requests in recorded order
+	 */
+	public RecordedRequestIterator(Iterable<RecordedRequest> requests) {
+		this.requests = requests.iterator();
+	}
+	
+	/**
+	 * Sets end point URL set to recorded requests.
+	 * 
+	 * @param endpointUrl End point URL recorded requests are read from
+	 * 
+	 * @return Instance of RecordedRequestIterator
+	 */
+	public RecordedRequestIterator setEndpointUrl(String endpointUrl) {
+		this.endpointUrl = endpointUrl;
+		return this;
+	}
+	
+	public Iterator<RecordedRequest> iterator() {
+		return this;
+	}
+
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			try {
+				next = readNext();
+			} catch (XMLStreamException e) {
+				close();
+				throw new IllegalStateException("Reading recorded requests failed", e);
+			}
+			if (next == null) {
+				finished = true;
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	public RecordedRequest next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		RecordedRequest request = next;
+		next = null;
+		return request;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Recorded requests cannot be removed");
+	}
+	
+	/**
+	 * Closes reader, stream and resource. Closing before all recorded requests have been read
+	 * aborts reading, e.g. closes HTTP connection instead of reading rest of the response.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		next = null;
+		if (reader == null) {
+			return;
+		}
+		try {
+			reader.close();
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (XMLStreamException e) {
+			// Stream is closed anyway
+		}
+		if (finished) {
+			// Closing stream reads the rest of it, which allows HTTP connection to be reused
+			closeQuietly(inputStream);
+			closeQuietly(resource);
+		} else {
+			closeQuietly(resource);
+			closeQuietly(inputStream);
+		}
+	}
+	
+	/**
+	 * Helper method to read next recorded request from child nodes of root element or from recorded requests in memory.
+	 * 
+	 * @return Instance of RecordedRequest or null if there are no more recorded requests
+	 * 
+	 * @throws XMLStreamException If reading fails
+	 */
+	private RecordedRequest readNext() throws XMLStreamException {
+		if (requests != null) {
+			if (!requests.hasNext()) {
+				return null;
+			}
+			RecordedRequest request = requests.next().setIndex(index++);
+			return endpointUrl != null ? request.setEndpointUrl(endpointUrl) : request;
+		}
+		while (eventPending || reader.hasNext()) {
+			int event = eventPending ? reader.getEventType() : reader.next();
+			eventPending = false;
+			if (cdata && event != XMLStreamConstants.CDATA) {
+				// Return CDATA content read so far first and process this event next time
+				eventPending = true;
+				return createRecordedRequest(takeCData());
+			}
+			switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					if (!isBlank(text)) {
+						eventPending = true;
+						return createRecordedRequest(takeText());
+					}
+					text.setLength(0);
+					return createRecordedRequest(readElement());
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					text.append(reader.getText());
+					break;
+				case XMLStreamConstants.CDATA:
+					if (!cdata) {
+						if (!isBlank(text)) {
+							eventPending = true;
+							return createRecordedRequest(takeText());
+						}
+						text.setLength(0);
+						cdata = true;
+					}
+					text.append(reader.getText());
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					// End of root element
+					return isBlank(text) ? null : createRecordedRequest(takeText());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Helper method to serialize element the reader is positioned at, including its descendants.
+	 * Reader is left positioned at the element's end tag.
+	 * 
+	 * @return Serialized element
+	 * 
+	 * @throws XMLStreamException If reading or writing fails
+	 */
+	private String readElement() throws XMLStreamException {
+		if (writer == null) {
+			synchronized (outputFactory) {
+				writer = outputFactory.createXMLStreamWriter(element);
+			}
+		}
+		element.getBuffer().setLength(0);
+		int depth = 0;
+		do {
+			switch (reader.getEventType()) {
+				case XMLStreamConstants.START_ELEMENT:
+					writeStartElement(writer);
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					writer.writeEndElement();
+					depth--;
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					writer.writeCharacters(reader.getText());
+					break;
+				case XMLStreamConstants.CDATA:
+					writer.writeCData(reader.getText());
+					break;
+				case XMLStreamConstants.COMMENT:
+					writer.writeComment(reader.getText());
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+					break;
+			}
+		} while (depth > 0 && reader.hasNext() && reader.next() > 0);
+		writer.flush();
+		
+		return element.toString();
+	}
+	
+	/**
+	 * Helper method to write start tag, namespace declarations and attributes of current element.
+	 * 
+	 * @param writer Writer to write start tag to
+	 * 
+	 * @throws XMLStreamException If writing fails
+	 */
+	private void writeStartElement(XMLStreamWriter writer) throws XMLStreamException {
+		String elementNamespace = reader.getNamespaceURI();
+		if (elementNamespace == null || elementNamespace.isEmpty()) {
+			writer.writeStartElement(reader.getLocalName());
+		} else {
+			writer.writeStartElement(nullToEmpty(reader.getPrefix()), reader.getLocalName(), elementNamespace);
+		}
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			String prefix = reader.getNamespacePrefix(i);
+			if (prefix == null || prefix.isEmpty()) {
+				writer.writeDefaultNamespace(nullToEmpty(reader.getNamespaceURI(i)));
+			} else {
+				writer.writeNamespace(prefix, nullToEmpty(reader.getNamespaceURI(i)));
+			}
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String namespace = reader.getAttributeNamespace(i);
+			if (namespace == null || namespace.isEmpty()) {
+				writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+			} else {
+				writer.writeAttribute(nullToEmpty(reader.getAttributePrefix(i)), namespace, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to create recorded request with given content and next index.
+	 * 
+	 * @param content Recorded request content
+	 * 
+	 * @return Instance of RecordedRequest
+	 */
+	private RecordedRequest createRecordedRequest(String content) {
+		return new RecordedRequest().setIndex(index++).setBody(content).setEndpointUrl(endpointUrl);
+	}
+	
+	/**
+	 * Helper method to return trimmed text read so far and clear it.
+	 * 
+	 * @return Trimmed text
+	 */
+	private String takeText() {
+		String content = text.toString().trim();
+		text.setLength(0);
+		return content;
+	}
+	
+	/**
+	 * Helper method to return CDATA content read so far as it is and clear it.
+	 * 
+	 * @return CDATA content
+	 */
+	private String takeCData() {
+		String content = text.toString();
+		text.setLength(0);
+		cdata = false;
+		return content;
+	}
+	
+	private static boolean isBlank(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (!Character.isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+}
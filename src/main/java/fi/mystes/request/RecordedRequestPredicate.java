@@ -0,0 +1,34 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+/**
+ * Interface for matching recorded requests, e.g. when awaiting them with IApiMock.awaitRecordedRequests.
+ *
+ */
+public interface RecordedRequestPredicate {
+
+	/**
+	 * Method called for recorded requests in recorded order until enough of them match.
+	 * 
+	 * @param request Recorded request
+	 * 
+	 * @return True if the request matches
+	 * 
+	 * @throws Exception If matching recorded request fails, stops awaiting
+	 */
+	public boolean matches(RecordedRequest request) throws Exception;
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class containing criteria for looking up recorded requests of an operation: header values,
+ * values of indexed body keys and earliest recording time. A request matches when it meets all
+ * criteria. Header names are case-insensitive, values are compared as they are.<br/><br/>
+ * 
+ * Example:<br/>
+ * List&lt;RecordedRequest&gt; requests = apiMock.queryRecordedRequests(uri, new RecordedRequestQuery()<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.addHeader("X-Correlation-Id", correlationId)<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.addBodyKey("customerId", "1234")<br/>
+ * &nbsp;&nbsp;&nbsp;&nbsp;.setSince(testStarted));
+ *
+ */
+public class RecordedRequestQuery {
+	
+	/** Required header values by header name */
+	private Map<String, String> headers = new LinkedHashMap<String, String>();
+	
+	/** Required body key values by body key name */
+	private Map<String, String> bodyKeys = new LinkedHashMap<String, String>();
+	
+	/** Earliest recording time in milliseconds since epoch, 0 if not limited */
+	private long since;
+	
+	/** Maximum number of matching requests returned, 0 if not limited */
+	private int limit;
+	
+	/**
+	 * Adds required header value. Multiple values of a header are also matched one by one.
+	 * 
+	 * @param name Header name
+	 * @param value Header value
+	 * 
+	 * @return Instance of RecordedRequestQuery
+	 */
+	public RecordedRequestQuery addHeader(String name, String value) {
+		headers.put(name, value);
+		return this;
+	}
+	
+	/**
+	 * Adds required value of body key indexed by API mock.
+	 * 
+	 * @param name Body key name
+	 * @param value Extracted value
+	 * 
+	 * @return Instance of RecordedRequestQuery
+	 */
+	public RecordedRequestQuery addBodyKey(String name, String value) {
+		bodyKeys.put(name, value);
+		return this;
+	}
+	
+	/**
+	 * Sets earliest recording time of matching requests.
+	 * 
+	 * @param timestamp Milliseconds since epoch, inclusive
+	 * 
+	 * @return Instance of RecordedRequestQuery
+	 */
+	public RecordedRequestQuery setSince(long timestamp) {
+		this.since = timestamp;
+		return this;
+	}
+	
+	/**
+	 * Sets maximum number of matching requests returned. The earliest ones are returned.
+	 * 
+	 * @param limit Maximum number of requests, 0 for no limit
+	 * 
+	 * @return Instance of RecordedRequestQuery
+	 */
+	public RecordedRequestQuery setLimit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+	
+	/**
+	 * Returns required header values.
+	 * 
+	 * @return Header values by header name
+	 */
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+	
+	/**
+	 * Returns required body key values.
+	 * 
+	 * @return Body key values by body key name
+	 */
+	public Map<String, String> getBodyKeys() {
+		return bodyKeys;
+	}
+	
+	/**
+	 * Returns earliest recording time of matching requests.
+	 * 
+	 * @return Milliseconds since epoch, 0 if not limited
+	 */
+	public long getSince() {
+		return since;
+	}
+	
+	/**
+	 * Returns maximum number of matching requests returned.
+	 * 
+	 * @return Maximum number of requests, 0 if not limited
+	 */
+	public int getLimit() {
+		return limit;
+	}
+	
+	@Override
+	public String toString() {
+		return "headers=" + headers + ", bodyKeys=" + bodyKeys + ", since=" + since + ", limit=" + limit;
+	}
+}
@@ -18,12 +18,37 @@ package fi.mystes.request;
 import fi.mystes.http.ConfigurableHttpEntity;
 
 /**
- * Class for containing recorded requests.
+ * Class for containing recorded requests. Incrementally fetched recorded requests contain only
+ * requests recorded after the cursor they were fetched with.
  *
  */
 public class RecordedRequests extends ConfigurableHttpEntity<RecordedRequests>{
+	
+	/** Cursor of the next request to be recorded, -1 if API mock does not support cursors */
+	private long nextCursor = -1;
 
 	public RecordedRequests() {
 		super(RecordedRequests.class);
 	}
+	
+	/**
+	 * Sets cursor of the next request to be recorded.
+	 * 
+	 * @param nextCursor Cursor to fetch requests recorded after these with
+	 * 
+	 * @return Instance of RecordedRequests
+	 */
+	public RecordedRequests setNextCursor(long nextCursor) {
+		this.nextCursor = nextCursor;
+		return this;
+	}
+	
+	/**
+	 * Returns cursor to fetch requests recorded after these with, see IApiMock.getRecordedRequestsSince.
+	 * 
+	 * @return Cursor of the next request to be recorded, -1 if API mock does not support cursors
+	 */
+	public long getNextCursor() {
+		return nextCursor;
+	}
 }
@@ -15,21 +15,60 @@
  */
 package fi.mystes.request;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.util.EntityUtils;
+
+import com.mashape.unirest.http.Headers;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.async.Callback;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.http.utils.ClientFactory;
 import com.mashape.unirest.request.HttpRequest;
 import com.mashape.unirest.request.HttpRequestWithBody;
 
 import fi.mystes.http.ConfigurableHttpEntity;
+import fi.mystes.http.RawBodyCounter;
+import fi.mystes.http.RequestTiming;
+import fi.mystes.metrics.TimingRegistry;
+import fi.mystes.response.RestResponse;
+import fi.mystes.response.TimedResponse;
 
 /**
- * Class representing REST request. This class uses Unirest to send REST requests.
+ * Class representing REST request. This class uses Unirest to send REST requests. Besides String
+ * responses, response body can be read as bytes, streamed, or discarded using Unirest's HTTP client.<br/><br/>
+ * 
+ * Request body can be compressed with gzip or deflate and is then sent with Content-Encoding header.
+ * Compressed body is reused as long as content does not change. Responses compressed with gzip or
+ * deflate are decoded by HTTP client, and responses read as bytes or discarded report their body
+ * length both before and after decoding.
  *
  */
 public class RestRequest extends ConfigurableHttpEntity<RestRequest> implements IRequest<HttpResponse<String>> {
 	
+	/** Buffer for discarded response bodies, its contents are never read so it can be shared */
+	private static final byte[] DISCARD_BUFFER = new byte[8192];
+	
+	/** Registry timing breakdowns of sent requests are recorded into, null if timings are not recorded */
+	private TimingRegistry timingRegistry;
+	
 	/**
 	 * Default constructor
 	 */
@@ -79,7 +118,188 @@ public class RestRequest extends ConfigurableHttpEntity<RestRequest> implements
 	 * @return Instance of com.mashape.unirest.http.HttpResponse
 	 */
 	public HttpResponse<String> sendRequest() throws Exception {
+		if (timingRegistry != null) {
+			return sendRequestTimed().getResponse();
+		}
+		HttpResponse<String> response = prepareRequest().asString();
+		
+		return response;
+	}
+	
+	/**
+	 * Sends REST request and records timing breakdown of sending it. Timing is also recorded into
+	 * timing registry if one is set.
+	 * 
+	 * @return Instance of fi.mystes.response.TimedResponse containing com.mashape.unirest.http.HttpResponse
+	 * 
+	 * @throws Exception If sending request fails
+	 */
+	public TimedResponse<HttpResponse<String>> sendRequestTimed() throws Exception {
+		HttpRequest request = prepareRequest();
+		RequestTiming timing = RequestTiming.begin();
+		HttpResponse<String> response;
+		try {
+			response = request.asString();
+		} finally {
+			timing.end();
+		}
+		if (timingRegistry != null) {
+			timingRegistry.record(TimingRegistry.name(method, url), timing);
+		}
+		
+		return new TimedResponse<HttpResponse<String>>(response, timing);
+	}
+	
+	/**
+	 * Sets registry timing breakdowns of requests sent with sendRequest are recorded into,
+	 * named by HTTP method and URL path.
+	 * 
+	 * @param timingRegistry Timing registry, null to stop recording timings
+	 * 
+	 * @return Instance of RestRequest
+	 */
+	public RestRequest setTimingRegistry(TimingRegistry timingRegistry) {
+		this.timingRegistry = timingRegistry;
+		return this;
+	}
+	
+	/**
+	 * Returns number of body bytes before compression.
+	 * 
+	 * @return Number of content bytes encoded as UTF-8, 0 if request has no body
+	 */
+	public long getContentLength() {
+		return content != null ? content.getBytes(StandardCharsets.UTF_8).length : 0;
+	}
+	
+	/**
+	 * Returns number of body bytes sent after compression.
+	 * 
+	 * @return Number of compressed body bytes, -1 if body is not compressed
+	 */
+	public long getCompressedContentLength() {
+		byte[] compressed = getCompressedContent();
+		return compressed != null ? compressed.length : -1;
+	}
+	
+	/**
+	 * Implemented sendRequestAsync method to send REST request to given end point URL
+	 * using Unirest's asynchronous HTTP client.
+	 * 
+	 * @return Instance of java.util.concurrent.Future completing with com.mashape.unirest.http.HttpResponse
+	 */
+	public Future<HttpResponse<String>> sendRequestAsync() throws Exception {
+		return sendRequestAsync(null);
+	}
+	
+	/**
+	 * Implemented sendRequestAsync method to send REST request to given end point URL
+	 * using Unirest's asynchronous HTTP client.
+	 * 
+	 * @param callback Callback to be notified when response is received. May be null.
+	 * 
+	 * @return Instance of java.util.concurrent.Future completing with com.mashape.unirest.http.HttpResponse
+	 */
+	public Future<HttpResponse<String>> sendRequestAsync(FutureCallback<HttpResponse<String>> callback) throws Exception {
+		final BasicFuture<HttpResponse<String>> future = new BasicFuture<HttpResponse<String>>(callback);
 		
+		prepareRequest().asStringAsync(new Callback<String>() {
+			public void completed(HttpResponse<String> response) {
+				future.completed(response);
+			}
+
+			public void failed(UnirestException e) {
+				future.failed(e);
+			}
+
+			public void cancelled() {
+				future.cancel(true);
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * Sends REST request and reads response body as raw bytes without decoding it into a String.
+	 * 
+	 * @return Instance of fi.mystes.response.RestResponse with body as byte array
+	 * 
+	 * @throws Exception If sending request or reading response fails
+	 */
+	public RestResponse<byte[]> sendRequestAsBytes() throws Exception {
+		org.apache.http.HttpResponse response = execute();
+		try {
+			HttpEntity entity = response.getEntity();
+			byte[] body = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+			
+			return createResponse(response, body, body.length, RawBodyCounter.getRawBodyLength(), null);
+		} finally {
+			closeResponse(response);
+		}
+	}
+	
+	/**
+	 * Sends REST request and returns response body as a stream for incremental consumption.
+	 * Returned response must be closed. Reading body to the end before closing allows connection
+	 * to be reused.
+	 * 
+	 * @return Instance of fi.mystes.response.RestResponse with body as java.io.InputStream
+	 * 
+	 * @throws Exception If sending request fails
+	 */
+	public RestResponse<InputStream> sendRequestAsStream() throws Exception {
+		org.apache.http.HttpResponse response = execute();
+		try {
+			HttpEntity entity = response.getEntity();
+			InputStream body = entity != null ? entity.getContent() : new ByteArrayInputStream(new byte[0]);
+			
+			return createResponse(response, body, -1, -1, response instanceof Closeable ? (Closeable) response : body);
+		} catch (Exception e) {
+			closeResponse(response);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Sends REST request and reads response body to the end without storing it, so that connection
+	 * can be reused. Only the number of body bytes is reported.
+	 * 
+	 * @return Instance of fi.mystes.response.RestResponse without body
+	 * 
+	 * @throws Exception If sending request or reading response fails
+	 */
+	public RestResponse<Void> sendRequestDiscardingBody() throws Exception {
+		org.apache.http.HttpResponse response = execute();
+		try {
+			long length = 0;
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				InputStream body = entity.getContent();
+				try {
+					int read;
+					while ((read = body.read(DISCARD_BUFFER)) != -1) {
+						length += read;
+					}
+				} finally {
+					body.close();
+				}
+			}
+			
+			return createResponse(response, null, length, RawBodyCounter.getRawBodyLength(), null);
+		} finally {
+			closeResponse(response);
+		}
+	}
+	
+	/**
+	 * Builds Unirest request with HTTP method, parameters, headers and body content without sending it.
+	 * 
+	 * @return Instance of com.mashape.unirest.request.HttpRequest ready to be sent
+	 * 
+	 * @throws Exception If HTTP method is not supported
+	 */
+	HttpRequest prepareRequest() throws Exception {
 		HttpRequest request = initRequest();
 		if (request == null) {
 			throw new Exception("\"" + method + "\" is not supported");
@@ -90,12 +310,16 @@ public class RestRequest extends ConfigurableHttpEntity<RestRequest> implements
 		request.headers(headers);
 		
 		if (request instanceof HttpRequestWithBody && content != null) {
-			((HttpRequestWithBody) request).body(content);
+			byte[] compressed = getCompressedContent();
+			if (compressed != null) {
+				request.header("Content-Encoding", compression);
+				((HttpRequestWithBody) request).body(compressed);
+			} else {
+				((HttpRequestWithBody) request).body(content);
+			}
 		}
 		
-		HttpResponse<String> response = request.asString();
-		
-		return response;
+		return request;
 	}
 	
 	/**
@@ -140,4 +364,104 @@ public class RestRequest extends ConfigurableHttpEntity<RestRequest> implements
 		}
 	}
 
+	/**
+	 * Helper method to send request with Unirest's HTTP client without reading response body.
+	 * 
+	 * @return Instance of org.apache.http.HttpResponse with unread body
+	 * 
+	 * @throws Exception If sending request fails
+	 */
+	private org.apache.http.HttpResponse execute() throws Exception {
+		HttpRequest request = prepareRequest();
+		
+		RawHttpRequest httpRequest = new RawHttpRequest(request.getHttpMethod().name(), toUri(request.getUrl()));
+		for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+			for (String value : header.getValue()) {
+				httpRequest.addHeader(header.getKey(), value);
+			}
+		}
+		if (request.getBody() != null) {
+			httpRequest.setEntity(request.getBody().getEntity());
+		}
+		
+		RawBodyCounter.reset();
+		return ClientFactory.getHttpClient().execute(httpRequest);
+	}
+	
+	/**
+	 * Helper method to create URI from URL the same way Unirest does, encoding path but keeping query as it is.
+	 * 
+	 * @param requestUrl URL with query parameters
+	 * 
+	 * @return Instance of java.net.URI
+	 * 
+	 * @throws Exception If URL is malformed
+	 */
+	private static URI toUri(String requestUrl) throws Exception {
+		URL url = new URL(requestUrl);
+		String uri = new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(),
+				URLDecoder.decode(url.getPath(), "UTF-8"), null, url.getRef()).toString();
+		if (url.getQuery() != null && !url.getQuery().trim().isEmpty()) {
+			uri += "?" + url.getQuery();
+		}
+		return new URI(uri);
+	}
+	
+	/**
+	 * Helper method to create response with status and headers of given HTTP response.
+	 * 
+	 * @param response HTTP response
+	 * @param body Response body
+	 * @param bodyLength Number of body bytes read, -1 if body is streamed
+	 * @param rawBodyLength Number of body bytes received before content decoding, -1 if not known
+	 * @param resource Resource to be closed when response is closed. May be null.
+	 * 
+	 * @return Instance of fi.mystes.response.RestResponse
+	 */
+	private static <T> RestResponse<T> createResponse(org.apache.http.HttpResponse response, T body, long bodyLength, 
+			long rawBodyLength, Closeable resource) {
+		Headers headers = new Headers();
+		for (Header header : response.getAllHeaders()) {
+			List<String> values = headers.get(header.getName());
+			if (values == null) {
+				values = new ArrayList<String>();
+				headers.put(header.getName(), values);
+			}
+			values.add(header.getValue());
+		}
+		
+		return new RestResponse<T>(response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase(),
+				headers, body, bodyLength, rawBodyLength, resource);
+	}
+	
+	/**
+	 * Helper method to close HTTP response if it is closeable.
+	 * 
+	 * @param response HTTP response
+	 * 
+	 * @throws IOException If closing fails
+	 */
+	private static void closeResponse(org.apache.http.HttpResponse response) throws IOException {
+		if (response instanceof Closeable) {
+			((Closeable) response).close();
+		}
+	}
+	
+	/**
+	 * HTTP request with any method and optional body.
+	 */
+	private static class RawHttpRequest extends HttpEntityEnclosingRequestBase {
+		private final String method;
+		
+		RawHttpRequest(String method, URI uri) {
+			this.method = method;
+			setURI(uri);
+		}
+		
+		@Override
+		public String getMethod() {
+			return method;
+		}
+	}
+
 }
\ No newline at end of file
@@ -16,27 +16,44 @@
 package fi.mystes.request;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.soap.AttachmentPart;
 import javax.xml.soap.MessageFactory;
+import javax.xml.soap.MimeHeader;
 import javax.xml.soap.MimeHeaders;
 import javax.xml.soap.SOAPBody;
 import javax.xml.soap.SOAPConnection;
 import javax.xml.soap.SOAPConnectionFactory;
+import javax.xml.soap.SOAPConstants;
 import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.soap.SOAPPart;
 
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
 
+import com.mashape.unirest.http.HttpResponse;
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.async.Callback;
+import com.mashape.unirest.http.exceptions.UnirestException;
+import com.mashape.unirest.request.HttpRequestWithBody;
+
 import fi.mystes.http.ConfigurableHttpEntity;
+import fi.mystes.http.RequestTiming;
+import fi.mystes.metrics.TimingRegistry;
+import fi.mystes.response.TimedResponse;
 
 /**
  * Class representing SOAP request. This class uses Unirest to send SOAP requests.
@@ -53,6 +70,8 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 	private Map<String, String> soapHeaders;
 	/** SOAP attachments, key = content-type, value = content */
 	private Map<String, String> attachments;
+	/** Registry timing breakdowns of sent requests are recorded into, null if timings are not recorded */
+	private TimingRegistry timingRegistry;
 	
 	/**
 	 * Default constructor.
@@ -109,18 +128,108 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 	}
 	
 	
+	/**
+	 * Sends SOAP request using SAAJ connection. If timing registry is set, total time of the call is
+	 * recorded into it, SAAJ connection does not allow timing its phases.
+	 */
 	public SOAPMessage sendRequest() throws Exception {
 		// Create SOAP Connection
         SOAPConnectionFactory soapConnectionFactory = SOAPConnectionFactory.newInstance();
         SOAPConnection soapConnection = soapConnectionFactory.createConnection();
         createSOAPRequest();
         
+        long start = System.nanoTime();
         SOAPMessage response = soapConnection.call(requestMessage, url);
+        if (timingRegistry != null) {
+            timingRegistry.recordTotal(TimingRegistry.name("POST", url), System.nanoTime() - start);
+        }
         soapConnection.close();
         
         return response;
 	}
 	
+	/**
+	 * Sends SOAP request and records timing breakdown of sending it. SOAP message is serialized and
+	 * posted using Unirest's HTTP client instead of SAAJ connection, so that connection phases can be timed.
+	 * Timing ends when response has been read, before it is parsed into SOAP message. Timing is also
+	 * recorded into timing registry if one is set.
+	 * 
+	 * @return Instance of fi.mystes.response.TimedResponse containing SOAP response message
+	 * 
+	 * @throws Exception If sending request or parsing response fails
+	 */
+	public TimedResponse<SOAPMessage> sendRequestTimed() throws Exception {
+		HttpRequestWithBody request = prepareHttpRequest();
+		RequestTiming timing = RequestTiming.begin();
+		HttpResponse<InputStream> response;
+		try {
+			response = request.asBinary();
+		} finally {
+			timing.end();
+		}
+		if (timingRegistry != null) {
+			timingRegistry.record(TimingRegistry.name("POST", url), timing);
+		}
+		
+		return new TimedResponse<SOAPMessage>(createSOAPResponse(response), timing);
+	}
+	
+	/**
+	 * Sets registry timings of sent requests are recorded into, named by HTTP method and URL path.
+	 * Requests sent with sendRequest are still sent with SAAJ connection and record only total time,
+	 * use sendRequestTimed to record the full breakdown.
+	 * 
+	 * @param timingRegistry Timing registry, null to stop recording timings
+	 * 
+	 * @return Instance of SoapRequest
+	 */
+	public SoapRequest setTimingRegistry(TimingRegistry timingRegistry) {
+		this.timingRegistry = timingRegistry;
+		return this;
+	}
+	
+	/**
+	 * Sends SOAP request without blocking the calling thread. SOAP message is serialized
+	 * and posted using Unirest's asynchronous HTTP client instead of SAAJ connection.
+	 * 
+	 * @return Instance of java.util.concurrent.Future completing with SOAP response message
+	 */
+	public Future<SOAPMessage> sendRequestAsync() throws Exception {
+		return sendRequestAsync(null);
+	}
+	
+	/**
+	 * Sends SOAP request without blocking the calling thread. SOAP message is serialized
+	 * and posted using Unirest's asynchronous HTTP client instead of SAAJ connection.
+	 * 
+	 * @param callback Callback to be notified when response is received. May be null.
+	 * 
+	 * @return Instance of java.util.concurrent.Future completing with SOAP response message
+	 */
+	public Future<SOAPMessage> sendRequestAsync(FutureCallback<SOAPMessage> callback) throws Exception {
+		final BasicFuture<SOAPMessage> future = new BasicFuture<SOAPMessage>(callback);
+		
+		prepareHttpRequest().asBinaryAsync(new Callback<InputStream>() {
+			public void completed(HttpResponse<InputStream> response) {
+				try {
+					future.completed(createSOAPResponse(response));
+				} catch (Exception e) {
+					future.failed(e);
+				}
+			}
+
+			public void failed(UnirestException e) {
+				future.failed(e);
+			}
+
+			public void cancelled() {
+				future.cancel(true);
+			}
+		});
+		
+		return future;
+	}
+	
 	/**
 	 * Adds name space.
 	 * 
@@ -151,7 +260,8 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 	}
 	
 	/**
-	 * Sets SOAP headers.
+	 * Sets SOAP headers. SOAP header elements must be namespace qualified, so header names
+	 * should be given as {namespace URI}local name, e.g. {http://example.com/common}transactionId
 	 * 
 	 * @param soapHeaders SOAP headers
 	 * 
@@ -175,13 +285,14 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 	}
 	
 	/**
-	 * Helper method to create SOAP message.
+	 * Creates SOAP message with name spaces, Mime headers, SOAP headers, attachments and body content
+	 * without sending it.
 	 * 
 	 * @return Created SOAPMessage instance
 	 * 
 	 * @throws Exception If SOAPMessage instance creation fails
 	 */
-	private SOAPMessage createSOAPRequest() throws Exception {
+	SOAPMessage createSOAPRequest() throws Exception {
 		// SOAP Envelope
         SOAPEnvelope envelope = initRequest();
         
@@ -202,6 +313,55 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
         return requestMessage;
     }
 	
+	/**
+	 * Helper method to create SOAP message and wrap it into HTTP POST request
+	 * carrying SOAP message's Mime headers.
+	 * 
+	 * @return Instance of com.mashape.unirest.request.HttpRequestWithBody ready to be sent
+	 * 
+	 * @throws Exception If SOAP message creation or serialization fails
+	 */
+	private HttpRequestWithBody prepareHttpRequest() throws Exception {
+		createSOAPRequest();
+		
+		HttpRequestWithBody request = Unirest.post(url);
+		Iterator<?> mimeHeaders = requestMessage.getMimeHeaders().getAllHeaders();
+		while (mimeHeaders.hasNext()) {
+			MimeHeader mimeHeader = (MimeHeader) mimeHeaders.next();
+			if (isMessageLengthHeader(mimeHeader.getName())) {
+				continue;
+			}
+			request.header(mimeHeader.getName(), mimeHeader.getValue());
+		}
+		
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		requestMessage.writeTo(message);
+		request.body(message.toByteArray());
+		
+		return request;
+	}
+	
+	/**
+	 * Helper method to create SOAP message from HTTP response. Both SOAP 1.1 and SOAP 1.2
+	 * responses are supported based on response's Content-Type header.
+	 * 
+	 * @param response HTTP response containing SOAP message
+	 * 
+	 * @return Created SOAPMessage instance
+	 * 
+	 * @throws Exception If SOAPMessage instance creation fails
+	 */
+	private SOAPMessage createSOAPResponse(HttpResponse<InputStream> response) throws Exception {
+		MimeHeaders mimeHeaders = new MimeHeaders();
+		for (Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+			for (String value : header.getValue()) {
+				mimeHeaders.addHeader(header.getKey(), value);
+			}
+		}
+		
+		return MessageFactory.newInstance(SOAPConstants.DYNAMIC_SOAP_PROTOCOL).createMessage(mimeHeaders, response.getBody());
+	}
+	
 	/**
 	 * Helper method to initialize SOAP request.
 	 * 
@@ -251,7 +411,21 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 	}
 	
 	/**
-	 * Sets SOAP headers to given SOAP message.
+	 * Checks whether given Mime header frames the message. HTTP clients set these headers themselves
+	 * from the serialized message, and the asynchronous client rejects requests carrying a copy
+	 * from SAAJ.
+	 * 
+	 * @param name Mime header name
+	 * 
+	 * @return True if header is Content-Length or Transfer-Encoding
+	 */
+	private static boolean isMessageLengthHeader(String name) {
+		return "Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name);
+	}
+	
+	/**
+	 * Sets SOAP headers to given SOAP message. Header names are parsed with QName.valueOf, so that
+	 * {namespace URI}local name keys give namespace qualified header elements required by SAAJ.
 	 * 
 	 * @param soapMessage SOAP message to set SOAP headers to
 	 * @throws SOAPException 
@@ -262,7 +436,7 @@ public class SoapRequest extends ConfigurableHttpEntity<SoapRequest> implements
 			return;
 		}
 		for (String header : soapHeaders.keySet()) {
-			soapMessage.getSOAPHeader().addHeaderElement(new QName(header)).setTextContent(soapHeaders.get(header));
+			soapMessage.getSOAPHeader().addHeaderElement(QName.valueOf(header)).setTextContent(soapHeaders.get(header));
 		}
 	}
 	
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.response;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response delay in milliseconds, either fixed or sampled from a distribution each time a response is served.
+ * Sampled values below zero are treated as zero.<br/><br/>
+ * 
+ * Example of a dependency answering in 20 ms at median with a long tail:<br/><br/>
+ * 
+ * new Response().setFirstByteDelay(Delay.logNormal(20, 0.6))
+ *
+ */
+public class Delay {
+	
+	/** Supported delay distributions */
+	private static enum Distribution {FIXED, UNIFORM, NORMAL, LOG_NORMAL, PERCENTILES};
+	
+	/** Distribution delays are sampled from */
+	private final Distribution distribution;
+	
+	/** First distribution parameter: fixed value, minimum, mean or median */
+	private final double first;
+	
+	/** Second distribution parameter: maximum, standard deviation or sigma */
+	private final double second;
+	
+	/** Delays by percentile (0-100) of percentile table distribution */
+	private final TreeMap<Double, Long> percentiles;
+	
+	private Delay(Distribution distribution, double first, double second, TreeMap<Double, Long> percentiles) {
+		this.distribution = distribution;
+		this.first = first;
+		this.second = second;
+		this.percentiles = percentiles;
+	}
+	
+	/**
+	 * Creates fixed delay.
+	 * 
+	 * @param millis Delay in milliseconds
+	 * 
+	 * @return Instance of Delay
+	 */
+	public static Delay fixed(long millis) {
+		return new Delay(Distribution.FIXED, millis, 0, null);
+	}
+	
+	/**
+	 * Creates delay distributed uniformly between given bounds.
+	 * 
+	 * @param minMillis Minimum delay in milliseconds
+	 * @param maxMillis Maximum delay in milliseconds
+	 * 
+	 * @return Instance of Delay
+	 */
+	public static Delay uniform(long minMillis, long maxMillis) {
+		if (maxMillis < minMillis) {
+			throw new IllegalArgumentException("Maximum delay " + maxMillis + " is less than minimum delay " + minMillis);
+		}
+		return new Delay(Distribution.UNIFORM, minMillis, maxMillis, null);
+	}
+	
+	/**
+	 * Creates normally distributed delay.
+	 * 
+	 * @param meanMillis Mean delay in milliseconds
+	 * @param standardDeviationMillis Standard deviation in milliseconds
+	 * 
+	 * @return Instance of Delay
+	 */
+	public static Delay normal(long meanMillis, long standardDeviationMillis) {
+		return new Delay(Distribution.NORMAL, meanMillis, standardDeviationMillis, null);
+	}
+	
+	/**
+	 * Creates log-normally distributed delay, the usual shape of service latencies: most responses
+	 * close to the median and a long tail of slow ones.
+	 * 
+	 * @param medianMillis Median delay in milliseconds
+	 * @param sigma Standard deviation of the delay's natural logarithm, larger value means longer tail
+	 * 
+	 * @return Instance of Delay
+	 */
+	public static Delay logNormal(long medianMillis, double sigma) {
+		if (medianMillis <= 0) {
+			throw new IllegalArgumentException("Median of log-normal delay must be positive: " + medianMillis);
+		}
+		return new Delay(Distribution.LOG_NORMAL, medianMillis, sigma, null);
+	}
+	
+	/**
+	 * Creates delay following given percentile table, e.g. {50: 20, 90: 80, 99: 400}. Delays between
+	 * given percentiles are interpolated linearly, delays below lowest and above highest percentile
+	 * equal to delay of lowest and highest percentile.
+	 * 
+	 * @param millisByPercentile Delays in milliseconds by percentile (0-100)
+	 * 
+	 * @return Instance of Delay
+	 */
+	public static Delay percentiles(Map<Double, Long> millisByPercentile) {
+		if (millisByPercentile == null || millisByPercentile.isEmpty()) {
+			throw new IllegalArgumentException("Percentile table must not be empty");
+		}
+		TreeMap<Double, Long> percentiles = new TreeMap<Double, Long>(millisByPercentile);
+		if (percentiles.firstKey() < 0 || percentiles.lastKey() > 100) {
+			throw new IllegalArgumentException("Percentiles must be between 0 and 100: " + percentiles.keySet());
+		}
+		return new Delay(Distribution.PERCENTILES, 0, 0, percentiles);
+	}
+	
+	/**
+	 * Samples delay from the distribution.
+	 * 
+	 * @return Delay in milliseconds, zero or greater
+	 */
+	public long sampleMillis() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		double millis;
+		switch (distribution) {
+			case UNIFORM:
+				millis = first + random.nextDouble() * (second - first);
+				break;
+			case NORMAL:
+				millis = first + random.nextGaussian() * second;
+				break;
+			case LOG_NORMAL:
+				millis = first * Math.exp(random.nextGaussian() * second);
+				break;
+			case PERCENTILES:
+				millis = interpolate(random.nextDouble() * 100);
+				break;
+			default:
+				millis = first;
+		}
+		return Math.max(0, Math.round(millis));
+	}
+	
+	/**
+	 * Helper method to interpolate delay of given percentile from percentile table.
+	 * 
+	 * @param percentile Percentile (0-100)
+	 * 
+	 * @return Delay in milliseconds
+	 */
+	double interpolate(double percentile) {
+		Map.Entry<Double, Long> lower = percentiles.floorEntry(percentile);
+		Map.Entry<Double, Long> upper = percentiles.ceilingEntry(percentile);
+		if (lower == null) {
+			return upper.getValue();
+		}
+		if (upper == null || upper.getKey().equals(lower.getKey())) {
+			return lower.getValue();
+		}
+		double position = (percentile - lower.getKey()) / (upper.getKey() - lower.getKey());
+		return lower.getValue() + position * (upper.getValue() - lower.getValue());
+	}
+	
+	@Override
+	public String toString() {
+		switch (distribution) {
+			case UNIFORM:
+				return "uniform(" + (long) first + ".." + (long) second + " ms)";
+			case NORMAL:
+				return "normal(mean " + (long) first + " ms, sd " + (long) second + " ms)";
+			case LOG_NORMAL:
+				return "logNormal(median " + (long) first + " ms, sigma " + second + ")";
+			case PERCENTILES:
+				return "percentiles(" + percentiles + " ms)";
+			default:
+				return (long) first + " ms";
+		}
+	}
+}
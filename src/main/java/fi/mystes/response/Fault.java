@@ -0,0 +1,205 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.response;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Connection level fault injected into a mock response with given probability. Faults are honoured
+ * by fi.mystes.mock.InProcessApiMock only. With JDK server type, faults closing or resetting connections
+ * depend on reflective access to JDK internals and are rejected when they are added without it, see
+ * fi.mystes.server.jdk.JdkServer.supportsConnectionFaults.<br/><br/>
+ * 
+ * Example of a fault mix where 1 % of responses are reset and 5 % trickle one byte at a time:<br/><br/>
+ * 
+ * apiMock.setFaults(uri, Arrays.asList(Fault.resetAfterBytes(100).setProbability(0.01), 
+ * Fault.slowDrip(10).setProbability(0.05)))
+ *
+ */
+public class Fault {
+	
+	/** Supported fault types */
+	public static enum Type {
+		/** Connection is closed without sending status line and headers */
+		CLOSE_BEFORE_HEADERS,
+		/** Headers and given number of body bytes are sent, then connection is reset (TCP RST) */
+		RESET_AFTER_BYTES,
+		/** Body is sent chunked and connection is closed after given number of bytes, before the last chunk */
+		TRUNCATED_CHUNKED_BODY,
+		/** Nothing is sent until client or server closes the connection */
+		STALL,
+		/** Body is sent at given bytes per second, one byte at a time at low rates */
+		SLOW_DRIP
+	};
+	
+	/** Fault type */
+	private final Type type;
+	
+	/** Number of bytes sent before reset or truncation, or bytes per second of slow drip */
+	private final long amount;
+	
+	/** Probability (0-1) of the fault being injected into a response */
+	private double probability = 1;
+	
+	private Fault(Type type, long amount) {
+		this.type = type;
+		this.amount = amount;
+	}
+	
+	/**
+	 * Creates fault closing connection before status line and headers are sent.
+	 * 
+	 * @return Instance of Fault
+	 */
+	public static Fault closeBeforeHeaders() {
+		return new Fault(Type.CLOSE_BEFORE_HEADERS, 0);
+	}
+	
+	/**
+	 * Creates fault resetting connection after headers and given number of body bytes have been sent.
+	 * 
+	 * @param bytes Number of body bytes sent before reset
+	 * 
+	 * @return Instance of Fault
+	 */
+	public static Fault resetAfterBytes(long bytes) {
+		return new Fault(Type.RESET_AFTER_BYTES, requireNotNegative(bytes));
+	}
+	
+	/**
+	 * Creates fault sending body chunked and closing connection after given number of body bytes,
+	 * without the terminating chunk. At most all but the last body byte is sent.
+	 * 
+	 * @param bytes Number of body bytes sent before connection is closed
+	 * 
+	 * @return Instance of Fault
+	 */
+	public static Fault truncatedChunkedBody(long bytes) {
+		return new Fault(Type.TRUNCATED_CHUNKED_BODY, requireNotNegative(bytes));
+	}
+	
+	/**
+	 * Creates fault sending nothing until client or server idle timeout closes the connection.
+	 * 
+	 * @return Instance of Fault
+	 */
+	public static Fault stall() {
+		return new Fault(Type.STALL, 0);
+	}
+	
+	/**
+	 * Creates fault sending body at given rate regardless of response's own pacing.
+	 * 
+	 * @param bytesPerSecond Body bytes sent per second
+	 * 
+	 * @return Instance of Fault
+	 */
+	public static Fault slowDrip(long bytesPerSecond) {
+		if (bytesPerSecond <= 0) {
+			throw new IllegalArgumentException("Slow drip rate must be positive: " + bytesPerSecond);
+		}
+		return new Fault(Type.SLOW_DRIP, bytesPerSecond);
+	}
+	
+	/**
+	 * Sets probability of the fault being injected into a response. Defaults to 1 (every response).
+	 * 
+	 * @param probability Probability between 0 and 1
+	 * 
+	 * @return Instance of Fault
+	 */
+	public Fault setProbability(double probability) {
+		if (probability < 0 || probability > 1) {
+			throw new IllegalArgumentException("Probability must be between 0 and 1: " + probability);
+		}
+		this.probability = probability;
+		return this;
+	}
+	
+	/**
+	 * Returns probability of the fault being injected into a response.
+	 * 
+	 * @return Probability between 0 and 1
+	 */
+	public double getProbability() {
+		return probability;
+	}
+	
+	/**
+	 * Returns fault type.
+	 * 
+	 * @return Fault type
+	 */
+	public Type getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether the fault closes or resets the connection: close before
+	 * headers, reset after bytes and truncated chunked body.
+	 * 
+	 * @return True if the fault cuts the connection, otherwise false
+	 */
+	public boolean cutsConnection() {
+		return type == Type.CLOSE_BEFORE_HEADERS || type == Type.RESET_AFTER_BYTES || type == Type.TRUNCATED_CHUNKED_BODY;
+	}
+	
+	/**
+	 * Returns number of bytes sent before reset or truncation, or bytes per second of slow drip.
+	 * 
+	 * @return Number of bytes or bytes per second, 0 for other fault types
+	 */
+	public long getAmount() {
+		return amount;
+	}
+	
+	/**
+	 * Selects at most one fault from given fault mix. Probabilities are cumulative: with faults of
+	 * probabilities 0.1 and 0.2, the first one is selected for 10 % and the second one for 20 % of
+	 * responses. Faults beyond total probability 1 are never selected.
+	 * 
+	 * @param faults Fault mix, may be null
+	 * 
+	 * @return Selected instance of Fault or null if no fault is to be injected
+	 */
+	public static Fault select(List<Fault> faults) {
+		if (faults == null || faults.isEmpty()) {
+			return null;
+		}
+		double roll = ThreadLocalRandom.current().nextDouble();
+		double cumulative = 0;
+		for (Fault fault : faults) {
+			cumulative += fault.getProbability();
+			if (roll < cumulative) {
+				return fault;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return type + (amount > 0 ? "(" + amount + ")" : "") + (probability < 1 ? " p=" + probability : "");
+	}
+	
+	private static long requireNotNegative(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Number of bytes must not be negative: " + bytes);
+		}
+		return bytes;
+	}
+}
@@ -15,16 +15,225 @@
  */
 package fi.mystes.response;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import fi.mystes.http.ConfigurableHttpEntity;
 
 /**
- * Class for containing response.
+ * Class for containing response.<br/><br/>
+ * 
+ * Response can be made to behave like a slow dependency: first byte delay postpones status line and headers,
+ * body duration and bandwidth pace the body. If both body duration and bandwidth are set, the slower one wins.
+ * Connection level faults (resets, truncated bodies, stalls) can be injected with given probabilities.
+ * Body can be served compressed with gzip or deflate to clients accepting the content coding. It is
+ * compressed once and the compressed bytes are reused every time the response is served.
+ * Pacing, faults and compression are honoured by fi.mystes.mock.InProcessApiMock only, the mock web
+ * application ignores them.
  *
  */
 public class Response extends ConfigurableHttpEntity<Response>{
+	
+	/** HTTP headers formatted as a single parameter value, built on demand and cleared when headers are set */
+	private String headersParameter;
+	
+	/** HTTP status code of the response, null if mocked API's default status code is to be used */
+	private Integer status;
+	
+	/** Delay before status line and headers are sent, null for no delay */
+	private Delay firstByteDelay;
+	
+	/** Time over which body is spread after headers have been sent, null for no pacing */
+	private Delay bodyDuration;
+	
+	/** Maximum body bytes per second, 0 for unlimited */
+	private long bandwidth;
+	
+	/** Fault mix of the response, null for no faults */
+	private List<Fault> faults;
 
 	public Response() {
 		super(Response.class);
 	}
 	
+	/**
+	 * Sets HTTP status code of the response.
+	 * 
+	 * @param status HTTP status code
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setStatus(int status) {
+		this.status = status;
+		return this;
+	}
+	
+	/**
+	 * Returns HTTP status code of the response.
+	 * 
+	 * @return HTTP status code or null if mocked API's default status code is to be used
+	 */
+	public Integer getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Sets delay before status line and headers are sent.
+	 * 
+	 * @param firstByteDelay Delay, null for no delay
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setFirstByteDelay(Delay firstByteDelay) {
+		this.firstByteDelay = firstByteDelay;
+		return this;
+	}
+	
+	/**
+	 * Sets fixed delay before status line and headers are sent.
+	 * 
+	 * @param millis Delay in milliseconds
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setFirstByteDelay(long millis) {
+		return setFirstByteDelay(Delay.fixed(millis));
+	}
+	
+	/**
+	 * Returns delay before status line and headers are sent.
+	 * 
+	 * @return Instance of Delay or null if there is no delay
+	 */
+	public Delay getFirstByteDelay() {
+		return firstByteDelay;
+	}
+	
+	/**
+	 * Sets time over which body is spread evenly after headers have been sent.
+	 * 
+	 * @param bodyDuration Body duration, null for no pacing
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setBodyDuration(Delay bodyDuration) {
+		this.bodyDuration = bodyDuration;
+		return this;
+	}
+	
+	/**
+	 * Returns time over which body is spread after headers have been sent.
+	 * 
+	 * @return Instance of Delay or null if body is not paced
+	 */
+	public Delay getBodyDuration() {
+		return bodyDuration;
+	}
+	
+	/**
+	 * Sets maximum body bytes sent per second.
+	 * 
+	 * @param bytesPerSecond Bytes per second, 0 for unlimited
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setBandwidth(long bytesPerSecond) {
+		if (bytesPerSecond < 0) {
+			throw new IllegalArgumentException("Bandwidth must not be negative: " + bytesPerSecond);
+		}
+		this.bandwidth = bytesPerSecond;
+		return this;
+	}
+	
+	/**
+	 * Returns maximum body bytes sent per second.
+	 * 
+	 * @return Bytes per second, 0 if unlimited
+	 */
+	public long getBandwidth() {
+		return bandwidth;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether response is delayed or its body paced.
+	 * 
+	 * @return True if first byte delay, body duration or bandwidth is set, otherwise false
+	 */
+	public boolean isPaced() {
+		return firstByteDelay != null || bodyDuration != null || bandwidth > 0;
+	}
+	
+	/**
+	 * Adds fault to response's fault mix.
+	 * 
+	 * @param fault Fault to be injected with its probability
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response addFault(Fault fault) {
+		if (faults == null) {
+			faults = new ArrayList<Fault>();
+		}
+		faults.add(fault);
+		return this;
+	}
+	
+	/**
+	 * Sets response's fault mix.
+	 * 
+	 * @param faults Faults to be injected with their probabilities, null for no faults
+	 * 
+	 * @return Instance of Response
+	 */
+	public Response setFaults(List<Fault> faults) {
+		this.faults = faults;
+		return this;
+	}
+	
+	/**
+	 * Returns response's fault mix.
+	 * 
+	 * @return Faults or null if there are no faults
+	 */
+	public List<Fault> getFaults() {
+		return faults;
+	}
+	
+	@Override
+	public Response addHeader(String name, String value) {
+		headersParameter = null;
+		return super.addHeader(name, value);
+	}
+	
+	@Override
+	public Response setHeaders(Map<String, String> headers) {
+		headersParameter = null;
+		return super.setHeaders(headers);
+	}
+	
+	/**
+	 * Returns HTTP headers formatted as a single parameter value: name:value pairs separated by commas.
+	 * Value is cached and rebuilt only after headers are added or set, so headers map must not be
+	 * modified directly after the value has been built.
+	 * 
+	 * @return Headers as parameter value or null if there are no headers
+	 */
+	public String getHeadersAsParameter() {
+		if (headers == null || headers.isEmpty()) {
+			return null;
+		}
+		if (headersParameter == null) {
+			StringBuilder builder = new StringBuilder();
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				if (builder.length() > 0) {
+					builder.append(",");
+				}
+				builder.append(header.getKey()).append(":").append(header.getValue());
+			}
+			headersParameter = builder.toString();
+		}
+		return headersParameter;
+	}
+	
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.response;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.mashape.unirest.http.Headers;
+
+/**
+ * Class containing REST response status, headers and body in raw form: bytes, stream, or nothing
+ * when body is discarded. Responses with streamed body must be closed.
+ *
+ * @param <T> Type of body
+ */
+public class RestResponse<T> implements Closeable {
+	
+	/** HTTP status code */
+	private int status;
+	
+	/** HTTP status text */
+	private String statusText;
+	
+	/** HTTP headers */
+	private Headers headers;
+	
+	/** Response body */
+	private T body;
+	
+	/** Number of body bytes read, -1 if body is streamed */
+	private long bodyLength;
+	
+	/** Number of body bytes received before content decoding, -1 if not known */
+	private long rawBodyLength;
+	
+	/** Resource to be closed when response is closed. May be null. */
+	private Closeable resource;
+	
+	/**
+	 * Constructor with status, headers, body and resource to be closed with the response.
+	 * 
+	 * @param status HTTP status code
+	 * @param statusText HTTP status text
+	 * @param headers HTTP headers
+	 * @param body Response body
+	 * @param bodyLength Number of body bytes read, -1 if body is streamed
+	 * @param resource Resource to be closed when response is closed. May be null.
+	 */
+	public RestResponse(int status, String statusText, Headers headers, T body, long bodyLength, Closeable resource) {
+		this(status, statusText, headers, body, bodyLength, -1, resource);
+	}
+	
+	/**
+	 * Constructor with status, headers, body, body lengths before and after content decoding and resource
+	 * to be closed with the response.
+	 * 
+	 * @param status HTTP status code
+	 * @param statusText HTTP status text
+	 * @param headers HTTP headers
+	 * @param body Response body
+	 * @param bodyLength Number of body bytes read, -1 if body is streamed
+	 * @param rawBodyLength Number of body bytes received before content decoding, -1 if not known
+	 * @param resource Resource to be closed when response is closed. May be null.
+	 */
+	public RestResponse(int status, String statusText, Headers headers, T body, long bodyLength, long rawBodyLength, Closeable resource) {
+		this.status = status;
+		this.statusText = statusText;
+		this.headers = headers;
+		this.body = body;
+		this.bodyLength = bodyLength;
+		this.rawBodyLength = rawBodyLength;
+		this.resource = resource;
+	}
+	
+	/**
+	 * Returns HTTP status code.
+	 * 
+	 * @return HTTP status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Returns HTTP status text.
+	 * 
+	 * @return HTTP status text
+	 */
+	public String getStatusText() {
+		return statusText;
+	}
+	
+	/**
+	 * Returns HTTP headers.
+	 * 
+	 * @return Instance of com.mashape.unirest.http.Headers
+	 */
+	public Headers getHeaders() {
+		return headers;
+	}
+	
+	/**
+	 * Returns response body.
+	 * 
+	 * @return Response body, null if body was discarded
+	 */
+	public T getBody() {
+		return body;
+	}
+	
+	/**
+	 * Returns number of body bytes read. Body is counted after content decoding, e.g. gzip.
+	 * 
+	 * @return Number of body bytes, -1 if body is streamed
+	 */
+	public long getBodyLength() {
+		return bodyLength;
+	}
+	
+	/**
+	 * Returns number of body bytes received before content decoding, i.e. compressed bytes on the wire
+	 * of gzip or deflate encoded response. Counted only by shared HTTP client.
+	 * 
+	 * @return Number of raw body bytes, -1 if body is streamed or bytes were not counted
+	 */
+	public long getRawBodyLength() {
+		return rawBodyLength;
+	}
+	
+	/**
+	 * Closes the response. Closing a streamed response before its body has been read to the end
+	 * closes the underlying connection instead of returning it to connection pool.
+	 */
+	public void close() throws IOException {
+		if (resource != null) {
+			resource.close();
+		}
+	}
+}
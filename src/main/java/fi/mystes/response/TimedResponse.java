@@ -0,0 +1,61 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.response;
+
+import fi.mystes.http.RequestTiming;
+
+/**
+ * Class containing response of a request together with timing breakdown of sending it.
+ *
+ * @param <T> Type of response
+ */
+public class TimedResponse<T> {
+	
+	/** Response */
+	private T response;
+	
+	/** Timing breakdown */
+	private RequestTiming timing;
+	
+	/**
+	 * Constructor with response and timing breakdown.
+	 * 
+	 * @param response Response
+	 * @param timing Timing breakdown
+	 */
+	public TimedResponse(T response, RequestTiming timing) {
+		this.response = response;
+		this.timing = timing;
+	}
+	
+	/**
+	 * Returns response.
+	 * 
+	 * @return Response
+	 */
+	public T getResponse() {
+		return response;
+	}
+	
+	/**
+	 * Returns timing breakdown of sending the request.
+	 * 
+	 * @return Instance of fi.mystes.http.RequestTiming
+	 */
+	public RequestTiming getTiming() {
+		return timing;
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+
+/**
+ * Interface for mock handlers served by IMockServer in the same process, without deploying
+ * a web application.
+ *
+ */
+public interface IMockHandler {
+
+	/**
+	 * Configures handler with context path it is served at and extra class path containing mocked API
+	 * definitions (ws-mock.properties), i.e. the same extra class path a mock web application would get.
+	 * 
+	 * @param contextPath Context path handler is added to the server with
+	 * @param extraClasspath Extra class path, may be null
+	 * 
+	 * @throws Exception If reading mocked API definitions fails
+	 */
+	public void configure(String contextPath, String extraClasspath) throws Exception;
+	
+	/**
+	 * Handles HTTP request received by the server. Request body compressed with gzip or deflate has been decoded.
+	 * 
+	 * @param request Received request containing full request URL, HTTP method, headers, query parameters and body
+	 * 
+	 * @return Response to be returned. Status code defaults to 200 if not set.
+	 * 
+	 * @throws Exception If handling request fails, server responds with status code 500
+	 */
+	public Response handle(RecordedRequest request) throws Exception;
+}
@@ -54,12 +54,52 @@ public interface IMockServer {
 	public void addWebApp(String webAppPath, String contextPath, String extraClasspath) throws Exception;
 	
 	/**
-	 * Starts server.
+	 * Adds in-process mock handler to server with given context path.
 	 * 
-	 * @throws Exception If server start fails
+	 * @param contextPath Handler's context path
+	 * @param handler Instance of IMockHandler
+	 * 
+	 * @throws Exception If adding handler to server fails
+	 */
+	public void addMockHandler(String contextPath, IMockHandler handler) throws Exception;
+	
+	/**
+	 * Starts server unless given API mock is already alive at given port, and waits until it answers.
+	 * 
+	 * @param mockServer API mock served by the server
+	 * @param port Port API mock is served at
+	 * 
+	 * @throws Exception If server start fails or API mock does not answer within 60 seconds
 	 */
 	public void tearUp(IApiMock mockServer, Integer port) throws Exception;
 	
+	/**
+	 * Starts server unless given API mock is already alive at given port, and waits until it answers.
+	 * API mock is probed with exponential backoff, see fi.mystes.server.ReadinessProbe.
+	 * 
+	 * @param mockServer API mock served by the server
+	 * @param port Port API mock is served at, 0 if server allocates a free port (see getPort)
+	 * @param readyTimeoutMillis Maximum time to wait for API mock to answer after server start in milliseconds
+	 * 
+	 * @throws Exception If server start fails or API mock does not answer in time
+	 */
+	public void tearUp(IApiMock mockServer, Integer port, long readyTimeoutMillis) throws Exception;
+	
+	/**
+	 * Returns port server listens to. If server was created with port 0, the port is allocated by
+	 * operating system when server starts.
+	 * 
+	 * @return Bound port of started server, configured port of server not started yet
+	 */
+	public int getPort();
+	
+	/**
+	 * Returns durations of startup phases of latest tearUp.
+	 * 
+	 * @return Instance of fi.mystes.server.StartupMetrics or null if server has not been torn up
+	 */
+	public StartupMetrics getStartupMetrics();
+	
 	/**
 	 * Stops server.
 	 * 
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Interface for server specific writing of mock responses, used by PacedResponse to write
+ * status line, headers and body chunks when they are due and to inject connection level faults.
+ *
+ */
+public interface IResponseWriter {
+	
+	/** Content length of body sent with chunked transfer encoding */
+	public static final int CHUNKED = -1;
+
+	/**
+	 * Writes status line and headers and flushes them to the client.
+	 * 
+	 * @param status HTTP status code
+	 * @param headers HTTP headers, may be null
+	 * @param contentLength Length of body in bytes or CHUNKED
+	 * 
+	 * @throws IOException If writing fails
+	 */
+	public void writeHeaders(int status, Map<String, String> headers, int contentLength) throws IOException;
+	
+	/**
+	 * Writes part of body and flushes it to the client.
+	 * 
+	 * @param body Body bytes
+	 * @param offset Offset of the part to write
+	 * @param length Length of the part to write
+	 * 
+	 * @throws IOException If writing fails
+	 */
+	public void writeBody(byte[] body, int offset, int length) throws IOException;
+	
+	/**
+	 * Closes the connection abruptly without completing the response.
+	 * 
+	 * @param reset True to reset the connection (TCP RST), false to close it normally (TCP FIN)
+	 * 
+	 * @throws IOException If closing fails
+	 */
+	public void abort(boolean reset) throws IOException;
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import fi.mystes.http.Compression;
+import fi.mystes.response.Fault;
+import fi.mystes.response.Response;
+
+/**
+ * Mock response being written according to its first byte delay, body duration and bandwidth.
+ * Delays are sampled once when the response is created. Server handlers call writeDue whenever
+ * the previously returned wait time has elapsed, so no server thread has to sleep while the response
+ * is delayed.<br/><br/>
+ * 
+ * Paced body is written in chunks at least 10 milliseconds apart, the last chunk is written when
+ * body duration has elapsed after the headers. A fault selected from response's fault mix when the
+ * response is created may cut the response short or stall it. Body of a response with compression is
+ * written compressed, and paced by compressed bytes, if the client accepts its content coding.
+ *
+ */
+public class PacedResponse {
+	
+	private static final Logger logger = Logger.getLogger(PacedResponse.class);
+	
+	/** Minimum interval between paced body chunks in milliseconds */
+	private static final long MIN_CHUNK_INTERVAL_MILLIS = 10;
+	
+	/** Interval of checking stalled response in milliseconds, stalled response is never written */
+	private static final long STALL_CHECK_INTERVAL_MILLIS = 60000;
+	
+	/** HTTP status code */
+	private final int status;
+	
+	/** HTTP headers, may be null */
+	private final Map<String, String> headers;
+	
+	/** Body bytes, null if response has no body */
+	private final byte[] body;
+	
+	/** Fault injected into the response, null if response is written normally */
+	private final Fault fault;
+	
+	/** Number of body bytes written before fault cuts the response short */
+	private final int bodyLimit;
+	
+	/** System.nanoTime when status line and headers are due */
+	private final long headersDueNanos;
+	
+	/** Nanoseconds over which body is spread after headers */
+	private final long bodyNanos;
+	
+	/** Number of body bytes written at once */
+	private final int chunkSize;
+	
+	/** Boolean flag indicating whether status line and headers have been written */
+	private boolean headersWritten;
+	
+	/** Number of body bytes written */
+	private int bodyWritten;
+	
+	/** Boolean flag indicating whether response has been written completely or cut short */
+	private boolean complete;
+	
+	/**
+	 * Constructor with mock response. Status code defaults to 200 if not set. Body is written uncompressed.
+	 * 
+	 * @param response Mock response
+	 */
+	public PacedResponse(Response response) {
+		this(response, null);
+	}
+	
+	/**
+	 * Constructor with mock response and content codings accepted by client. Status code defaults to 200 if not set.
+	 * 
+	 * @param response Mock response
+	 * @param acceptEncoding Value of request's Accept-Encoding header. May be null.
+	 */
+	public PacedResponse(Response response, String acceptEncoding) {
+		this.status = response.getStatus() != null ? response.getStatus() : 200;
+		byte[] compressed = Compression.isAccepted(acceptEncoding, response.getCompression()) ? response.getCompressedContent() : null;
+		if (compressed != null) {
+			Map<String, String> compressedHeaders = response.getHeaders() != null 
+					? new LinkedHashMap<String, String>(response.getHeaders()) : new LinkedHashMap<String, String>();
+			compressedHeaders.put("Content-Encoding", response.getCompression());
+			this.headers = compressedHeaders;
+			this.body = compressed;
+		} else {
+			this.headers = response.getHeaders();
+			this.body = response.getContent() != null ? response.getContent().getBytes(StandardCharsets.UTF_8) : null;
+		}
+		
+		long firstByteMillis = response.getFirstByteDelay() != null ? response.getFirstByteDelay().sampleMillis() : 0;
+		this.headersDueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(firstByteMillis);
+		
+		int length = body != null ? body.length : 0;
+		this.fault = Fault.select(response.getFaults());
+		this.bodyLimit = fault == null ? length
+				: fault.getType() == Fault.Type.RESET_AFTER_BYTES ? (int) Math.min(fault.getAmount(), length)
+				: fault.getType() == Fault.Type.TRUNCATED_CHUNKED_BODY ? (int) Math.min(fault.getAmount(), Math.max(0, length - 1))
+				: length;
+		if (fault != null) {
+			logger.debug("Injecting fault " + fault + " into response");
+		}
+		
+		long bodyMillis = response.getBodyDuration() != null ? response.getBodyDuration().sampleMillis() : 0;
+		long bandwidth = fault != null && fault.getType() == Fault.Type.SLOW_DRIP ? fault.getAmount() : response.getBandwidth();
+		if (bandwidth > 0) {
+			bodyMillis = Math.max(bodyMillis, length * 1000L / bandwidth);
+		}
+		if (bodyMillis > 0 && length > 0) {
+			long chunks = Math.max(1, Math.min(length, bodyMillis / MIN_CHUNK_INTERVAL_MILLIS));
+			this.chunkSize = (int) ((length + chunks - 1) / chunks);
+			this.bodyNanos = TimeUnit.MILLISECONDS.toNanos(bodyMillis);
+		} else {
+			this.chunkSize = length;
+			this.bodyNanos = 0;
+		}
+	}
+	
+	/**
+	 * Writes status line, headers and body chunks that are due, and injects fault when it is due.
+	 * 
+	 * @param writer Server specific response writer
+	 * 
+	 * @return Milliseconds to wait before calling again, 0 if response has been written completely or cut short
+	 * 
+	 * @throws IOException If writing fails
+	 */
+	public synchronized long writeDue(IResponseWriter writer) throws IOException {
+		if (complete) {
+			return 0;
+		}
+		Fault.Type faultType = fault != null ? fault.getType() : null;
+		if (faultType == Fault.Type.STALL) {
+			return STALL_CHECK_INTERVAL_MILLIS;
+		}
+		if (!headersWritten) {
+			long remaining = headersDueNanos - System.nanoTime();
+			if (remaining > 0) {
+				return toWaitMillis(remaining);
+			}
+			if (faultType == Fault.Type.CLOSE_BEFORE_HEADERS) {
+				complete = true;
+				writer.abort(false);
+				return 0;
+			}
+			writer.writeHeaders(status, headers, faultType == Fault.Type.TRUNCATED_CHUNKED_BODY 
+					? IResponseWriter.CHUNKED : body != null ? body.length : 0);
+			headersWritten = true;
+		}
+		int length = body != null ? body.length : 0;
+		while (bodyWritten < bodyLimit) {
+			int end = Math.min(bodyLimit, bodyWritten + chunkSize);
+			long remaining = headersDueNanos + (long) ((double) bodyNanos * end / length) - System.nanoTime();
+			if (remaining > 0) {
+				return toWaitMillis(remaining);
+			}
+			writer.writeBody(body, bodyWritten, end - bodyWritten);
+			bodyWritten = end;
+		}
+		complete = true;
+		if (faultType == Fault.Type.RESET_AFTER_BYTES || faultType == Fault.Type.TRUNCATED_CHUNKED_BODY) {
+			writer.abort(faultType == Fault.Type.RESET_AFTER_BYTES);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether response has been written completely or cut short by a fault.
+	 * 
+	 * @return True if nothing is left to write, otherwise false
+	 */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+	
+	/**
+	 * Helper method to convert remaining nanoseconds to milliseconds to wait, rounding up.
+	 * 
+	 * @param nanos Remaining nanoseconds
+	 * 
+	 * @return Milliseconds to wait, at least 1
+	 */
+	private static long toWaitMillis(long nanos) {
+		return Math.max(1, (nanos + 999999) / 1000000);
+	}
+}
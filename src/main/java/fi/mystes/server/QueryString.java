@@ -0,0 +1,53 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Abstract helper class for parsing query strings of requests received by mock servers.
+ *
+ */
+public abstract class QueryString {
+
+	/**
+	 * Parses query string parameters. Only the first value of each parameter is kept.
+	 * 
+	 * @param query Raw query string without leading question mark, may be null
+	 * 
+	 * @return Decoded parameters by name
+	 * 
+	 * @throws UnsupportedEncodingException Never, UTF-8 is always supported
+	 */
+	public static Map<String, String> parse(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (query == null || query.isEmpty()) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			String name = URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), "UTF-8");
+			String value = separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), "UTF-8");
+			if (!parameters.containsKey(name)) {
+				parameters.put(name, value);
+			}
+		}
+		return parameters;
+	}
+}
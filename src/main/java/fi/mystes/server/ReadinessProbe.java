@@ -0,0 +1,66 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import fi.mystes.mock.IApiMock;
+
+/**
+ * Abstract helper class probing API mock health check with exponential backoff until it answers
+ * or given deadline passes.
+ *
+ */
+public abstract class ReadinessProbe {
+	
+	/** Delay before second probe in milliseconds */
+	private static final long INITIAL_DELAY_MILLIS = 5;
+	
+	/** Maximum delay between probes in milliseconds */
+	private static final long MAX_DELAY_MILLIS = 500;
+
+	/**
+	 * Probes given API mock until it is alive. First probe is done immediately, delay between following
+	 * probes starts at 5 milliseconds and is doubled after each probe up to 500 milliseconds.
+	 * 
+	 * @param apiMock API mock whose isAlive method is used as health check
+	 * @param port Port API mock is served at
+	 * @param timeoutMillis Maximum time to wait in milliseconds
+	 * 
+	 * @return Number of probes done, including the successful one
+	 * 
+	 * @throws TimeoutException If API mock does not answer before deadline
+	 * @throws InterruptedException If waiting thread is interrupted
+	 */
+	public static int awaitReady(IApiMock<?> apiMock, Integer port, long timeoutMillis) throws TimeoutException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long delay = INITIAL_DELAY_MILLIS;
+		int probes = 0;
+		while (true) {
+			probes++;
+			if (apiMock.isAlive(port)) {
+				return probes;
+			}
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				throw new TimeoutException("API mock not ready at port " + port + " within " + timeoutMillis + " ms, probed " + probes + " times");
+			}
+			Thread.sleep(Math.min(delay, remaining));
+			delay = Math.min(delay * 2, MAX_DELAY_MILLIS);
+		}
+	}
+}
@@ -15,6 +15,9 @@
  */
 package fi.mystes.server;
 
+import java.util.Properties;
+
+import fi.mystes.server.jdk.JdkServer;
 import fi.mystes.server.jetty.JettyServer;
 
 /**
@@ -23,22 +26,45 @@ import fi.mystes.server.jetty.JettyServer;
  */
 public abstract class ServerFactory {
 	/** Supported server types */
-	public static enum Type {JETTY};
+	public static enum Type {JETTY, JDK};
+	
+	/** Supported server lifecycles: started and stopped per test class, or started once and shared by the whole JVM */
+	public static enum Lifecycle {PER_CLASS, PER_JVM};
 	
 	/**
 	 * Method to create instance to server.
 	 * 
 	 * @param type Server type
-	 * @param port Port server should listen to
+	 * @param port Port server should listen to, 0 to let operating system allocate a free port when server starts
+	 * 
+	 * @return Created instance of IMockServer
+	 * 
+	 * @throws UnsupportedServerTypeException If unsupported server type given
+	 * @throws Exception If creating server fails
+	 */
+	public static IMockServer createServer(Type type, int port) throws Exception{
+		return createServer(type, port, new Properties());
+	}
+	
+	/**
+	 * Method to create instance to server with connector and thread pool configured by given properties,
+	 * see server implementations for supported properties.
+	 * 
+	 * @param type Server type
+	 * @param port Port server should listen to, 0 to let operating system allocate a free port when server starts
+	 * @param properties Configuration properties
 	 * 
 	 * @return Created instance of IMockServer
 	 * 
 	 * @throws UnsupportedServerTypeException If unsupported server type given
+	 * @throws Exception If creating server fails
 	 */
-	public static IMockServer createServer(Type type, int port) throws UnsupportedServerTypeException{
+	public static IMockServer createServer(Type type, int port, Properties properties) throws Exception{
 		switch(type) {
 			case JETTY:
-				return new JettyServer(port);
+				return new JettyServer(port, properties);
+			case JDK:
+				return new JdkServer(port, properties);
 			default:
 				throw new UnsupportedServerTypeException("Supported server types are:" + Type.values());
 		}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for containing durations of mock server startup phases: starting the server, deploying
+ * web applications and waiting for first healthy response from API mock.
+ *
+ */
+public class StartupMetrics {
+	
+	/** Boolean flag indicating whether API mock was found running and server was not started */
+	private boolean alreadyRunning;
+	
+	/** Nanoseconds spent starting server, excluding web application deployment */
+	private long serverStartNanos;
+	
+	/** Nanoseconds spent deploying web applications */
+	private long webAppDeployNanos;
+	
+	/** Nanoseconds from server start until first healthy response */
+	private long firstHealthyResponseNanos;
+	
+	/** Number of health check probes done */
+	private int probes;
+	
+	/**
+	 * Sets boolean flag indicating whether API mock was found running and server was not started.
+	 * 
+	 * @param alreadyRunning True if server was not started
+	 * 
+	 * @return Instance of StartupMetrics
+	 */
+	public StartupMetrics setAlreadyRunning(boolean alreadyRunning) {
+		this.alreadyRunning = alreadyRunning;
+		return this;
+	}
+	
+	/**
+	 * Sets time spent starting server, excluding web application deployment.
+	 * 
+	 * @param serverStartNanos Duration in nanoseconds
+	 * 
+	 * @return Instance of StartupMetrics
+	 */
+	public StartupMetrics setServerStartNanos(long serverStartNanos) {
+		this.serverStartNanos = serverStartNanos;
+		return this;
+	}
+	
+	/**
+	 * Sets time spent deploying web applications.
+	 * 
+	 * @param webAppDeployNanos Duration in nanoseconds
+	 * 
+	 * @return Instance of StartupMetrics
+	 */
+	public StartupMetrics setWebAppDeployNanos(long webAppDeployNanos) {
+		this.webAppDeployNanos = webAppDeployNanos;
+		return this;
+	}
+	
+	/**
+	 * Sets time from server start until first healthy response and number of probes needed.
+	 * 
+	 * @param firstHealthyResponseNanos Duration in nanoseconds
+	 * @param probes Number of health check probes done
+	 * 
+	 * @return Instance of StartupMetrics
+	 */
+	public StartupMetrics setFirstHealthyResponse(long firstHealthyResponseNanos, int probes) {
+		this.firstHealthyResponseNanos = firstHealthyResponseNanos;
+		this.probes = probes;
+		return this;
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether API mock was found running and server was not started.
+	 * 
+	 * @return True if server was not started, otherwise false
+	 */
+	public boolean isAlreadyRunning() {
+		return alreadyRunning;
+	}
+	
+	/**
+	 * Returns time spent starting server, excluding web application deployment.
+	 * 
+	 * @return Duration in milliseconds
+	 */
+	public double getServerStartMillis() {
+		return toMillis(serverStartNanos);
+	}
+	
+	/**
+	 * Returns time spent deploying web applications.
+	 * 
+	 * @return Duration in milliseconds
+	 */
+	public double getWebAppDeployMillis() {
+		return toMillis(webAppDeployNanos);
+	}
+	
+	/**
+	 * Returns time from server start until first healthy response.
+	 * 
+	 * @return Duration in milliseconds
+	 */
+	public double getFirstHealthyResponseMillis() {
+		return toMillis(firstHealthyResponseNanos);
+	}
+	
+	/**
+	 * Returns total startup time from starting server to first healthy response.
+	 * 
+	 * @return Duration in milliseconds
+	 */
+	public double getTotalMillis() {
+		return toMillis(serverStartNanos + webAppDeployNanos + firstHealthyResponseNanos);
+	}
+	
+	/**
+	 * Returns number of health check probes done after server start.
+	 * 
+	 * @return Number of probes
+	 */
+	public int getProbes() {
+		return probes;
+	}
+	
+	@Override
+	public String toString() {
+		if (alreadyRunning) {
+			return "API mock already running";
+		}
+		return String.format("server start %.1f ms, web app deploy %.1f ms, first healthy response %.1f ms (%d probes), total %.1f ms",
+				getServerStartMillis(), getWebAppDeployMillis(), getFirstHealthyResponseMillis(), probes, getTotalMillis());
+	}
+	
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
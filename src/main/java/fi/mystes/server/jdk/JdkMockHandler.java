@@ -0,0 +1,287 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server.jdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import fi.mystes.http.Compression;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.IMockHandler;
+import fi.mystes.server.IResponseWriter;
+import fi.mystes.server.PacedResponse;
+import fi.mystes.server.QueryString;
+
+/**
+ * JDK HTTP server handler adapting exchanges to IMockHandler. JDK HTTP server does not preserve
+ * the case of request header names, so they are passed to mock handler in canonical form
+ * (e.g. Content-Type). Bodies are handled as UTF-8 text unless request specifies another charset.
+ *
+ */
+public class JdkMockHandler implements HttpHandler {
+	private static final Logger logger = Logger.getLogger(JdkMockHandler.class);
+	
+	/** Adapted mock handler */
+	private IMockHandler handler;
+	
+	/** Scheduler writing delayed and paced responses when their next write is due */
+	private ScheduledExecutorService scheduler;
+	
+	/**
+	 * Constructor with mock handler to adapt and scheduler for delayed responses.
+	 * 
+	 * @param handler Instance of IMockHandler
+	 * @param scheduler Scheduler writing delayed and paced responses
+	 */
+	public JdkMockHandler(IMockHandler handler, ScheduledExecutorService scheduler) {
+		this.handler = handler;
+		this.scheduler = scheduler;
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		Response response;
+		try {
+			response = handler.handle(createRecordedRequest(exchange));
+		} catch (Exception e) {
+			logger.error("Handling request " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + " failed", e);
+			try {
+				byte[] message = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+				exchange.sendResponseHeaders(500, message.length);
+				exchange.getResponseBody().write(message);
+			} finally {
+				exchange.close();
+			}
+			return;
+		}
+		write(exchange, new PacedResponse(response, exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+	}
+	
+	/**
+	 * Helper method to write parts of response that are due. Rest of the response is written by
+	 * scheduler, so the calling thread never waits for a delay.
+	 * 
+	 * @param exchange HTTP exchange
+	 * @param pacedResponse Response being written
+	 */
+	private void write(final HttpExchange exchange, final PacedResponse pacedResponse) {
+		boolean complete = true;
+		try {
+			long waitMillis = pacedResponse.writeDue(new ExchangeWriter(exchange));
+			if (waitMillis > 0) {
+				scheduler.schedule(new Runnable() {
+					public void run() {
+						write(exchange, pacedResponse);
+					}
+				}, waitMillis, TimeUnit.MILLISECONDS);
+				complete = false;
+			}
+		} catch (IOException e) {
+			logger.debug("Writing response to " + exchange.getRequestURI() + " failed", e);
+		} catch (RejectedExecutionException e) {
+			logger.debug("Server stopped before response to " + exchange.getRequestURI() + " was written");
+		} finally {
+			if (complete) {
+				exchange.close();
+			}
+		}
+	}
+	
+	/**
+	 * Helper method to create recorded request from HTTP exchange.
+	 * 
+	 * @param exchange HTTP exchange
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequest
+	 * 
+	 * @throws IOException If reading request body fails
+	 */
+	private RecordedRequest createRecordedRequest(HttpExchange exchange) throws IOException {
+		Map<String, String> headers = new HashMap<String, String>();
+		for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+			StringBuilder value = new StringBuilder();
+			for (String headerValue : header.getValue()) {
+				if (value.length() > 0) {
+					value.append(',');
+				}
+				value.append(headerValue);
+			}
+			headers.put(canonicalHeaderName(header.getKey()), value.toString());
+		}
+		
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null) {
+			host = exchange.getLocalAddress().getHostString() + ":" + exchange.getLocalAddress().getPort();
+		}
+		String query = exchange.getRequestURI().getRawQuery();
+		
+		return new RecordedRequest()
+				.setMethod(exchange.getRequestMethod())
+				.setEndpointUrl(exchange.getRequestURI().isAbsolute() 
+						? exchange.getRequestURI().toString() : "http://" + host + exchange.getRequestURI().toString())
+				.setHeaders(headers)
+				.setParameters(QueryString.parse(query))
+				.setBody(new String(readAll(Compression.decompress(exchange.getRequestBody(), headers.get("Content-Encoding"))), 
+						charset(headers.get("Content-Type"))));
+	}
+	
+	/**
+	 * Helper method to convert header name to canonical form: first letter of each dash separated part in upper case.
+	 * 
+	 * @param name Header name
+	 * 
+	 * @return Canonical header name
+	 */
+	private static String canonicalHeaderName(String name) {
+		char[] chars = name.toLowerCase().toCharArray();
+		boolean partStart = true;
+		for (int i = 0; i < chars.length; i++) {
+			if (partStart) {
+				chars[i] = Character.toUpperCase(chars[i]);
+			}
+			partStart = chars[i] == '-';
+		}
+		return new String(chars);
+	}
+	
+	private static String charset(String contentType) {
+		if (contentType != null) {
+			for (String parameter : contentType.split(";")) {
+				String trimmed = parameter.trim();
+				if (trimmed.toLowerCase().startsWith("charset=")) {
+					return trimmed.substring("charset=".length()).replace("\"", "");
+				}
+			}
+		}
+		return "UTF-8";
+	}
+	
+	private static byte[] readAll(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		inputStream.close();
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Response writer writing to HTTP exchange.
+	 */
+	private static class ExchangeWriter implements IResponseWriter {
+		private final HttpExchange exchange;
+		
+		ExchangeWriter(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		public void writeHeaders(int status, Map<String, String> headers, int contentLength) throws IOException {
+			if (headers != null) {
+				for (Map.Entry<String, String> header : headers.entrySet()) {
+					exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+				}
+			}
+			// JDK server uses content length -1 for no body and 0 for chunked body
+			exchange.sendResponseHeaders(status, contentLength == CHUNKED ? 0 : contentLength > 0 ? contentLength : -1);
+			if (contentLength != 0) {
+				exchange.getResponseBody().flush();
+			}
+		}
+
+		public void writeBody(byte[] body, int offset, int length) throws IOException {
+			OutputStream outputStream = exchange.getResponseBody();
+			outputStream.write(body, offset, length);
+			outputStream.flush();
+		}
+
+		public void abort(boolean reset) throws IOException {
+			SocketChannel channel = getChannel(exchange);
+			if (channel == null) {
+				// Faults cutting connection are rejected when stubbed, see JdkServer.supportsConnectionFaults
+				throw new IOException("Connection of JDK server not accessible, fault cannot be injected");
+			}
+			if (reset) {
+				channel.socket().setSoLinger(true, 0);
+			}
+			channel.close();
+		}
+		
+		/**
+		 * Helper method to get socket channel of HTTP exchange from JDK server internals.
+		 * 
+		 * @param exchange HTTP exchange
+		 * 
+		 * @return Instance of java.nio.channels.SocketChannel or null if it is not accessible
+		 */
+		private static SocketChannel getChannel(HttpExchange exchange) {
+			try {
+				Object impl = getField(exchange, "impl");
+				Object connection = getField(impl, "connection");
+				return (SocketChannel) getField(connection, "chan");
+			} catch (Exception e) {
+				logger.debug("Reading connection of " + exchange.getClass().getName() + " failed", e);
+				return null;
+			}
+		}
+		
+		private static Object getField(Object object, String name) throws Exception {
+			return getAccessibleField(object.getClass(), name).get(object);
+		}
+	}
+	
+	/**
+	 * Returns boolean flag indicating whether socket channels of JDK server's HTTP exchanges can be read
+	 * reflectively, which is needed to close and reset connections.
+	 * 
+	 * @return True if connections can be cut short, otherwise false
+	 */
+	static boolean isConnectionAccessible() {
+		try {
+			Field impl = getAccessibleField(Class.forName("sun.net.httpserver.HttpExchangeImpl"), "impl");
+			Field connection = getAccessibleField(impl.getType(), "connection");
+			return SocketChannel.class.isAssignableFrom(getAccessibleField(connection.getType(), "chan").getType());
+		} catch (Exception e) {
+			// Also java.lang.reflect.InaccessibleObjectException of Java 9+ without --add-opens
+			logger.debug("Connections of JDK server are not accessible", e);
+			return false;
+		}
+	}
+	
+	private static Field getAccessibleField(Class<?> clazz, String name) throws Exception {
+		Field field = clazz.getDeclaredField(name);
+		field.setAccessible(true);
+		return field;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server.jdk;
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fi.mystes.mock.IApiMock;
+import fi.mystes.mock.InProcessApiMock;
+import fi.mystes.server.IMockHandler;
+import fi.mystes.server.IMockServer;
+import fi.mystes.server.IMockWebApp;
+import fi.mystes.server.ReadinessProbe;
+import fi.mystes.server.StartupMetrics;
+
+/**
+ * Lightweight mock server built on the JDK's com.sun.net.httpserver. It serves in-process mock handlers
+ * only (e.g. fi.mystes.mock.InProcessApiMock), web applications are not supported. Delayed and paced
+ * responses are written by a scheduler thread, so they do not occupy request threads. Requests are handled
+ * by a pluggable executor configured with the following properties:<br/><br/>
+ * 
+ * # Executor type: FIXED thread pool, WORK_STEALING pool or VIRTUAL threads (Java 21+, otherwise FIXED)<br/>
+ * http.test.conductor.server.executor = FIXED<br/>
+ * # Number of threads of FIXED executor<br/>
+ * http.test.conductor.server.maxThreads = 500<br/>
+ * # Maximum number of pending connections waiting to be accepted<br/>
+ * http.test.conductor.server.acceptQueueSize = 1024<br/><br/>
+ * 
+ * Faults closing or resetting connections (see fi.mystes.response.Fault) need reflective access to
+ * sun.net.httpserver internals. On Java 9 and later the JVM must be started with
+ * --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED, otherwise InProcessApiMock served by this
+ * server rejects such faults when they are added, see supportsConnectionFaults.
+ *
+ */
+public class JdkServer implements IMockServer {
+	private static final Logger logger = Logger.getLogger(JdkServer.class);
+	
+	/** Default maximum time to wait for API mock to answer after server start in milliseconds */
+	private static final long DEFAULT_READY_TIMEOUT_MILLIS = 60000;
+	
+	/** Supported executor types */
+	public static enum ExecutorType {FIXED, WORK_STEALING, VIRTUAL};
+	
+	/** Port server should listen to */
+	private int port;
+	
+	/** Maximum number of pending connections */
+	private int backlog;
+	
+	/** Executor handling requests */
+	private Executor executor;
+	
+	/** Boolean flag indicating whether executor was created by this server and is to be shut down with it */
+	private boolean ownExecutor;
+	
+	/** Scheduler writing delayed and paced responses */
+	private ScheduledExecutorService scheduler;
+	
+	/** JDK HTTP server, bound when server is started */
+	private HttpServer server;
+	
+	/** Boolean flag indicating whether server has been started */
+	private boolean started;
+	
+	/** Durations of startup phases of latest tearUp */
+	private StartupMetrics startupMetrics;
+	
+	/**
+	 * Returns boolean flag indicating whether JDK server can inject faults closing or resetting connections:
+	 * close before headers, reset after bytes and truncated chunked body.
+	 * 
+	 * @return True if connections of JDK server are accessible, otherwise false
+	 */
+	public static boolean supportsConnectionFaults() {
+		return JdkMockHandler.isConnectionAccessible();
+	}
+	
+	/**
+	 * Constructor with server port. Executor uses default configuration.
+	 * 
+	 * @param port Port server should listen to, 0 to allocate a free port when server starts
+	 * 
+	 * @throws Exception If creating server fails
+	 */
+	public JdkServer(int port) throws Exception {
+		this(port, new Properties());
+	}
+	
+	/**
+	 * Constructor with server port and configuration properties.
+	 * 
+	 * @param port Port server should listen to, 0 to allocate a free port when server starts
+	 * @param properties Configuration properties
+	 * 
+	 * @throws Exception If creating server fails
+	 */
+	public JdkServer(int port, Properties properties) throws Exception {
+		this.port = port;
+		this.backlog = getIntProperty(properties, "http.test.conductor.server.acceptQueueSize", 1024);
+		this.executor = createExecutor(
+				ExecutorType.valueOf(properties.getProperty("http.test.conductor.server.executor", "FIXED").trim()),
+				getIntProperty(properties, "http.test.conductor.server.maxThreads", 500));
+		this.ownExecutor = true;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "http-test-conductor-mock-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.server = HttpServer.create();
+	}
+	
+	/**
+	 * Sets executor handling requests instead of the configured one. Must be called before server is started.
+	 * Given executor is not shut down when server is stopped.
+	 * 
+	 * @param executor Executor handling requests
+	 * 
+	 * @return Instance of JdkServer
+	 */
+	public JdkServer setExecutor(Executor executor) {
+		shutdownExecutor();
+		this.executor = executor;
+		this.ownExecutor = false;
+		return this;
+	}
+	
+	/**
+	 * Returns executor handling requests.
+	 * 
+	 * @return Instance of java.util.concurrent.Executor
+	 */
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	@Override
+	public void addWebApp(IMockWebApp webApp) throws Exception {
+		throw new UnsupportedOperationException("JDK server supports only in-process mock handlers, use JETTY server type for web applications");
+	}
+
+	@Override
+	public void addWebApp(String webAppPath, String contextPath) throws Exception {
+		addWebApp(null);
+	}
+
+	@Override
+	public void addWebApp(String webAppPath, String contextPath, String extraClasspath) throws Exception {
+		addWebApp(null);
+	}
+
+	@Override
+	public void addMockHandler(String contextPath, IMockHandler handler) throws Exception {
+		if (handler instanceof InProcessApiMock && !supportsConnectionFaults()) {
+			((InProcessApiMock) handler).setConnectionFaultsSupported(false);
+		}
+		server.createContext(contextPath, new JdkMockHandler(handler, scheduler));
+	}
+
+	@Override
+	public void tearUp(IApiMock mockServer, Integer port) throws Exception {
+		tearUp(mockServer, port, DEFAULT_READY_TIMEOUT_MILLIS);
+	}
+
+	@Override
+	public void tearUp(IApiMock mockServer, Integer port, long readyTimeoutMillis) throws Exception {
+		StartupMetrics metrics = new StartupMetrics();
+		startupMetrics = metrics;
+		// Nothing can be running at a port not allocated yet
+		if (port != null && port != 0 && mockServer.isAlive(port)) {
+			metrics.setAlreadyRunning(true);
+			return;
+		}
+		
+		long starting = System.nanoTime();
+		server.bind(new InetSocketAddress(this.port), backlog);
+		server.setExecutor(executor);
+		server.start();
+		started = true;
+		metrics.setServerStartNanos(System.nanoTime() - starting);
+		
+		long probing = System.nanoTime();
+		int probes = ReadinessProbe.awaitReady(mockServer, getPort(), readyTimeoutMillis);
+		metrics.setFirstHealthyResponse(System.nanoTime() - probing, probes);
+		logger.info("Mock server ready at port " + getPort() + ": " + metrics);
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		if (started) {
+			server.stop(0);
+			started = false;
+		}
+		scheduler.shutdownNow();
+		shutdownExecutor();
+	}
+
+	@Override
+	public int getPort() {
+		return started ? server.getAddress().getPort() : port;
+	}
+
+	@Override
+	public StartupMetrics getStartupMetrics() {
+		return startupMetrics;
+	}
+	
+	/**
+	 * Helper method to create executor of given type.
+	 * 
+	 * @param type Executor type
+	 * @param threads Number of threads of fixed thread pool
+	 * 
+	 * @return Instance of java.util.concurrent.Executor
+	 */
+	private static Executor createExecutor(ExecutorType type, int threads) {
+		switch (type) {
+			case WORK_STEALING:
+				return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), 
+						ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+			case VIRTUAL:
+				try {
+					Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+					return (Executor) factory.invoke(null);
+				} catch (Exception e) {
+					logger.warn("Virtual threads not supported by Java " + System.getProperty("java.version") + ", using fixed thread pool");
+					return createFixedPool(threads);
+				}
+			default:
+				return createFixedPool(threads);
+		}
+	}
+	
+	/**
+	 * Helper method to create fixed thread pool of daemon threads, which time out when idle.
+	 * 
+	 * @param threads Number of threads
+	 * 
+	 * @return Instance of java.util.concurrent.ThreadPoolExecutor
+	 */
+	private static ThreadPoolExecutor createFixedPool(int threads) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "http-test-conductor-mock-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	/**
+	 * Helper method to shut down executor created by this server.
+	 */
+	private void shutdownExecutor() {
+		if (ownExecutor && executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+	
+	/**
+	 * Helper method to read integer property with default value.
+	 * 
+	 * @param properties Configuration properties
+	 * @param name Property name
+	 * @param defaultValue Value to be used if property is not defined
+	 * 
+	 * @return Property value
+	 */
+	private static int getIntProperty(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+}
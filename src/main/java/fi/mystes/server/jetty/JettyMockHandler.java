@@ -0,0 +1,189 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server.jetty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.mortbay.io.EndPoint;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.util.IO;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
+
+import fi.mystes.http.Compression;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.server.IMockHandler;
+import fi.mystes.server.IResponseWriter;
+import fi.mystes.server.PacedResponse;
+import fi.mystes.server.QueryString;
+
+/**
+ * Jetty handler adapting servlet requests and responses to IMockHandler. Request and response
+ * bodies are handled as UTF-8 text unless request specifies another character encoding. Requests of
+ * delayed and paced responses are suspended with Jetty continuations between writes.
+ *
+ */
+public class JettyMockHandler extends AbstractHandler {
+	private static final Logger logger = Logger.getLogger(JettyMockHandler.class);
+	
+	/** Request attribute holding response being written */
+	private static final String PACED_RESPONSE_ATTRIBUTE = PacedResponse.class.getName();
+	
+	/** Adapted mock handler */
+	private IMockHandler handler;
+	
+	/**
+	 * Constructor with mock handler to adapt.
+	 * 
+	 * @param handler Instance of IMockHandler
+	 */
+	public JettyMockHandler(IMockHandler handler) {
+		this.handler = handler;
+	}
+
+	public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+			throws IOException, ServletException {
+		Request baseRequest = request instanceof Request ? (Request) request : HttpConnection.getCurrentConnection().getRequest();
+		baseRequest.setHandled(true);
+		
+		// Delayed responses are dispatched again when their next write is due
+		PacedResponse pacedResponse = (PacedResponse) request.getAttribute(PACED_RESPONSE_ATTRIBUTE);
+		if (pacedResponse == null) {
+			try {
+				pacedResponse = new PacedResponse(handler.handle(createRecordedRequest(request)), request.getHeader("Accept-Encoding"));
+			} catch (Exception e) {
+				logger.error("Handling request " + request.getMethod() + " " + request.getRequestURI() + " failed", e);
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+				return;
+			}
+			request.setAttribute(PACED_RESPONSE_ATTRIBUTE, pacedResponse);
+		}
+		
+		Continuation continuation = ContinuationSupport.getContinuation(request, pacedResponse);
+		if (continuation.isPending()) {
+			continuation.reset();
+		}
+		ServletResponseWriter writer = new ServletResponseWriter(response, baseRequest.getConnection().getEndPoint());
+		long waitMillis;
+		while ((waitMillis = pacedResponse.writeDue(writer)) > 0) {
+			// Releases the server thread until next write is due with NIO connectors, otherwise waits.
+			// Context handlers skip handled requests, so request is handled again only when resumed.
+			baseRequest.setHandled(false);
+			continuation.suspend(waitMillis);
+			baseRequest.setHandled(true);
+		}
+	}
+	
+	/**
+	 * Helper method to create recorded request from servlet request.
+	 * 
+	 * @param request Servlet request
+	 * 
+	 * @return Instance of fi.mystes.request.RecordedRequest
+	 * 
+	 * @throws IOException If reading request body fails
+	 */
+	private RecordedRequest createRecordedRequest(HttpServletRequest request) throws IOException {
+		String encoding = request.getCharacterEncoding() != null ? request.getCharacterEncoding() : "UTF-8";
+		String query = request.getQueryString();
+		StringBuffer url = request.getRequestURL();
+		if (query != null) {
+			url.append('?').append(query);
+		}
+		
+		Map<String, String> headers = new HashMap<String, String>();
+		Enumeration<?> names = request.getHeaderNames();
+		while (names.hasMoreElements()) {
+			String name = (String) names.nextElement();
+			StringBuilder value = new StringBuilder();
+			Enumeration<?> values = request.getHeaders(name);
+			while (values.hasMoreElements()) {
+				if (value.length() > 0) {
+					value.append(',');
+				}
+				value.append(values.nextElement());
+			}
+			headers.put(name, value.toString());
+		}
+		
+		return new RecordedRequest()
+				.setMethod(request.getMethod())
+				.setEndpointUrl(url.toString())
+				.setHeaders(headers)
+				.setParameters(QueryString.parse(query))
+				.setBody(IO.toString(Compression.decompress(request.getInputStream(), request.getHeader("Content-Encoding")), encoding));
+	}
+	
+	/**
+	 * Response writer writing to servlet response.
+	 */
+	private static class ServletResponseWriter implements IResponseWriter {
+		private final HttpServletResponse response;
+		private final EndPoint endPoint;
+		
+		ServletResponseWriter(HttpServletResponse response, EndPoint endPoint) {
+			this.response = response;
+			this.endPoint = endPoint;
+		}
+
+		public void writeHeaders(int status, Map<String, String> headers, int contentLength) throws IOException {
+			response.setStatus(status);
+			if (headers != null) {
+				for (Map.Entry<String, String> header : headers.entrySet()) {
+					response.setHeader(header.getKey(), header.getValue());
+				}
+			}
+			// Without content length, Jetty sends flushed body chunked to keep-alive clients
+			// and until end of stream to clients closing the connection
+			if (contentLength != CHUNKED) {
+				response.setContentLength(contentLength);
+			}
+			response.flushBuffer();
+		}
+
+		public void writeBody(byte[] body, int offset, int length) throws IOException {
+			OutputStream outputStream = response.getOutputStream();
+			outputStream.write(body, offset, length);
+			outputStream.flush();
+		}
+
+		public void abort(boolean reset) throws IOException {
+			Object transport = endPoint.getTransport();
+			Socket socket = transport instanceof Socket ? (Socket) transport 
+					: transport instanceof SocketChannel ? ((SocketChannel) transport).socket() : null;
+			if (reset && socket != null) {
+				// Closing end point would shut down output (TCP FIN) first
+				socket.setSoLinger(true, 0);
+				socket.close();
+			} else {
+				endPoint.close();
+			}
+		}
+	}
+}
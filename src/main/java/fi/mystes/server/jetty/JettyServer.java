@@ -15,30 +15,100 @@
  */
 package fi.mystes.server.jetty;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
 import fi.mystes.mock.IApiMock;
+
+import org.apache.log4j.Logger;
+import org.mortbay.jetty.Connector;
 import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.ContextHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.mortbay.resource.Resource;
+import org.mortbay.thread.QueuedThreadPool;
 
+import fi.mystes.server.IMockHandler;
 import fi.mystes.server.IMockServer;
 import fi.mystes.server.IMockWebApp;
+import fi.mystes.server.ReadinessProbe;
+import fi.mystes.server.StartupMetrics;
 
 /**
  * Class extending org.mortbay.jetty.Server and implementing IMockServer.
  *
  */
 public class JettyServer extends Server implements IMockServer{
+	private static final Logger logger = Logger.getLogger(JettyServer.class);
+	
+	/** Default maximum time to wait for API mock to answer after server start in milliseconds */
+	private static final long DEFAULT_READY_TIMEOUT_MILLIS = 60000;
+	
+	/** Added web applications */
+	private List<JettyWebApp> webApps = new ArrayList<JettyWebApp>();
+	
+	/** Durations of startup phases of latest tearUp */
+	private StartupMetrics startupMetrics;
 
 	/**
-	 * Constructor with server port.
+	 * Constructor with server port. Connector and thread pool use default configuration.
 	 * 
-	 * @param port Port server should listen to
+	 * @param port Port server should listen to, 0 to allocate a free port when server starts
 	 */
 	public JettyServer(int port) {
-		super(port);
+		this(port, new Properties());
+	}
+	
+	/**
+	 * Constructor with server port and configuration properties of selector based NIO connector and
+	 * worker thread pool. Properties not given use the defaults below, tuned for load testing against the mock:<br/><br/>
+	 * 
+	 * # Number of acceptor threads, 0 means half of available processors (1-4)<br/>
+	 * http.test.conductor.server.acceptors = 0<br/>
+	 * # Maximum number of pending connections waiting to be accepted<br/>
+	 * http.test.conductor.server.acceptQueueSize = 1024<br/>
+	 * # Minimum and maximum number of worker threads<br/>
+	 * http.test.conductor.server.minThreads = 16<br/>
+	 * http.test.conductor.server.maxThreads = 500<br/>
+	 * # Milliseconds after which idle worker threads above minimum are stopped<br/>
+	 * http.test.conductor.server.threadIdleTimeout = 60000<br/>
+	 * # Milliseconds after which idle connections are closed<br/>
+	 * http.test.conductor.server.idleTimeout = 30000<br/>
+	 * # Buffer sizes in bytes<br/>
+	 * http.test.conductor.server.headerBufferSize = 8192<br/>
+	 * http.test.conductor.server.requestBufferSize = 16384<br/>
+	 * http.test.conductor.server.responseBufferSize = 32768
+	 * 
+	 * @param port Port server should listen to, 0 to allocate a free port when server starts
+	 * @param properties Configuration properties
+	 */
+	public JettyServer(int port, Properties properties) {
+		super();
+		int acceptors = getIntProperty(properties, "http.test.conductor.server.acceptors", 0);
+		
+		SelectChannelConnector connector = new SelectChannelConnector();
+		connector.setPort(port);
+		connector.setAcceptors(acceptors > 0 ? acceptors : Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+		connector.setAcceptQueueSize(getIntProperty(properties, "http.test.conductor.server.acceptQueueSize", 1024));
+		connector.setMaxIdleTime(getIntProperty(properties, "http.test.conductor.server.idleTimeout", 30000));
+		connector.setHeaderBufferSize(getIntProperty(properties, "http.test.conductor.server.headerBufferSize", 8192));
+		connector.setRequestBufferSize(getIntProperty(properties, "http.test.conductor.server.requestBufferSize", 16384));
+		connector.setResponseBufferSize(getIntProperty(properties, "http.test.conductor.server.responseBufferSize", 32768));
+		connector.setReuseAddress(true);
+		setConnectors(new Connector[] {connector});
+		
+		QueuedThreadPool threadPool = new QueuedThreadPool();
+		threadPool.setName("http-test-conductor-mock");
+		threadPool.setMinThreads(getIntProperty(properties, "http.test.conductor.server.minThreads", 16));
+		threadPool.setMaxThreads(getIntProperty(properties, "http.test.conductor.server.maxThreads", 500));
+		threadPool.setMaxIdleTimeMs(getIntProperty(properties, "http.test.conductor.server.threadIdleTimeout", 60000));
+		setThreadPool(threadPool);
 	}
 	
 	@Override
 	public void addWebApp(IMockWebApp webApp) throws Exception {
+		webApps.add((JettyWebApp)webApp);
 		addHandler((JettyWebApp)webApp);
 	}
 	
@@ -54,11 +124,56 @@ public class JettyServer extends Server implements IMockServer{
 		addWebApp(webApp);
 	}
 	
+	@Override
+	public void addMockHandler(String contextPath, IMockHandler handler) throws Exception {
+		ContextHandler context = new ContextHandler(contextPath);
+		context.setHandler(new JettyMockHandler(handler));
+		addHandler(context);
+	}
+	
 	@Override
 	public void tearUp(IApiMock mockServer, Integer port) throws Exception {
-		if (!mockServer.isAlive(port)) {
-			start();
+		tearUp(mockServer, port, DEFAULT_READY_TIMEOUT_MILLIS);
+	}
+	
+	@Override
+	public void tearUp(IApiMock mockServer, Integer port, long readyTimeoutMillis) throws Exception {
+		StartupMetrics metrics = new StartupMetrics();
+		startupMetrics = metrics;
+		// Nothing can be running at a port not allocated yet
+		if (port != null && port != 0 && mockServer.isAlive(port)) {
+			metrics.setAlreadyRunning(true);
+			return;
+		}
+		
+		long started = System.nanoTime();
+		start();
+		long startNanos = System.nanoTime() - started;
+		long deployNanos = 0;
+		for (JettyWebApp webApp : webApps) {
+			deployNanos += webApp.getDeployNanos();
+		}
+		metrics.setServerStartNanos(startNanos - deployNanos).setWebAppDeployNanos(deployNanos);
+		
+		long probing = System.nanoTime();
+		int probes = ReadinessProbe.awaitReady(mockServer, getPort(), readyTimeoutMillis);
+		metrics.setFirstHealthyResponse(System.nanoTime() - probing, probes);
+		logger.info("Mock server ready at port " + getPort() + ": " + metrics);
+	}
+	
+	@Override
+	public int getPort() {
+		Connector[] connectors = getConnectors();
+		if (connectors == null || connectors.length == 0) {
+			return -1;
 		}
+		int localPort = connectors[0].getLocalPort();
+		return localPort > 0 ? localPort : connectors[0].getPort();
+	}
+	
+	@Override
+	public StartupMetrics getStartupMetrics() {
+		return startupMetrics;
 	}
 
 	@Override
@@ -66,4 +181,21 @@ public class JettyServer extends Server implements IMockServer{
 		stop();
 	}
 
+	/**
+	 * Helper method to read integer property with default value.
+	 * 
+	 * @param properties Configuration properties
+	 * @param name Property name
+	 * @param defaultValue Value to be used if property is not defined
+	 * 
+	 * @return Property value
+	 */
+	private static int getIntProperty(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value.trim());
+	}
+
 }
@@ -30,6 +30,9 @@ import fi.mystes.server.IMockWebApp;
  */
 public class JettyWebApp extends WebAppContext implements IMockWebApp{
 	
+	/** Nanoseconds spent in latest deployment */
+	private long deployNanos;
+	
 	/**
 	 * Default constructor.
 	 */
@@ -70,4 +73,23 @@ public class JettyWebApp extends WebAppContext implements IMockWebApp{
         super(securityHandler, sessionHandler, servletHandler, errorHandler);
     }    
 	
+    /**
+     * Deploys web application and measures time spent.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        long started = System.nanoTime();
+        super.doStart();
+        deployNanos = System.nanoTime() - started;
+    }
+    
+    /**
+     * Returns time spent in latest deployment.
+     * 
+     * @return Duration in nanoseconds
+     */
+    public long getDeployNanos() {
+        return deployNanos;
+    }
+	
 }
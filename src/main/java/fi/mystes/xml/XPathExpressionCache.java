@@ -0,0 +1,149 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.xml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * Bounded LRU cache of compiled XPath expressions. Cached expressions are bound to the namespace
+ * context version they were compiled with and the cache is invalidated when namespaces change.
+ *
+ */
+public class XPathExpressionCache {
+
+	/** XPath object used to compile expressions */
+	private XPath xpath;
+
+	/** Namespace context the expressions are compiled against */
+	private XPathNamespaceContext namespaceContext;
+
+	/** Namespace context version of cached expressions */
+	private long namespaceVersion;
+
+	/** Compiled expressions in access order */
+	private Map<String, XPathExpression> expressions;
+
+	/** Number of cache hits, possibly shared with other caches */
+	private AtomicLong hits;
+
+	/** Number of cache misses, possibly shared with other caches */
+	private AtomicLong misses;
+
+	/**
+	 * Constructor with XPath object, namespace context and maximum number of cached expressions.
+	 *
+	 * @param xpath XPath object used to compile expressions
+	 * @param namespaceContext Namespace context set to given XPath object
+	 * @param maxSize Maximum number of cached expressions
+	 */
+	public XPathExpressionCache(XPath xpath, XPathNamespaceContext namespaceContext, int maxSize) {
+		this(xpath, namespaceContext, maxSize, new AtomicLong(), new AtomicLong());
+	}
+
+	/**
+	 * Constructor with XPath object, namespace context, maximum number of cached expressions and
+	 * counters of hits and misses, which can be shared by caches of several threads.
+	 *
+	 * @param xpath XPath object used to compile expressions
+	 * @param namespaceContext Namespace context set to given XPath object
+	 * @param maxSize Maximum number of cached expressions
+	 * @param hits Counter of cache hits
+	 * @param misses Counter of cache misses
+	 */
+	@SuppressWarnings("serial")
+	public XPathExpressionCache(XPath xpath, XPathNamespaceContext namespaceContext, final int maxSize, AtomicLong hits, AtomicLong misses) {
+		this.hits = hits;
+		this.misses = misses;
+		this.xpath = xpath;
+		this.namespaceContext = namespaceContext;
+		this.namespaceVersion = namespaceContext.getVersion();
+		this.expressions = new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns compiled XPath expression. Expression is compiled and cached if it is not found in cache.
+	 *
+	 * @param expression XPath expression
+	 *
+	 * @return Compiled instance of javax.xml.xpath.XPathExpression
+	 *
+	 * @throws XPathExpressionException If XPath expression compiling fails
+	 */
+	public synchronized XPathExpression compile(String expression) throws XPathExpressionException {
+		long version = namespaceContext.getVersion();
+		if (version != namespaceVersion) {
+			expressions.clear();
+			namespaceVersion = version;
+		}
+
+		XPathExpression compiled = expressions.get(expression);
+		if (compiled != null) {
+			hits.incrementAndGet();
+			return compiled;
+		}
+
+		misses.incrementAndGet();
+		compiled = xpath.compile(expression);
+		expressions.put(expression, compiled);
+
+		return compiled;
+	}
+
+	/**
+	 * Removes all cached expressions.
+	 */
+	public synchronized void clear() {
+		expressions.clear();
+	}
+
+	/**
+	 * Returns number of cached expressions.
+	 *
+	 * @return Number of cached expressions
+	 */
+	public synchronized int size() {
+		return expressions.size();
+	}
+
+	/**
+	 * Returns number of cache hits, including hits of caches sharing the counter.
+	 *
+	 * @return Number of cache hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns number of cache misses, including misses of caches sharing the counter.
+	 *
+	 * @return Number of cache misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
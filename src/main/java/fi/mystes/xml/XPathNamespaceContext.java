@@ -15,6 +15,7 @@
  */
 package fi.mystes.xml;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,8 +31,15 @@ public class XPathNamespaceContext implements NamespaceContext{
 
 	private Map<String, String> namespaces;
 	
+	/** Copy of namespaces at the time current version was taken */
+	private Map<String, String> snapshot;
+	
+	/** Version number which changes whenever namespaces change */
+	private long version;
+	
 	public XPathNamespaceContext(Map<String, String> namespaces) {
 		this.namespaces = namespaces;
+		this.snapshot = new HashMap<String, String>(namespaces);
 	}
 
 	public String getNamespaceURI(String prefix) {
@@ -52,8 +60,25 @@ public class XPathNamespaceContext implements NamespaceContext{
 		return prefixesByURI(uri).iterator();
 	}
 
-	public void setNamespaces(Map<String, String> namespaces) {
+	public synchronized void setNamespaces(Map<String, String> namespaces) {
 		this.namespaces = namespaces;
+		this.snapshot = new HashMap<String, String>(namespaces);
+		version++;
+	}
+	
+	/**
+	 * Returns version of namespaces. Version changes whenever namespaces are replaced or
+	 * the namespace map is modified, so XPath expressions compiled against an earlier
+	 * version must not be reused.
+	 * 
+	 * @return Namespace version
+	 */
+	public synchronized long getVersion() {
+		if (!snapshot.equals(namespaces)) {
+			snapshot = new HashMap<String, String>(namespaces);
+			version++;
+		}
+		return version;
 	}
 	
 	private List<String> prefixesByURI(String uri){
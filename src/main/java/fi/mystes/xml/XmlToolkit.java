@@ -0,0 +1,334 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.validation.Schema;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Thread-safe XML toolkit. JAXP document builders, XPath objects and compiled XPath expressions
+ * are not thread-safe, so each thread using the toolkit gets its own namespace aware document builder,
+ * XPath object and XPath expression cache. Returned DocumentBuilder and XPath instances delegate to the
+ * calling thread's own instances, so they can be shared freely between threads.
+ *
+ */
+public class XmlToolkit {
+
+	/** Namespace context used by all XPath objects */
+	private XPathNamespaceContext namespaceContext;
+
+	/** Maximum number of cached XPath expressions per thread */
+	private volatile int xpathCacheSize;
+
+	/** Document builder factory, access must be synchronized */
+	private DocumentBuilderFactory factory;
+
+	/** XPath factory, access must be synchronized */
+	private XPathFactory xpathFactory = XPathFactory.newInstance();
+
+	/** Number of XPath expression cache hits of all threads */
+	private AtomicLong xpathCacheHits = new AtomicLong();
+
+	/** Number of XPath expression cache misses of all threads */
+	private AtomicLong xpathCacheMisses = new AtomicLong();
+
+	/** Document builder of each thread */
+	private ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			synchronized (factory) {
+				try {
+					return factory.newDocumentBuilder();
+				} catch (ParserConfigurationException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	};
+
+	/** XPath object of each thread */
+	private ThreadLocal<XPath> xpaths = new ThreadLocal<XPath>() {
+		@Override
+		protected XPath initialValue() {
+			XPath xpath;
+			synchronized (xpathFactory) {
+				xpath = xpathFactory.newXPath();
+			}
+			xpath.setNamespaceContext(namespaceContext);
+			return xpath;
+		}
+	};
+
+	/** XPath expression cache of each thread */
+	private ThreadLocal<XPathExpressionCache> xpathCaches = new ThreadLocal<XPathExpressionCache>() {
+		@Override
+		protected XPathExpressionCache initialValue() {
+			return new XPathExpressionCache(xpaths.get(), namespaceContext, xpathCacheSize, xpathCacheHits, xpathCacheMisses);
+		}
+	};
+
+	/** Thread-safe document builder delegating to calling thread's document builder */
+	private DocumentBuilder documentBuilder = new ThreadLocalDocumentBuilder();
+
+	/** Thread-safe XPath object delegating to calling thread's XPath object */
+	private XPath xpath = new ThreadLocalXPath();
+
+	/**
+	 * Constructor with namespace context and maximum number of cached XPath expressions per thread.
+	 *
+	 * @param namespaceContext Namespace context for XPath expressions
+	 * @param xpathCacheSize Maximum number of cached XPath expressions per thread
+	 */
+	public XmlToolkit(XPathNamespaceContext namespaceContext, int xpathCacheSize) {
+		this.namespaceContext = namespaceContext;
+		this.xpathCacheSize = xpathCacheSize;
+		factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+	}
+
+	/**
+	 * Returns thread-safe document builder. Builder settings (entity resolver, error handler)
+	 * apply only to the calling thread.
+	 *
+	 * @return Instance of javax.xml.parsers.DocumentBuilder
+	 */
+	public DocumentBuilder getDocumentBuilder() {
+		return documentBuilder;
+	}
+
+	/**
+	 * Returns thread-safe XPath object. XPath settings (namespace context, resolvers)
+	 * apply only to the calling thread.
+	 *
+	 * @return Instance of javax.xml.xpath.XPath
+	 */
+	public XPath getXPath() {
+		return xpath;
+	}
+
+	/**
+	 * Returns compiled XPath expression from calling thread's XPath expression cache.
+	 *
+	 * @param expression XPath expression
+	 *
+	 * @return Compiled instance of javax.xml.xpath.XPathExpression usable by calling thread only
+	 *
+	 * @throws XPathExpressionException If XPath expression compiling fails
+	 */
+	public XPathExpression compile(String expression) throws XPathExpressionException {
+		return xpathCaches.get().compile(expression);
+	}
+
+	/**
+	 * Parses XML document from given input stream.
+	 *
+	 * @param inputStream Stream containing XML data
+	 *
+	 * @return Parsed instance of org.w3c.dom.Document
+	 *
+	 * @throws Exception If parsing fails
+	 */
+	public Document parse(InputStream inputStream) throws Exception {
+		return builders.get().parse(inputStream);
+	}
+
+	/**
+	 * Parses XML document from given bytes.
+	 *
+	 * @param bytes XML data
+	 *
+	 * @return Parsed instance of org.w3c.dom.Document
+	 *
+	 * @throws Exception If parsing fails
+	 */
+	public Document parse(byte[] bytes) throws Exception {
+		return parse(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Parses XML document from given string without encoding it to bytes first.
+	 *
+	 * @param xml XML data
+	 *
+	 * @return Parsed instance of org.w3c.dom.Document
+	 *
+	 * @throws Exception If parsing fails
+	 */
+	public Document parse(String xml) throws Exception {
+		return builders.get().parse(new InputSource(new StringReader(xml)));
+	}
+
+	/**
+	 * Sets maximum number of cached XPath expressions per thread. Affects caches created after this call.
+	 *
+	 * @param xpathCacheSize Maximum number of cached XPath expressions per thread
+	 */
+	public void setXPathCacheSize(int xpathCacheSize) {
+		this.xpathCacheSize = xpathCacheSize;
+	}
+
+	/**
+	 * Returns number of XPath expression cache hits of all threads.
+	 *
+	 * @return Number of cache hits
+	 */
+	public long getXPathCacheHits() {
+		return xpathCacheHits.get();
+	}
+
+	/**
+	 * Returns number of XPath expression cache misses of all threads.
+	 *
+	 * @return Number of cache misses
+	 */
+	public long getXPathCacheMisses() {
+		return xpathCacheMisses.get();
+	}
+
+	/**
+	 * Document builder delegating to calling thread's own document builder.
+	 */
+	private class ThreadLocalDocumentBuilder extends DocumentBuilder {
+
+		@Override
+		public Document parse(InputSource is) throws SAXException, IOException {
+			return builders.get().parse(is);
+		}
+
+		@Override
+		public boolean isNamespaceAware() {
+			return builders.get().isNamespaceAware();
+		}
+
+		@Override
+		public boolean isValidating() {
+			return builders.get().isValidating();
+		}
+
+		@Override
+		public void setEntityResolver(EntityResolver er) {
+			builders.get().setEntityResolver(er);
+		}
+
+		@Override
+		public void setErrorHandler(ErrorHandler eh) {
+			builders.get().setErrorHandler(eh);
+		}
+
+		@Override
+		public Document newDocument() {
+			return builders.get().newDocument();
+		}
+
+		@Override
+		public DOMImplementation getDOMImplementation() {
+			return builders.get().getDOMImplementation();
+		}
+
+		@Override
+		public void reset() {
+			builders.get().reset();
+		}
+
+		@Override
+		public Schema getSchema() {
+			return builders.get().getSchema();
+		}
+
+		@Override
+		public boolean isXIncludeAware() {
+			return builders.get().isXIncludeAware();
+		}
+	}
+
+	/**
+	 * XPath object delegating to calling thread's own XPath object.
+	 */
+	private class ThreadLocalXPath implements XPath {
+
+		public void reset() {
+			xpaths.get().reset();
+			xpaths.get().setNamespaceContext(namespaceContext);
+		}
+
+		public void setXPathVariableResolver(XPathVariableResolver resolver) {
+			xpaths.get().setXPathVariableResolver(resolver);
+		}
+
+		public XPathVariableResolver getXPathVariableResolver() {
+			return xpaths.get().getXPathVariableResolver();
+		}
+
+		public void setXPathFunctionResolver(XPathFunctionResolver resolver) {
+			xpaths.get().setXPathFunctionResolver(resolver);
+		}
+
+		public XPathFunctionResolver getXPathFunctionResolver() {
+			return xpaths.get().getXPathFunctionResolver();
+		}
+
+		public void setNamespaceContext(NamespaceContext nsContext) {
+			xpaths.get().setNamespaceContext(nsContext);
+		}
+
+		public NamespaceContext getNamespaceContext() {
+			return xpaths.get().getNamespaceContext();
+		}
+
+		public XPathExpression compile(String expression) throws XPathExpressionException {
+			return xpaths.get().compile(expression);
+		}
+
+		public Object evaluate(String expression, Object item, QName returnType) throws XPathExpressionException {
+			return xpaths.get().evaluate(expression, item, returnType);
+		}
+
+		public String evaluate(String expression, Object item) throws XPathExpressionException {
+			return xpaths.get().evaluate(expression, item);
+		}
+
+		public Object evaluate(String expression, InputSource source, QName returnType) throws XPathExpressionException {
+			return xpaths.get().evaluate(expression, source, returnType);
+		}
+
+		public String evaluate(String expression, InputSource source) throws XPathExpressionException {
+			return xpaths.get().evaluate(expression, source);
+		}
+	}
+}
@@ -28,7 +28,7 @@ public class HttpTestConductorTest extends HttpTestConductor {
 	@Test
 	public void availableServicesWithDefaultWsProperties() throws Exception {
 		HttpResponse<String> response = new RestRequest("",
-				"http://localhost:8888/mock/services", 
+				mockBaseUrl() + "/services", 
 				"get")
 			    .sendRequest();
 		assertTrue("Http status code expected to be 200", response.getStatus() == 200);
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import fi.mystes.mock.InProcessApiMock;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Response;
+import fi.mystes.response.RestResponse;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jetty.JettyServer;
+
+public class CompressionTest {
+
+	@Test
+	public void compressedBodiesAreDecodedAndRawBytesCounted() throws Exception {
+		SharedHttpClient.configure(new Properties());
+		MockServerFixture mock = MockServerFixture.start(new JettyServer(0));
+		InProcessApiMock apiMock = mock.getApiMock();
+		try {
+			StringBuilder body = new StringBuilder("{\"items\":[");
+			for (int i = 0; i < 200; i++) {
+				body.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+			}
+			String content = body.append("{}]}").toString();
+			Response response = new Response().setBody(content).setCompression(Compression.GZIP);
+			for (int i = 0; i < 3; i++) {
+				apiMock.addCustomResponse(mock.getResponsesUrl(), response);
+			}
+			
+			RestRequest request = new RestRequest(content, mock.getEndpointUrl(), "post")
+					.setCompression(Compression.DEFLATE);
+			RestResponse<byte[]> bytes = request.sendRequestAsBytes();
+			String decoded = request.sendRequest().getBody();
+			
+			assertTrue("Compressed request body expected", request.getCompressedContentLength() > 0 
+					&& request.getCompressedContentLength() < request.getContentLength());
+			assertTrue("Decoded response body expected", new String(bytes.getBody(), StandardCharsets.UTF_8).equals(content) 
+					&& decoded.equals(content));
+			assertTrue("Compressed bytes expected on the wire: " + bytes.getRawBodyLength(), 
+					bytes.getRawBodyLength() == response.getCompressedContent().length && bytes.getBodyLength() == content.length());
+			
+			RecordedRequestIterator requests = apiMock.streamRecordedRequests(mock.getOperationUrl() + "/recorded-requests");
+			RecordedRequest recorded = requests.next();
+			requests.close();
+			assertTrue("Decoded request body expected to be recorded", recorded.getContent().equals(content)
+					&& "deflate".equals(recorded.getHeaders().get("Content-Encoding")));
+			
+			RestResponse<byte[]> uncompressed = new RestRequest(null, mock.getEndpointUrl(), "post")
+					.addHeader("Accept-Encoding", "identity").sendRequestAsBytes();
+			assertTrue("Accept-Encoding expected to be honoured", uncompressed.getHeaders().getFirst("Content-Encoding") == null
+					&& uncompressed.getRawBodyLength() == content.length());
+			assertTrue("Quality value zero expected not to accept", !Compression.isAccepted("gzip;q=0, deflate", "gzip") 
+					&& Compression.isAccepted("gzip;q=0, deflate", "deflate"));
+		} finally {
+			mock.stop();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.metrics.TimingRegistry;
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Delay;
+import fi.mystes.response.Response;
+import fi.mystes.response.TimedResponse;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jdk.JdkServer;
+
+public class RequestTimingTest {
+
+	@Test
+	public void timingBreakdownIsRecordedByPhase() throws Exception {
+		SharedHttpClient.configure(new Properties());
+		MockServerFixture mock = MockServerFixture.start(new JdkServer(0));
+		try {
+			StringBuilder body = new StringBuilder();
+			while (body.length() < 1000) {
+				body.append("0123456789");
+			}
+			for (int i = 0; i < 2; i++) {
+				mock.getApiMock().addCustomResponse(mock.getResponsesUrl(), new Response()
+						.setBody(body.toString()).setFirstByteDelay(Delay.fixed(200)).setBandwidth(5000));
+			}
+			TimingRegistry registry = new TimingRegistry();
+			// Readiness probe may have pooled a connection to localhost, but not to 127.0.0.1
+			RestRequest request = new RestRequest("{}", "http://127.0.0.1:" + mock.getPort() 
+					+ "/mock/services/REST/local-mock/endpoint", "post").setTimingRegistry(registry);
+
+			TimedResponse<HttpResponse<String>> first = request.sendRequestTimed();
+			RequestTiming timing = first.getTiming();
+			assertTrue("Complete body expected", first.getResponse().getBody().equals(body.toString()));
+			assertTrue("New connection expected: " + timing, timing.isConnected() && timing.getConnectNanos() > 0);
+			assertTrue("First byte delay expected: " + timing, millis(timing.getFirstByteNanos()) >= 200);
+			assertTrue("Throttled body read expected: " + timing, millis(timing.getBodyNanos()) >= 100);
+			assertTrue("Phases expected to fit in total: " + timing, timing.getLeaseNanos() + timing.getConnectNanos() 
+					+ timing.getWriteNanos() + timing.getFirstByteNanos() + timing.getBodyNanos() <= timing.getTotalNanos());
+
+			request.sendRequest();
+			String name = "POST /mock/services/REST/local-mock/endpoint";
+			assertTrue("Both requests expected in registry: " + registry, 
+					registry.getHistogram(name, TimingRegistry.Phase.TOTAL).getTotalCount() == 2);
+			assertTrue("Pooled connection expected to be reused: " + registry, 
+					registry.getHistogram(name, TimingRegistry.Phase.CONNECT).getMinValue() == 0);
+		} finally {
+			mock.stop();
+		}
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.http;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mashape.unirest.http.Unirest;
+
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jdk.JdkServer;
+
+public class SharedHttpClientTest {
+
+	private MockServerFixture mock;
+
+	@Before
+	public void setUp() throws Exception {
+		SharedHttpClient.shutdown();
+		Properties properties = new Properties();
+		properties.setProperty("http.test.conductor.client.maxTotal", "7");
+		properties.setProperty("http.test.conductor.client.maxPerRoute", "1");
+		properties.setProperty("http.test.conductor.client.validateAfterInactivity", "500");
+		properties.setProperty("http.test.conductor.client.connectionRequestTimeout", "200");
+		SharedHttpClient.configure(properties);
+		mock = MockServerFixture.start(new JdkServer(0));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mock.stop();
+		// Other tests share the clients registered to Unirest
+		SharedHttpClient.shutdown();
+		SharedHttpClient.configure(new Properties());
+	}
+
+	@Test
+	public void connectionPoolsAreConfiguredFromProperties() throws Exception {
+		PoolingHttpClientConnectionManager connectionManager = SharedHttpClient.getConnectionManager();
+
+		assertTrue("Configured pool size expected", connectionManager.getMaxTotal() == 7 && connectionManager.getDefaultMaxPerRoute() == 1
+				&& SharedHttpClient.getStats().getMax() == 7 && SharedHttpClient.getAsyncStats().getMax() == 7);
+		assertTrue("Configured validation after inactivity expected", connectionManager.getValidateAfterInactivity() == 500);
+	}
+
+	@Test
+	public void requestsAreSentWithUnirestDefaultsAfterShutdown() throws Exception {
+		SharedHttpClient.shutdown();
+
+		assertTrue("Request after shutdown expected to be sent", Unirest.get(mock.getServicesUrl()).asString().getStatus() > 0);
+		assertTrue("Asynchronous request after shutdown expected to be sent", Unirest.get(mock.getServicesUrl()).asStringAsync().get().getStatus() > 0);
+	}
+
+	@Test(expected = ConnectionPoolTimeoutException.class)
+	public void leaseTimesOutWhenRouteHasNoFreeConnection() throws Exception {
+		CloseableHttpResponse held = SharedHttpClient.getHttpClient().execute(new HttpGet(mock.getServicesUrl()));
+		try {
+			SharedHttpClient.getHttpClient().execute(new HttpGet(mock.getServicesUrl())).close();
+		} finally {
+			held.close();
+		}
+	}
+}
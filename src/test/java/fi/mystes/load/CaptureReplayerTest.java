@@ -0,0 +1,125 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.mystes.record.CaptureLog;
+import fi.mystes.record.CapturedExchange;
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jdk.JdkServer;
+
+public class CaptureReplayerTest {
+
+	private static final String ENDPOINT = "POST /mock/services/REST/local-mock/endpoint";
+
+	private MockServerFixture mock;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		mock = MockServerFixture.start(new JdkServer(0));
+		for (int i = 0; i < 3; i++) {
+			mock.getApiMock().addCustomResponse(mock.getResponsesUrl(), new Response().setBody("{\"id\":1}").setStatus(201));
+		}
+		
+		file = File.createTempFile("capture", ".log");
+		file.delete();
+		file.deleteOnExit();
+		CaptureLog log = new CaptureLog(file);
+		log.append(createExchange(1000, 201, "{\"id\":1}"));
+		log.append(createExchange(1300, 201, "{\"id\":2}"));
+		log.append(createExchange(1600, 200, "{\"id\":1}"));
+		log.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mock.stop();
+	}
+
+	@Test
+	public void capturedTimingIsScaledAndMismatchesAreCounted() throws Exception {
+		ReplayResult result = new CaptureReplayer(file)
+				.setTargetUrl("http://localhost:" + mock.getPort())
+				.setSpeed(2)
+				.run();
+
+		LoadResult endpoint = result.getEndpoints().get(ENDPOINT);
+		assertTrue("Results of replayed endpoint expected: " + result.getEndpoints().keySet(), endpoint != null);
+		assertTrue("3 requests expected to be replayed", endpoint.getRequests() == 3 && result.getTotal().getRequests() == 3);
+		assertTrue("One status and one body mismatch expected: " + endpoint.getErrorCounts(), 
+				endpoint.getErrorCounts().get(CaptureReplayer.STATUS_MISMATCH) == 1
+				&& endpoint.getErrorCounts().get(CaptureReplayer.BODY_MISMATCH) == 1
+				&& result.getMismatches() == 2);
+		// Last request was captured 600 ms after the first one
+		assertTrue("Replay expected to take half of captured time: " + result.getTotal().getElapsedMillis(), 
+				result.getTotal().getElapsedMillis() >= 300 && result.getTotal().getElapsedMillis() < 600);
+	}
+
+	@Test
+	public void bodiesAreNotComparedWhenDisabled() throws Exception {
+		ReplayResult result = new CaptureReplayer(file)
+				.setTargetUrl("http://localhost:" + mock.getPort() + "/")
+				.setSpeed(CaptureReplayer.MAX_SPEED)
+				.setCompareBodies(false)
+				.run();
+
+		assertTrue("Only status mismatch expected: " + result.getTotal().getErrorCounts(), 
+				result.getMismatches() == 1 && result.getTotal().getErrors() == 1);
+		assertTrue("Replay at maximum speed expected not to wait: " + result.getTotal().getElapsedMillis(), 
+				result.getTotal().getElapsedMillis() < 300);
+	}
+
+	@Test
+	public void exchangesLoggedOnCompletionAreReplayedInArrivalOrder() throws Exception {
+		file.delete();
+		CaptureLog log = new CaptureLog(file);
+		// First arrived exchange completed after the second one
+		log.append(createExchange(1300, 201, "{\"id\":1}"));
+		log.append(createExchange(1000, 201, "{\"id\":1}"));
+		log.append(createExchange(1600, 201, "{\"id\":1}"));
+		log.close();
+
+		ReplayResult result = new CaptureReplayer(file)
+				.setTargetUrl("http://localhost:" + mock.getPort())
+				.setSpeed(2)
+				.run();
+
+		assertTrue("Replay expected to start from the first arrived exchange: " + result.getTotal().getElapsedMillis(), 
+				result.getTotal().getElapsedMillis() >= 300 && result.getMismatches() == 0);
+	}
+
+	private static CapturedExchange createExchange(long timestamp, int status, String body) {
+		return new CapturedExchange()
+				.setTimestamp(timestamp)
+				.setRequest(new RecordedRequest()
+						.setMethod("POST")
+						.setEndpointUrl("http://downstream:8080/mock/services/REST/local-mock/endpoint")
+						.addHeader("Content-Type", "application/json")
+						.addHeader("Content-Length", "2")
+						.setBody("{}"))
+				.setResponse(new Response().setStatus(status).setBody(body));
+	}
+}
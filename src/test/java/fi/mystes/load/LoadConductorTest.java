@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.load;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.mystes.request.IRequest;
+
+public class LoadConductorTest {
+
+	private ScheduledExecutorService scheduler;
+	private AtomicLong sent;
+
+	@Before
+	public void setUp() {
+		scheduler = Executors.newScheduledThreadPool(2);
+		sent = new AtomicLong();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void closedModelSendsGivenNumberOfIterations() throws Exception {
+		LoadResult result = new LoadConductor<Integer>(new DelayedRequest(1))
+				.setUsers(4)
+				.setIterations(100)
+				.setResponseValidator(new ResponseValidator<Integer>() {
+					public boolean isValid(Integer response) {
+						return response % 10 != 0;
+					}
+				})
+				.run();
+
+		assertTrue("100 requests expected to be sent", sent.get() == 100);
+		assertTrue("100 requests expected to complete", result.getRequests() == 100);
+		assertTrue("Every tenth response expected to be invalid", result.getErrors() == 10);
+		assertTrue("Latency of each request expected to be recorded", result.getLatency().getTotalCount() == 100);
+		assertTrue("Latency expected to include response delay", result.getLatencyAtPercentile(50) >= 1000);
+	}
+
+	@Test
+	public void openModelSendsAtArrivalRateWithoutWaitingForResponses() throws Exception {
+		LoadResult result = new LoadConductor<Integer>(new DelayedRequest(200))
+				.setArrivalRate(200)
+				.setDuration(500, TimeUnit.MILLISECONDS)
+				.run();
+
+		assertTrue("Around 100 requests expected to be sent: " + sent.get(), sent.get() >= 95 && sent.get() <= 100);
+		assertTrue("All requests expected to complete", result.getRequests() == sent.get());
+		assertTrue("No errors expected", result.getErrors() == 0);
+		assertTrue("Slow responses should not slow down arrival rate", result.getElapsedMillis() < 1000);
+	}
+
+	@Test
+	public void failedRequestsAreCountedByType() throws Exception {
+		LoadResult result = new LoadConductor<Integer>(new RequestFactory<Integer>() {
+			public IRequest<Integer> createRequest(long iteration) throws Exception {
+				if (iteration % 2 == 0) {
+					throw new IllegalStateException("Failed");
+				}
+				return new DelayedRequest(0);
+			}
+		}).setIterations(10).run();
+
+		assertTrue("Half of requests expected to fail", result.getErrors() == 5);
+		assertTrue("Errors expected to be counted by exception type",
+				result.getErrorCounts().get(IllegalStateException.class.getName()) == 5);
+	}
+
+	/**
+	 * Request responding with its sequence number after given delay.
+	 */
+	private class DelayedRequest implements IRequest<Integer> {
+		private long delayMillis;
+
+		public DelayedRequest(long delayMillis) {
+			this.delayMillis = delayMillis;
+		}
+
+		public Integer sendRequest() throws Exception {
+			Thread.sleep(delayMillis);
+			return (int) sent.incrementAndGet();
+		}
+
+		public Future<Integer> sendRequestAsync() throws Exception {
+			return sendRequestAsync(null);
+		}
+
+		public Future<Integer> sendRequestAsync(FutureCallback<Integer> callback) throws Exception {
+			final BasicFuture<Integer> future = new BasicFuture<Integer>(callback);
+			final int response = (int) sent.incrementAndGet();
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					future.completed(response);
+				}
+			}, delayMillis, TimeUnit.MILLISECONDS);
+			return future;
+		}
+	}
+}
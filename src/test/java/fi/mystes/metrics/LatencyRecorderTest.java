@@ -0,0 +1,112 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.metrics;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.HdrHistogram.HistogramLogWriter;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.junit.Test;
+
+import fi.mystes.request.IRequest;
+
+public class LatencyRecorderTest {
+
+	@Test
+	public void responseTimeIncludesWaitingBehindStalledRequest() throws Exception {
+		LatencyRecorder recorder = new LatencyRecorder();
+		TimedRequest<String> request = new TimedRequest<String>(new StallingRequest(5, 500), recorder, 10, TimeUnit.MILLISECONDS);
+
+		for (int i = 0; i < 20; i++) {
+			request.sendRequest();
+		}
+
+		Histogram serviceTimes = recorder.getServiceTimes();
+		Histogram responseTimes = recorder.getResponseTimes();
+		assertTrue("Each request expected to be recorded", responseTimes.getTotalCount() == 20 && serviceTimes.getTotalCount() == 20);
+		assertTrue("Only one request expected to be slow when measured from actual send time",
+				serviceTimes.getValueAtPercentile(90) < TimeUnit.MILLISECONDS.toMicros(100));
+		assertTrue("Requests sent after the stall expected to be slow when measured from intended send time",
+				responseTimes.getValueAtPercentile(90) >= TimeUnit.MILLISECONDS.toMicros(300));
+	}
+
+	@Test
+	public void recordersCanBeMergedAndLogged() throws Exception {
+		LatencyRecorder first = new LatencyRecorder();
+		LatencyRecorder second = new LatencyRecorder();
+		first.record(0, TimeUnit.MILLISECONDS.toNanos(1));
+		second.record(0, TimeUnit.MILLISECONDS.toNanos(2));
+		second.record(0, TimeUnit.MILLISECONDS.toNanos(3));
+
+		first.add(second);
+		assertTrue("Merged recorder expected to contain all latencies", first.getResponseTimes().getTotalCount() == 3);
+
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		HistogramLogWriter logWriter = new HistogramLogWriter(log);
+		logWriter.outputLogFormatVersion();
+		first.logInterval(logWriter);
+		first.record(0, TimeUnit.MILLISECONDS.toNanos(4));
+		first.logInterval(logWriter);
+		logWriter.close();
+
+		HistogramLogReader logReader = new HistogramLogReader(new ByteArrayInputStream(log.toByteArray()));
+		Histogram interval = (Histogram) logReader.nextIntervalHistogram();
+		assertTrue("First interval expected to be response times", LatencyRecorder.RESPONSE_TIME_TAG.equals(interval.getTag()));
+		assertTrue("First interval expected to contain merged latencies", interval.getTotalCount() == 3);
+		logReader.nextIntervalHistogram();
+		interval = (Histogram) logReader.nextIntervalHistogram();
+		assertTrue("Second interval expected to contain only new latencies", interval.getTotalCount() == 1);
+	}
+
+	/**
+	 * Request which stalls once after given number of fast responses.
+	 */
+	private static class StallingRequest implements IRequest<String> {
+		private int fastResponses;
+		private long stallMillis;
+		private int sent;
+
+		public StallingRequest(int fastResponses, long stallMillis) {
+			this.fastResponses = fastResponses;
+			this.stallMillis = stallMillis;
+		}
+
+		public String sendRequest() throws Exception {
+			if (sent++ == fastResponses) {
+				Thread.sleep(stallMillis);
+			}
+			return "OK";
+		}
+
+		public Future<String> sendRequestAsync() throws Exception {
+			return sendRequestAsync(null);
+		}
+
+		public Future<String> sendRequestAsync(FutureCallback<String> callback) throws Exception {
+			BasicFuture<String> future = new BasicFuture<String>(callback);
+			future.completed(sendRequest());
+			return future;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.util.IO;
+
+import fi.mystes.response.Fault;
+import fi.mystes.response.Response;
+
+public class CustomResponseBatchTest {
+
+	private Server server;
+	private SelectChannelConnector connector;
+	private Map<String, List<String>> received;
+
+	@Before
+	public void setUp() throws Exception {
+		received = Collections.synchronizedMap(new HashMap<String, List<String>>());
+		server = new Server();
+		connector = new SelectChannelConnector();
+		connector.setHost("127.0.0.1");
+		connector.setPort(0);
+		server.addConnector(connector);
+		server.setHandler(new AbstractHandler() {
+			public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+					throws IOException, ServletException {
+				String body = IO.toString(request.getInputStream());
+				try {
+					// Random delay would reorder responses of the same URI if they were sent concurrently
+					Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				synchronized (received) {
+					if (!received.containsKey(target)) {
+						received.put(target, new ArrayList<String>());
+					}
+					received.get(target).add(body + "|" + request.getParameter("headers"));
+				}
+				response.setStatus(HttpServletResponse.SC_OK);
+				((Request) request).setHandled(true);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void batchedResponsesAreAddedInOrderPerUri() throws Exception {
+		String baseUrl = "http://127.0.0.1:" + connector.getLocalPort();
+		CustomResponseBatch batch = new CustomResponseBatch();
+		for (int i = 0; i < 20; i++) {
+			batch.addCustomResponse(baseUrl + "/customers", new Response().setBody("customer" + i));
+			batch.addCustomResponse(baseUrl + "/orders", new Response().setBody("order" + i)
+					.addHeader("Order", "" + i).setHeadersAsParameters(true));
+		}
+
+		new HttpApiMock().addCustomResponses(batch);
+
+		List<String> customers = received.get("/customers");
+		List<String> orders = received.get("/orders");
+		assertTrue("All responses expected to be added", customers.size() == 20 && orders.size() == 20);
+		for (int i = 0; i < 20; i++) {
+			assertTrue("Customer responses expected in order", customers.get(i).equals("customer" + i + "|null"));
+			assertTrue("Order responses expected in order with headers parameter", orders.get(i).equals("order" + i + "|Order:" + i));
+		}
+	}
+
+	@Test(expected = Exception.class)
+	public void failureToAddResponsesIsReported() throws Exception {
+		List<Response> responses = new ArrayList<Response>();
+		responses.add(new Response().setBody("first"));
+		responses.add(new Response().setBody("second"));
+
+		new HttpApiMock().addCustomResponses("http://127.0.0.1:1/customers", responses);
+	}
+
+	@Test
+	public void responsesWithFaultsAreRejectedBeforeSending() throws Exception {
+		String baseUrl = "http://127.0.0.1:" + connector.getLocalPort();
+		CustomResponseBatch batch = new CustomResponseBatch()
+				.addCustomResponse(baseUrl + "/customers", new Response().setBody("customer"))
+				.addCustomResponse(baseUrl + "/orders", new Response().setBody("order").addFault(Fault.stall()));
+
+		try {
+			new HttpApiMock().addCustomResponses(batch);
+			fail("Faults expected to be rejected");
+		} catch (UnsupportedOperationException e) {
+			assertTrue("No response expected to be added", received.isEmpty());
+		}
+	}
+
+	@Test
+	public void resetInitializesUsedOperations() throws Exception {
+		String baseUrl = "http://127.0.0.1:" + connector.getLocalPort();
+		HttpApiMock apiMock = new HttpApiMock()
+				.addCustomResponse(baseUrl + "/REST/customers/operations/GET/responses", new Response().setBody("customer"))
+				.init(baseUrl + "/REST/orders/operations/GET/init");
+
+		apiMock.reset();
+
+		assertTrue("Used operations expected to be initialized", received.containsKey("/REST/customers/operations/GET/init")
+				&& received.get("/REST/orders/operations/GET/init").size() == 2);
+	}
+
+	@Test
+	public void headersParameterIsRebuiltWhenHeadersChange() {
+		Response response = new Response().addHeader("First", "1");
+		String parameter = response.getHeadersAsParameter();
+
+		assertTrue("Headers parameter expected to be cached", response.getHeadersAsParameter() == parameter);
+		response.addHeader("Second", "2");
+		assertTrue("Headers parameter expected to be rebuilt", response.getHeadersAsParameter().contains("Second:2"));
+		response.setHeaders(new HashMap<String, String>());
+		assertTrue("Headers parameter expected to be cleared", response.getHeadersAsParameter() == null);
+		response.addHeader("Third", "3");
+		assertTrue("Headers parameter expected to be rebuilt from set headers", "Third:3".equals(response.getHeadersAsParameter()));
+	}
+}
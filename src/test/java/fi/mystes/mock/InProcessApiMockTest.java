@@ -0,0 +1,322 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequestQuery;
+import fi.mystes.request.RecordedRequestVisitor;
+import fi.mystes.request.RecordedRequests;
+import fi.mystes.request.RestRequest;
+import fi.mystes.request.SoapRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jetty.JettyServer;
+import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
+
+public class InProcessApiMockTest {
+
+	private MockServerFixture mock;
+	private InProcessApiMock apiMock;
+	private XmlToolkit xmlToolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+	private String services;
+	private int port;
+
+	@Before
+	public void setUp() throws Exception {
+		mock = MockServerFixture.start(new JettyServer(0));
+		apiMock = mock.getApiMock();
+		port = mock.getPort();
+		services = "http://127.0.0.1:" + port + "/mock/services";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mock.stop();
+	}
+
+	@Test
+	public void customResponsesAreReturnedInOrderAndRequestsRecorded() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		List<Response> responses = new ArrayList<Response>();
+		responses.add(new Response().setBody("{\"first\":1}").addParameter("headers", "Custom-Header:jUnit"));
+		responses.add(new Response().setBody("failed").addParameter("code", "503").addHeader("Content-Type", "text/plain"));
+		apiMock.init(operation + "/init").addCustomResponses(operation + "/responses", responses);
+
+		HttpResponse<String> first = new RestRequest("{\"request\":1}", services + "/REST/local-mock/endpoint", "post").sendRequest();
+		HttpResponse<String> second = new RestRequest("{\"request\":2}", services + "/REST/local-mock/endpoint", "post").sendRequest();
+		HttpResponse<String> third = new RestRequest("{\"request\":3}", services + "/REST/local-mock/endpoint", "post").sendRequest();
+
+		assertTrue("First custom response expected", first.getStatus() == 200 && first.getBody().equals("{\"first\":1}")
+				&& first.getHeaders().getFirst("Custom-Header").equals("jUnit"));
+		assertTrue("Second custom response expected", second.getStatus() == 503 && second.getBody().equals("failed")
+				&& second.getHeaders().getFirst("Content-Type").startsWith("text/plain"));
+		assertTrue("Default response expected", third.getStatus() == 200
+				&& third.getHeaders().getFirst("Content-Type").startsWith("application/json"));
+
+		Document requests = xmlToolkit.parse(apiMock.getRecordedRequests(operation + "/recorded-requests").getContent());
+		assertTrue("Recorded requests expected in order", xmlToolkit.getXPath()
+				.evaluate("normalize-space(//recorded-requests/text())", requests)
+				.equals("{\"request\":1} {\"request\":2} {\"request\":3}"));
+		Document headers = xmlToolkit.parse(apiMock.getRecordedHeaders(operation + "/recorded-request-headers").getContent());
+		assertTrue("Recorded headers expected", xmlToolkit.getXPath()
+				.evaluate("count(//name[text() = 'Content-Type'])", headers).equals("3"));
+
+		RecordedRequestIterator iterator = apiMock.streamRecordedRequests(operation + "/recorded-requests");
+		long index = 0;
+		for (RecordedRequest request : iterator) {
+			assertTrue("Streamed request expected in order", request.getIndex() == index
+					&& request.getContent().equals("{\"request\":" + ++index + "}") && request.getMethod().equals("POST"));
+		}
+		assertTrue("All requests expected to be streamed", index == 3);
+	}
+
+	@Test
+	public void soapOperationIsResolvedFromBodyAndPayloadRecorded() throws Exception {
+		String operation = services + "/SOAP/customers/operations/getCustomer";
+		apiMock.addCustomResponse(operation + "/responses", new Response().setBody(
+				"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+				+ "<customer>Mystes</customer></soapenv:Body></soapenv:Envelope>"));
+
+		SOAPMessage response = new SoapRequest(
+				"<c:getCustomer xmlns:c=\"urn:customers\"><c:id>1</c:id></c:getCustomer>",
+				services + "/SOAP/customers/endpoint").sendRequest();
+
+		assertTrue("Custom response expected", response.getSOAPBody().getTextContent().equals("Mystes"));
+		Document requests = xmlToolkit.parse(apiMock.getRecordedRequests(operation + "/recorded-requests").getContent());
+		assertTrue("SOAP payload expected to be recorded", xmlToolkit.getXPath()
+				.evaluate("string(/recorded-requests/*[local-name() = 'getCustomer']/*[local-name() = 'id'])", requests).equals("1"));
+	}
+
+	@Test
+	public void operationsCanBeManagedOverHttp() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		new RestRequest(null, operation + "/init", "post").sendRequest();
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		parameters.put("code", "201");
+		new RestRequest("created", operation + "/responses", "post", parameters).sendRequest();
+
+		HttpResponse<String> response = new RestRequest("<order/>", services + "/REST/local-mock/endpoint", "post").sendRequest();
+		HttpResponse<String> recorded = new RestRequest(null, operation + "/recorded-requests", "get").sendRequest();
+
+		assertTrue("Custom response added over HTTP expected", response.getStatus() == 201 && response.getBody().equals("created"));
+		assertTrue("Recorded XML request expected", xmlToolkit.getXPath()
+				.evaluate("count(/recorded-requests/order)", xmlToolkit.parse(recorded.getBody())).equals("1"));
+		assertTrue("Services listing expected", new RestRequest(null, services, "get").sendRequest().getBody()
+				.contains("service=\"local-mock\""));
+	}
+
+	@Test
+	public void resetClearsResponsesAndRecordedRequestsOfAllOperations() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		apiMock.addCustomResponse(operation + "/responses", new Response().setBody("first"))
+				.addCustomResponse(operation + "/responses", new Response().setBody("second"));
+		new RestRequest("request", services + "/REST/local-mock/endpoint", "post").sendRequest();
+
+		apiMock.reset();
+
+		HttpResponse<String> response = new RestRequest("request", services + "/REST/local-mock/endpoint", "post").sendRequest();
+		assertTrue("Default response expected after reset", response.getBody().isEmpty());
+		assertTrue("Only request after reset expected to be recorded",
+				apiMock.visitRecordedRequests(operation + "/recorded-requests", new RecordedRequestVisitor() {
+					public boolean visit(RecordedRequest request) {
+						return true;
+					}
+				}) == 1);
+	}
+
+	@Test
+	public void recordedRequestsCanBeQueriedByHeadersBodyKeysAndTime() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		String endpoint = services + "/REST/local-mock/endpoint";
+		apiMock.addBodyKey(operation + "/recorded-requests", BodyKey.pattern("customerId", "\"customerId\":\"([^\"]+)\""));
+		HashMap<String, String> headers = new HashMap<String, String>();
+		headers.put("X-Correlation-Id", "a");
+		new RestRequest("{\"customerId\":\"1\"}", endpoint, "post", new HashMap<String, String>(), headers).sendRequest();
+		new RestRequest("{\"customerId\":\"2\"}", endpoint, "post", new HashMap<String, String>(), headers).sendRequest();
+		headers.put("X-Correlation-Id", "b");
+		new RestRequest("{\"customerId\":\"1\"}", endpoint, "post", new HashMap<String, String>(), headers).sendRequest();
+		
+		List<RecordedRequest> byHeader = apiMock.queryRecordedRequests(operation + "/recorded-requests", 
+				new RecordedRequestQuery().addHeader("x-correlation-id", "a"));
+		List<RecordedRequest> byHeaderAndBodyKey = apiMock.queryRecordedRequests(operation + "/recorded-requests", 
+				new RecordedRequestQuery().addHeader("X-Correlation-Id", "b").addBodyKey("customerId", "1"));
+		List<RecordedRequest> since = apiMock.queryRecordedRequests(operation + "/recorded-requests", 
+				new RecordedRequestQuery().setSince(byHeader.get(1).getTimestamp()).setLimit(1));
+		
+		assertTrue("Requests with header value expected", byHeader.size() == 2 
+				&& byHeader.get(0).getIndex() == 0 && byHeader.get(1).getIndex() == 1);
+		assertTrue("Request with header and body key values expected", byHeaderAndBodyKey.size() == 1 
+				&& byHeaderAndBodyKey.get(0).getIndex() == 2 && byHeaderAndBodyKey.get(0).getContent().contains("\"1\""));
+		assertTrue("Earliest request since timestamp expected", since.size() == 1 && since.get(0).getIndex() <= 1);
+		
+		apiMock.init(operation + "/init");
+		new RestRequest("{\"customerId\":\"3\"}", endpoint, "post").sendRequest();
+		assertTrue("Body key expected to be kept over init", apiMock.queryRecordedRequests(operation + "/recorded-requests", 
+				new RecordedRequestQuery().addBodyKey("customerId", "3")).size() == 1);
+	}
+
+	@Test
+	public void recordedRequestsCanBeFetchedIncrementallyWithCursor() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		String endpoint = services + "/REST/local-mock/endpoint";
+		new RestRequest("<first/>", endpoint, "post").sendRequest();
+		RecordedRequests all = apiMock.getRecordedRequests(operation + "/recorded-requests");
+		new RestRequest("<second/>", endpoint, "post").sendRequest();
+		
+		RecordedRequests since = apiMock.getRecordedRequestsSince(operation + "/recorded-requests", all.getNextCursor());
+		assertTrue("Only new request expected", all.getNextCursor() == 1 && since.getNextCursor() == 2 
+				&& since.getContent().contains("second") && !since.getContent().contains("first"));
+		
+		apiMock.init(operation + "/init");
+		new RestRequest("<third/>", endpoint, "post").sendRequest();
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		parameters.put("since", String.valueOf(since.getNextCursor()));
+		HttpResponse<String> overHttp = new RestRequest(null, operation + "/recorded-request-headers", "get", parameters).sendRequest();
+		assertTrue("Cursor expected to stay valid over init", "3".equals(overHttp.getHeaders().getFirst("X-Next-Cursor"))
+				&& xmlToolkit.getXPath().evaluate("count(//request-headers)", xmlToolkit.parse(overHttp.getBody())).equals("1"));
+	}
+
+	@Test
+	public void awaitingReturnsAsSoonAsMatchingRequestsAreRecorded() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		final String endpoint = services + "/REST/local-mock/endpoint";
+		RecordedRequestPredicate orders = new RecordedRequestPredicate() {
+			public boolean matches(RecordedRequest request) {
+				return request.getContent().contains("order");
+			}
+		};
+		new RestRequest("<customer/>", endpoint, "post").sendRequest();
+		Thread sender = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(200);
+					new RestRequest("<order id=\"1\"/>", endpoint, "post").sendRequest();
+					Thread.sleep(200);
+					new RestRequest("<order id=\"2\"/>", endpoint, "post").sendRequest();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		sender.start();
+		
+		long started = System.currentTimeMillis();
+		List<RecordedRequest> inProcess = apiMock.awaitRecordedRequests(operation + "/recorded-requests", orders, 1, 10000);
+		List<RecordedRequest> overHttp = new HttpApiMock().awaitRecordedRequests(operation + "/recorded-requests", orders, 2, 10000);
+		sender.join();
+		
+		assertTrue("Awaiting expected to return when requests are recorded", System.currentTimeMillis() - started < 5000);
+		assertTrue("First matching request expected", inProcess.size() == 1 && inProcess.get(0).getContent().contains("\"1\""));
+		assertTrue("Matching requests expected over HTTP", overHttp.size() == 2 && overHttp.get(1).getContent().contains("\"2\""));
+		try {
+			apiMock.awaitRecordedRequests(operation + "/recorded-requests", orders, 3, 100);
+			assertTrue("Timeout expected", false);
+		} catch (TimeoutException e) {
+			assertTrue("Matching requests expected in timeout message", e.getMessage().contains("2 matching"));
+		}
+	}
+
+	@Test
+	public void longPollingIsCappedAndMalformedCursorsAreRejected() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		apiMock.setMaxWait(200);
+		
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		parameters.put("wait", "600000");
+		long started = System.currentTimeMillis();
+		HttpResponse<String> capped = new RestRequest(null, operation + "/recorded-requests", "get", parameters).sendRequest();
+		assertTrue("Long-poll expected to be cut to maximum wait", capped.getStatus() == 200 
+				&& System.currentTimeMillis() - started < 5000);
+		
+		parameters.put("wait", "soon");
+		assertTrue("Malformed wait expected to be rejected", 
+				new RestRequest(null, operation + "/recorded-requests", "get", parameters).sendRequest().getStatus() == 400);
+		parameters.remove("wait");
+		parameters.put("since", "-1");
+		assertTrue("Negative cursor expected to be rejected", 
+				new RestRequest(null, operation + "/recorded-request-headers", "get", parameters).sendRequest().getStatus() == 400);
+	}
+
+	@Test
+	public void awaitingWithCursorBeforeInitWaitsForNewRequests() throws Exception {
+		String operation = services + "/REST/local-mock/operations/POST";
+		new RestRequest("<first/>", services + "/REST/local-mock/endpoint", "post").sendRequest();
+		apiMock.init(operation + "/init");
+		
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		parameters.put("since", "0");
+		parameters.put("wait", "300");
+		long started = System.currentTimeMillis();
+		HttpResponse<String> overHttp = new RestRequest(null, operation + "/recorded-requests", "get", parameters).sendRequest();
+		
+		assertTrue("Cursor before init expected to wait for new requests", System.currentTimeMillis() - started >= 250);
+		assertTrue("No recorded requests expected", "1".equals(overHttp.getHeaders().getFirst("X-Next-Cursor"))
+				&& !overHttp.getBody().contains("first"));
+	}
+
+	@Test
+	public void jsonRecordingsAreSeparateRequestsOverHttp() throws Exception {
+		String recordedRequests = services + "/REST/local-mock/operations/POST/recorded-requests";
+		String endpoint = services + "/REST/local-mock/endpoint";
+		for (int i = 1; i <= 3; i++) {
+			new RestRequest("{\"id\":" + i + "}", endpoint, "post").addHeader("Content-Type", "application/json").sendRequest();
+		}
+		HttpApiMock httpApiMock = new HttpApiMock();
+
+		final List<String> visited = new ArrayList<String>();
+		httpApiMock.visitRecordedRequests(recordedRequests, new RecordedRequestVisitor() {
+			public boolean visit(RecordedRequest request) {
+				visited.add(request.getContent());
+				return true;
+			}
+		});
+		assertTrue("Each JSON recording expected as a request: " + visited, 
+				visited.size() == 3 && visited.get(2).equals("{\"id\":3}"));
+		RecordedRequests since = httpApiMock.getRecordedRequestsSince(recordedRequests, 2);
+		assertTrue("Only last JSON recording expected after cursor: " + since.getContent(), since.getNextCursor() == 3 
+				&& since.getContent().contains("{\"id\":3}") && !since.getContent().contains("{\"id\":2}"));
+		assertTrue("Several JSON recordings expected to be awaited", 
+				httpApiMock.awaitRecordedRequests(recordedRequests, null, 3, 5000).size() == 3);
+	}
+
+	@Test
+	public void onlyMockInstanceServedAtPortIsAlive() throws Exception {
+		InProcessApiMock otherApiMock = new InProcessApiMock();
+		otherApiMock.configure("/mock", null);
+
+		assertTrue("Served mock expected to be alive", apiMock.isAlive(port));
+		assertTrue("Mock not served at port expected not to be alive", !otherApiMock.isAlive(port));
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.mock;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.request.RecordedRequestIterator;
+import fi.mystes.request.RecordedRequestPredicate;
+import fi.mystes.request.RecordedRequests;
+import fi.mystes.request.RecordedRequestVisitor;
+
+public class RecordedRequestStreamTest {
+
+	private static final int RECORDED_REQUESTS = 10000;
+
+	private Server server;
+	private SelectChannelConnector connector;
+	private volatile int recorded = RECORDED_REQUESTS;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new Server();
+		connector = new SelectChannelConnector();
+		connector.setHost("127.0.0.1");
+		connector.setPort(0);
+		server.addConnector(connector);
+		server.setHandler(new AbstractHandler() {
+			public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+					throws IOException, ServletException {
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType("text/xml");
+				OutputStream body = response.getOutputStream();
+				body.write("<recorded-requests>".getBytes(StandardCharsets.UTF_8));
+				for (int i = 0; i < recorded; i++) {
+					body.write(("<request><id>" + i + "</id></request>").getBytes(StandardCharsets.UTF_8));
+				}
+				body.write("</recorded-requests>".getBytes(StandardCharsets.UTF_8));
+				((Request) request).setHandled(true);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void recordedRequestsAreStreamedFromResponse() throws Exception {
+		RecordedRequestIterator requests = new HttpApiMock().streamRecordedRequests(getUri());
+		long count = 0;
+		try {
+			for (RecordedRequest request : requests) {
+				assertTrue("Recorded requests expected in order: " + request.getContent(), request.getContent().equals("<request><id>" + count + "</id></request>"));
+				count++;
+			}
+		} finally {
+			requests.close();
+		}
+
+		assertTrue("All recorded requests expected to be streamed", count == RECORDED_REQUESTS);
+	}
+
+	@Test
+	public void visitingStopsWhenVisitorReturnsFalse() throws Exception {
+		long visited = new HttpApiMock().visitRecordedRequests(getUri(), new RecordedRequestVisitor() {
+			public boolean visit(RecordedRequest request) throws Exception {
+				return request.getIndex() < 9;
+			}
+		});
+
+		assertTrue("Ten recorded requests expected to be visited", visited == 10);
+		// Aborted connection must not break following requests
+		assertTrue("All recorded requests expected to be visited afterwards", new HttpApiMock().visitRecordedRequests(getUri(), new RecordedRequestVisitor() {
+			public boolean visit(RecordedRequest request) throws Exception {
+				return true;
+			}
+		}) == RECORDED_REQUESTS);
+	}
+
+	@Test
+	public void recordedRequestsBeforeCursorAreSkippedByClient() throws Exception {
+		RecordedRequests recordedRequests = new HttpApiMock().getRecordedRequestsSince(getUri(), RECORDED_REQUESTS - 2);
+		long count = 0;
+		for (RecordedRequest request : new RecordedRequestIterator(new ByteArrayInputStream(recordedRequests.getContent().getBytes(StandardCharsets.UTF_8)))) {
+			assertTrue("Recorded requests after cursor expected: " + request.getContent(), 
+					request.getContent().equals("<request><id>" + (RECORDED_REQUESTS - 2 + count) + "</id></request>"));
+			count++;
+		}
+
+		assertTrue("Two recorded requests expected after cursor", count == 2);
+		assertTrue("Next cursor expected to be the number of recorded requests", recordedRequests.getNextCursor() == RECORDED_REQUESTS);
+		assertTrue("No recorded requests expected after the last one", 
+				!new HttpApiMock().getRecordedRequestsSince(getUri(), RECORDED_REQUESTS).getContent().contains("<request>"));
+		assertTrue("All recorded requests expected after initialized operation", new HttpApiMock()
+				.getRecordedRequestsSince(getUri(), RECORDED_REQUESTS + 1).getContent().contains("<request><id>0</id></request>"));
+	}
+
+	@Test
+	public void awaitingPollsUntilRequestIsRecorded() throws Exception {
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					return;
+				}
+				recorded = RECORDED_REQUESTS + 1;
+			}
+		}.start();
+
+		List<RecordedRequest> requests = new HttpApiMock().awaitRecordedRequests(getUri(), new RecordedRequestPredicate() {
+			public boolean matches(RecordedRequest request) throws Exception {
+				return request.getContent().contains("<id>" + RECORDED_REQUESTS + "</id>");
+			}
+		}, 1, 5000);
+
+		assertTrue("Request recorded while awaiting expected", requests.size() == 1);
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void awaitingTimesOutWithoutMatchingRequests() throws Exception {
+		new HttpApiMock().awaitRecordedRequests(getUri(), new RecordedRequestPredicate() {
+			public boolean matches(RecordedRequest request) throws Exception {
+				return false;
+			}
+		}, 1, 300);
+	}
+
+	private String getUri() {
+		return "http://127.0.0.1:" + connector.getLocalPort() + "/mock/services/REST/local-mock/operations/POST/recorded-requests";
+	}
+}
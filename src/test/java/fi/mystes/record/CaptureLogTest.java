@@ -0,0 +1,139 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import fi.mystes.request.RecordedRequest;
+import fi.mystes.response.Response;
+
+public class CaptureLogTest {
+
+	@Test
+	public void appendedExchangesAreReadBack() throws Exception {
+		File file = createLogFile();
+		CaptureLog log = new CaptureLog(file);
+		log.append(createExchange(0, "{\"name\":\"M\u00e4kinen\"}"));
+		log.append(new CapturedExchange()
+				.setRequest(new RecordedRequest().setMethod("GET").setEndpointUrl("http://downstream/api/1"))
+				.setResponse(new Response().setStatus(404)));
+		log.close();
+
+		List<CapturedExchange> exchanges = CaptureLog.read(file);
+		assertEquals(2, exchanges.size());
+		CapturedExchange first = exchanges.get(0);
+		assertEquals(1000L, first.getTimestamp());
+		assertEquals(2500000L, first.getDurationNanos());
+		assertEquals("POST", first.getRequest().getMethod());
+		assertEquals("http://downstream/api/customers?id=0", first.getRequest().getEndpoint());
+		assertEquals("application/json", first.getRequest().getHeaders().get("Content-Type"));
+		assertEquals("{\"id\":0}", first.getRequest().getContent());
+		assertEquals(Integer.valueOf(201), first.getResponse().getStatus());
+		assertEquals("a, b", first.getResponse().getHeaders().get("X-List"));
+		assertEquals("{\"name\":\"M\u00e4kinen\"}", first.getResponse().getContent());
+		assertNull(exchanges.get(1).getRequest().getContent());
+		assertEquals(Integer.valueOf(404), exchanges.get(1).getResponse().getStatus());
+	}
+
+	@Test
+	public void reopenedLogIsAppendedTo() throws Exception {
+		File file = createLogFile();
+		CaptureLog log = new CaptureLog(file);
+		log.append(createExchange(0, "first"));
+		log.close();
+
+		log = new CaptureLog(file);
+		log.append(createExchange(1, "second"));
+		log.close();
+
+		List<CapturedExchange> exchanges = CaptureLog.read(file);
+		assertEquals(2, exchanges.size());
+		assertEquals("first", exchanges.get(0).getResponse().getContent());
+		assertEquals("second", exchanges.get(1).getResponse().getContent());
+	}
+
+	@Test
+	public void logGrowsBeyondMappedRegion() throws Exception {
+		File file = createLogFile();
+		CaptureLog log = new CaptureLog(file, 256);
+		StringBuilder body = new StringBuilder();
+		while (body.length() < 1000) {
+			body.append("0123456789");
+		}
+		for (int i = 0; i < 50; i++) {
+			log.append(createExchange(i, body.toString()));
+		}
+		assertEquals(50, log.getCount());
+		log.close();
+
+		List<CapturedExchange> exchanges = CaptureLog.read(file);
+		assertEquals(50, exchanges.size());
+		assertEquals("http://downstream/api/customers?id=49", exchanges.get(49).getRequest().getEndpoint());
+		assertEquals(body.toString(), exchanges.get(49).getResponse().getContent());
+	}
+
+	@Test
+	public void iteratorReadsThroughSmallWindows() throws Exception {
+		File file = createLogFile();
+		CaptureLog log = new CaptureLog(file);
+		for (int i = 0; i < 20; i++) {
+			log.append(createExchange(i, "response " + i));
+		}
+		log.close();
+
+		CaptureLogIterator iterator = new CaptureLogIterator(file, 100);
+		int count = 0;
+		try {
+			for (CapturedExchange exchange : iterator) {
+				assertEquals("response " + count, exchange.getResponse().getContent());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		assertEquals(20, count);
+		assertEquals(log.getSize(), iterator.getPosition());
+	}
+
+	private static CapturedExchange createExchange(int id, String responseBody) {
+		return new CapturedExchange()
+				.setTimestamp(1000L + id)
+				.setDurationNanos(2500000L)
+				.setRequest(new RecordedRequest()
+						.setMethod("POST")
+						.setEndpointUrl("http://downstream/api/customers?id=" + id)
+						.addHeader("Content-Type", "application/json")
+						.setBody("{\"id\":" + id + "}"))
+				.setResponse(new Response()
+						.setStatus(201)
+						.addHeader("Content-Type", "application/json")
+						.addHeader("X-List", "a, b")
+						.setBody(responseBody));
+	}
+
+	private static File createLogFile() throws Exception {
+		File file = File.createTempFile("capture", ".log");
+		file.delete();
+		file.deleteOnExit();
+		return file;
+	}
+}
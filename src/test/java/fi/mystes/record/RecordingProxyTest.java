@@ -0,0 +1,83 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.record;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.mock.InProcessApiMock;
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jdk.JdkServer;
+
+public class RecordingProxyTest {
+
+	@Test
+	public void proxiedTrafficIsCapturedAndReplayed() throws Exception {
+		File file = File.createTempFile("capture", ".log");
+		file.delete();
+		file.deleteOnExit();
+		
+		CaptureLog log = new CaptureLog(file);
+		RecordingProxy proxy = new RecordingProxy(log);
+		MockServerFixture mock = new MockServerFixture(new JdkServer(0));
+		mock.getServer().addMockHandler("/record", proxy);
+		mock.start();
+		InProcessApiMock apiMock = mock.getApiMock();
+		try {
+			String mockBaseUrl = mock.getBaseUrl();
+			String responses = mock.getResponsesUrl();
+			proxy.setTargetUrl(mockBaseUrl + "/services/REST/local-mock");
+			proxy.configure("/record", null);
+			apiMock.addCustomResponse(responses, new Response().setBody("{\"id\":1}").setStatus(201)
+					.addHeader("Content-Type", "application/json").addHeader("X-Downstream", "recorded").setHeadersAsParameters(true));
+
+			HttpResponse<String> proxied = new RestRequest("{\"name\":\"first\"}", 
+					"http://localhost:" + mock.getPort() + "/record/endpoint?source=proxy", "post").sendRequest();
+			assertEquals(201, proxied.getStatus());
+			assertEquals("{\"id\":1}", proxied.getBody());
+			assertEquals(1, log.getCount());
+			proxy.close();
+			log.close();
+			
+			List<CapturedExchange> exchanges = CaptureLog.read(file);
+			assertEquals(1, exchanges.size());
+			assertEquals(mockBaseUrl + "/services/REST/local-mock/endpoint?source=proxy", exchanges.get(0).getRequest().getEndpoint());
+			assertEquals("{\"name\":\"first\"}", exchanges.get(0).getRequest().getContent());
+			assertEquals(Integer.valueOf(201), exchanges.get(0).getResponse().getStatus());
+			
+			apiMock.init(responses);
+			int loaded = new CaptureStubLoader(mockBaseUrl)
+					.addService(mockBaseUrl + "/services/REST/local-mock", "REST", "local-mock")
+					.load(apiMock, file);
+			assertEquals(1, loaded);
+			
+			HttpResponse<String> replayed = new RestRequest("{}", mockBaseUrl + "/services/REST/local-mock/endpoint", "post").sendRequest();
+			assertEquals(201, replayed.getStatus());
+			assertEquals("{\"id\":1}", replayed.getBody());
+			assertEquals("recorded", replayed.getHeaders().getFirst("X-downstream"));
+		} finally {
+			mock.stop();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+
+public class RecordedRequestIteratorTest {
+
+	@Test
+	public void elementsAndTextAreReadAsSeparateRequests() throws Exception {
+		String xml = "<?xml version='1.0'?><recorded-requests xmlns:ns='urn:test'>"
+				+ "<ns:request id='1'><ns:value>first</ns:value></ns:request>\n"
+				+ "  {\"json\":true}  "
+				+ "<request><![CDATA[<second>]]></request>"
+				+ "</recorded-requests>";
+
+		List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+		for (RecordedRequest request : new RecordedRequestIterator(toStream(xml))) {
+			requests.add(request);
+		}
+
+		assertTrue("Three recorded requests expected", requests.size() == 3);
+		assertTrue("Namespace declared by root expected on element: " + requests.get(0).getContent(),
+				requests.get(0).getContent().contains("xmlns:ns=\"urn:test\"")
+				&& requests.get(0).getContent().contains("<ns:value>first</ns:value>"));
+		assertTrue("Text request expected to be trimmed", requests.get(1).getContent().equals("{\"json\":true}"));
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		assertTrue("Character data expected to be kept", factory.newDocumentBuilder().parse(toStream(requests.get(2).getContent()))
+				.getDocumentElement().getTextContent().equals("<second>"));
+		assertTrue("Indexes expected in order", requests.get(2).getIndex() == 2);
+	}
+
+	@Test
+	public void eachCDataSectionIsReadAsSeparateRequest() throws Exception {
+		String xml = "<recorded-requests><![CDATA[{\"a\":1}]]>\n<![CDATA[{\"b\":\"]]]]><![CDATA[>\"}]]>\n"
+				+ "plain text<![CDATA[{\"c\":3}]]></recorded-requests>";
+
+		List<RecordedRequest> requests = new ArrayList<RecordedRequest>();
+		for (RecordedRequest request : new RecordedRequestIterator(toStream(xml))) {
+			requests.add(request);
+		}
+
+		assertTrue("Four recorded requests expected: " + requests.size(), requests.size() == 4);
+		assertTrue("First CDATA request expected", requests.get(0).getContent().equals("{\"a\":1}"));
+		assertTrue("Split CDATA sections expected to be one request: " + requests.get(1).getContent(), 
+				requests.get(1).getContent().equals("{\"b\":\"]]>\"}"));
+		assertTrue("Text before CDATA expected to be a request", requests.get(2).getContent().equals("plain text"));
+		assertTrue("Last CDATA request expected", requests.get(3).getContent().equals("{\"c\":3}"));
+	}
+
+	@Test
+	public void emptyRecordedRequestsHaveNoRequests() throws Exception {
+		assertFalse("No recorded requests expected", new RecordedRequestIterator(toStream("<recorded-requests/>")).hasNext());
+		assertFalse("No recorded requests expected", new RecordedRequestIterator(toStream("<recorded-requests>  </recorded-requests>")).hasNext());
+	}
+
+	@Test
+	public void largeHistoryIsReadIncrementally() throws Exception {
+		final int count = 200000;
+		final AtomicBoolean closed = new AtomicBoolean();
+		// Recorded requests are generated while they are read, so they are never all in memory
+		InputStream stream = new SequenceInputStream(new Enumeration<InputStream>() {
+			int position = -1;
+
+			public boolean hasMoreElements() {
+				return position <= count;
+			}
+
+			public InputStream nextElement() {
+				position++;
+				if (position == 0) {
+					return toStream("<recorded-requests>");
+				}
+				if (position > count) {
+					return toStream("</recorded-requests>");
+				}
+				return toStream("<request><id>" + position + "</id><payload>0123456789abcdef</payload></request>");
+			}
+		}) {
+			@Override
+			public void close() {
+				closed.set(true);
+			}
+		};
+
+		RecordedRequestIterator requests = new RecordedRequestIterator(stream);
+		long read = 0;
+		String last = null;
+		while (requests.hasNext()) {
+			last = requests.next().getContent();
+			read++;
+		}
+
+		assertTrue("All recorded requests expected to be read: " + read, read == count);
+		assertTrue("Last recorded request expected: " + last, last.contains("<id>" + count + "</id>"));
+		assertTrue("Stream expected to be closed after reading", closed.get());
+	}
+
+	private static InputStream toStream(String xml) {
+		return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+	}
+}
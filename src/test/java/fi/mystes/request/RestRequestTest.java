@@ -15,21 +15,34 @@
  */
 package fi.mystes.request;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.notNull;
 import static org.powermock.api.support.membermodification.MemberMatcher.method;
 import static org.powermock.api.support.membermodification.MemberModifier.suppress;
 
 import static org.junit.Assert.*;
 
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHeader;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mortbay.util.IO;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
@@ -38,21 +51,36 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import com.mashape.unirest.http.options.Options;
 import com.mashape.unirest.http.utils.ClientFactory;
 
+import fi.mystes.response.RestResponse;
+
 @PrepareForTest(ClientFactory.class)
 @SuppressStaticInitializationFor({"com.mashape.unirest.http.options.Options"})
 @RunWith(PowerMockRunner.class)
 public class RestRequestTest {
+	
+	private HttpResponse response;
+	private HttpClient httpClient;
 
 	@Before
 	public void setUp() throws Exception {
 		PowerMockito.mockStatic(ClientFactory.class);
 		
-		HttpResponse response = Mockito.mock(HttpResponse.class);
-		HttpClient httpClient = Mockito.mock(HttpClient.class);
+		response = Mockito.mock(HttpResponse.class);
+		httpClient = Mockito.mock(HttpClient.class);
+		CloseableHttpAsyncClient asyncHttpClient = Mockito.mock(CloseableHttpAsyncClient.class);
 		StatusLine satusLine = Mockito.mock(StatusLine.class);
 		
 		Mockito.when(ClientFactory.getHttpClient()).thenReturn(httpClient);
 		Mockito.when(httpClient.execute((HttpUriRequest)notNull())).thenReturn(response);
+		Mockito.when(ClientFactory.getAsyncHttpClient()).thenReturn(asyncHttpClient);
+		Mockito.when(asyncHttpClient.isRunning()).thenReturn(true);
+		Mockito.when(asyncHttpClient.execute(any(HttpUriRequest.class), Mockito.<FutureCallback<HttpResponse>>any())).thenAnswer(new Answer<Future<HttpResponse>>() {
+			@SuppressWarnings("unchecked")
+			public Future<HttpResponse> answer(InvocationOnMock invocation) throws Throwable {
+				((FutureCallback<HttpResponse>) invocation.getArguments()[1]).completed(response);
+				return null;
+			}
+		});
 		Mockito.when(response.getAllHeaders()).thenReturn(new Header[0]);
 		Mockito.when(response.getStatusLine()).thenReturn(satusLine);
 		Mockito.when(satusLine.getStatusCode()).thenReturn(200);
@@ -68,5 +96,42 @@ public class RestRequestTest {
 		assertTrue("Status should be 200", response.getStatus() == 200);
 		assertTrue("Status text should be OK", response.getStatusText().equals("OK"));
 	}
+	
+	@Test
+	public void mockingResponseToAsyncRequest() throws Exception {
+		Future<com.mashape.unirest.http.HttpResponse<String>> future = new RestRequest("", "http://localhost", "post").sendRequestAsync();
+		assertTrue("Future should be done", future.isDone());
+		assertTrue("Status should be 200", future.get().getStatus() == 200);
+		assertTrue("Status text should be OK", future.get().getStatusText().equals("OK"));
+	}
+	
+	@Test
+	public void mockingRawResponseBodies() throws Exception {
+		byte[] content = new byte[] {0, 1, 2, (byte) 255};
+		Mockito.when(response.getEntity()).thenReturn(new ByteArrayEntity(content));
+		Mockito.when(response.getAllHeaders()).thenReturn(new Header[] {new BasicHeader("Content-Type", "application/octet-stream")});
+		
+		RestResponse<byte[]> bytes = new RestRequest(null, "http://localhost/data", "get").addParameter("id", "1 2").sendRequestAsBytes();
+		assertTrue("Status should be 200", bytes.getStatus() == 200);
+		assertTrue("Content-Type header expected", bytes.getHeaders().getFirst("Content-Type").equals("application/octet-stream"));
+		assertTrue("Body bytes expected", Arrays.equals(bytes.getBody(), content));
+		
+		ArgumentCaptor<HttpUriRequest> request = ArgumentCaptor.forClass(HttpUriRequest.class);
+		Mockito.verify(httpClient).execute(request.capture());
+		assertTrue("GET expected", request.getValue().getMethod().equals("GET"));
+		assertTrue("Query parameter expected: " + request.getValue().getURI(), request.getValue().getURI().toString().equals("http://localhost/data?id=1+2"));
+		
+		RestResponse<InputStream> stream = new RestRequest(null, "http://localhost/data", "get").sendRequestAsStream();
+		try {
+			assertTrue("Streamed body expected", Arrays.equals(IO.readBytes(stream.getBody()), content));
+		} finally {
+			stream.close();
+		}
+		
+		RestResponse<Void> discarded = new RestRequest(null, "http://localhost/data", "get").sendRequestDiscardingBody();
+		assertTrue("Status should be 200", discarded.getStatus() == 200);
+		assertTrue("Body should be discarded", discarded.getBody() == null);
+		assertTrue("Body length expected", discarded.getBodyLength() == content.length);
+	}
 
 }
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.request;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.SOAPHeaderElement;
+import javax.xml.soap.SOAPMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import fi.mystes.http.SharedHttpClient;
+import fi.mystes.metrics.TimingRegistry;
+import fi.mystes.metrics.TimingRegistry.Phase;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.server.jetty.JettyServer;
+import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
+
+public class SoapRequestTest {
+
+	private static final String GET_CUSTOMER = "<c:getCustomer xmlns:c=\"urn:customers\"><c:id>1</c:id></c:getCustomer>";
+
+	private MockServerFixture mock;
+	private XmlToolkit xmlToolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+	private String operation;
+
+	@Before
+	public void setUp() throws Exception {
+		SharedHttpClient.configure(new Properties());
+		mock = MockServerFixture.start(new JettyServer(0));
+		operation = mock.getServicesUrl() + "/SOAP/customers/operations/getCustomer";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mock.stop();
+	}
+
+	@Test
+	public void asynchronousRequestsAreSentWithClientComputedLength() throws Exception {
+		for (int i = 1; i <= 2; i++) {
+			mock.getApiMock().addCustomResponse(operation + "/responses", new Response().setBody(
+					"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+					+ "<customer>Customer " + i + "</customer></soapenv:Body></soapenv:Envelope>"));
+		}
+		SoapRequest request = new SoapRequest(GET_CUSTOMER, mock.getServicesUrl() + "/SOAP/customers/endpoint");
+
+		// Back to back, so that second request may lease connection released by first one
+		SOAPMessage first = request.sendRequestAsync().get(10, TimeUnit.SECONDS);
+		SOAPMessage second = request.sendRequestAsync().get(10, TimeUnit.SECONDS);
+
+		assertTrue("Custom responses expected in order", first.getSOAPBody().getTextContent().equals("Customer 1")
+				&& second.getSOAPBody().getTextContent().equals("Customer 2"));
+		Document headers = xmlToolkit.parse(mock.getApiMock().getRecordedHeaders(operation + "/recorded-request-headers").getContent());
+		assertTrue("Single Content-Length header expected per request", xmlToolkit.getXPath().evaluate(
+				"count(//request-headers[count(header[name = 'Content-Length']) = 1])", headers).equals("2"));
+	}
+
+	@Test
+	public void soapHeaderNamesAreParsedAsQualifiedNames() throws Exception {
+		Map<String, String> soapHeaders = new HashMap<String, String>();
+		soapHeaders.put("{urn:common}transactionId", "42");
+		SOAPMessage message = new SoapRequest(GET_CUSTOMER, mock.getServicesUrl() + "/SOAP/customers/endpoint")
+				.setSoapHeaders(soapHeaders).createSOAPRequest();
+
+		SOAPHeaderElement header = (SOAPHeaderElement) message.getSOAPHeader().examineAllHeaderElements().next();
+		assertTrue("Namespace qualified SOAP header expected", "urn:common".equals(header.getNamespaceURI())
+				&& "transactionId".equals(header.getLocalName()) && "42".equals(header.getTextContent()));
+	}
+
+	@Test
+	public void saajRequestsRecordOnlyTotalTime() throws Exception {
+		mock.getApiMock().addCustomResponse(operation + "/responses", new Response().setBody(
+				"<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>"
+				+ "<customer>Customer 1</customer></soapenv:Body></soapenv:Envelope>"));
+		TimingRegistry registry = new TimingRegistry();
+
+		SOAPMessage response = new SoapRequest(GET_CUSTOMER, mock.getServicesUrl() + "/SOAP/customers/endpoint")
+				.setTimingRegistry(registry).sendRequest();
+
+		assertTrue("Response expected", response.getSOAPBody().getTextContent().equals("Customer 1"));
+		assertTrue("Total time expected to be recorded", registry.getHistogram(Phase.TOTAL).getTotalCount() == 1);
+		assertTrue("Phases expected not to be recorded", registry.getHistogram(Phase.FIRST_BYTE).getTotalCount() == 0);
+	}
+}
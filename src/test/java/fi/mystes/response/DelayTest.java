@@ -0,0 +1,71 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.response;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class DelayTest {
+
+	@Test
+	public void sampledDelaysFollowDistribution() throws Exception {
+		assertTrue("Fixed delay expected", Delay.fixed(25).sampleMillis() == 25);
+
+		long[] uniform = sample(Delay.uniform(10, 20), 1000);
+		assertTrue("Uniform delays expected within bounds", uniform[0] >= 10 && uniform[uniform.length - 1] <= 20);
+
+		long[] logNormal = sample(Delay.logNormal(100, 0.5), 10000);
+		long median = logNormal[logNormal.length / 2];
+		assertTrue("Log-normal median expected, got " + median, median > 90 && median < 110);
+		assertTrue("Long tail expected", logNormal[(int) (logNormal.length * 0.99)] > 2 * median);
+
+		assertTrue("Negative samples expected to be clamped to zero", sample(Delay.normal(0, 50), 100)[0] == 0);
+	}
+
+	@Test
+	public void percentileTableIsInterpolated() throws Exception {
+		TreeMap<Double, Long> table = new TreeMap<Double, Long>();
+		table.put(0.0, 0L);
+		table.put(50.0, 100L);
+		table.put(100.0, 1000L);
+
+		Delay delay = Delay.percentiles(table);
+		assertTrue("Median from table expected", delay.interpolate(50) == 100);
+		assertTrue("Interpolated 25th percentile expected", delay.interpolate(25) == 50);
+		assertTrue("Interpolated 75th percentile expected", delay.interpolate(75) == 550);
+
+		// Median of samples is noisy where the table's slope changes, so count samples below it instead
+		long[] delays = sample(delay, 10000);
+		int belowMedian = 0;
+		while (delays[belowMedian] < 100) {
+			belowMedian++;
+		}
+		assertTrue("Half of samples expected below median, got " + belowMedian, belowMedian > 4700 && belowMedian < 5300);
+	}
+
+	private static long[] sample(Delay delay, int count) {
+		long[] delays = new long[count];
+		for (int i = 0; i < count; i++) {
+			delays[i] = delay.sampleMillis();
+		}
+		Arrays.sort(delays);
+		return delays;
+	}
+}
@@ -17,9 +17,6 @@ package fi.mystes.response;
 
 import static org.junit.Assert.assertTrue;
 
-import java.io.ByteArrayInputStream;
-import java.nio.charset.StandardCharsets;
-
 import org.junit.Test;
 import org.w3c.dom.Document;
 
@@ -35,18 +32,18 @@ public class HttpMockApiTest extends HttpTestConductor {
 
 	@Test
 	public void initAndStoreResponseAndFetchRecordedRequestsAndHeaders() throws Exception {
-		initApiMock("http://localhost:8888/mock/services/REST/local-mock/operations/POST/init");
+		initApiMock(mockBaseUrl() + "/services/REST/local-mock/operations/POST/init");
 		
 		String responseBody = "{\"name\":\"Test\"}";
 		
-		addCustomResponseToApiMock("http://localhost:8888/mock/services/REST/local-mock/operations/POST/responses", 
+		addCustomResponseToApiMock(mockBaseUrl() + "/services/REST/local-mock/operations/POST/responses", 
 									new Response().addParameter("headers","Custom-Header:jUnit")
 												  .addHeader("Content-Type", "application/json")
 												  .setBody(responseBody)
 								  );
 		String requestBody = "{\"request\":\"true\"}";
 		HttpResponse<String> response = new RestRequest(requestBody,
-														"http://localhost:8888/mock/services/REST/local-mock/endpoint", 
+														mockBaseUrl() + "/services/REST/local-mock/endpoint", 
 														"post")
 													    .addHeader("Custom-Request-Header", "jUnit request")
 													    .sendRequest();
@@ -57,9 +54,9 @@ public class HttpMockApiTest extends HttpTestConductor {
 		assertTrue("Response should contain header: Custom-Header:junit", response.getHeaders().get("Custom-Header").get(0).equals("jUnit"));
 		
 		// Recorded request headers
-		RecordedHeaders recordedHeaders = getRecordedHeadersFromApiMock("http://localhost:8888/mock/services/REST/local-mock/operations/POST/recorded-request-headers");
+		RecordedHeaders recordedHeaders = getRecordedHeadersFromApiMock(mockBaseUrl() + "/services/REST/local-mock/operations/POST/recorded-request-headers");
 		
-		Document doc = builder.parse(new ByteArrayInputStream(recordedHeaders.getContent().getBytes(StandardCharsets.UTF_8)));
+		Document doc = parseXml(recordedHeaders.getContent());
 
 		assertTrue("Recorded headers response content type expected to be: text/xml", 
 				fetchStringWithXpath(doc, "//name[text() = 'Content-Type']/../value/text()").equals("text/plain; charset=UTF-8"));
@@ -68,9 +65,9 @@ public class HttpMockApiTest extends HttpTestConductor {
         						fetchStringWithXpath(doc, "//name[text() = 'Custom-Request-Header']/../value/text()").equals("jUnit request"));
 
 		// Recorded requests
-		RecordedRequests recordedRequest = getRecordedRequestsFromApiMock("http://localhost:8888/mock/services/REST/local-mock/operations/POST/recorded-requests");
+		RecordedRequests recordedRequest = getRecordedRequestsFromApiMock(mockBaseUrl() + "/services/REST/local-mock/operations/POST/recorded-requests");
 		
-		doc = builder.parse(new ByteArrayInputStream(recordedRequest.getContent().getBytes(StandardCharsets.UTF_8)));
+		doc = parseXml(recordedRequest.getContent());
 		
 		assertTrue("Expected recorded request:" + requestBody, 
 				fetchStringWithXpath(doc, "normalize-space(//recorded-requests/text())").equals(requestBody));
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import fi.mystes.mock.InProcessApiMock;
+import fi.mystes.response.Fault;
+import fi.mystes.response.Response;
+import fi.mystes.server.jdk.JdkServer;
+
+public class FaultInjectionTest {
+
+	private static final String BODY = "0123456789";
+
+	@Test
+	public void faultsAreInjectedByEachServerType() throws Exception {
+		for (ServerFactory.Type type : ServerFactory.Type.values()) {
+			MockServerFixture mock = MockServerFixture.start(ServerFactory.createServer(type, 0, new Properties()));
+			InProcessApiMock apiMock = mock.getApiMock();
+			try {
+				String responses = mock.getResponsesUrl();
+
+				apiMock.addCustomResponse(responses, stub(Fault.stall()));
+				RawResponse stalled = send(mock.getPort(), false);
+				assertTrue(type + ": stalled response expected", stalled.text.isEmpty() && stalled.failure instanceof SocketTimeoutException);
+
+				apiMock.addCustomResponse(responses, stub(Fault.slowDrip(40)));
+				RawResponse dripped = send(mock.getPort(), false);
+				assertTrue(type + ": slowly dripped complete body expected, took " + dripped.elapsedMillis + " ms", 
+						dripped.text.endsWith("\r\n\r\n" + BODY) && dripped.elapsedMillis >= 200);
+
+				apiMock.addCustomResponse(responses, stub(Fault.stall().setProbability(0)));
+				assertTrue(type + ": fault with zero probability expected to be skipped", send(mock.getPort(), false).text.endsWith(BODY));
+			} finally {
+				mock.stop();
+			}
+		}
+	}
+
+	@Test
+	public void connectionIsCutByJettyServer() throws Exception {
+		assertConnectionIsCut(ServerFactory.Type.JETTY);
+	}
+
+	@Test
+	public void connectionIsCutByJdkServer() throws Exception {
+		// Needs reflective access to sun.net.httpserver, e.g. --add-opens on Java 9+
+		Assume.assumeTrue(JdkServer.supportsConnectionFaults());
+		assertConnectionIsCut(ServerFactory.Type.JDK);
+	}
+
+	@Test
+	public void connectionFaultsAreRejectedWhenConnectionsCannotBeCut() throws Exception {
+		MockServerFixture mock = MockServerFixture.start(new JdkServer(0));
+		InProcessApiMock apiMock = mock.getApiMock();
+		try {
+			assertTrue("Mock served by JDK server expected to know whether connections can be cut",
+					JdkServer.supportsConnectionFaults() || !rejectsConnectionFaults(apiMock, mock.getResponsesUrl()));
+			apiMock.setConnectionFaultsSupported(false);
+			assertTrue("Faults cutting connections expected to be rejected", rejectsConnectionFaults(apiMock, mock.getResponsesUrl()));
+			apiMock.addCustomResponse(mock.getResponsesUrl(), stub(Fault.slowDrip(1000)));
+		} finally {
+			mock.stop();
+		}
+	}
+
+	/**
+	 * Returns true if adding each fault cutting connection is rejected by given API mock.
+	 */
+	private static boolean rejectsConnectionFaults(InProcessApiMock apiMock, String responses) throws Exception {
+		List<Fault> faults = Arrays.asList(Fault.closeBeforeHeaders(), Fault.resetAfterBytes(4), Fault.truncatedChunkedBody(4));
+		for (Fault fault : faults) {
+			try {
+				apiMock.addCustomResponse(responses, stub(fault));
+				return false;
+			} catch (UnsupportedOperationException e) {
+				// Expected
+			}
+		}
+		try {
+			apiMock.setFaults(responses, faults);
+			return false;
+		} catch (UnsupportedOperationException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Asserts that faults closing and resetting connections are injected by given server type.
+	 */
+	private static void assertConnectionIsCut(ServerFactory.Type type) throws Exception {
+		MockServerFixture mock = MockServerFixture.start(ServerFactory.createServer(type, 0, new Properties()));
+		InProcessApiMock apiMock = mock.getApiMock();
+		try {
+			String responses = mock.getResponsesUrl();
+
+			apiMock.addCustomResponse(responses, stub(Fault.closeBeforeHeaders()));
+			RawResponse closed = send(mock.getPort(), false);
+			assertTrue(type + ": connection expected to close without response", closed.text.isEmpty());
+
+			apiMock.addCustomResponse(responses, stub(Fault.resetAfterBytes(4)));
+			RawResponse reset = send(mock.getPort(), false);
+			assertTrue(type + ": reset after 4 body bytes expected", reset.text.endsWith("\r\n\r\n0123")
+					&& reset.failure instanceof SocketException);
+
+			apiMock.addCustomResponse(responses, stub(Fault.truncatedChunkedBody(4)));
+			// Jetty sends body chunked only to keep-alive clients
+			RawResponse truncated = send(mock.getPort(), true);
+			assertTrue(type + ": truncated chunked body expected", truncated.text.toLowerCase().contains("transfer-encoding: chunked")
+					&& truncated.text.contains("0123") && !truncated.text.contains("0123456789") && !truncated.text.endsWith("0\r\n\r\n"));
+
+			apiMock.setFaults(responses, Arrays.asList(Fault.closeBeforeHeaders()));
+			assertTrue(type + ": operation fault expected for default response", send(mock.getPort(), false).text.isEmpty());
+			apiMock.setFaults(responses, Collections.<Fault>emptyList());
+			assertTrue(type + ": default response expected after faults are removed", send(mock.getPort(), false).text.startsWith("HTTP/1.1 200"));
+		} finally {
+			mock.stop();
+		}
+	}
+
+	private static Response stub(Fault fault) {
+		return new Response().setBody(BODY).addFault(fault);
+	}
+
+	/**
+	 * Sends request over raw socket and reads response until connection is closed, reset or stalls for 500 ms.
+	 */
+	private static RawResponse send(int port, boolean keepAlive) throws IOException {
+		RawResponse response = new RawResponse();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long started = System.nanoTime();
+		Socket socket = new Socket("localhost", port);
+		try {
+			socket.setSoTimeout(500);
+			socket.getOutputStream().write(("POST /mock/services/REST/local-mock/endpoint HTTP/1.1\r\nHost: localhost:" + port 
+					+ "\r\nContent-Type: application/json\r\nContent-Length: 2\r\n" 
+					+ (keepAlive ? "" : "Connection: close\r\n") + "\r\n{}").getBytes(StandardCharsets.UTF_8));
+			InputStream inputStream = socket.getInputStream();
+			int read;
+			while ((read = inputStream.read()) != -1) {
+				bytes.write(read);
+			}
+		} catch (IOException e) {
+			response.failure = e;
+		} finally {
+			socket.close();
+		}
+		response.text = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+		response.elapsedMillis = (System.nanoTime() - started) / 1000000;
+		return response;
+	}
+
+	private static class RawResponse {
+		String text;
+		IOException failure;
+		long elapsedMillis;
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import fi.mystes.mock.InProcessApiMock;
+
+/**
+ * Test fixture serving an InProcessApiMock configured from src/test/resources/web at context path /mock
+ * on a mock server listening to a free port.<br/>
+ * <br/>
+ * Other handlers may be added to the server before the fixture is started.
+ */
+public class MockServerFixture {
+
+	/** Context path API mock is served at */
+	public static final String CONTEXT_PATH = "/mock";
+
+	/** Directory of mock service configuration */
+	public static final String CONFIGURATION_PATH = "src/test/resources/web";
+
+	private final IMockServer server;
+
+	private final InProcessApiMock apiMock;
+
+	/**
+	 * Creates fixture serving new InProcessApiMock on given server.
+	 * 
+	 * @param server Mock server created with port 0
+	 * 
+	 * @throws Exception If adding API mock to server fails
+	 */
+	public MockServerFixture(IMockServer server) throws Exception {
+		this.server = server;
+		this.apiMock = new InProcessApiMock();
+		apiMock.configure(CONTEXT_PATH, CONFIGURATION_PATH);
+		server.addMockHandler(CONTEXT_PATH, apiMock);
+	}
+
+	/**
+	 * Creates and starts fixture serving new InProcessApiMock on given server.
+	 * 
+	 * @param server Mock server created with port 0
+	 * 
+	 * @return Instance of started MockServerFixture
+	 * 
+	 * @throws Exception If server start fails
+	 */
+	public static MockServerFixture start(IMockServer server) throws Exception {
+		return new MockServerFixture(server).start();
+	}
+
+	/**
+	 * Starts server and waits until API mock answers.
+	 * 
+	 * @return This instance of MockServerFixture
+	 * 
+	 * @throws Exception If server start fails
+	 */
+	public MockServerFixture start() throws Exception {
+		server.tearUp(apiMock, 0);
+		return this;
+	}
+
+	/**
+	 * Stops server.
+	 * 
+	 * @throws Exception If server stop fails
+	 */
+	public void stop() throws Exception {
+		server.tearDown();
+	}
+
+	public IMockServer getServer() {
+		return server;
+	}
+
+	public InProcessApiMock getApiMock() {
+		return apiMock;
+	}
+
+	public int getPort() {
+		return server.getPort();
+	}
+
+	/**
+	 * @return Base URL of API mock, e.g. http://localhost:port/mock
+	 */
+	public String getBaseUrl() {
+		return "http://localhost:" + getPort() + CONTEXT_PATH;
+	}
+
+	/**
+	 * @return URL of configured services, e.g. http://localhost:port/mock/services
+	 */
+	public String getServicesUrl() {
+		return getBaseUrl() + "/services";
+	}
+
+	/**
+	 * @return URL of POST operation of configured local-mock REST service
+	 */
+	public String getOperationUrl() {
+		return getServicesUrl() + "/REST/local-mock/operations/POST";
+	}
+
+	/**
+	 * @return URL of custom responses of POST operation of configured local-mock REST service
+	 */
+	public String getResponsesUrl() {
+		return getOperationUrl() + "/responses";
+	}
+
+	/**
+	 * @return Endpoint URL of configured local-mock REST service
+	 */
+	public String getEndpointUrl() {
+		return getServicesUrl() + "/REST/local-mock/endpoint";
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import fi.mystes.mock.IApiMock;
+
+public class ReadinessProbeTest {
+
+	@Test
+	public void returnsWhenApiMockAnswers() throws Exception {
+		IApiMock<?> apiMock = mock(IApiMock.class);
+		when(apiMock.isAlive(anyInt())).thenReturn(false, false, false, true);
+
+		long started = System.nanoTime();
+		int probes = ReadinessProbe.awaitReady(apiMock, 8888, 10000);
+
+		assertTrue("Four probes expected", probes == 4);
+		assertTrue("Backoff delays 5, 10 and 20 ms expected", System.nanoTime() - started < 1000000000L);
+	}
+
+	@Test(expected = TimeoutException.class)
+	public void failsAfterDeadline() throws Exception {
+		IApiMock<?> apiMock = mock(IApiMock.class);
+		when(apiMock.isAlive(anyInt())).thenReturn(false);
+
+		ReadinessProbe.awaitReady(apiMock, 8888, 50);
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server.jdk;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Delay;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+import fi.mystes.xml.XPathNamespaceContext;
+import fi.mystes.xml.XmlToolkit;
+
+public class JdkServerTest {
+
+	private XmlToolkit xmlToolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+
+	@Test
+	public void inProcessApiMockIsServedWithEachExecutorType() throws Exception {
+		for (JdkServer.ExecutorType executorType : JdkServer.ExecutorType.values()) {
+			Properties properties = new Properties();
+			properties.setProperty("http.test.conductor.server.executor", executorType.name());
+			MockServerFixture mock = MockServerFixture.start(new JdkServer(0, properties));
+			try {
+				mock.getApiMock().addCustomResponse(mock.getResponsesUrl(), 
+						new Response().setBody("{\"executor\":\"" + executorType + "\"}").addParameter("code", "202"));
+
+				HttpResponse<String> response = new RestRequest("{}", mock.getEndpointUrl(), "post")
+						.addHeader("Custom-Request-Header", "jUnit").sendRequest();
+
+				assertTrue(executorType + " response expected", response.getStatus() == 202
+						&& response.getBody().equals("{\"executor\":\"" + executorType + "\"}"));
+				Document headers = xmlToolkit.parse(mock.getApiMock().getRecordedHeaders(
+						mock.getOperationUrl() + "/recorded-request-headers").getContent());
+				assertTrue("Canonical header names expected", xmlToolkit.getXPath()
+						.evaluate("//name[text() = 'Custom-Request-Header']/../value/text()", headers).equals("jUnit"));
+			} finally {
+				mock.stop();
+			}
+		}
+	}
+
+	@Test
+	public void pacedResponseIsDelayedAndThrottled() throws Exception {
+		MockServerFixture mock = MockServerFixture.start(new JdkServer(0));
+		try {
+			StringBuilder body = new StringBuilder();
+			while (body.length() < 1000) {
+				body.append("0123456789");
+			}
+			mock.getApiMock().addCustomResponse(mock.getResponsesUrl(), 
+					new Response().setBody(body.toString()).setFirstByteDelay(Delay.fixed(200)).setBandwidth(2500));
+
+			long started = System.nanoTime();
+			HttpResponse<String> response = new RestRequest("{}", mock.getEndpointUrl(), "post").sendRequest();
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+			assertTrue("Complete body expected", response.getBody().equals(body.toString()));
+			// 200 ms first byte delay and 1000 bytes at 2500 bytes per second
+			assertTrue("Delayed and throttled response expected, took " + elapsedMillis + " ms", 
+					elapsedMillis >= 600 && elapsedMillis < 2000);
+		} finally {
+			mock.stop();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void webApplicationsAreNotSupported() throws Exception {
+		new JdkServer(0).addWebApp("lib/http-api-mock.war", "/mock");
+	}
+}
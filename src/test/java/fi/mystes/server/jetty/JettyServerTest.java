@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.server.jetty;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.thread.QueuedThreadPool;
+
+import com.mashape.unirest.http.HttpResponse;
+
+import fi.mystes.request.RestRequest;
+import fi.mystes.response.Response;
+import fi.mystes.server.MockServerFixture;
+
+public class JettyServerTest {
+
+	@Test
+	public void connectorAndThreadPoolAreConfiguredFromProperties() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("http.test.conductor.server.acceptors", "3");
+		properties.setProperty("http.test.conductor.server.acceptQueueSize", "2048");
+		properties.setProperty("http.test.conductor.server.maxThreads", "64");
+		properties.setProperty("http.test.conductor.server.idleTimeout", "5000");
+		properties.setProperty("http.test.conductor.server.responseBufferSize", "65536");
+
+		JettyServer server = new JettyServer(0, properties);
+		SelectChannelConnector connector = (SelectChannelConnector) server.getConnectors()[0];
+		QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+
+		assertTrue("Configured connector expected", connector.getAcceptors() == 3 && connector.getAcceptQueueSize() == 2048
+				&& connector.getMaxIdleTime() == 5000 && connector.getResponseBufferSize() == 65536);
+		assertTrue("Default header buffer size expected", connector.getHeaderBufferSize() == 8192);
+		assertTrue("Configured thread pool expected", threadPool.getMaxThreads() == 64 && threadPool.getMinThreads() == 16);
+
+		server.start();
+		try {
+			assertTrue("Free port expected to be allocated", server.getPort() > 0);
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void delayedResponsesDoNotOccupyServerThreads() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("http.test.conductor.server.acceptors", "1");
+		properties.setProperty("http.test.conductor.server.minThreads", "4");
+		properties.setProperty("http.test.conductor.server.maxThreads", "4");
+		MockServerFixture mock = MockServerFixture.start(new JettyServer(0, properties));
+
+		int requests = 12;
+		ExecutorService clients = Executors.newFixedThreadPool(requests);
+		try {
+			final String endpoint = mock.getEndpointUrl();
+			for (int i = 0; i < requests; i++) {
+				mock.getApiMock().addCustomResponse(mock.getResponsesUrl(),
+						new Response().setBody("delayed").setFirstByteDelay(500));
+			}
+
+			long started = System.nanoTime();
+			List<Future<HttpResponse<String>>> responses = new ArrayList<Future<HttpResponse<String>>>();
+			for (int i = 0; i < requests; i++) {
+				responses.add(clients.submit(new Callable<HttpResponse<String>>() {
+					public HttpResponse<String> call() throws Exception {
+						return new RestRequest("{}", endpoint, "post").sendRequest();
+					}
+				}));
+			}
+			for (Future<HttpResponse<String>> response : responses) {
+				assertTrue("Delayed response expected", response.get().getBody().equals("delayed"));
+			}
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+			// Three request threads waiting for each delay would need at least 2000 ms
+			assertTrue("Delayed responses expected to be served concurrently, took " + elapsedMillis + " ms",
+					elapsedMillis >= 500 && elapsedMillis < 1500);
+		} finally {
+			clients.shutdown();
+			mock.stop();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.xml;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XPathExpressionCacheTest {
+
+	private Map<String, String> namespaces;
+	private XPathExpressionCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		namespaces = new HashMap<String, String>();
+		XPathNamespaceContext namespaceContext = new XPathNamespaceContext(namespaces);
+		XPath xpath = XPathFactory.newInstance().newXPath();
+		xpath.setNamespaceContext(namespaceContext);
+		cache = new XPathExpressionCache(xpath, namespaceContext, 2);
+	}
+
+	@Test
+	public void cachedExpressionIsReused() throws Exception {
+		XPathExpression first = cache.compile("//a");
+		XPathExpression second = cache.compile("//a");
+
+		assertTrue("Same compiled expression expected", first == second);
+		assertTrue("One miss expected", cache.getMisses() == 1);
+		assertTrue("One hit expected", cache.getHits() == 1);
+	}
+
+	@Test
+	public void leastRecentlyUsedExpressionIsEvicted() throws Exception {
+		XPathExpression a = cache.compile("//a");
+		cache.compile("//b");
+		cache.compile("//a");
+		cache.compile("//c");
+
+		assertTrue("Cache size expected to be bounded", cache.size() == 2);
+		assertTrue("Recently used expression expected to stay cached", cache.compile("//a") == a);
+		cache.compile("//b");
+		assertTrue("Evicted expression expected to be compiled again", cache.getMisses() == 4);
+	}
+
+	@Test
+	public void namespaceChangeInvalidatesCache() throws Exception {
+		namespaces.put("ns", "urn:first");
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document document = factory.newDocumentBuilder().parse(
+				new ByteArrayInputStream("<a xmlns='urn:second'>value</a>".getBytes(StandardCharsets.UTF_8)));
+
+		assertTrue("No match expected with first namespace",
+				cache.compile("string(/ns:a)").evaluate(document, XPathConstants.STRING).equals(""));
+
+		namespaces.put("ns", "urn:second");
+
+		assertTrue("Match expected after namespace change",
+				cache.compile("string(/ns:a)").evaluate(document, XPathConstants.STRING).equals("value"));
+		assertTrue("Expression expected to be recompiled", cache.getMisses() == 2);
+	}
+}
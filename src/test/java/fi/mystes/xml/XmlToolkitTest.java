@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016 Mystes Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package fi.mystes.xml;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.xpath.XPathConstants;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XmlToolkitTest {
+
+	@Test
+	public void sharedBuilderAndXPathCanBeUsedFromParallelThreads() throws Exception {
+		final XmlToolkit toolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+		for (int i = 0; i < 64; i++) {
+			final String value = "value" + i;
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					boolean matches = true;
+					for (int j = 0; j < 100; j++) {
+						String xml = "<root><item>" + value + "</item></root>";
+						Document document = j % 2 == 0
+								? toolkit.getDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+								: toolkit.parse(xml);
+						matches &= value.equals(toolkit.getXPath().evaluate("/root/item/text()", document));
+						matches &= value.equals(toolkit.compile("/root/item/text()").evaluate(document, XPathConstants.STRING));
+					}
+					return matches;
+				}
+			}));
+		}
+
+		for (Future<Boolean> result : results) {
+			assertTrue("XPath result expected to match parsed document", result.get());
+		}
+		executor.shutdown();
+
+		assertTrue("Expression expected to be compiled once per thread", toolkit.getXPathCacheMisses() <= 8);
+		assertTrue("Cached expressions expected to be reused", toolkit.getXPathCacheHits() >= 64 * 100 - 8);
+	}
+
+	@Test
+	public void cacheCountsOfFinishedThreadsAreKept() throws Exception {
+		final XmlToolkit toolkit = new XmlToolkit(new XPathNamespaceContext(new HashMap<String, String>()), 16);
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						toolkit.compile("/root");
+						toolkit.compile("/root");
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			thread.start();
+			thread.join();
+		}
+
+		assertTrue("Misses of finished threads expected to be counted", toolkit.getXPathCacheMisses() == 4);
+		assertTrue("Hits of finished threads expected to be counted", toolkit.getXPathCacheHits() == 4);
+	}
+}